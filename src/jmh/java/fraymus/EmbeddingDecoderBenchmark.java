@@ -0,0 +1,170 @@
+package fraymus;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * EmbeddingDecoderBenchmark: EmbeddingDecoder vs the old String/split parser
+ *
+ * Decodes synthetic Ollama responses (same number formatting as the real
+ * server) for both the single-vector /api/embeddings shape and the
+ * batched /api/embed shape. Setup fails if the two parsers disagree.
+ *
+ * Usage (-prof gc reports bytes allocated per response):
+ *   ./gradlew jmh -Pjmh.includes=EmbeddingDecoderBenchmark -Pjmh.args="-prof gc"
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EmbeddingDecoderBenchmark {
+
+    @Param({ "768" })
+    public int dim;
+
+    @Param({ "32" })
+    public int batch;
+
+    private byte[] single;
+    private byte[] multi;
+
+    @Setup
+    public void setup() throws IOException {
+        Random rnd = new Random(7);
+        single = ("{\"embedding\":" + vectorJson(rnd, dim) + "}").getBytes(StandardCharsets.UTF_8);
+        StringBuilder sb = new StringBuilder("{\"model\":\"nomic-embed-text\",\"embeddings\":[");
+        for (int i = 0; i < batch; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(vectorJson(rnd, dim));
+        }
+        sb.append("],\"total_duration\":14143917,\"load_duration\":1019500,\"prompt_eval_count\":").append(batch).append('}');
+        multi = sb.toString().getBytes(StandardCharsets.UTF_8);
+        verify();
+    }
+
+    @Benchmark
+    public double[] legacySingle() {
+        return legacySingle(new String(single, StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public float[][] decoderSingle() throws IOException {
+        return EmbeddingDecoder.decode(new ByteArrayInputStream(single));
+    }
+
+    @Benchmark
+    public float[][] legacyBatch() {
+        return legacyMulti(new String(multi, StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public float[][] decoderBatch() throws IOException {
+        return EmbeddingDecoder.decode(new ByteArrayInputStream(multi));
+    }
+
+    /**
+     * Numbers formatted like Ollama's: shortest round-trip, mixed magnitudes
+     */
+    private static String vectorJson(Random rnd, int dim) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int d = 0; d < dim; d++) {
+            if (d > 0) sb.append(',');
+            double v = rnd.nextGaussian() * (d % 97 == 0 ? 1e-5 : 0.05);
+            sb.append(d % 3 == 0 ? Double.toString(v) : Float.toString((float) v));
+        }
+        return sb.append(']').toString();
+    }
+
+    private void verify() throws IOException {
+        float[] expected = toFloats(legacySingle());
+        float[][] decoded = decoderSingle();
+        int mismatches = decoded.length == 1 ? countMismatches(expected, decoded[0]) : -1;
+
+        float[][] expectedMulti = legacyBatch();
+        float[][] decodedMulti = decoderBatch();
+        if (decodedMulti.length != expectedMulti.length) {
+            mismatches = -1;
+        } else {
+            for (int i = 0; i < expectedMulti.length && mismatches >= 0; i++) {
+                mismatches += countMismatches(expectedMulti[i], decodedMulti[i]);
+            }
+        }
+        if (mismatches != 0) {
+            throw new IllegalStateException("EmbeddingDecoder disagrees with the legacy parser (" + mismatches + ")");
+        }
+    }
+
+    private static int countMismatches(float[] a, float[] b) {
+        if (a.length != b.length) return Math.max(a.length, b.length);
+        int n = 0;
+        for (int i = 0; i < a.length; i++) {
+            // The old parsers rounded double -> float; allow for that last-ulp difference
+            if (a[i] != b[i] && Math.abs(a[i] - b[i]) > Math.ulp(a[i])) n++;
+        }
+        return n;
+    }
+
+    private static float[] toFloats(double[] v) {
+        float[] out = new float[v.length];
+        for (int i = 0; i < v.length; i++) out[i] = (float) v[i];
+        return out;
+    }
+
+    // ---- The parsers OllamaSpine used before EmbeddingDecoder (baseline) ----
+
+    private static double[] legacySingle(String json) {
+        int start = json.indexOf("\"embedding\":");
+        if (start == -1) {
+            return new double[0];
+        }
+        start = json.indexOf("[", start);
+        int end = json.indexOf("]", start);
+        if (start == -1 || end == -1) {
+            return new double[0];
+        }
+        String[] values = json.substring(start + 1, end).split(",");
+        double[] embedding = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            embedding[i] = Double.parseDouble(values[i].trim());
+        }
+        return embedding;
+    }
+
+    private static float[][] legacyMulti(String json) {
+        int start = json.indexOf("\"embeddings\":");
+        if (start == -1) {
+            return new float[0][];
+        }
+        int pos = json.indexOf("[", start) + 1;
+        if (pos == 0) {
+            return new float[0][];
+        }
+        List<float[]> vectors = new ArrayList<>();
+        while (true) {
+            int open = json.indexOf("[", pos);
+            int close = json.indexOf("]", pos);
+            if (open == -1 || close < open) break;
+
+            int end = json.indexOf("]", open);
+            String arrayContent = json.substring(open + 1, end).trim();
+            if (arrayContent.isEmpty()) {
+                vectors.add(new float[0]);
+            } else {
+                String[] values = arrayContent.split(",");
+                float[] embedding = new float[values.length];
+                for (int i = 0; i < values.length; i++) {
+                    embedding[i] = Float.parseFloat(values[i].trim());
+                }
+                vectors.add(embedding);
+            }
+            pos = end + 1;
+        }
+        return vectors.toArray(new float[0][]);
+    }
+}
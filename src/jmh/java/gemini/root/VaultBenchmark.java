@@ -0,0 +1,132 @@
+package gemini.root;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * VaultBenchmark: queries/sec and recall@k for each vault search path
+ *
+ * Builds a throwaway vault of clustered synthetic vectors (embeddings are
+ * clustered by topic, uniform noise would flatter nothing) once per mode,
+ * prints the mode's recall@k against the FLOAT32 exact baseline, then
+ * measures search throughput.
+ *
+ * Usage:
+ *   ./gradlew jmh -Pjmh.includes=VaultBenchmark
+ *   (FLOAT32_SIMD needs a -Psimd build; without it that mode falls back
+ *   to the scalar scan)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VaultBenchmark {
+
+    @Param({ "FLOAT32_EXACT", "FLOAT32_SIMD", "INT8", "PQ", "HNSW" })
+    public String mode;
+
+    @Param({ "20000" })
+    public int rows;
+
+    @Param({ "768" })
+    public int dim;
+
+    @Param({ "10" })
+    public int k;
+
+    private static final int QUERIES = 200;
+
+    private Path dir;
+    private VectorVault vault;
+    private List<float[]> queries;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("vault-bench");
+        vault = new VectorVault(dir.resolve("fraymus_vault"));
+        Random rnd = new Random(42);
+
+        // Clustered data: 64 topic centres, rows scattered around them
+        float[][] centres = new float[64][dim];
+        for (float[] c : centres) {
+            for (int d = 0; d < dim; d++) c[d] = (float) rnd.nextGaussian();
+        }
+
+        List<float[]> sample = new ArrayList<>();
+        for (int start = 0; start < rows; start += 1000) {
+            int n = Math.min(1000, rows - start);
+            List<String> texts = new ArrayList<>(n);
+            List<float[]> vecs = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                float[] c = centres[rnd.nextInt(centres.length)];
+                float[] v = new float[dim];
+                for (int d = 0; d < dim; d++) v[d] = c[d] + 0.6f * (float) rnd.nextGaussian();
+                texts.add("row " + (start + i));
+                vecs.add(v);
+                if (sample.size() < QUERIES && rnd.nextInt(Math.max(1, rows / QUERIES)) == 0) sample.add(v);
+            }
+            vault.addAndPersist("bench_" + start, texts, vecs);
+        }
+
+        // Queries: perturbed copies of stored rows
+        queries = new ArrayList<>();
+        for (int i = 0; i < QUERIES; i++) {
+            float[] base = sample.get(i % sample.size());
+            float[] q = new float[dim];
+            for (int d = 0; d < dim; d++) q[d] = base[d] + 0.3f * (float) rnd.nextGaussian();
+            queries.add(q);
+        }
+
+        // Ground truth from the float32 exact scan, before switching modes
+        vault.setStorageMode(VectorVault.StorageMode.FLOAT32);
+        List<Set<Integer>> truth = new ArrayList<>();
+        for (float[] q : queries) {
+            Set<Integer> ids = new HashSet<>();
+            for (VectorVault.VaultEntry e : vault.searchExact(q, k)) ids.add(e.id);
+            truth.add(ids);
+        }
+
+        switch (mode) {
+            case "FLOAT32_SIMD" -> vault.setSimd(true);
+            case "INT8" -> vault.setStorageMode(VectorVault.StorageMode.INT8);
+            case "PQ" -> vault.setStorageMode(VectorVault.StorageMode.PQ);
+            default -> { }
+        }
+
+        int hits = 0;
+        int total = 0;
+        for (int i = 0; i < queries.size(); i++) {
+            for (VectorVault.VaultEntry e : search(queries.get(i))) {
+                if (truth.get(i).contains(e.id)) hits++;
+            }
+            total += truth.get(i).size();
+        }
+        System.out.printf(Locale.ROOT, "%n%s recall@%d = %.3f%n", mode, k, (double) hits / Math.max(1, total));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        vault.setSimd(false);
+        vault.close();
+        try (var files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public List<VectorVault.VaultEntry> search() {
+        float[] q = queries.get(next);
+        next = (next + 1) % queries.size();
+        return search(q);
+    }
+
+    private List<VectorVault.VaultEntry> search(float[] q) {
+        return mode.equals("HNSW") ? vault.searchApprox(q, k) : vault.searchExact(q, k);
+    }
+}
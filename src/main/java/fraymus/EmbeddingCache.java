@@ -0,0 +1,306 @@
+package fraymus;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * EmbeddingCache: Persistent content-addressed embedding store
+ *
+ * Key = SHA-256(embed model + normalised text), so identical text is only
+ * ever embedded once per model - across re-indexing runs and restarts.
+ *
+ * Layout:
+ * - One file per embed model in the cache directory
+ * - 64-byte header (magic, version, dim, slot count) then fixed-size slots
+ * - Slot = state byte + 32-byte key + dim little-endian floats
+ * - The whole file is memory-mapped; vectors live off-heap
+ * - Only a key -> slot map and a bitmap of FULL slots are kept on the heap,
+ *   both rebuilt from the slots on open; new entries take the lowest free
+ *   slot, so holes left by torn writes are refilled rather than overwriting
+ *   live entries
+ *
+ * Eviction:
+ * - Slot count is fixed by the size cap
+ * - CLOCK (second chance): a hit sets the slot's reference bit, the hand
+ *   clears bits until it finds an unreferenced slot to reuse
+ *
+ * Text is normalised before hashing (NFC, trimmed, whitespace runs
+ * collapsed) so formatting-only differences still hit.
+ */
+public final class EmbeddingCache implements Closeable {
+
+    private static final int MAGIC = 0x46454331;  // "FEC1"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int KEY_BYTES = 32;
+    private static final int SLOT_HEADER_BYTES = 1 + KEY_BYTES;
+    private static final long MAX_FILE_BYTES = 1L << 30;  // one mapping
+
+    private static final byte EMPTY = 0;
+    private static final byte FULL = 1;
+
+    private final Path file;
+    private final String model;
+    private final long maxBytes;
+
+    private FileChannel ch;
+    private MappedByteBuffer map;
+    private int dim;          // 0 until the first vector fixes it
+    private int slotBytes;
+    private int capacity;
+    private int used;         // FULL slots
+    private BitSet full = new BitSet();
+    private int hand;
+    private BitSet referenced = new BitSet();
+    private final Map<Long, Integer> slots = new HashMap<>();  // first 8 key bytes -> slot
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private EmbeddingCache(Path file, String model, long maxBytes) {
+        this.file = file;
+        this.model = model;
+        this.maxBytes = Math.min(maxBytes, MAX_FILE_BYTES);
+    }
+
+    /**
+     * Open (or create) the cache for one embed model
+     * @param dir Cache directory, one file per model
+     * @param maxBytes Size cap for the file; older entries are evicted beyond it
+     */
+    public static EmbeddingCache open(Path dir, String model, long maxBytes) throws IOException {
+        Files.createDirectories(dir);
+        String name = model.replaceAll("[^A-Za-z0-9._-]", "_") + ".emb";
+        EmbeddingCache cache = new EmbeddingCache(dir.resolve(name), model, maxBytes);
+        cache.openFile();
+        return cache;
+    }
+
+    public String model() {
+        return model;
+    }
+
+    private synchronized void openFile() throws IOException {
+        ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (ch.size() < HEADER_BYTES) return;  // dimension not known yet
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        while (header.hasRemaining() && ch.read(header, header.position()) >= 0) { }
+        int fileDim = header.getInt(8);
+        int fileCapacity = header.getInt(12);
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION || fileDim <= 0
+                || fileCapacity != capacityFor(fileDim)) {
+            System.err.println(">>> [EMBED-CACHE] " + file.getFileName() + " does not match settings, starting empty");
+            ch.truncate(0);
+            return;
+        }
+        layout(fileDim);
+
+        // Rebuild the key map and the free slots from the slots
+        byte[] key = new byte[KEY_BYTES];
+        for (int slot = 0; slot < capacity; slot++) {
+            int base = slotOffset(slot);
+            if (map.get(base) != FULL) continue;
+            map.get(base + 1, key);
+            Integer duplicate = slots.put(keyBits(key), slot);
+            if (duplicate != null) {
+                // Only one slot per key is reachable; free the other
+                map.put(slotOffset(duplicate), EMPTY);
+                full.clear(duplicate);
+                used--;
+            }
+            full.set(slot);
+            used++;
+        }
+        hand = used % Math.max(1, capacity);
+        System.out.println(">>> [EMBED-CACHE] " + used + " cached embeddings for " + model);
+    }
+
+    private int capacityFor(int d) {
+        long perSlot = SLOT_HEADER_BYTES + (long) d * Float.BYTES;
+        return (int) Math.max(1, (maxBytes - HEADER_BYTES) / perSlot);
+    }
+
+    private void layout(int d) throws IOException {
+        dim = d;
+        slotBytes = SLOT_HEADER_BYTES + d * Float.BYTES;
+        capacity = capacityFor(d);
+        long size = HEADER_BYTES + (long) capacity * slotBytes;
+        map = ch.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        map.order(ByteOrder.LITTLE_ENDIAN);
+        map.putInt(0, MAGIC);
+        map.putInt(4, VERSION);
+        map.putInt(8, dim);
+        map.putInt(12, capacity);
+        referenced = new BitSet(capacity);
+        full = new BitSet(capacity);
+    }
+
+    private int slotOffset(int slot) {
+        return HEADER_BYTES + slot * slotBytes;
+    }
+
+    /**
+     * Cache key for a text under this cache's model
+     */
+    public byte[] key(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(model.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(normalise(text).getBytes(StandardCharsets.UTF_8));
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String normalise(String text) {
+        if (text == null) return "";
+        String nfc = Normalizer.normalize(text, Normalizer.Form.NFC);
+        StringBuilder sb = new StringBuilder(nfc.length());
+        boolean space = false;
+        for (int i = 0; i < nfc.length(); i++) {
+            char c = nfc.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = sb.length() > 0;
+            } else {
+                if (space) sb.append(' ');
+                sb.append(c);
+                space = false;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static long keyBits(byte[] key) {
+        long bits = 0;
+        for (int i = 0; i < 8; i++) bits = (bits << 8) | (key[i] & 0xFF);
+        return bits;
+    }
+
+    /**
+     * @return cached vector (a copy) or null
+     */
+    public float[] get(String text) {
+        return get(key(text));
+    }
+
+    public synchronized float[] get(byte[] key) {
+        Integer slot = map == null ? null : slots.get(keyBits(key));
+        if (slot == null || !keyMatches(slot, key)) {
+            misses.incrementAndGet();
+            return null;
+        }
+        referenced.set(slot);
+        hits.incrementAndGet();
+
+        float[] v = new float[dim];
+        int base = slotOffset(slot) + SLOT_HEADER_BYTES;
+        for (int i = 0; i < dim; i++) {
+            v[i] = map.getFloat(base + i * Float.BYTES);
+        }
+        return v;
+    }
+
+    private boolean keyMatches(int slot, byte[] key) {
+        int base = slotOffset(slot) + 1;
+        for (int i = 0; i < KEY_BYTES; i++) {
+            if (map.get(base + i) != key[i]) return false;
+        }
+        return true;
+    }
+
+    public void put(String text, float[] vector) {
+        put(key(text), vector);
+    }
+
+    /**
+     * Store a vector; empty vectors and vectors of another dimension are ignored
+     */
+    public synchronized void put(byte[] key, float[] vector) {
+        if (vector == null || vector.length == 0) return;
+        try {
+            if (map == null) layout(vector.length);
+        } catch (IOException e) {
+            System.err.println(">>> [EMBED-CACHE] Map failed: " + e.getMessage());
+            return;
+        }
+        if (vector.length != dim) return;
+
+        long bits = keyBits(key);
+        Integer existing = slots.get(bits);
+        int slot = existing != null ? existing : claimSlot();
+        int base = slotOffset(slot);
+
+        // Vector first, state byte last: a torn write leaves the slot EMPTY
+        map.put(base, EMPTY);
+        for (int i = 0; i < dim; i++) {
+            map.putFloat(base + SLOT_HEADER_BYTES + i * Float.BYTES, vector[i]);
+        }
+        map.put(base + 1, key);
+        map.put(base, FULL);
+        slots.put(bits, slot);
+    }
+
+    /**
+     * Lowest free slot, or the CLOCK victim once the cache is full
+     */
+    private int claimSlot() {
+        if (used < capacity) {
+            int slot = full.nextClearBit(0);
+            full.set(slot);
+            used++;
+            return slot;
+        }
+        while (true) {
+            int slot = hand;
+            hand = (hand + 1) % capacity;
+            if (referenced.get(slot)) {
+                referenced.clear(slot);
+                continue;
+            }
+            byte[] victim = new byte[KEY_BYTES];
+            map.get(slotOffset(slot) + 1, victim);
+            slots.remove(keyBits(victim), slot);
+            evictions.incrementAndGet();
+            return slot;
+        }
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    public synchronized int size() {
+        return slots.size();
+    }
+
+    public String stats() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return String.format("entries=%d/%d hits=%d misses=%d hitRate=%.1f%% evictions=%d",
+            size(), capacity, h, misses.get(), total == 0 ? 0.0 : 100.0 * h / total, evictions.get());
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (map != null) {
+            map.force();
+        }
+        ch.close();
+    }
+}
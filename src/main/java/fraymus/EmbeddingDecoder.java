@@ -0,0 +1,393 @@
+package fraymus;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * EmbeddingDecoder: Byte-level streaming decoder for Ollama embedding replies
+ *
+ * Handles both response shapes:
+ * - /api/embeddings  {"embedding":[0.1,-0.2,...]}
+ * - /api/embed       {"model":"...","embeddings":[[...],[...]]}
+ *
+ * Bytes are pushed in as they arrive (from an InputStream or straight from
+ * the HTTP client as ByteBuffers) and numbers are parsed in place into a
+ * pooled float[] - no response String, no substring/split, no boxed or
+ * per-number temporaries. The only allocations are the finished vectors.
+ *
+ * Everything outside the top-level "embedding"/"embeddings" value is
+ * skipped, with string escapes and nesting tracked so keys inside other
+ * values can't be mistaken for the target.
+ */
+public final class EmbeddingDecoder {
+
+    private static final byte[] SINGLE_KEY = "embedding".getBytes();
+    private static final byte[] MULTI_KEY = "embeddings".getBytes();
+    private static final int MAX_KEY = 16;
+    private static final int MAX_NUMBER = 40;
+
+    // Exact powers of ten for the fast path (10^22 is the largest exact double)
+    private static final double[] POW10 = new double[23];
+    static {
+        double p = 1.0;
+        for (int i = 0; i < POW10.length; i++) {
+            POW10[i] = p;
+            p *= 10.0;
+        }
+    }
+
+    // Scratch vectors shared by all decoders. A decoder is built on one
+    // thread and fed on others, and several run at once (embed lanes), so
+    // a buffer is taken from the pool when capture starts and returned by
+    // finish() - never tied to a thread
+    private static final int MAX_POOLED_SCRATCH = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+    private static final ConcurrentLinkedQueue<float[]> SCRATCH_POOL = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger pooledScratch = new AtomicInteger();
+
+    // ---- tokenizer state ----
+    private int depth;              // nesting of {} and [] outside strings
+    private boolean inString;
+    private boolean escape;
+    private boolean expectKey;      // next top-level string is an object key
+    private final byte[] key = new byte[MAX_KEY];
+    private int keyLength;          // -1 once the key overflows MAX_KEY
+    private boolean keyIsSingle;
+    private boolean keyIsMulti;
+
+    // ---- capture state ----
+    private int captureDepth = -1;  // depth of the target array's '[' (-1 = not capturing)
+    private boolean multi;
+    private final byte[] number = new byte[MAX_NUMBER];
+    private int numberLength;
+    private float[] scratch;        // from SCRATCH_POOL while capturing, else null
+    private int scratchLength;
+    private final List<float[]> vectors = new ArrayList<>();
+    private boolean found;
+
+    /**
+     * Decode a whole response from a stream, reading through a small buffer
+     * @return vectors in response order (one for /api/embeddings)
+     */
+    public static float[][] decode(InputStream in) throws IOException {
+        EmbeddingDecoder decoder = new EmbeddingDecoder();
+        byte[] buf = new byte[8192];
+        int n;
+        while ((n = in.read(buf)) > 0) {
+            decoder.feed(buf, 0, n);
+        }
+        return decoder.finish();
+    }
+
+    /**
+     * Body subscriber that decodes as the HTTP client delivers bytes
+     */
+    public static HttpResponse.BodySubscriber<float[][]> bodySubscriber() {
+        return new Subscriber(new EmbeddingDecoder());
+    }
+
+    public void feed(ByteBuffer buf) {
+        if (buf.hasArray()) {
+            feed(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining());
+            buf.position(buf.limit());
+            return;
+        }
+        while (buf.hasRemaining()) {
+            accept(buf.get());
+        }
+    }
+
+    public void feed(byte[] b, int off, int len) {
+        int end = off + len;
+        for (int i = off; i < end; i++) {
+            accept(b[i]);
+        }
+    }
+
+    /**
+     * @return decoded vectors; empty if the response held no embedding field
+     */
+    public float[][] finish() throws IOException {
+        if (captureDepth >= 0 || inString || depth != 0) {
+            throw new IOException("Truncated embedding response");
+        }
+        releaseScratch();
+        return found ? vectors.toArray(new float[0][]) : new float[0][];
+    }
+
+    private void accept(byte c) {
+        if (inString) {
+            if (escape) {
+                escape = false;
+            } else if (c == '\\') {
+                escape = true;
+            } else if (c == '"') {
+                inString = false;
+                if (depth == 1 && expectKey) {
+                    keyIsSingle = keyEquals(SINGLE_KEY);
+                    keyIsMulti = keyEquals(MULTI_KEY);
+                }
+            } else if (depth == 1 && expectKey && keyLength >= 0) {
+                if (keyLength < MAX_KEY) key[keyLength++] = c;
+                else keyLength = -1;
+            }
+            return;
+        }
+
+        if (captureDepth >= 0) {
+            capture(c);
+            return;
+        }
+
+        switch (c) {
+            case '"':
+                inString = true;
+                if (depth == 1 && expectKey) keyLength = 0;
+                break;
+            case '{':
+                depth++;
+                expectKey = depth == 1;
+                break;
+            case '[':
+                depth++;
+                if (depth == 2 && (keyIsSingle || keyIsMulti)) {
+                    captureDepth = depth;
+                    multi = keyIsMulti;
+                    found = true;
+                    if (scratch == null) scratch = acquireScratch();
+                    scratchLength = 0;
+                    numberLength = 0;
+                }
+                break;
+            case '}':
+            case ']':
+                depth--;
+                break;
+            case ',':
+                if (depth == 1) {
+                    expectKey = true;
+                    keyIsSingle = keyIsMulti = false;
+                }
+                break;
+            case ':':
+                if (depth == 1) expectKey = false;
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Inside the target array: '[' ']' ',' delimit, everything else that is
+     * not whitespace is part of a number
+     */
+    private void capture(byte c) {
+        int level = depth - captureDepth;  // 0 = outer array, 1 = inner vector (multi)
+        switch (c) {
+            case '[':
+                depth++;
+                if (multi && level == 0) scratchLength = 0;
+                break;
+            case ']':
+                endNumber();
+                if (multi ? level == 1 : level == 0) {
+                    vectors.add(Arrays.copyOf(scratch, scratchLength));
+                    scratchLength = 0;
+                }
+                depth--;
+                if (level == 0) {
+                    captureDepth = -1;
+                    keyIsSingle = keyIsMulti = false;
+                }
+                break;
+            case ',':
+                endNumber();
+                break;
+            case ' ':
+            case '\n':
+            case '\r':
+            case '\t':
+                endNumber();
+                break;
+            default:
+                if (numberLength < MAX_NUMBER) number[numberLength] = c;
+                numberLength++;
+                break;
+        }
+    }
+
+    private void endNumber() {
+        if (numberLength == 0) return;
+        float value = numberLength <= MAX_NUMBER ? parse(number, numberLength) : Float.NaN;
+        numberLength = 0;
+        if (scratchLength == scratch.length) {
+            scratch = Arrays.copyOf(scratch, scratch.length * 2);
+        }
+        scratch[scratchLength++] = value;
+    }
+
+    private static float[] acquireScratch() {
+        float[] buf = SCRATCH_POOL.poll();
+        if (buf == null) return new float[1024];
+        pooledScratch.decrementAndGet();
+        return buf;
+    }
+
+    /**
+     * Hand the (possibly grown) buffer back; a decoder that fails midway
+     * simply never returns its buffer
+     */
+    private void releaseScratch() {
+        float[] buf = scratch;
+        scratch = null;
+        if (buf != null && pooledScratch.incrementAndGet() <= MAX_POOLED_SCRATCH) {
+            SCRATCH_POOL.offer(buf);
+        } else if (buf != null) {
+            pooledScratch.decrementAndGet();
+        }
+    }
+
+    private boolean keyEquals(byte[] expected) {
+        if (keyLength != expected.length) return false;
+        for (int i = 0; i < keyLength; i++) {
+            if (key[i] != expected[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * JSON number to float. Up to 18 significant digits with an exponent
+     * inside the exact power-of-ten table are computed directly (one
+     * correctly rounded double operation); anything else falls back to
+     * Double.parseDouble.
+     */
+    static float parse(byte[] s, int len) {
+        int i = 0;
+        boolean negative = false;
+        if (i < len && (s[i] == '-' || s[i] == '+')) {
+            negative = s[i] == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean any = false;
+        for (; i < len && s[i] >= '0' && s[i] <= '9'; i++) {
+            any = true;
+            if (mantissa == 0 && s[i] == '0') continue;  // leading zeros
+            if (digits < 18) {
+                mantissa = mantissa * 10 + (s[i] - '0');
+                digits++;
+            } else {
+                return slowParse(s, len);
+            }
+        }
+        if (i < len && s[i] == '.') {
+            i++;
+            for (; i < len && s[i] >= '0' && s[i] <= '9'; i++) {
+                any = true;
+                if (mantissa == 0 && s[i] == '0') {
+                    scale--;
+                    continue;
+                }
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (s[i] - '0');
+                    digits++;
+                    scale--;
+                } else {
+                    return slowParse(s, len);
+                }
+            }
+        }
+        if (!any) return slowParse(s, len);
+
+        if (i < len && (s[i] == 'e' || s[i] == 'E')) {
+            i++;
+            boolean expNegative = false;
+            if (i < len && (s[i] == '-' || s[i] == '+')) {
+                expNegative = s[i] == '-';
+                i++;
+            }
+            int exp = 0;
+            boolean expDigits = false;
+            for (; i < len && s[i] >= '0' && s[i] <= '9'; i++) {
+                expDigits = true;
+                if (exp < 10_000) exp = exp * 10 + (s[i] - '0');
+            }
+            if (!expDigits) return slowParse(s, len);
+            scale += expNegative ? -exp : exp;
+        }
+        if (i != len) return slowParse(s, len);
+
+        double value;
+        if (mantissa == 0) {
+            value = 0.0;  // sign applied below (-0.0 stays -0.0)
+        } else if (scale >= 0 && scale < POW10.length) {
+            value = mantissa * POW10[scale];
+        } else if (scale < 0 && -scale < POW10.length) {
+            value = mantissa / POW10[-scale];
+        } else {
+            return slowParse(s, len);
+        }
+        return (float) (negative ? -value : value);
+    }
+
+    private static float slowParse(byte[] s, int len) {
+        try {
+            return (float) Double.parseDouble(new String(s, 0, len, java.nio.charset.StandardCharsets.US_ASCII));
+        } catch (NumberFormatException e) {
+            return Float.NaN;
+        }
+    }
+
+    /**
+     * Adapts the decoder to the HTTP client's push-style body delivery
+     */
+    private static final class Subscriber implements HttpResponse.BodySubscriber<float[][]> {
+        private final EmbeddingDecoder decoder;
+        private final CompletableFuture<float[][]> result = new CompletableFuture<>();
+
+        Subscriber(EmbeddingDecoder decoder) {
+            this.decoder = decoder;
+        }
+
+        @Override
+        public CompletionStage<float[][]> getBody() {
+            return result;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> buffers) {
+            for (ByteBuffer buf : buffers) {
+                decoder.feed(buf);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            result.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            try {
+                result.complete(decoder.finish());
+            } catch (IOException e) {
+                result.completeExceptionally(e);
+            }
+        }
+    }
+}
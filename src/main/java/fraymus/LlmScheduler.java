@@ -0,0 +1,394 @@
+package fraymus;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * LlmScheduler: Admission control and priority scheduling for Ollama calls
+ *
+ * Ollama serves one model with limited parallelism, so every caller
+ * (chat, reflector, agents, synthesis, self-improvement) shares one
+ * queue in front of it instead of contending blindly.
+ *
+ * Priorities:
+ * - INTERACTIVE: a user is waiting (chat, planner, reflector, agents)
+ * - BACKGROUND: synthesis, meta-cognition, self-improvement
+ * - Interactive requests always dispatch first
+ * - Background only starts when no interactive request is waiting, and
+ *   never takes the reserved slots (a quarter of the limit, at least one),
+ *   so an arriving interactive request finds a free slot
+ * - At limit 1 the only slot is the reserved one: background may take it
+ *   only once no interactive request has arrived for INTERACTIVE_QUIET_MS
+ *   (a chat turn's planner/tool/answer calls come in quick succession)
+ *
+ * Adaptive limit (AIMD):
+ * - Each API ("chat", "embed", ...) keeps a slow latency baseline and a
+ *   fast moving average
+ * - Success with the fast average under 2x baseline: limit += 1/limit
+ * - Slower than that, or a server error: limit *= 0.75 (at most once per
+ *   baseline interval, so one burst cannot collapse it)
+ * - The limit stays within [1, max]; max is --max-llm
+ *
+ * Deadlines:
+ * - Every request carries an absolute deadline (per-priority default)
+ * - A request still queued at its deadline is dropped with
+ *   DeadlineExceededException instead of running for nobody
+ * - Retries do not extend it
+ *
+ * Requests wait in queues, not on threads; the call starts from whichever
+ * thread frees the slot.
+ */
+public final class LlmScheduler {
+
+    public enum Priority { INTERACTIVE, BACKGROUND }
+
+    public static final long DEFAULT_INTERACTIVE_DEADLINE_MS = 60_000;
+    public static final long DEFAULT_BACKGROUND_DEADLINE_MS = 300_000;
+
+    private static final double SLOW_FACTOR = 2.0;
+    private static final double DECREASE = 0.75;
+    private static final double BASELINE_ALPHA = 0.05;
+    private static final double FAST_ALPHA = 0.3;
+    static final long INTERACTIVE_QUIET_MS = 5_000;
+
+    /**
+     * Priority plus absolute deadline; created once per logical request so
+     * retries share the same deadline
+     */
+    public static final class Ticket {
+        public final Priority priority;
+        public final long deadlineNanos;
+
+        private Ticket(Priority priority, long deadlineNanos) {
+            this.priority = priority;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        public boolean expired() {
+            return System.nanoTime() - deadlineNanos > 0;
+        }
+    }
+
+    /**
+     * Request dropped because it could not start before its deadline
+     */
+    public static final class DeadlineExceededException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        DeadlineExceededException(String message) {
+            super(message);
+        }
+    }
+
+    private final class Pending<T> {
+        final Ticket ticket;
+        final String api;
+        final Supplier<CompletableFuture<T>> call;
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        final long enqueuedNanos = System.nanoTime();
+        boolean started;
+
+        Pending(Ticket ticket, String api, Supplier<CompletableFuture<T>> call) {
+            this.ticket = ticket;
+            this.api = api;
+            this.call = call;
+        }
+    }
+
+    private static final class ApiLatency {
+        double baselineMs = -1;
+        double fastMs = -1;
+        long lastDecreaseNanos;
+    }
+
+    private final long interactiveDeadlineMs;
+    private final long backgroundDeadlineMs;
+    private final long interactiveQuietNanos;
+
+    // Guarded by this
+    private final ArrayDeque<Pending<?>> interactive = new ArrayDeque<>();
+    private final ArrayDeque<Pending<?>> background = new ArrayDeque<>();
+    private final Map<String, ApiLatency> latency = new HashMap<>();
+    private int maxLimit;
+    private double limit;
+    private int inFlight;
+    private int backgroundInFlight;
+    private long lastInteractiveNanos;
+    private boolean hasInteractive;
+    private boolean quietTimerSet;
+
+    // Metrics, guarded by this
+    private final long[] submitted = new long[2];
+    private final long[] dropped = new long[2];
+    private final long[] dispatched = new long[2];
+    private final long[] waitNanos = new long[2];
+    private final int[] maxDepth = new int[2];
+    private long decreases;
+
+    public LlmScheduler(int maxConcurrent) {
+        this(maxConcurrent, DEFAULT_INTERACTIVE_DEADLINE_MS, DEFAULT_BACKGROUND_DEADLINE_MS);
+    }
+
+    public LlmScheduler(int maxConcurrent, long interactiveDeadlineMs, long backgroundDeadlineMs) {
+        this(maxConcurrent, interactiveDeadlineMs, backgroundDeadlineMs, INTERACTIVE_QUIET_MS);
+    }
+
+    LlmScheduler(int maxConcurrent, long interactiveDeadlineMs, long backgroundDeadlineMs, long interactiveQuietMs) {
+        this.maxLimit = Math.max(1, maxConcurrent);
+        this.limit = maxLimit;
+        this.interactiveDeadlineMs = interactiveDeadlineMs;
+        this.backgroundDeadlineMs = backgroundDeadlineMs;
+        this.interactiveQuietNanos = TimeUnit.MILLISECONDS.toNanos(interactiveQuietMs);
+    }
+
+    /**
+     * Ticket with the default deadline for its priority, starting now
+     */
+    public Ticket ticket(Priority priority) {
+        long ms = priority == Priority.INTERACTIVE ? interactiveDeadlineMs : backgroundDeadlineMs;
+        return new Ticket(priority, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ms));
+    }
+
+    /**
+     * Upper bound for the adaptive limit; the limit restarts at this value
+     */
+    public void setMaxConcurrent(int max) {
+        synchronized (this) {
+            maxLimit = Math.max(1, max);
+            limit = maxLimit;
+        }
+        dispatchLater();
+    }
+
+    public synchronized int getMaxConcurrent() {
+        return maxLimit;
+    }
+
+    /**
+     * Queue a call; it starts once its priority class may use a slot
+     * @param api Latency class for the adaptive limit ("chat", "embed", ...)
+     */
+    public <T> CompletableFuture<T> submit(Ticket ticket, String api, Supplier<CompletableFuture<T>> call) {
+        Pending<T> p = new Pending<>(ticket, api, call);
+        int cls = ticket.priority.ordinal();
+        boolean expired = ticket.expired();
+        synchronized (this) {
+            submitted[cls]++;
+            if (expired) dropped[cls]++;
+            if (ticket.priority == Priority.INTERACTIVE) {
+                lastInteractiveNanos = System.nanoTime();
+                hasInteractive = true;
+            }
+        }
+        if (expired) {
+            p.result.completeExceptionally(deadline(p));
+            return p.result;
+        }
+        synchronized (this) {
+            ArrayDeque<Pending<?>> queue = queueFor(ticket.priority);
+            queue.add(p);
+            maxDepth[cls] = Math.max(maxDepth[cls], queue.size());
+        }
+
+        // Drop it at the deadline if it is still waiting then
+        long delay = Math.max(0, ticket.deadlineNanos - System.nanoTime());
+        CompletableFuture.delayedExecutor(delay, TimeUnit.NANOSECONDS).execute(() -> expire(p));
+
+        // A caller giving up (e.g. cancel) frees the queue entry as well
+        p.result.whenComplete((v, e) -> {
+            if (p.result.isCancelled()) withdraw(p);
+        });
+
+        dispatchLater();
+        return p.result;
+    }
+
+    private ArrayDeque<Pending<?>> queueFor(Priority priority) {
+        return priority == Priority.INTERACTIVE ? interactive : background;
+    }
+
+    private void expire(Pending<?> p) {
+        synchronized (this) {
+            if (p.started || !queueFor(p.ticket.priority).remove(p)) return;
+            dropped[p.ticket.priority.ordinal()]++;
+        }
+        p.result.completeExceptionally(deadline(p));
+    }
+
+    private synchronized void withdraw(Pending<?> p) {
+        if (!p.started) queueFor(p.ticket.priority).remove(p);
+    }
+
+    private DeadlineExceededException deadline(Pending<?> p) {
+        long waitedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - p.enqueuedNanos);
+        return new DeadlineExceededException("Ollama " + p.api + " request dropped: deadline passed after "
+            + waitedMs + "ms in the " + p.ticket.priority.name().toLowerCase() + " queue");
+    }
+
+    /**
+     * Start everything that may start now; calls run outside the lock
+     */
+    private void dispatchLater() {
+        List<Pending<?>> ready = new ArrayList<>();
+        List<Pending<?>> stale = new ArrayList<>();
+        synchronized (this) {
+            int slots = Math.max(1, (int) limit);
+            int reserved = slots > 1 ? Math.max(1, slots / 4) : soloReserved();
+            while (inFlight < slots) {
+                Pending<?> next = interactive.poll();
+                if (next == null && inFlight < slots - reserved) {
+                    next = background.poll();
+                }
+                if (next == null) break;
+
+                int cls = next.ticket.priority.ordinal();
+                if (next.ticket.expired()) {
+                    dropped[cls]++;
+                    stale.add(next);
+                    continue;
+                }
+                next.started = true;
+                inFlight++;
+                if (next.ticket.priority == Priority.BACKGROUND) backgroundInFlight++;
+                dispatched[cls]++;
+                waitNanos[cls] += System.nanoTime() - next.enqueuedNanos;
+                ready.add(next);
+            }
+        }
+        for (Pending<?> p : stale) {
+            p.result.completeExceptionally(deadline(p));
+        }
+        for (Pending<?> p : ready) {
+            start(p);
+        }
+    }
+
+    /**
+     * Reserved slots at limit 1: the slot stays interactive while an
+     * interactive request arrived within the quiet window; a timer
+     * re-dispatches when the window ends so background is not stranded
+     */
+    private int soloReserved() {
+        if (!hasInteractive || background.isEmpty()) return 0;
+        long quietFor = System.nanoTime() - lastInteractiveNanos;
+        if (quietFor >= interactiveQuietNanos) return 0;
+        if (!quietTimerSet) {
+            quietTimerSet = true;
+            CompletableFuture.delayedExecutor(interactiveQuietNanos - quietFor, TimeUnit.NANOSECONDS).execute(() -> {
+                synchronized (this) {
+                    quietTimerSet = false;
+                }
+                dispatchLater();
+            });
+        }
+        return 1;
+    }
+
+    private <T> void start(Pending<T> p) {
+        long startNanos = System.nanoTime();
+        CompletableFuture<T> call;
+        try {
+            call = p.call.get();
+        } catch (RuntimeException e) {
+            call = CompletableFuture.failedFuture(e);
+        }
+        CompletableFuture<T> running = call;
+        // Cancelling the caller's future aborts the HTTP exchange too
+        p.result.whenComplete((v, e) -> {
+            if (p.result.isCancelled()) running.cancel(true);
+        });
+        running.whenComplete((value, error) -> {
+            finished(p, System.nanoTime() - startNanos, error);
+            if (error != null) {
+                p.result.completeExceptionally(error);
+            } else {
+                p.result.complete(value);
+            }
+        });
+    }
+
+    private void finished(Pending<?> p, long elapsedNanos, Throwable error) {
+        synchronized (this) {
+            inFlight--;
+            if (p.ticket.priority == Priority.BACKGROUND) backgroundInFlight--;
+            adapt(p.api, elapsedNanos, error);
+        }
+        dispatchLater();
+    }
+
+    /**
+     * AIMD step for one completed call
+     */
+    private void adapt(String api, long elapsedNanos, Throwable error) {
+        if (error instanceof CancellationException) return;
+
+        ApiLatency lat = latency.computeIfAbsent(api, k -> new ApiLatency());
+        double ms = elapsedNanos / 1e6;
+        boolean serverError = error != null && isServerError(error);
+
+        if (error == null) {
+            if (lat.baselineMs < 0) {
+                lat.baselineMs = ms;
+                lat.fastMs = ms;
+            } else {
+                lat.fastMs += FAST_ALPHA * (ms - lat.fastMs);
+                lat.baselineMs += BASELINE_ALPHA * (ms - lat.baselineMs);
+            }
+        }
+
+        boolean slow = error == null && lat.fastMs > SLOW_FACTOR * lat.baselineMs;
+        if (slow || serverError) {
+            long now = System.nanoTime();
+            long interval = TimeUnit.MILLISECONDS.toNanos((long) Math.max(100, lat.baselineMs));
+            if (now - lat.lastDecreaseNanos > interval) {
+                limit = Math.max(1, limit * DECREASE);
+                lat.lastDecreaseNanos = now;
+                decreases++;
+            }
+        } else if (error == null) {
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+    }
+
+    private static boolean isServerError(Throwable error) {
+        Throwable cause = error;
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof java.net.http.HttpTimeoutException || cause instanceof java.net.ConnectException) {
+            return true;
+        }
+        String msg = String.valueOf(cause.getMessage());
+        return msg.contains("status: 5");
+    }
+
+    public synchronized int queued(Priority priority) {
+        return queueFor(priority).size();
+    }
+
+    public synchronized int inFlight() {
+        return inFlight;
+    }
+
+    public synchronized double limit() {
+        return limit;
+    }
+
+    /**
+     * One-line metrics: limit, in flight, queue depths, drops and mean waits
+     */
+    public synchronized String stats() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "limit=%.1f/%d inFlight=%d (background %d) decreases=%d",
+            limit, maxLimit, inFlight, backgroundInFlight, decreases));
+        for (Priority p : Priority.values()) {
+            int c = p.ordinal();
+            double meanWaitMs = dispatched[c] == 0 ? 0 : waitNanos[c] / 1e6 / dispatched[c];
+            sb.append(String.format(Locale.ROOT, " | %s queued=%d maxQueued=%d submitted=%d dropped=%d meanWaitMs=%.1f",
+                p.name().toLowerCase(), queueFor(p).size(), maxDepth[c], submitted[c], dropped[c], meanWaitMs));
+        }
+        return sb.toString();
+    }
+}
@@ -1,9 +1,22 @@
 package fraymus;
 
+import com.google.gson.*;
+
 import java.io.*;
-import java.net.*;
+import java.net.URI;
+import java.net.http.*;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import fraymus.LlmScheduler.Priority;
+import fraymus.LlmScheduler.Ticket;
+import fraymus.jfr.OllamaCallEvent;
 
 /**
  * OllamaSpine: The Embedding Engine and Text Generation
@@ -16,6 +29,45 @@ import java.util.*;
  * - Configurable timeouts (connect + read)
  * - Retry logic with exponential backoff
  * - Input size caps for embeddings
+ *
+ * Batched Embedding:
+ * - embedBatch posts sub-batches to /api/embed (many inputs per request)
+ * - Sub-batches are pipelined with a bounded number of requests in flight
+ * - Results are reassembled in input order
+ * - A failed sub-batch is retried input by input; only inputs that still
+ *   fail come back as empty vectors
+ * - Falls back to /api/embeddings on servers without /api/embed
+ * - Responses are decoded by EmbeddingDecoder straight from the response
+ *   bytes into float[] (no response String, no per-number temporaries)
+ *
+ * Embedding Cache:
+ * - Optional persistent EmbeddingCache under embedSingle and embedBatch
+ * - Only cache misses (deduplicated) are sent to Ollama
+ *
+ * Transport:
+ * - One shared java.net.http.HttpClient (keep-alive connection pool)
+ * - Every request goes through one process-wide LlmScheduler: priority
+ *   queues (interactive before background), an adaptive concurrency limit
+ *   of at most maxConcurrentRequests (default 8, setMaxConcurrentRequests),
+ *   and deadlines that drop requests that waited too long
+ * - Chat, generate and single embeddings are INTERACTIVE unless a Priority
+ *   is passed; batch embedding is BACKGROUND (indexing) unless a Priority
+ *   is passed (RagEngine embeds the user's query as INTERACTIVE)
+ * - Async variants (chatOnceAsync, generateAsync, embedBatchAsync) return
+ *   CompletableFuture; the blocking methods wait on them
+ * - Retries back off on a timer instead of a sleeping thread
+ * - Cancelling a returned future aborts the request in flight (or drops
+ *   it from the queue) and stops further retries
+ *
+ * Streaming:
+ * - chatStream/chatStreamAsync request "stream":true and parse the NDJSON
+ *   reply line by line as it arrives, handing each token to a callback
+ * - A stream is only retried if it failed before its first token
+ *
+ * Flight Recorder:
+ * - Every POST attempt is an OllamaCallEvent (api, model, attempt, status,
+ *   bytes each way, time queued) when JFR has the event enabled; when it
+ *   is not, the request path is unchanged
  */
 public class OllamaSpine {
     
@@ -24,16 +76,37 @@ public class OllamaSpine {
     private static final int READ_TIMEOUT_MS = 120000;    // 2 minutes
     private static final int MAX_RETRIES = 3;
     private static final int INITIAL_RETRY_DELAY_MS = 1000;  // 1 second
+    public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 8;
     
     // Input size limits
     private static final int MAX_EMBED_TEXT_LENGTH = 8000;  // chars
-    private static final int MAX_EMBED_BATCH_SIZE = 100;     // chunks
+    
+    // Batched embedding defaults
+    public static final int DEFAULT_EMBED_BATCH_SIZE = 32;  // inputs per /api/embed request
+    public static final int DEFAULT_EMBED_IN_FLIGHT = 4;    // concurrent sub-batch requests
+    
+    private static final HttpClient HTTP = HttpClient.newBuilder()
+        .version(HttpClient.Version.HTTP_1_1)
+        .connectTimeout(Duration.ofMillis(CONNECT_TIMEOUT_MS))
+        .executor(Executors.newCachedThreadPool(daemonThreads("ollama-http")))
+        .build();
+    
+    private static final LlmScheduler SCHEDULER = new LlmScheduler(DEFAULT_MAX_CONCURRENT_REQUESTS);
+    
+    private static final Gson gson = new Gson();
+    
+    private static final ThreadLocal<Integer> ATTEMPT = new ThreadLocal<>();  // attempt being issued, for OllamaCallEvent
     
     private String baseUrl;
     private boolean connected = false;
     private String chatModel;
     private String embedModel;
     
+    private volatile int embedBatchSize = DEFAULT_EMBED_BATCH_SIZE;
+    private volatile int embedInFlight = DEFAULT_EMBED_IN_FLIGHT;
+    private volatile boolean batchEndpoint = true;  // cleared if the server lacks /api/embed
+    private volatile EmbeddingCache embedCache;
+    
     /**
      * Message structure for chat API
      */
@@ -67,149 +140,386 @@ public class OllamaSpine {
     
     private void testConnection() {
         try {
-            URL url = new URL(baseUrl + "/api/tags");
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("GET");
-            conn.setConnectTimeout(5000);
-            conn.setReadTimeout(5000);
-            
-            int responseCode = conn.getResponseCode();
-            if (responseCode == 200) {
-                connected = true;
-            }
-            conn.disconnect();
-            
+            HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/api/tags"))
+                .timeout(Duration.ofMillis(5000))
+                .GET()
+                .build();
+            HttpResponse<Void> response = HTTP.send(request, HttpResponse.BodyHandlers.discarding());
+            connected = response.statusCode() == 200;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            connected = false;
         } catch (Exception e) {
             connected = false;
         }
     }
     
     /**
-     * Generate embeddings for a list of text inputs with size limits
+     * Configure batched embedding
+     * @param batchSize Inputs per /api/embed request
+     * @param inFlight Sub-batch requests allowed in flight at once
+     */
+    public void setEmbedBatching(int batchSize, int inFlight) {
+        this.embedBatchSize = Math.max(1, batchSize);
+        this.embedInFlight = Math.max(1, inFlight);
+    }
+    
+    /**
+     * Process-wide cap on Ollama requests in flight (shared by every
+     * OllamaSpine). The scheduler adapts its limit below this under load.
+     * Lowering it lets running requests finish; queued ones wait until the
+     * count drops below the new limit.
+     */
+    public static void setMaxConcurrentRequests(int max) {
+        SCHEDULER.setMaxConcurrent(max);
+    }
+    
+    public static int getMaxConcurrentRequests() {
+        return SCHEDULER.getMaxConcurrent();
+    }
+    
+    /**
+     * The shared scheduler, for queue-depth and limit metrics
+     */
+    public static LlmScheduler scheduler() {
+        return SCHEDULER;
+    }
+    
+    /**
+     * Put a persistent cache in front of embedding calls (null disables).
+     * Only used for calls with the cache's model.
+     */
+    public void setEmbeddingCache(EmbeddingCache cache) {
+        this.embedCache = cache;
+    }
+    
+    public EmbeddingCache getEmbeddingCache() {
+        return embedCache;
+    }
+    
+    private EmbeddingCache cacheFor(String model) {
+        EmbeddingCache cache = embedCache;
+        return cache != null && cache.model().equals(model) ? cache : null;
+    }
+    
+    /**
+     * Generate embeddings for a list of text inputs with size limits.
+     * Failed inputs come back as empty arrays; the result always has one
+     * entry per input.
      */
     public double[][] embed(String embedModel, java.util.List<String> inputs) {
-        try {
-            if (inputs == null || inputs.isEmpty()) {
-                return new double[0][];
-            }
-            
-            // Apply batch size limit
-            if (inputs.size() > MAX_EMBED_BATCH_SIZE) {
-                System.err.println("WARNING: Batch size " + inputs.size() + " exceeds max " + MAX_EMBED_BATCH_SIZE + ", truncating");
-                inputs = inputs.subList(0, MAX_EMBED_BATCH_SIZE);
+        if (inputs == null || inputs.isEmpty()) {
+            return new double[0][];
+        }
+        
+        float[][] vectors = embedAllAsync(embedModel, inputs, Priority.BACKGROUND).join();
+        double[][] embeddings = new double[vectors.length][];
+        for (int i = 0; i < vectors.length; i++) {
+            embeddings[i] = toDoubles(vectors[i]);
+        }
+        return embeddings;
+    }
+    
+    /**
+     * Embed every input: answer what the cache already holds, send each
+     * distinct miss once, and write results back into their input slots
+     */
+    private CompletableFuture<float[][]> embedAllAsync(String model, List<String> texts, Priority priority) {
+        EmbeddingCache cache = cacheFor(model);
+        float[][] out = new float[texts.size()][];
+        
+        Map<String, List<Integer>> pending = new LinkedHashMap<>();
+        for (int i = 0; i < texts.size(); i++) {
+            String input = capLength(texts.get(i));
+            float[] hit = cache == null ? null : cache.get(input);
+            if (hit != null) {
+                out[i] = hit;
+            } else {
+                pending.computeIfAbsent(input, k -> new ArrayList<>()).add(i);
             }
-            
-            double[][] embeddings = new double[inputs.size()][];
-            
-            for (int i = 0; i < inputs.size(); i++) {
-                String input = inputs.get(i);
-                
-                // Apply text length limit
-                if (input.length() > MAX_EMBED_TEXT_LENGTH) {
-                    System.err.println("WARNING: Text length " + input.length() + " exceeds max " + MAX_EMBED_TEXT_LENGTH + ", truncating");
-                    input = input.substring(0, MAX_EMBED_TEXT_LENGTH);
+        }
+        if (pending.isEmpty()) {
+            return CompletableFuture.completedFuture(out);
+        }
+        
+        List<String> misses = new ArrayList<>(pending.keySet());
+        return embedRemoteAsync(model, misses, priority).thenApply(fetched -> {
+            for (int j = 0; j < misses.size(); j++) {
+                float[] vector = fetched[j];
+                if (cache != null) cache.put(misses.get(j), vector);
+                List<Integer> slots = pending.get(misses.get(j));
+                out[slots.get(0)] = vector;
+                for (int k = 1; k < slots.size(); k++) {
+                    out[slots.get(k)] = vector.clone();
                 }
-                
-                double[] embedding = embedSingle(embedModel, input);
-                embeddings[i] = embedding;
             }
-            
-            return embeddings;
-            
-        } catch (Exception e) {
-            System.err.println("Error generating embeddings: " + e.getMessage());
-            e.printStackTrace();
-            return new double[inputs.size()][];
+            return out;
+        });
+    }
+    
+    /**
+     * Split inputs into sub-batches and run them on embedInFlight lanes;
+     * each lane takes the next sub-batch when its current one finishes
+     */
+    private CompletableFuture<float[][]> embedRemoteAsync(String model, List<String> inputs, Priority priority) {
+        float[][] out = new float[inputs.size()][];
+        int batchSize = embedBatchSize;
+        int batches = (inputs.size() + batchSize - 1) / batchSize;
+        AtomicInteger next = new AtomicInteger();
+        
+        CompletableFuture<?>[] lanes = new CompletableFuture<?>[Math.min(embedInFlight, batches)];
+        for (int lane = 0; lane < lanes.length; lane++) {
+            lanes[lane] = runLane(model, inputs, out, batchSize, next, priority);
+        }
+        return CompletableFuture.allOf(lanes).handle((ignored, error) -> {
+            if (error != null) {
+                System.err.println("embed sub-batch error: " + error.getMessage());
+            }
+            for (int i = 0; i < out.length; i++) {
+                if (out[i] == null) out[i] = new float[0];
+            }
+            return out;
+        });
+    }
+    
+    private CompletableFuture<Void> runLane(String model, List<String> inputs, float[][] out,
+                                            int batchSize, AtomicInteger next, Priority priority) {
+        int from = next.getAndIncrement() * batchSize;
+        if (from >= inputs.size()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        List<String> slice = inputs.subList(from, Math.min(inputs.size(), from + batchSize));
+        return embedSubBatchAsync(model, slice, out, from, priority)
+            .thenCompose(v -> runLane(model, inputs, out, batchSize, next, priority));
+    }
+    
+    /**
+     * Embed one sub-batch into out[offset..]. If the batched request fails
+     * (after its retries) each input is retried on its own, so a single bad
+     * input cannot discard its neighbours.
+     */
+    private CompletableFuture<Void> embedSubBatchAsync(String model, List<String> slice, float[][] out, int offset,
+                                                       Priority priority) {
+        if (!batchEndpoint) {
+            return embedEachAsync(model, slice, out, offset, priority);
+        }
+        
+        JsonObject body = new JsonObject();
+        body.addProperty("model", model);
+        JsonArray input = new JsonArray();
+        slice.forEach(input::add);
+        body.add("input", input);
+        
+        Ticket ticket = SCHEDULER.ticket(priority);
+        return retryWithBackoffAsync(() -> post("/api/embed", body, "embed", ticket, EmbeddingDecoder::bodySubscriber))
+            .handle((vectors, error) -> {
+                if (error == null && vectors.length == slice.size()) {
+                    System.arraycopy(vectors, 0, out, offset, vectors.length);
+                    return true;
+                }
+                if (error == null) {
+                    System.err.println("WARNING: /api/embed returned " + vectors.length + " vectors for "
+                        + slice.size() + " inputs, embedding individually");
+                } else {
+                    String msg = String.valueOf(asIOException(error).getMessage());
+                    if (msg.contains("404") && !msg.contains("model")) {
+                        batchEndpoint = false;
+                        System.err.println("WARNING: /api/embed not available, using /api/embeddings");
+                    } else {
+                        System.err.println("Batch embed failed, embedding " + slice.size() + " inputs individually: " + msg);
+                    }
+                }
+                return false;
+            })
+            .thenCompose(done -> done
+                ? CompletableFuture.<Void>completedFuture(null)
+                : embedEachAsync(model, slice, out, offset, priority));
+    }
+    
+    private CompletableFuture<Void> embedEachAsync(String model, List<String> slice, float[][] out, int offset,
+                                                   Priority priority) {
+        CompletableFuture<?>[] each = new CompletableFuture<?>[slice.size()];
+        for (int i = 0; i < slice.size(); i++) {
+            int slot = offset + i;
+            String input = slice.get(i);
+            Ticket ticket = SCHEDULER.ticket(priority);
+            each[i] = retryWithBackoffAsync(() -> embedSingleRequest(model, input, ticket))
+                .handle((embedding, error) -> {
+                    if (error != null) {
+                        System.err.println("Embedding failed for input " + slot + ": " + asIOException(error).getMessage());
+                        out[slot] = new float[0];
+                    } else {
+                        out[slot] = embedding;
+                    }
+                    return null;
+                });
+        }
+        return CompletableFuture.allOf(each);
+    }
+    
+    private String capLength(String input) {
+        if (input == null) return "";
+        if (input.length() > MAX_EMBED_TEXT_LENGTH) {
+            System.err.println("WARNING: Text length " + input.length() + " exceeds max " + MAX_EMBED_TEXT_LENGTH + ", truncating");
+            return input.substring(0, MAX_EMBED_TEXT_LENGTH);
+        }
+        return input;
+    }
+    
+    private static double[] toDoubles(float[] embedding) {
+        double[] out = new double[embedding.length];
+        for (int i = 0; i < embedding.length; i++) {
+            out[i] = embedding[i];
         }
+        return out;
     }
     
     /**
      * Generate embedding for a single text input with retry logic
      */
     public double[] embedSingle(String embedModel, String input) throws IOException {
-        return retryWithBackoff(() -> embedSingleInternal(embedModel, input));
+        EmbeddingCache cache = cacheFor(embedModel);
+        Ticket ticket = SCHEDULER.ticket(Priority.INTERACTIVE);
+        if (cache == null) {
+            return toDoubles(await(retryWithBackoffAsync(() -> embedSingleRequest(embedModel, input, ticket))));
+        }
+        
+        byte[] key = cache.key(input);
+        float[] hit = cache.get(key);
+        if (hit != null) {
+            return toDoubles(hit);
+        }
+        float[] embedding = await(retryWithBackoffAsync(() -> embedSingleRequest(embedModel, input, ticket)));
+        cache.put(key, embedding);
+        return toDoubles(embedding);
     }
     
-    private double[] embedSingleInternal(String embedModel, String input) throws IOException {
-        URL url = new URL(baseUrl + "/api/embeddings");
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setRequestMethod("POST");
-        conn.setRequestProperty("Content-Type", "application/json");
-        conn.setConnectTimeout(CONNECT_TIMEOUT_MS);
-        conn.setReadTimeout(READ_TIMEOUT_MS);
-        conn.setDoOutput(true);
-        
-        // Build JSON request
-        String jsonRequest = String.format(
-            "{\"model\":\"%s\",\"prompt\":%s}",
-            embedModel,
-            escapeJson(input)
-        );
-        
-        // Send request
-        try (OutputStream os = conn.getOutputStream()) {
-            os.write(jsonRequest.getBytes(StandardCharsets.UTF_8));
+    private CompletableFuture<float[]> embedSingleRequest(String embedModel, String input, Ticket ticket) {
+        JsonObject body = new JsonObject();
+        body.addProperty("model", embedModel);
+        body.addProperty("prompt", input);
+        return post("/api/embeddings", body, "embedding", ticket, EmbeddingDecoder::bodySubscriber)
+            .thenApply(vectors -> vectors.length == 0 ? new float[0] : vectors[0]);
+    }
+    
+    /**
+     * POST a JSON body through the shared client. Completes with the
+     * response text, or exceptionally with an IOException naming the API
+     * and status (plus the error body, e.g. {"error":"model not found"}).
+     */
+    private CompletableFuture<String> post(String path, JsonObject body, String api, Ticket ticket) {
+        return post(path, body, api, ticket, () -> HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * POST with a custom decoder for 200 responses, so bodies can be parsed
+     * as their bytes arrive instead of being buffered into a String first
+     */
+    private <T> CompletableFuture<T> post(String path, JsonObject body, String api, Ticket ticket,
+                                          Supplier<HttpResponse.BodySubscriber<T>> decoder) {
+        HttpResponse.BodyHandler<T> handler = info -> info.statusCode() == 200
+            ? decoder.get()
+            : errorBody(api, info.statusCode());
+        CompletableFuture<HttpResponse<T>> sent = send(path, body, api, ticket, handler);
+        return cancelling(sent.thenApply(HttpResponse::body), sent);
+    }
+    
+    /**
+     * Queue one POST with the scheduler. With OllamaCallEvent enabled the
+     * exchange is timed from here and its status and body sizes recorded.
+     */
+    private <T> CompletableFuture<HttpResponse<T>> send(String path, JsonObject body, String api, Ticket ticket,
+                                                       HttpResponse.BodyHandler<T> handler) {
+        OllamaCallEvent event = new OllamaCallEvent();
+        if (!event.isEnabled()) {
+            return SCHEDULER.submit(ticket, api, () -> HTTP.sendAsync(jsonRequest(path, body), handler));
         }
         
-        // Read response
-        int responseCode = conn.getResponseCode();
-        if (responseCode == 200) {
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(conn.getInputStream(), StandardCharsets.UTF_8))) {
-                StringBuilder response = new StringBuilder();
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    response.append(line);
-                }
-                return parseEmbeddingResponse(response.toString());
-            }
-        } else {
-            throw new IOException("Ollama embedding API returned status: " + responseCode);
-        }
+        event.begin();
+        long queued = System.nanoTime();
+        Integer attempt = ATTEMPT.get();
+        JsonElement model = body.get("model");
+        event.api = api;
+        event.model = model != null && model.isJsonPrimitive() ? model.getAsString() : null;
+        event.attempt = attempt == null ? 1 : attempt;
+        
+        CompletableFuture<HttpResponse<T>> sent = SCHEDULER.submit(ticket, api, () -> {
+            event.queueTime = System.nanoTime() - queued;
+            HttpRequest request = jsonRequest(path, body);
+            event.requestBytes = request.bodyPublisher().map(HttpRequest.BodyPublisher::contentLength).orElse(0L);
+            return HTTP.sendAsync(request, info -> {
+                event.status = info.statusCode();
+                return new CountingSubscriber<>(handler.apply(info), event);
+            });
+        });
+        sent.whenComplete((response, error) -> {
+            event.end();
+            if (!event.shouldCommit()) return;
+            if (error != null) event.error = asIOException(error).getMessage();
+            event.commit();
+        });
+        return sent;
     }
     
     /**
-     * Parse the embedding array from Ollama's JSON response
+     * Counts response bytes into an OllamaCallEvent on their way to the decoder
      */
-    private double[] parseEmbeddingResponse(String json) {
-        // Find the "embedding" array in the JSON response
-        int start = json.indexOf("\"embedding\":");
-        if (start == -1) {
-            return new double[0];
+    private static final class CountingSubscriber<T> implements HttpResponse.BodySubscriber<T> {
+        private final HttpResponse.BodySubscriber<T> decoder;
+        private final OllamaCallEvent event;
+        
+        CountingSubscriber(HttpResponse.BodySubscriber<T> decoder, OllamaCallEvent event) {
+            this.decoder = decoder;
+            this.event = event;
         }
         
-        start = json.indexOf("[", start);
-        int end = json.indexOf("]", start);
+        @Override
+        public CompletionStage<T> getBody() {
+            return decoder.getBody();
+        }
         
-        if (start == -1 || end == -1) {
-            return new double[0];
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            decoder.onSubscribe(subscription);
         }
         
-        String arrayContent = json.substring(start + 1, end);
-        String[] values = arrayContent.split(",");
+        @Override
+        public void onNext(List<ByteBuffer> item) {
+            long n = 0;
+            for (ByteBuffer b : item) n += b.remaining();
+            event.responseBytes += n;
+            decoder.onNext(item);
+        }
         
-        double[] embedding = new double[values.length];
-        for (int i = 0; i < values.length; i++) {
-            embedding[i] = Double.parseDouble(values[i].trim());
+        @Override
+        public void onError(Throwable throwable) {
+            decoder.onError(throwable);
         }
         
-        return embedding;
+        @Override
+        public void onComplete() {
+            decoder.onComplete();
+        }
     }
     
     /**
-     * Escape a string for JSON
+     * Reads a non-200 body and fails with it, e.g. {"error":"model not found"}
      */
-    private String escapeJson(String text) {
-        if (text == null) return "\"\"";
-        return "\"" + text
-            .replace("\\", "\\\\")
-            .replace("\"", "\\\"")
-            .replace("\n", "\\n")
-            .replace("\r", "\\r")
-            .replace("\t", "\\t")
-            .replace("\b", "\\b")
-            .replace("\f", "\\f")
-            + "\"";
+    private static <T> HttpResponse.BodySubscriber<T> errorBody(String api, int status) {
+        return HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8), body -> {
+            String error = body == null ? "" : body.trim();
+            if (error.length() > 512) error = error.substring(0, 512);
+            throw new CompletionException(new IOException(
+                "Ollama " + api + " API returned status: " + status + (error.isEmpty() ? "" : " " + error)));
+        });
+    }
+    
+    private HttpRequest jsonRequest(String path, JsonObject body) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+            .timeout(Duration.ofMillis(READ_TIMEOUT_MS))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(gson.toJson(body), StandardCharsets.UTF_8))
+            .build();
     }
     
     /**
@@ -245,304 +555,382 @@ public class OllamaSpine {
      * Generate text completion from Ollama with retry logic
      */
     public String generate(String model, String prompt, Map<String, Object> options) throws IOException {
-        return retryWithBackoff(() -> generateInternal(model, prompt, options));
+        return await(generateAsync(model, prompt, options));
     }
     
-    private String generateInternal(String model, String prompt, Map<String, Object> options) throws IOException {
-        URL url = new URL(baseUrl + "/api/generate");
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setRequestMethod("POST");
-        conn.setRequestProperty("Content-Type", "application/json");
-        conn.setConnectTimeout(CONNECT_TIMEOUT_MS);
-        conn.setReadTimeout(READ_TIMEOUT_MS);
-        conn.setDoOutput(true);
-        
-        // Build JSON request
-        StringBuilder jsonRequest = new StringBuilder();
-        jsonRequest.append("{\"model\":").append(escapeJson(model));
-        jsonRequest.append(",\"prompt\":").append(escapeJson(prompt));
-        jsonRequest.append(",\"stream\":false");
-        
-        if (options != null && !options.isEmpty()) {
-            jsonRequest.append(",\"options\":{");
-            boolean first = true;
-            for (Map.Entry<String, Object> entry : options.entrySet()) {
-                if (!first) jsonRequest.append(",");
-                jsonRequest.append("\"").append(entry.getKey()).append("\":");
-                Object value = entry.getValue();
-                if (value instanceof String) {
-                    jsonRequest.append(escapeJson((String) value));
-                } else {
-                    jsonRequest.append(value);
-                }
-                first = false;
-            }
-            jsonRequest.append("}");
+    /**
+     * Non-blocking generate; completes exceptionally with an IOException
+     * once retries are exhausted
+     */
+    public CompletableFuture<String> generateAsync(String model, String prompt, Map<String, Object> options) {
+        return generateAsync(model, prompt, options, Priority.INTERACTIVE);
+    }
+    
+    public CompletableFuture<String> generateAsync(String model, String prompt, Map<String, Object> options, Priority priority) {
+        Ticket ticket = SCHEDULER.ticket(priority);
+        JsonObject body = new JsonObject();
+        body.addProperty("model", model);
+        body.addProperty("prompt", prompt);
+        body.addProperty("stream", false);
+        addOptions(body, options);
+        
+        return retryWithBackoffAsync(() -> {
+            CompletableFuture<String> sent = post("/api/generate", body, "generate", ticket);
+            return cancelling(sent.thenApply(json -> stringField(JsonParser.parseString(json).getAsJsonObject(), "response")), sent);
+        });
+    }
+    
+    /**
+     * Chat with Ollama using conversation format with retry logic
+     */
+    public String chat(String model, List<Map<String, String>> messages, Map<String, Object> options) throws IOException {
+        return await(chatAsync(model, messages, options));
+    }
+    
+    /**
+     * Non-blocking chat; completes exceptionally with an IOException once
+     * retries are exhausted
+     */
+    public CompletableFuture<String> chatAsync(String model, List<Map<String, String>> messages, Map<String, Object> options) {
+        return chatAsync(model, messages, options, Priority.INTERACTIVE);
+    }
+    
+    /**
+     * chatAsync at the given scheduling priority
+     */
+    public CompletableFuture<String> chatAsync(String model, List<Map<String, String>> messages,
+                                               Map<String, Object> options, Priority priority) {
+        Ticket ticket = SCHEDULER.ticket(priority);
+        JsonObject body = chatBody(model, messages, options, false);
+        return retryWithBackoffAsync(() -> {
+            CompletableFuture<String> sent = post("/api/chat", body, "chat", ticket);
+            return cancelling(sent.thenApply(json -> {
+                JsonObject message = JsonParser.parseString(json).getAsJsonObject().getAsJsonObject("message");
+                return message == null ? "" : stringField(message, "content");
+            }), sent);
+        });
+    }
+    
+    private static JsonObject chatBody(String model, List<Map<String, String>> messages,
+                                       Map<String, Object> options, boolean stream) {
+        JsonObject body = new JsonObject();
+        body.addProperty("model", model);
+        JsonArray msgs = new JsonArray();
+        for (Map<String, String> msg : messages) {
+            JsonObject m = new JsonObject();
+            m.addProperty("role", msg.get("role"));
+            m.addProperty("content", msg.get("content"));
+            msgs.add(m);
         }
-        
-        jsonRequest.append("}");
-        
-        // Send request
-        try (OutputStream os = conn.getOutputStream()) {
-            os.write(jsonRequest.toString().getBytes(StandardCharsets.UTF_8));
+        body.add("messages", msgs);
+        body.addProperty("stream", stream);
+        addOptions(body, options);
+        return body;
+    }
+    
+    private static void addOptions(JsonObject body, Map<String, Object> options) {
+        if (options != null && !options.isEmpty()) {
+            body.add("options", gson.toJsonTree(options));
         }
-        
-        // Read response
-        int responseCode = conn.getResponseCode();
-        if (responseCode == 200) {
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(conn.getInputStream(), StandardCharsets.UTF_8))) {
-                StringBuilder response = new StringBuilder();
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    response.append(line);
-                }
-                return parseGenerateResponse(response.toString());
-            }
-        } else {
-            throw new IOException("Ollama generate API returned status: " + responseCode);
+    }
+    
+    private static String stringField(JsonObject obj, String name) {
+        JsonElement e = obj.get(name);
+        return e == null || e.isJsonNull() ? "" : e.getAsString();
+    }
+    
+    /**
+     * Simplified chat method for single-turn interactions
+     * @param messages List of Msg objects with role and content
+     * @param schema Optional JSON schema for structured output (currently unused, reserved for future)
+     * @param options Generation options (temperature, num_ctx, etc.)
+     * @return Generated response text
+     */
+    public String chatOnce(List<Msg> messages, Object schema, Map<String, Object> options) {
+        return chatOnceAsync(messages, schema, options).join();
+    }
+    
+    /**
+     * chatOnce at the given scheduling priority; background work (synthesis,
+     * self-improvement) passes Priority.BACKGROUND so it never delays a user
+     */
+    public String chatOnce(List<Msg> messages, Object schema, Map<String, Object> options, Priority priority) {
+        return chatOnceAsync(messages, schema, options, priority).join();
+    }
+    
+    /**
+     * Non-blocking chatOnce. Never completes exceptionally: failures yield
+     * "Error: ..." text, exactly like the blocking form.
+     */
+    public CompletableFuture<String> chatOnceAsync(List<Msg> messages, Object schema, Map<String, Object> options) {
+        return chatOnceAsync(messages, schema, options, Priority.INTERACTIVE);
+    }
+    
+    public CompletableFuture<String> chatOnceAsync(List<Msg> messages, Object schema, Map<String, Object> options,
+                                                   Priority priority) {
+        // Note: schema parameter is reserved for future structured output support
+        CompletableFuture<String> call = chatAsync(chatModel, toMaps(messages), options, priority);
+        return cancelling(call.handle((answer, error) -> {
+            if (error == null) return answer;
+            IOException e = asIOException(error);
+            System.err.println("chatOnce error: " + e.getMessage());
+            return "Error: " + e.getMessage();
+        }), call);
+    }
+    
+    private static List<Map<String, String>> toMaps(List<Msg> messages) {
+        List<Map<String, String>> msgMaps = new ArrayList<>();
+        for (Msg msg : messages) {
+            Map<String, String> m = new HashMap<>();
+            m.put("role", msg.role);
+            m.put("content", msg.content);
+            msgMaps.add(m);
         }
+        return msgMaps;
     }
     
     /**
-     * Chat with Ollama using conversation format with retry logic
+     * Streaming chat: tokens are handed to onToken as Ollama produces them.
+     * Blocks until the answer is complete and returns the full text; like
+     * chatOnce, failures yield "Error: ..." text.
      */
-    public String chat(String model, List<Map<String, String>> messages, Map<String, Object> options) throws IOException {
-        return retryWithBackoff(() -> chatInternal(model, messages, options));
+    public String chatStream(List<Msg> messages, Map<String, Object> options, Consumer<String> onToken) {
+        return chatStreamAsync(messages, options, onToken).join();
     }
     
-    private String chatInternal(String model, List<Map<String, String>> messages, Map<String, Object> options) throws IOException {
-        URL url = new URL(baseUrl + "/api/chat");
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setRequestMethod("POST");
-        conn.setRequestProperty("Content-Type", "application/json");
-        conn.setConnectTimeout(CONNECT_TIMEOUT_MS);
-        conn.setReadTimeout(READ_TIMEOUT_MS);
-        conn.setDoOutput(true);
-        
-        // Build JSON request
-        StringBuilder jsonRequest = new StringBuilder();
-        jsonRequest.append("{\"model\":").append(escapeJson(model));
-        jsonRequest.append(",\"messages\":[");
-        
-        for (int i = 0; i < messages.size(); i++) {
-            Map<String, String> msg = messages.get(i);
-            jsonRequest.append("{\"role\":").append(escapeJson(msg.get("role")));
-            jsonRequest.append(",\"content\":").append(escapeJson(msg.get("content"))).append("}");
-            if (i < messages.size() - 1) jsonRequest.append(",");
+    /**
+     * Non-blocking chatStream. onToken runs on an HTTP client thread, in
+     * order; the future completes with the full text (never exceptionally).
+     */
+    public CompletableFuture<String> chatStreamAsync(List<Msg> messages, Map<String, Object> options, Consumer<String> onToken) {
+        Ticket ticket = SCHEDULER.ticket(Priority.INTERACTIVE);
+        JsonObject body = chatBody(chatModel, toMaps(messages), options, true);
+        CompletableFuture<String> call = retryWithBackoffAsync(() -> streamChat(body, ticket, onToken));
+        return cancelling(call.handle((answer, error) -> {
+            if (error == null) return answer;
+            IOException e = asIOException(error);
+            System.err.println("chatStream error: " + e.getMessage());
+            return "Error: " + e.getMessage();
+        }), call);
+    }
+    
+    private CompletableFuture<String> streamChat(JsonObject body, Ticket ticket, Consumer<String> onToken) {
+        ChatStream stream = new ChatStream(onToken);
+        HttpResponse.BodyHandler<String> handler = info -> info.statusCode() == 200
+            ? HttpResponse.BodySubscribers.fromLineSubscriber(stream, ChatStream::finish, StandardCharsets.UTF_8, "\n")
+            : errorBody("chat", info.statusCode());
+        
+        CompletableFuture<HttpResponse<String>> sent = send("/api/chat", body, "chat", ticket, handler);
+        return cancelling(sent.thenApply(HttpResponse::body)
+            .exceptionally(error -> {
+                IOException e = asIOException(error);
+                throw new CompletionException(stream.tokens > 0 ? new StreamBrokenException(e) : e);
+            }), sent);
+    }
+    
+    /**
+     * Parses one NDJSON chat stream: {"message":{"content":"..."},"done":false} per line
+     */
+    private static final class ChatStream implements Flow.Subscriber<String> {
+        private final Consumer<String> onToken;
+        private final StringBuilder text = new StringBuilder();
+        private String error;
+        private boolean done;
+        private volatile int tokens;
+        
+        ChatStream(Consumer<String> onToken) {
+            this.onToken = onToken;
         }
         
-        jsonRequest.append("],\"stream\":false");
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
         
-        if (options != null && !options.isEmpty()) {
-            jsonRequest.append(",\"options\":{");
-            boolean first = true;
-            for (Map.Entry<String, Object> entry : options.entrySet()) {
-                if (!first) jsonRequest.append(",");
-                jsonRequest.append("\"").append(entry.getKey()).append("\":");
-                Object value = entry.getValue();
-                if (value instanceof String) {
-                    jsonRequest.append(escapeJson((String) value));
-                } else {
-                    jsonRequest.append(value);
+        @Override
+        public void onNext(String line) {
+            if (line.isBlank()) return;
+            JsonObject chunk;
+            try {
+                chunk = JsonParser.parseString(line).getAsJsonObject();
+            } catch (RuntimeException e) {
+                return;  // ignore a malformed line rather than drop the stream
+            }
+            if (chunk.has("error")) {
+                error = stringField(chunk, "error");
+                return;
+            }
+            if (chunk.has("done") && chunk.get("done").getAsBoolean()) {
+                done = true;
+            }
+            JsonObject message = chunk.getAsJsonObject("message");
+            String token = message == null ? "" : stringField(message, "content");
+            if (token.isEmpty()) return;
+            text.append(token);
+            tokens++;
+            if (onToken != null) {
+                try {
+                    onToken.accept(token);
+                } catch (RuntimeException e) {
+                    System.err.println("chatStream listener error: " + e.getMessage());
                 }
-                first = false;
             }
-            jsonRequest.append("}");
         }
         
-        jsonRequest.append("}");
+        @Override
+        public void onError(Throwable throwable) {
+        }
         
-        // Send request
-        try (OutputStream os = conn.getOutputStream()) {
-            os.write(jsonRequest.toString().getBytes(StandardCharsets.UTF_8));
+        @Override
+        public void onComplete() {
         }
         
-        // Read response
-        int responseCode = conn.getResponseCode();
-        if (responseCode == 200) {
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(conn.getInputStream(), StandardCharsets.UTF_8))) {
-                StringBuilder response = new StringBuilder();
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    response.append(line);
-                }
-                return parseChatResponse(response.toString());
+        String finish() {
+            if (error != null) {
+                throw new CompletionException(new IOException("Ollama chat stream error: " + error));
+            }
+            if (!done) {
+                throw new CompletionException(new IOException("Ollama chat stream ended before done"));
             }
-        } else {
-            throw new IOException("Ollama chat API returned status: " + responseCode);
+            return text.toString();
         }
     }
     
     /**
-     * Parse the response text from generate API JSON response
+     * Failure after tokens were already delivered: retrying would replay them
      */
-    private String parseGenerateResponse(String json) {
-        int start = json.indexOf("\"response\":\"");
-        if (start == -1) {
-            start = json.indexOf("\"response\": \"");
-        }
-        if (start == -1) return "";
-        
-        start = json.indexOf("\"", start + 11) + 1;
+    private static final class StreamBrokenException extends IOException {
+        private static final long serialVersionUID = 1L;
         
-        // Find closing quote (handle escapes)
-        boolean escaped = false;
-        int end = start;
-        for (int i = start; i < json.length(); i++) {
-            char c = json.charAt(i);
-            if (escaped) {
-                escaped = false;
-                continue;
-            }
-            if (c == '\\') {
-                escaped = true;
-                continue;
-            }
-            if (c == '"') {
-                end = i;
-                break;
-            }
+        StreamBrokenException(IOException cause) {
+            super("Stream broken after partial output: " + cause.getMessage(), cause);
         }
-        
-        String response = json.substring(start, end);
-        
-        // Unescape
-        response = response.replace("\\n", "\n")
-                          .replace("\\t", "\t")
-                          .replace("\\\"", "\"")
-                          .replace("\\\\", "\\");
-        
-        return response;
     }
     
     /**
-     * Parse the response text from chat API JSON response
+     * Batch embedding for multiple texts (BACKGROUND: indexing)
+     * @param texts List of texts to embed
+     * @return One vector per text, in order (empty array where embedding failed)
+     */
+    public List<float[]> embedBatch(List<String> texts) {
+        return embedBatch(texts, Priority.BACKGROUND);
+    }
+    
+    /**
+     * Batch embedding at the given priority; a user's query is
+     * INTERACTIVE so it never queues behind indexing
      */
-    private String parseChatResponse(String json) {
-        int start = json.indexOf("\"content\":\"");
-        if (start == -1) {
-            start = json.indexOf("\"content\": \"");
+    public List<float[]> embedBatch(List<String> texts, Priority priority) {
+        return embedBatchAsync(texts, priority).join();
+    }
+    
+    /**
+     * Non-blocking embedBatch (BACKGROUND); never completes exceptionally
+     */
+    public CompletableFuture<List<float[]>> embedBatchAsync(List<String> texts) {
+        return embedBatchAsync(texts, Priority.BACKGROUND);
+    }
+    
+    public CompletableFuture<List<float[]>> embedBatchAsync(List<String> texts, Priority priority) {
+        if (texts == null || texts.isEmpty()) {
+            return CompletableFuture.completedFuture(new ArrayList<>());
         }
-        if (start == -1) return "";
+        return embedAllAsync(embedModel, texts, priority).thenApply(vectors -> new ArrayList<>(Arrays.asList(vectors)));
+    }
+    
+    /**
+     * Retry a network operation with exponential backoff. Each attempt is a
+     * fresh request; the wait between attempts is a timer, not a sleep.
+     */
+    private <T> CompletableFuture<T> retryWithBackoffAsync(Supplier<CompletableFuture<T>> operation) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        attempt(operation, 1, result);
+        return result;
+    }
+    
+    private <T> void attempt(Supplier<CompletableFuture<T>> operation, int attempt, CompletableFuture<T> result) {
+        if (result.isDone()) return;  // cancelled while waiting to retry
         
-        start = json.indexOf("\"", start + 10) + 1;
+        CompletableFuture<T> call;
+        try {
+            ATTEMPT.set(attempt);
+            call = operation.get();
+        } catch (RuntimeException e) {
+            call = CompletableFuture.failedFuture(e);
+        } finally {
+            ATTEMPT.remove();
+        }
+        cancelling(result, call);
         
-        // Find closing quote (handle escapes)
-        boolean escaped = false;
-        int end = start;
-        for (int i = start; i < json.length(); i++) {
-            char c = json.charAt(i);
-            if (escaped) {
-                escaped = false;
-                continue;
+        call.whenComplete((value, error) -> {
+            if (result.isDone()) return;
+            if (error == null) {
+                result.complete(value);
+                return;
             }
-            if (c == '\\') {
-                escaped = true;
-                continue;
+            IOException e = asIOException(error);
+            
+            // Don't retry on certain errors (4xx client errors, half-delivered streams, missed deadlines)
+            String msg = String.valueOf(e.getMessage()).toLowerCase();
+            if (e instanceof StreamBrokenException || e instanceof LlmScheduler.DeadlineExceededException || msg.contains("400") || msg.contains("401") || msg.contains("403") || msg.contains("404")) {
+                result.completeExceptionally(e);
+                return;
             }
-            if (c == '"') {
-                end = i;
-                break;
+            
+            if (attempt >= MAX_RETRIES) {
+                result.completeExceptionally(new IOException("Failed after " + MAX_RETRIES + " retries", e));
+                return;
             }
-        }
-        
-        String response = json.substring(start, end);
-        
-        // Unescape
-        response = response.replace("\\n", "\n")
-                          .replace("\\t", "\t")
-                          .replace("\\\"", "\"")
-                          .replace("\\\\", "\\");
-        
-        return response;
+            
+            int delayMs = INITIAL_RETRY_DELAY_MS * (1 << (attempt - 1)); // Exponential backoff
+            System.err.println("Ollama request failed (attempt " + attempt + "/" + MAX_RETRIES + "), retrying in " + delayMs + "ms: " + e.getMessage());
+            CompletableFuture.delayedExecutor(delayMs, TimeUnit.MILLISECONDS)
+                .execute(() -> attempt(operation, attempt + 1, result));
+        });
     }
     
     /**
-     * Simplified chat method for single-turn interactions
-     * @param messages List of Msg objects with role and content
-     * @param schema Optional JSON schema for structured output (currently unused, reserved for future)
-     * @param options Generation options (temperature, num_ctx, etc.)
-     * @return Generated response text
+     * Cancelling a derived future (thenApply, handle) does not reach the
+     * future it came from; forward it so cancel() aborts the HTTP exchange
+     * (and frees the scheduler slot) instead of letting it run to the end
      */
-    public String chatOnce(List<Msg> messages, Object schema, Map<String, Object> options) {
-        // Note: schema parameter is reserved for future structured output support
-        try {
-            List<Map<String, String>> msgMaps = new ArrayList<>();
-            for (Msg msg : messages) {
-                Map<String, String> m = new HashMap<>();
-                m.put("role", msg.role);
-                m.put("content", msg.content);
-                msgMaps.add(m);
-            }
-            return chat(chatModel, msgMaps, options);
-        } catch (IOException e) {
-            System.err.println("chatOnce error: " + e.getMessage());
-            return "Error: " + e.getMessage();
-        }
+    private static <T> CompletableFuture<T> cancelling(CompletableFuture<T> derived, CompletableFuture<?> source) {
+        derived.whenComplete((value, error) -> {
+            if (derived.isCancelled()) source.cancel(true);
+        });
+        return derived;
     }
     
     /**
-     * Batch embedding for multiple texts
-     * @param texts List of texts to embed
-     * @return List of embedding vectors as float arrays
+     * Block on a request future, surfacing failures as IOException
      */
-    public List<float[]> embedBatch(List<String> texts) {
-        List<float[]> results = new ArrayList<>();
+    private static <T> T await(CompletableFuture<T> future) throws IOException {
         try {
-            for (String text : texts) {
-                double[] embedding = embedSingle(embedModel, text);
-                float[] floatEmb = new float[embedding.length];
-                for (int i = 0; i < embedding.length; i++) {
-                    floatEmb[i] = (float) embedding[i];
-                }
-                results.add(floatEmb);
-            }
-        } catch (IOException e) {
-            System.err.println("embedBatch error: " + e.getMessage());
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new IOException("Request interrupted", e);
+        } catch (ExecutionException e) {
+            throw asIOException(e.getCause());
         }
-        return results;
     }
     
-    /**
-     * Retry a network operation with exponential backoff
-     */
-    private <T> T retryWithBackoff(IOSupplier<T> operation) throws IOException {
-        int attempt = 0;
-        IOException lastException = null;
-        
-        while (attempt < MAX_RETRIES) {
-            try {
-                return operation.get();
-            } catch (IOException e) {
-                lastException = e;
-                attempt++;
-                
-                // Don't retry on certain errors (4xx client errors)
-                String msg = e.getMessage().toLowerCase();
-                if (msg.contains("400") || msg.contains("401") || msg.contains("403") || msg.contains("404")) {
-                    throw e;
-                }
-                
-                if (attempt < MAX_RETRIES) {
-                    int delayMs = INITIAL_RETRY_DELAY_MS * (1 << (attempt - 1)); // Exponential backoff
-                    System.err.println("Ollama request failed (attempt " + attempt + "/" + MAX_RETRIES + "), retrying in " + delayMs + "ms: " + e.getMessage());
-                    try {
-                        Thread.sleep(delayMs);
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                        throw new IOException("Retry interrupted", ie);
-                    }
-                }
-            }
+    private static IOException asIOException(Throwable error) {
+        Throwable cause = error;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null) {
+            cause = cause.getCause();
         }
-        
-        throw new IOException("Failed after " + MAX_RETRIES + " retries", lastException);
+        if (cause instanceof IOException io) return io;
+        return new IOException(cause.getMessage() != null ? cause.getMessage() : cause.toString(), cause);
     }
     
-    @FunctionalInterface
-    private interface IOSupplier<T> {
-        T get() throws IOException;
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger n = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + "-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
     }
 }
@@ -0,0 +1,54 @@
+package fraymus.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * OllamaCallEvent: One HTTP exchange with Ollama (JFR)
+ *
+ * - Starts when the request is handed to the LlmScheduler, so the
+ *   duration covers queueing; queueTime is the part spent waiting
+ * - One event per attempt: attempt 1 is the first try, higher numbers
+ *   are retries of the same call
+ * - responseBytes counts the body as it arrived (streams included)
+ */
+@Name("fraymus.OllamaCall")
+@Label("Ollama Call")
+@Category({ "Fraymus", "LLM" })
+@Description("HTTP request to the Ollama API")
+@StackTrace(false)
+public class OllamaCallEvent extends jdk.jfr.Event {
+
+    @Label("API")
+    public String api;
+
+    @Label("Model")
+    public String model;
+
+    @Label("Attempt")
+    public int attempt;
+
+    @Label("Status")
+    @Description("HTTP status, 0 if no response arrived")
+    public int status;
+
+    @Label("Request Bytes")
+    @DataAmount
+    public long requestBytes;
+
+    @Label("Response Bytes")
+    @DataAmount
+    public long responseBytes;
+
+    @Label("Queue Time")
+    @Timespan
+    public long queueTime;
+
+    @Label("Error")
+    public String error;
+}
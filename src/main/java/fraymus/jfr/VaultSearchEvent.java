@@ -0,0 +1,38 @@
+package fraymus.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * VaultSearchEvent: One VectorVault.search (JFR)
+ *
+ * mode is the path actually taken: HNSW or EXACT (small vaults are
+ * always scanned); storage is the row encoding being scored.
+ */
+@Name("fraymus.VaultSearch")
+@Label("Vault Search")
+@Category({ "Fraymus", "Retrieval" })
+@Description("Nearest-neighbour search over the vector vault")
+@StackTrace(false)
+public class VaultSearchEvent extends jdk.jfr.Event {
+
+    @Label("Mode")
+    public String mode;
+
+    @Label("Storage")
+    public String storage;
+
+    @Label("Entries")
+    @Description("Vault size (n)")
+    public int n;
+
+    @Label("Limit")
+    @Description("Requested neighbours (k)")
+    public int k;
+
+    @Label("Results")
+    public int results;
+}
@@ -3,6 +3,7 @@ package gemini.root;
 import fraymus.OllamaSpine;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 /**
@@ -22,15 +23,73 @@ import java.util.stream.Collectors;
  * - Temperatures (creative vs precise)
  * - System prompts (skeptic vs optimist vs neutral)
  * - Contexts (different RAG retrievals)
+ * 
+ * Deadline Mode (setLatencyBudget > 0):
+ * - Agents get AGENT_BUDGET_SHARE of the budget; agents still running
+ *   then are cancelled and their HTTP requests aborted
+ * - Early exit: once two answers agree strongly (word-set Jaccard >=
+ *   agreementThreshold) the remaining agents are cancelled and synthesis
+ *   starts right away
+ * - Synthesis is skipped when one answer's confidence beats the next best
+ *   by dominanceMargin (or only one agent answered)
+ * - Synthesis gets the rest of the budget; if it misses it the most
+ *   confident agent answer is returned instead
+ * - Per-agent latency, cancellations and early exits: stats() (AGENTS STATUS)
+ * - Agent and synthesis latencies also go to the "agent:<persona>" and
+ *   "synthesis" Metrics stages; outcomes to the agent_cancelled_total,
+ *   agent_failed_total (by agent), agent_early_exits_total,
+ *   agent_synthesis_skipped_total and agent_synthesis_timeouts_total counters
  */
 public class AgentOrchestrator {
     
+    public static final double AGENT_BUDGET_SHARE = 0.6;
+    public static final long DEFAULT_LATENCY_BUDGET_MS = 20_000;
+    public static final double DEFAULT_AGREEMENT_THRESHOLD = 0.6;
+    public static final double DEFAULT_DOMINANCE_MARGIN = 0.2;
+    
     private final OllamaSpine brain;
-    private final ExecutorService executor;
+    
+    private volatile long latencyBudgetMs = 0;  // 0 = wait for every agent, always synthesize
+    private volatile double agreementThreshold = DEFAULT_AGREEMENT_THRESHOLD;
+    private volatile double dominanceMargin = DEFAULT_DOMINANCE_MARGIN;
+    
+    // Guarded by itself
+    private final Map<String, AgentStats> agentStats = new LinkedHashMap<>();
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong earlyExits = new AtomicLong();
+    private final AtomicLong synthesisSkipped = new AtomicLong();
+    private final AtomicLong synthesisTimeouts = new AtomicLong();
     
     public AgentOrchestrator(OllamaSpine brain) {
         this.brain = brain;
-        this.executor = Executors.newFixedThreadPool(3);
+    }
+    
+    /**
+     * Enable deadline mode
+     * @param budgetMs Total latency budget per orchestrate call (0 disables)
+     */
+    public void setLatencyBudget(long budgetMs) {
+        this.latencyBudgetMs = Math.max(0, budgetMs);
+    }
+    
+    /**
+     * @param agreementThreshold Jaccard similarity at which two answers count as agreeing
+     * @param dominanceMargin Confidence lead that makes one answer win without synthesis
+     */
+    public void setEarlyExit(double agreementThreshold, double dominanceMargin) {
+        this.agreementThreshold = agreementThreshold;
+        this.dominanceMargin = dominanceMargin;
+    }
+    
+    /**
+     * Latency and outcome counters for one persona
+     */
+    private static class AgentStats {
+        long completed;
+        long cancelled;
+        long failed;
+        long totalLatencyMs;
+        long maxLatencyMs;
     }
     
     /**
@@ -96,26 +155,145 @@ public class AgentOrchestrator {
                 """, 0.4)
         );
         
-        // Execute agents in parallel
+        long budgetMs = latencyBudgetMs;
+        long start = System.currentTimeMillis();
+        runs.incrementAndGet();
+        
+        // Execute agents in parallel (async requests, no thread parked per agent)
         List<CompletableFuture<AgentResponse>> futures = personas.stream()
-            .map(persona -> CompletableFuture.supplyAsync(() -> 
-                executeAgent(persona, query, context, history), executor))
+            .map(persona -> executeAgent(persona, query, context, history))
             .collect(Collectors.toList());
         
-        // Wait for all agents
-        List<AgentResponse> responses = futures.stream()
-            .map(CompletableFuture::join)
+        if (budgetMs <= 0) {
+            // Wait for all agents
+            List<AgentResponse> responses = futures.stream()
+                .map(CompletableFuture::join)
+                .collect(Collectors.toList());
+            responses.forEach(this::record);
+            
+            // Synthesize the best answer
+            return synthesize(query, context, responses);
+        }
+        
+        List<AgentResponse> responses = awaitAgents(personas, futures, (long) (budgetMs * AGENT_BUDGET_SHARE));
+        List<AgentResponse> usable = responses.stream()
+            .filter(r -> !r.answer.startsWith("Error:"))
+            .sorted(Comparator.comparingDouble((AgentResponse r) -> r.confidence).reversed())
             .collect(Collectors.toList());
         
-        // Synthesize the best answer
-        return synthesize(query, context, responses);
+        if (usable.isEmpty()) {
+            return responses.isEmpty()
+                ? "Error: no agent answered within " + budgetMs + "ms"
+                : responses.get(0).answer;
+        }
+        if (usable.size() == 1 || usable.get(0).confidence - usable.get(1).confidence >= dominanceMargin) {
+            synthesisSkipped.incrementAndGet();
+            Metrics.increment("agent_synthesis_skipped_total");
+            System.out.println(">>> [AGENTS] " + usable.get(0).agentName + " dominates, synthesis skipped");
+            return usable.get(0).answer;
+        }
+        
+        long remaining = budgetMs - (System.currentTimeMillis() - start);
+        CompletableFuture<String> synthesis = synthesizeAsync(query, context, usable);
+        try {
+            String answer = synthesis.get(Math.max(1, remaining), TimeUnit.MILLISECONDS);
+            return answer.startsWith("Error:") ? usable.get(0).answer : answer;
+        } catch (TimeoutException e) {
+            synthesis.cancel(true);
+            synthesisTimeouts.incrementAndGet();
+            Metrics.increment("agent_synthesis_timeouts_total");
+            System.out.println(">>> [AGENTS] Synthesis missed the budget, using " + usable.get(0).agentName);
+            return usable.get(0).answer;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            synthesis.cancel(true);
+            return usable.get(0).answer;
+        } catch (ExecutionException e) {
+            return usable.get(0).answer;
+        }
+    }
+    
+    /**
+     * Collect agent answers until all are in, two of them agree, or the
+     * agent budget runs out; whatever is still running is then cancelled
+     */
+    private List<AgentResponse> awaitAgents(List<AgentPersona> personas, List<CompletableFuture<AgentResponse>> futures,
+                                            long agentBudgetMs) {
+        List<AgentResponse> done = new ArrayList<>();
+        CompletableFuture<Boolean> phase = new CompletableFuture<>();  // true = early exit
+        
+        for (CompletableFuture<AgentResponse> f : futures) {
+            f.thenAccept(response -> {
+                synchronized (done) {
+                    done.add(response);
+                    if (done.size() == futures.size()) {
+                        phase.complete(false);
+                    } else if (agreesWithAny(response, done)) {
+                        phase.complete(true);
+                    }
+                }
+            });
+        }
+        CompletableFuture.delayedExecutor(agentBudgetMs, TimeUnit.MILLISECONDS).execute(() -> phase.complete(false));
+        
+        boolean early = phase.join();
+        if (early) {
+            earlyExits.incrementAndGet();
+            Metrics.increment("agent_early_exits_total");
+        }
+        
+        List<AgentResponse> responses;
+        synchronized (done) {
+            responses = new ArrayList<>(done);
+        }
+        responses.forEach(this::record);
+        
+        StringBuilder late = new StringBuilder();
+        for (int i = 0; i < futures.size(); i++) {
+            if (futures.get(i).cancel(true)) {
+                String name = personas.get(i).name;
+                recordCancelled(name);
+                late.append(late.length() == 0 ? "" : ", ").append(name);
+            }
+        }
+        System.out.println(">>> [AGENTS] " + responses.size() + "/" + futures.size() + " answered"
+            + (early ? " (early exit: agreement)" : "")
+            + (late.length() == 0 ? "" : ", cancelled " + late));
+        return responses;
+    }
+    
+    private boolean agreesWithAny(AgentResponse response, List<AgentResponse> others) {
+        if (response.answer.startsWith("Error:")) return false;
+        Set<String> words = words(response.answer);
+        for (AgentResponse other : others) {
+            if (other == response || other.answer.startsWith("Error:")) continue;
+            if (jaccard(words, words(other.answer)) >= agreementThreshold) return true;
+        }
+        return false;
+    }
+    
+    private static Set<String> words(String text) {
+        Set<String> out = new HashSet<>();
+        for (String w : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (w.length() > 2) out.add(w);
+        }
+        return out;
+    }
+    
+    private static double jaccard(Set<String> a, Set<String> b) {
+        if (a.isEmpty() || b.isEmpty()) return 0.0;
+        int shared = 0;
+        for (String w : a) {
+            if (b.contains(w)) shared++;
+        }
+        return (double) shared / (a.size() + b.size() - shared);
     }
     
     /**
      * Execute single agent
      */
-    private AgentResponse executeAgent(AgentPersona persona, String query, 
-                                       String context, List<OllamaSpine.Msg> history) {
+    private CompletableFuture<AgentResponse> executeAgent(AgentPersona persona, String query, 
+                                                          String context, List<OllamaSpine.Msg> history) {
         long start = System.currentTimeMillis();
         
         List<OllamaSpine.Msg> msgs = new ArrayList<>();
@@ -125,23 +303,35 @@ public class AgentOrchestrator {
         }
         msgs.add(new OllamaSpine.Msg("user", context + "\n\nQUERY: " + query));
         
-        String answer = brain.chatOnce(msgs, null, Map.of(
+        CompletableFuture<String> call = brain.chatOnceAsync(msgs, null, Map.of(
             "temperature", persona.temperature,
             "num_ctx", 8192
         ));
-        
-        long latency = System.currentTimeMillis() - start;
-        
-        // Simple confidence heuristic: longer, cited answers = higher confidence
-        double confidence = calculateConfidence(answer);
-        
-        return new AgentResponse(persona.name, answer, confidence, latency);
+        long started = System.nanoTime();
+        CompletableFuture<AgentResponse> response = call.thenApply(answer -> {
+            long latency = System.currentTimeMillis() - start;
+            Metrics.record("agent:" + persona.name, started);
+            
+            // Simple confidence heuristic: longer, cited answers = higher confidence
+            double confidence = calculateConfidence(answer);
+            
+            return new AgentResponse(persona.name, answer, confidence, latency);
+        });
+        // Cancelling the agent aborts its HTTP request
+        response.whenComplete((r, e) -> {
+            if (response.isCancelled()) call.cancel(true);
+        });
+        return response;
     }
     
     /**
      * Synthesize multiple agent responses into best answer
      */
     private String synthesize(String query, String context, List<AgentResponse> responses) {
+        return synthesizeAsync(query, context, responses).join();
+    }
+    
+    private CompletableFuture<String> synthesizeAsync(String query, String context, List<AgentResponse> responses) {
         
         // Build synthesis prompt
         StringBuilder synthPrompt = new StringBuilder();
@@ -177,10 +367,13 @@ public class AgentOrchestrator {
             new OllamaSpine.Msg("user", synthPrompt.toString())
         );
         
-        return brain.chatOnce(synthMsgs, null, Map.of(
+        long started = System.nanoTime();
+        CompletableFuture<String> call = brain.chatOnceAsync(synthMsgs, null, Map.of(
             "temperature", 0.3,
             "num_ctx", 12288
         ));
+        call.thenRun(() -> Metrics.record("synthesis", started));  // not when cancelled
+        return call;
     }
     
     /**
@@ -215,17 +408,42 @@ public class AgentOrchestrator {
         return Math.min(1.0, score);
     }
     
+    private void record(AgentResponse response) {
+        synchronized (agentStats) {
+            AgentStats st = agentStats.computeIfAbsent(response.agentName, k -> new AgentStats());
+            if (response.answer.startsWith("Error:")) {
+                st.failed++;
+                Metrics.increment("agent_failed_total", "agent", response.agentName);
+                return;
+            }
+            st.completed++;
+            st.totalLatencyMs += response.latencyMs;
+            st.maxLatencyMs = Math.max(st.maxLatencyMs, response.latencyMs);
+        }
+    }
+    
+    private void recordCancelled(String agentName) {
+        synchronized (agentStats) {
+            agentStats.computeIfAbsent(agentName, k -> new AgentStats()).cancelled++;
+        }
+        Metrics.increment("agent_cancelled_total", "agent", agentName);
+    }
+    
     /**
-     * Cleanup resources
+     * Per-agent latency and cancellation counts, plus early-exit counters
      */
-    public void shutdown() {
-        executor.shutdown();
-        try {
-            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
-                executor.shutdownNow();
+    public String stats() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "runs=%d earlyExits=%d synthesisSkipped=%d synthesisTimeouts=%d",
+            runs.get(), earlyExits.get(), synthesisSkipped.get(), synthesisTimeouts.get()));
+        synchronized (agentStats) {
+            for (Map.Entry<String, AgentStats> e : agentStats.entrySet()) {
+                AgentStats st = e.getValue();
+                sb.append(String.format(Locale.ROOT, " | %s completed=%d cancelled=%d failed=%d avgMs=%d maxMs=%d",
+                    e.getKey(), st.completed, st.cancelled, st.failed,
+                    st.completed == 0 ? 0 : st.totalLatencyMs / st.completed, st.maxLatencyMs));
             }
-        } catch (InterruptedException e) {
-            executor.shutdownNow();
         }
+        return sb.toString();
     }
 }
@@ -0,0 +1,181 @@
+package gemini.root;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * AnswerCache: Semantic cache for final answers
+ *
+ * Near-identical questions skip the planner and generation calls entirely.
+ *
+ * Key:
+ * - Query embedding (cosine similarity >= threshold, best match wins)
+ * - Fingerprint of the retrieved snippet set (same sources, same context)
+ * - Variant string (chat model, reflector on/off)
+ * - Vault generation: when VectorVault changes, every entry is dropped
+ *
+ * Bounds:
+ * - Entries expire after a TTL
+ * - LRU eviction beyond maxEntries
+ *
+ * Only answers built without tool calls should be stored - tool output
+ * (files, memory search, calc) is not covered by the key. The same holds
+ * for session history: only the first turn of a session is looked up or
+ * stored, so one conversation's answer never reaches another session.
+ */
+public class AnswerCache {
+
+    public static final double DEFAULT_SIMILARITY = 0.95;
+    public static final long DEFAULT_TTL_SECONDS = 3600;
+    public static final int DEFAULT_MAX_ENTRIES = 512;
+
+    private static class Entry {
+        final float[] unit;
+        final long fingerprint;
+        final String variant;
+        final String answer;
+        final long createdAt;
+
+        Entry(float[] unit, long fingerprint, String variant, String answer, long createdAt) {
+            this.unit = unit;
+            this.fingerprint = fingerprint;
+            this.variant = variant;
+            this.answer = answer;
+            this.createdAt = createdAt;
+        }
+    }
+
+    private final double threshold;
+    private final long ttlMs;
+    private final int maxEntries;
+    private final LinkedHashMap<Long, Entry> entries;
+    private long generation = -1;
+    private long nextId;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public AnswerCache(double threshold, long ttlSeconds, int maxEntries) {
+        this.threshold = threshold;
+        this.ttlMs = ttlSeconds * 1000L;
+        this.maxEntries = Math.max(1, maxEntries);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                if (size() <= AnswerCache.this.maxEntries) return false;
+                evictions.incrementAndGet();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * @return cached answer for a near-identical query over the same
+     *         sources, or null
+     */
+    public synchronized String lookup(RagEngine.Retrieval retrieval, String variant) {
+        if (retrieval.queryVector.length == 0 || !sync(retrieval.vaultGeneration)) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        float[] query = unit(retrieval.queryVector);
+        long fingerprint = retrieval.sourceFingerprint();
+        long now = System.currentTimeMillis();
+
+        Long bestId = null;
+        double best = threshold;
+        Iterator<Map.Entry<Long, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, Entry> e = it.next();
+            Entry entry = e.getValue();
+            if (now - entry.createdAt > ttlMs) {
+                it.remove();
+                evictions.incrementAndGet();
+                continue;
+            }
+            if (entry.fingerprint != fingerprint || !entry.variant.equals(variant)
+                    || entry.unit.length != query.length) {
+                continue;
+            }
+            double sim = dot(query, entry.unit);
+            if (sim >= best) {
+                best = sim;
+                bestId = e.getKey();
+            }
+        }
+
+        if (bestId == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        System.out.println(String.format(Locale.ROOT, ">>> [ANSWER-CACHE] Hit (similarity %.3f)", best));
+        return entries.get(bestId).answer;  // get() also marks it recently used
+    }
+
+    public synchronized void store(RagEngine.Retrieval retrieval, String variant, String answer) {
+        if (retrieval.queryVector.length == 0 || answer == null || answer.isBlank()) return;
+        if (!sync(retrieval.vaultGeneration)) return;  // built against an older vault
+
+        entries.put(nextId++, new Entry(unit(retrieval.queryVector), retrieval.sourceFingerprint(),
+            variant, answer, System.currentTimeMillis()));
+    }
+
+    /**
+     * Align with the vault generation; dropping everything if it moved on
+     * @return false if the caller's generation is older than the cache's
+     */
+    private boolean sync(long vaultGeneration) {
+        if (vaultGeneration < generation) return false;
+        if (vaultGeneration > generation) {
+            if (!entries.isEmpty()) {
+                invalidations.incrementAndGet();
+                System.out.println(">>> [ANSWER-CACHE] Vault changed, dropped " + entries.size() + " answers");
+                entries.clear();
+            }
+            generation = vaultGeneration;
+        }
+        return true;
+    }
+
+    private static float[] unit(float[] v) {
+        double norm = 0;
+        for (float x : v) norm += x * x;
+        norm = Math.sqrt(norm);
+        float[] u = new float[v.length];
+        if (norm == 0) return u;
+        for (int i = 0; i < v.length; i++) u[i] = (float) (v[i] / norm);
+        return u;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) sum += a[i] * b[i];
+        return sum;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return hits / lookups so far (0 before the first lookup)
+     */
+    public double hitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+    public String stats() {
+        return String.format(Locale.ROOT, "entries=%d/%d hits=%d misses=%d hitRate=%.1f%% evictions=%d invalidations=%d",
+            size(), maxEntries, hits.get(), misses.get(), 100.0 * hitRate(), evictions.get(), invalidations.get());
+    }
+}
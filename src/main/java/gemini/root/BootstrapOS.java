@@ -1,5 +1,6 @@
 package gemini.root;
 
+import fraymus.LlmScheduler.Priority;
 import fraymus.OllamaSpine;
 import java.io.*;
 import java.nio.file.*;
@@ -100,7 +101,7 @@ public class BootstrapOS {
         }
         
         // Embed and store
-        List<float[]> embeddings = brain.embedBatch(labeledChunks);
+        List<float[]> embeddings = brain.embedBatch(labeledChunks, Priority.BACKGROUND);
         vault.addAndPersist(file.toString(), labeledChunks, embeddings);
     }
     
@@ -202,7 +203,7 @@ public class BootstrapOS {
                 file.getFileName(), i+1, chunks.get(i)));
         }
         
-        List<float[]> embeddings = brain.embedBatch(labeled);
+        List<float[]> embeddings = brain.embedBatch(labeled, Priority.BACKGROUND);
         vault.addAndPersist(file.toString(), labeled, embeddings);
     }
     
@@ -222,7 +223,7 @@ public class BootstrapOS {
                 "Context from source code:\n" + context + "\n\nQuestion: " + question)
         );
         
-        return brain.chatOnce(msgs, null, Map.of("temperature", 0.2));
+        return brain.chatOnce(msgs, null, Map.of("temperature", 0.2), Priority.BACKGROUND);
     }
     
     /**
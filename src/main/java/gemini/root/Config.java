@@ -1,5 +1,7 @@
 package gemini.root;
 
+import fraymus.OllamaSpine;
+
 /**
  * Config: Command-line argument parser
  */
@@ -8,6 +10,50 @@ public class Config {
     public String embedModel = "embeddinggemma";
     public int port = 8887;
     public String indexPath = null;
+    public boolean watch = false;  // keep the allowed roots indexed (IndexWatcher)
+    public long watchDebounceMs = IndexWatcher.DEFAULT_DEBOUNCE_MS;
+    public long memoryForceMs = 0;  // force the memory log to disk at most every N ms (0 = OS decides)
+    
+    // Observability
+    public int metricsPort = Metrics.DEFAULT_PORT;  // /metrics on 127.0.0.1 (0 = off)
+    public boolean jfr = false;  // start the Flight Recorder window at launch (JFR START does it later)
+    
+    // Sessions
+    public long sessionIdleSeconds = SessionMemory.DEFAULT_IDLE_TTL_MS / 1000;  // 0 = keep until the connection closes
+    public boolean sessionSpill = true;  // evicted sessions go to memory/sessions/ and can be resumed
+    
+    // Vector search
+    public VectorVault.SearchMode searchMode = VectorVault.SearchMode.HNSW;
+    public int annM = HnswIndex.DEFAULT_M;
+    public int annEfConstruction = HnswIndex.DEFAULT_EF_CONSTRUCTION;
+    public int annEfSearch = HnswIndex.DEFAULT_EF_SEARCH;
+    public VectorVault.StorageMode storageMode = VectorVault.StorageMode.FLOAT32;
+    public int rerankFactor = 8;
+    public boolean simd = false;
+    public boolean hybridRetrieval = true;  // BM25 + dense with rank fusion
+    
+    // Request pipeline
+    public int maxLlm = OllamaSpine.DEFAULT_MAX_CONCURRENT_REQUESTS;  // Ollama requests in flight, all connections
+    public int connectionQueue = ConnectionExecutor.DEFAULT_MAX_QUEUED;  // messages waiting per connection
+    public int toolThreads = ToolPlanExecutor.DEFAULT_THREADS;  // tool calls running at once, all connections
+    
+    // Embedding
+    public int embedBatchSize = OllamaSpine.DEFAULT_EMBED_BATCH_SIZE;
+    public int embedInFlight = OllamaSpine.DEFAULT_EMBED_IN_FLIGHT;
+    public int embedCacheMb = 256;  // 0 disables the embedding cache
+    
+    // Answer cache
+    public int answerCacheSize = AnswerCache.DEFAULT_MAX_ENTRIES;  // 0 disables the answer cache
+    public double answerCacheSimilarity = AnswerCache.DEFAULT_SIMILARITY;
+    public long answerCacheTtlSeconds = AnswerCache.DEFAULT_TTL_SECONDS;
+    
+    // Multi-agent answers (AGENTS ON)
+    public long agentBudgetMs = AgentOrchestrator.DEFAULT_LATENCY_BUDGET_MS;  // 0 = wait for every agent
+    
+    // Planner fast path
+    public boolean intentFastPath = true;  // skip the planner LLM call for confident no-tool messages
+    public double intentSkipBelow = IntentClassifier.DEFAULT_SKIP_BELOW;
+    public double intentAuditRate = IntentClassifier.DEFAULT_AUDIT_RATE;
     
     public static Config fromArgs(String[] args) {
         Config cfg = new Config();
@@ -30,6 +76,90 @@ public class Config {
                 case "--index":
                     if (i + 1 < args.length) cfg.indexPath = args[++i];
                     break;
+                case "--watch":
+                    cfg.watch = true;
+                    break;
+                case "--watch-debounce":
+                    if (i + 1 < args.length) cfg.watchDebounceMs = Long.parseLong(args[++i]);
+                    break;
+                case "--memory-fsync":
+                    if (i + 1 < args.length) cfg.memoryForceMs = Long.parseLong(args[++i]);
+                    break;
+                case "--metrics-port":
+                    if (i + 1 < args.length) cfg.metricsPort = Integer.parseInt(args[++i]);
+                    break;
+                case "--jfr":
+                    if (i + 1 < args.length) cfg.jfr = args[++i].equalsIgnoreCase("on");
+                    break;
+                case "--session-idle":
+                    if (i + 1 < args.length) cfg.sessionIdleSeconds = Long.parseLong(args[++i]);
+                    break;
+                case "--session-spill":
+                    if (i + 1 < args.length) cfg.sessionSpill = !args[++i].equalsIgnoreCase("off");
+                    break;
+                case "--search":
+                    if (i + 1 < args.length) cfg.searchMode = VectorVault.SearchMode.valueOf(args[++i].toUpperCase());
+                    break;
+                case "--ann-m":
+                    if (i + 1 < args.length) cfg.annM = Integer.parseInt(args[++i]);
+                    break;
+                case "--ann-ef-construction":
+                    if (i + 1 < args.length) cfg.annEfConstruction = Integer.parseInt(args[++i]);
+                    break;
+                case "--ann-ef":
+                    if (i + 1 < args.length) cfg.annEfSearch = Integer.parseInt(args[++i]);
+                    break;
+                case "--storage":
+                    if (i + 1 < args.length) cfg.storageMode = VectorVault.StorageMode.valueOf(args[++i].toUpperCase());
+                    break;
+                case "--rerank":
+                    if (i + 1 < args.length) cfg.rerankFactor = Integer.parseInt(args[++i]);
+                    break;
+                case "--simd":
+                    cfg.simd = true;
+                    break;
+                case "--retrieval":
+                    if (i + 1 < args.length) cfg.hybridRetrieval = !args[++i].equalsIgnoreCase("dense");
+                    break;
+                case "--max-llm":
+                    if (i + 1 < args.length) cfg.maxLlm = Integer.parseInt(args[++i]);
+                    break;
+                case "--conn-queue":
+                    if (i + 1 < args.length) cfg.connectionQueue = Integer.parseInt(args[++i]);
+                    break;
+                case "--tool-threads":
+                    if (i + 1 < args.length) cfg.toolThreads = Integer.parseInt(args[++i]);
+                    break;
+                case "--embed-batch":
+                    if (i + 1 < args.length) cfg.embedBatchSize = Integer.parseInt(args[++i]);
+                    break;
+                case "--embed-inflight":
+                    if (i + 1 < args.length) cfg.embedInFlight = Integer.parseInt(args[++i]);
+                    break;
+                case "--embed-cache-mb":
+                    if (i + 1 < args.length) cfg.embedCacheMb = Integer.parseInt(args[++i]);
+                    break;
+                case "--answer-cache":
+                    if (i + 1 < args.length) cfg.answerCacheSize = Integer.parseInt(args[++i]);
+                    break;
+                case "--answer-cache-sim":
+                    if (i + 1 < args.length) cfg.answerCacheSimilarity = Double.parseDouble(args[++i]);
+                    break;
+                case "--answer-cache-ttl":
+                    if (i + 1 < args.length) cfg.answerCacheTtlSeconds = Long.parseLong(args[++i]);
+                    break;
+                case "--agent-budget":
+                    if (i + 1 < args.length) cfg.agentBudgetMs = Long.parseLong(args[++i]);
+                    break;
+                case "--intent":
+                    if (i + 1 < args.length) cfg.intentFastPath = !args[++i].equalsIgnoreCase("off");
+                    break;
+                case "--intent-skip-below":
+                    if (i + 1 < args.length) cfg.intentSkipBelow = Double.parseDouble(args[++i]);
+                    break;
+                case "--intent-audit":
+                    if (i + 1 < args.length) cfg.intentAuditRate = Double.parseDouble(args[++i]);
+                    break;
             }
         }
         
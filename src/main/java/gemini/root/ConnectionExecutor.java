@@ -0,0 +1,139 @@
+package gemini.root;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ConnectionExecutor: Ordered per-connection work off the WebSocket I/O thread
+ *
+ * Each connection gets a lane: its messages run one at a time, in arrival
+ * order, while different connections run in parallel. The I/O thread only
+ * enqueues, so one slow generation no longer stalls every other client.
+ *
+ * Workers:
+ * - Virtual threads when the runtime has them (looked up reflectively,
+ *   the build targets Java 17)
+ * - Otherwise a cached pool of daemon threads, one per busy connection
+ *
+ * Backpressure:
+ * - At most maxQueued messages wait behind the running one per connection
+ * - submit() returns false beyond that so the caller can reply busy
+ * - Global LLM concurrency is capped separately (OllamaSpine.setMaxConcurrentRequests)
+ */
+public class ConnectionExecutor {
+
+    public static final int DEFAULT_MAX_QUEUED = 4;
+
+    private final ExecutorService workers;
+    private final boolean virtualThreads;
+    private final int maxQueued;
+    private final ConcurrentHashMap<Object, Lane> lanes = new ConcurrentHashMap<>();
+
+    public ConnectionExecutor(int maxQueued) {
+        this.maxQueued = Math.max(0, maxQueued);
+        ExecutorService virtual = newVirtualThreadExecutor();
+        this.virtualThreads = virtual != null;
+        this.workers = virtual != null ? virtual : newDaemonPool();
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;  // pre-21 runtime (or preview not enabled)
+        }
+    }
+
+    private static ExecutorService newDaemonPool() {
+        AtomicInteger n = new AtomicInteger();
+        return Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "ws-worker-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Queue a task behind the connection's earlier ones
+     * @return false if the connection already has maxQueued tasks waiting
+     */
+    public boolean submit(Object connection, Runnable task) {
+        return lanes.computeIfAbsent(connection, k -> new Lane()).offer(task);
+    }
+
+    /**
+     * Forget a closed connection; queued (not yet started) tasks are dropped
+     */
+    public void remove(Object connection) {
+        Lane lane = lanes.remove(connection);
+        if (lane != null) lane.close();
+    }
+
+    public String describe() {
+        return (virtualThreads ? "virtual threads" : "cached thread pool") + ", " + maxQueued + " queued per connection";
+    }
+
+    public void shutdown() {
+        workers.shutdown();
+    }
+
+    /**
+     * Serial queue for one connection; at most one drain runs at a time
+     */
+    private final class Lane {
+        private final ArrayDeque<Runnable> queue = new ArrayDeque<>();
+        private int pending;  // accepted and not finished: the running task plus those waiting
+        private boolean running;
+        private boolean closed;
+
+        boolean offer(Runnable task) {
+            synchronized (this) {
+                if (closed || pending > maxQueued) return false;
+                queue.add(task);
+                pending++;
+                if (running) return true;
+                running = true;
+            }
+            try {
+                workers.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                synchronized (this) {
+                    queue.clear();
+                    pending = 0;
+                    running = false;
+                }
+                return false;
+            }
+            return true;
+        }
+
+        private void drain() {
+            while (true) {
+                Runnable next;
+                synchronized (this) {
+                    next = queue.poll();
+                    if (next == null) {
+                        running = false;
+                        return;
+                    }
+                }
+                try {
+                    next.run();
+                } catch (Throwable t) {
+                    System.err.println(">>> [NERVE] Message handler failed: " + t);
+                } finally {
+                    synchronized (this) {
+                        pending--;
+                    }
+                }
+            }
+        }
+
+        synchronized void close() {
+            closed = true;
+            pending -= queue.size();
+            queue.clear();
+        }
+    }
+}
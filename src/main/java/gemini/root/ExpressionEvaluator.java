@@ -0,0 +1,330 @@
+package gemini.root;
+
+import java.util.*;
+
+/**
+ * ExpressionEvaluator: Arithmetic for the calc tool, without a script engine
+ *
+ * Expressions are parsed once (Pratt parser) into a small AST and cached
+ * by their text, so repeated evaluations only walk the tree.
+ *
+ * Syntax:
+ * - Numbers: 42, 3.14, .5, 1e-3
+ * - Operators: + - * / % and ^ (right associative, binds tighter than
+ *   unary minus: -2^2 = -4)
+ * - Parentheses and unary +/-
+ * - Constants: pi, e
+ * - Functions: sqrt cbrt abs sin cos tan asin acos atan sinh cosh tanh
+ *   exp ln log (base 10) log2 floor ceil round sign; pow atan2 hypot
+ *   (two arguments); min max (one or more)
+ *
+ * Limits (the tool takes model-generated input):
+ * - MAX_LENGTH characters, MAX_DEPTH nesting, MAX_NODES tree nodes
+ */
+public class ExpressionEvaluator {
+
+    public static final int MAX_LENGTH = 100;
+    public static final int MAX_DEPTH = 32;
+    public static final int MAX_NODES = 128;
+    public static final int DEFAULT_CACHE_SIZE = 1024;
+
+    /**
+     * Syntax or limit error, with the character position it refers to
+     */
+    public static class ExpressionException extends IllegalArgumentException {
+        private static final long serialVersionUID = 1L;
+
+        public final int position;
+
+        ExpressionException(String message, int position) {
+            super(message + (position >= 0 ? " at position " + position : ""));
+            this.position = position;
+        }
+    }
+
+    /**
+     * Compiled expression
+     */
+    public interface Node {
+        double eval();
+    }
+
+    private final Map<String, Node> cache;
+
+    public ExpressionEvaluator(int cacheSize) {
+        int max = Math.max(1, cacheSize);
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Node> eldest) {
+                return size() > max;
+            }
+        };
+    }
+
+    public ExpressionEvaluator() {
+        this(DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Parse (or fetch from cache) and evaluate
+     * @throws ExpressionException on syntax errors, limits, or a non-finite result
+     */
+    public double evaluate(String expression) {
+        double value = compile(expression).eval();
+        if (Double.isNaN(value)) throw new ExpressionException("Result is not a number", -1);
+        if (Double.isInfinite(value)) throw new ExpressionException("Result is infinite (division by zero?)", -1);
+        return value;
+    }
+
+    public Node compile(String expression) {
+        String key = expression.trim();
+        synchronized (cache) {
+            Node cached = cache.get(key);
+            if (cached != null) return cached;
+        }
+        Node node = new Parser(key).parseAll();
+        synchronized (cache) {
+            cache.put(key, node);
+        }
+        return node;
+    }
+
+    /**
+     * Plain rendering: integers without ".0", otherwise up to 12 significant digits
+     */
+    public static String format(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        String s = String.format(Locale.ROOT, "%.12g", value);
+        int exp = s.indexOf('e');
+        String mantissa = exp < 0 ? s : s.substring(0, exp);
+        if (mantissa.indexOf('.') >= 0) {
+            mantissa = mantissa.replaceAll("0+$", "");
+            if (mantissa.endsWith(".")) mantissa = mantissa.substring(0, mantissa.length() - 1);
+        }
+        return exp < 0 ? mantissa : mantissa + s.substring(exp);
+    }
+
+    // ---- Parser ----
+
+    private static final class Parser {
+        private final String src;
+        private int pos;
+        private int depth;
+        private int nodes;
+
+        Parser(String src) {
+            if (src.isEmpty()) throw new ExpressionException("Empty expression", -1);
+            if (src.length() > MAX_LENGTH) {
+                throw new ExpressionException("Expression too long (max " + MAX_LENGTH + " chars)", -1);
+            }
+            this.src = src;
+        }
+
+        Node parseAll() {
+            Node n = parse(0);
+            skipSpace();
+            if (pos < src.length()) throw new ExpressionException("Unexpected '" + src.charAt(pos) + "'", pos);
+            return n;
+        }
+
+        /**
+         * Pratt loop: parse a prefix, then fold in infix operators binding
+         * tighter than minPower
+         */
+        private Node parse(int minPower) {
+            if (++depth > MAX_DEPTH) throw new ExpressionException("Expression nested too deeply", pos);
+            Node left = prefix();
+            while (true) {
+                skipSpace();
+                if (pos >= src.length()) break;
+                char op = src.charAt(pos);
+                int power = infixPower(op);
+                if (power < 0 || power < minPower) break;
+                pos++;
+                // ^ is right associative: the right side may take another ^
+                Node right = parse(op == '^' ? power : power + 1);
+                left = binary(op, left, right);
+            }
+            depth--;
+            return left;
+        }
+
+        private static int infixPower(char op) {
+            switch (op) {
+                case '+': case '-': return 10;
+                case '*': case '/': case '%': return 20;
+                case '^': return 40;
+                default: return -1;
+            }
+        }
+
+        private static final int UNARY_POWER = 30;
+
+        private Node prefix() {
+            skipSpace();
+            if (pos >= src.length()) throw new ExpressionException("Unexpected end of expression", pos);
+            char c = src.charAt(pos);
+
+            if (c == '-' || c == '+') {
+                pos++;
+                Node operand = parse(UNARY_POWER);
+                return c == '-' ? count(() -> -operand.eval()) : operand;
+            }
+            if (c == '(') {
+                int open = pos++;
+                Node inner = parse(0);
+                expect(')', open);
+                return inner;
+            }
+            if (Character.isDigit(c) || c == '.') {
+                return number();
+            }
+            if (Character.isLetter(c)) {
+                return name();
+            }
+            throw new ExpressionException("Unexpected '" + c + "'", pos);
+        }
+
+        private Node number() {
+            int start = pos;
+            while (pos < src.length() && (Character.isDigit(src.charAt(pos)) || src.charAt(pos) == '.')) pos++;
+            if (pos < src.length() && (src.charAt(pos) == 'e' || src.charAt(pos) == 'E')) {
+                int mark = pos++;
+                if (pos < src.length() && (src.charAt(pos) == '+' || src.charAt(pos) == '-')) pos++;
+                if (pos < src.length() && Character.isDigit(src.charAt(pos))) {
+                    while (pos < src.length() && Character.isDigit(src.charAt(pos))) pos++;
+                } else {
+                    pos = mark;  // not an exponent (e.g. "2e" is an error below, "2 e" the constant)
+                }
+            }
+            double value;
+            try {
+                value = Double.parseDouble(src.substring(start, pos));
+            } catch (NumberFormatException e) {
+                throw new ExpressionException("Bad number '" + src.substring(start, pos) + "'", start);
+            }
+            return count(() -> value);
+        }
+
+        private Node name() {
+            int start = pos;
+            while (pos < src.length() && Character.isLetterOrDigit(src.charAt(pos))) pos++;
+            String name = src.substring(start, pos).toLowerCase(Locale.ROOT);
+
+            skipSpace();
+            if (pos >= src.length() || src.charAt(pos) != '(') {
+                switch (name) {
+                    case "pi": return count(() -> Math.PI);
+                    case "e": return count(() -> Math.E);
+                    default: throw new ExpressionException("Unknown name '" + name + "'", start);
+                }
+            }
+
+            int open = pos++;
+            List<Node> args = new ArrayList<>();
+            skipSpace();
+            if (pos < src.length() && src.charAt(pos) == ')') {
+                pos++;
+            } else {
+                while (true) {
+                    args.add(parse(0));
+                    skipSpace();
+                    if (pos < src.length() && src.charAt(pos) == ',') {
+                        pos++;
+                        continue;
+                    }
+                    expect(')', open);
+                    break;
+                }
+            }
+            return function(name, args, start);
+        }
+
+        private Node function(String name, List<Node> args, int at) {
+            Node[] a = args.toArray(new Node[0]);
+            switch (name) {
+                case "sqrt": return unary(name, a, at, Math::sqrt);
+                case "cbrt": return unary(name, a, at, Math::cbrt);
+                case "abs": return unary(name, a, at, Math::abs);
+                case "sin": return unary(name, a, at, Math::sin);
+                case "cos": return unary(name, a, at, Math::cos);
+                case "tan": return unary(name, a, at, Math::tan);
+                case "asin": return unary(name, a, at, Math::asin);
+                case "acos": return unary(name, a, at, Math::acos);
+                case "atan": return unary(name, a, at, Math::atan);
+                case "sinh": return unary(name, a, at, Math::sinh);
+                case "cosh": return unary(name, a, at, Math::cosh);
+                case "tanh": return unary(name, a, at, Math::tanh);
+                case "exp": return unary(name, a, at, Math::exp);
+                case "ln": return unary(name, a, at, Math::log);
+                case "log": return unary(name, a, at, Math::log10);
+                case "log2": return unary(name, a, at, x -> Math.log(x) / Math.log(2));
+                case "floor": return unary(name, a, at, Math::floor);
+                case "ceil": return unary(name, a, at, Math::ceil);
+                case "round": return unary(name, a, at, x -> (double) Math.round(x));
+                case "sign": return unary(name, a, at, Math::signum);
+                case "pow": return binaryFn(name, a, at, Math::pow);
+                case "atan2": return binaryFn(name, a, at, Math::atan2);
+                case "hypot": return binaryFn(name, a, at, Math::hypot);
+                case "min":
+                case "max": {
+                    if (a.length < 1) throw new ExpressionException(name + "() needs at least one argument", at);
+                    boolean min = name.equals("min");
+                    return count(() -> {
+                        double r = a[0].eval();
+                        for (int i = 1; i < a.length; i++) {
+                            double v = a[i].eval();
+                            r = min ? Math.min(r, v) : Math.max(r, v);
+                        }
+                        return r;
+                    });
+                }
+                default:
+                    throw new ExpressionException("Unknown function '" + name + "'", at);
+            }
+        }
+
+        private Node unary(String name, Node[] a, int at, java.util.function.DoubleUnaryOperator f) {
+            if (a.length != 1) throw new ExpressionException(name + "() takes 1 argument", at);
+            Node x = a[0];
+            return count(() -> f.applyAsDouble(x.eval()));
+        }
+
+        private Node binaryFn(String name, Node[] a, int at, java.util.function.DoubleBinaryOperator f) {
+            if (a.length != 2) throw new ExpressionException(name + "() takes 2 arguments", at);
+            Node x = a[0];
+            Node y = a[1];
+            return count(() -> f.applyAsDouble(x.eval(), y.eval()));
+        }
+
+        private Node binary(char op, Node l, Node r) {
+            switch (op) {
+                case '+': return count(() -> l.eval() + r.eval());
+                case '-': return count(() -> l.eval() - r.eval());
+                case '*': return count(() -> l.eval() * r.eval());
+                case '/': return count(() -> l.eval() / r.eval());
+                case '%': return count(() -> l.eval() % r.eval());
+                default: return count(() -> Math.pow(l.eval(), r.eval()));
+            }
+        }
+
+        private Node count(Node n) {
+            if (++nodes > MAX_NODES) throw new ExpressionException("Expression too complex (max " + MAX_NODES + " terms)", pos);
+            return n;
+        }
+
+        private void expect(char c, int openedAt) {
+            skipSpace();
+            if (pos >= src.length() || src.charAt(pos) != c) {
+                throw new ExpressionException("Missing '" + c + "' for '(' opened", openedAt);
+            }
+            pos++;
+        }
+
+        private void skipSpace() {
+            while (pos < src.length() && Character.isWhitespace(src.charAt(pos))) pos++;
+        }
+    }
+}
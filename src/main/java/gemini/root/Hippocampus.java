@@ -1,55 +1,529 @@
 package gemini.root;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * Hippocampus: Long-term memory persistence
- * Stores conversation blocks as a simple append-only log
+ * Stores conversation blocks in an append-only, segmented log
+ *
+ * Layout (fraymus_hippocampus/, see MemorySegment):
+ * - Rolling segments of up to SEGMENT_BYTES / SEGMENT_BLOCKS blocks
+ * - Each sealed segment has an .idx with a sparse timestamp index and an
+ *   inverted term index, memory-mapped on demand
+ * - Only the active segment's index and the last RECENT_BLOCKS blocks are
+ *   on the heap, so startup time and heap no longer grow with history
+ * - A legacy single-file fraymus_hippocampus.log is migrated on first start
+ *
+ * Search: every query term must prefix-match a word of the block
+ * (LexicalIndex tokens, case-insensitive); newest matches first.
+ *
+ * Persistence (group commit):
+ * - commitMemory only appends to the recent ring and a bounded queue; one
+ *   writer thread owns the log until it exits, only then do commits write
+ *   through (appends are serialised on appendLock either way)
+ * - The writer gathers blocks for up to FLUSH_INTERVAL_MS (or
+ *   MAX_BATCH_BLOCKS) and appends them with one write
+ * - Blocks reach the log in commit order
+ * - A full queue blocks committers instead of dropping memory
+ * - Durability: setForceInterval(ms) forces the log to disk at most
+ *   every ms after a write (0 = leave it to the OS)
+ * - flush() waits until everything committed so far is written;
+ *   close() flushes, forces and stops the writer (shutdown hook)
  */
 public class Hippocampus {
-    
-    private static final String MEMORY_FILE = "fraymus_hippocampus.log";
-    public static List<String> chain = new ArrayList<>();
-    
+
+    private static final String LEGACY_FILE = "fraymus_hippocampus.log";
+    private static volatile Path dir = Paths.get("fraymus_hippocampus");
+    private static volatile Path legacyLog = Paths.get(LEGACY_FILE);
+
+    private static final long SEGMENT_BYTES = 8L << 20;
+    private static final int SEGMENT_BLOCKS = 65_536;
+    private static final int RECENT_BLOCKS = 1024;
+    private static final int MAX_TERM_EXPANSION = 512;  // indexed terms one query prefix may match
+
+    private static final int QUEUE_CAPACITY = 4096;
+    private static final int MAX_BATCH_BLOCKS = 512;
+    private static final long FLUSH_INTERVAL_MS = 20;
+
+    private static final BlockingQueue<String> pending = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private static final Object commitOrder = new Object();
+    private static final Object progress = new Object();  // guards written, signals flush()
+    private static final Object appendLock = new Object();  // every segment append; the writer's exit
+    private static final ArrayDeque<Recent> recent = new ArrayDeque<>();  // guarded by commitOrder
+    private static final List<MemorySegment> segments = new CopyOnWriteArrayList<>();  // last = active
+    private static long committed;  // guarded by commitOrder
+    private static long written;    // guarded by progress
+    private static volatile long nextSeq;     // blocks committed, all time
+    private static volatile long indexedSeq;  // blocks searchable in segments
+    private static volatile long forceIntervalMs = 0;
+    private static volatile boolean closed;
+    private static boolean opened;  // guarded by commitOrder
+    private static Thread writer;   // guarded by commitOrder
+    private static boolean writerExited;  // guarded by appendLock: the queue is drained for good
+
+    // Stats
+    private static volatile long batches;
+    private static volatile long forces;
+    private static volatile int maxQueued;
+
+    private record Recent(long seq, String block) { }
+
     /**
-     * Load memory from disk on startup
+     * Open the segmented log on startup (migrating a legacy log)
      */
     public static void recall() {
-        try {
-            File f = new File(MEMORY_FILE);
-            if (f.exists()) {
-                List<String> lines = Files.readAllLines(f.toPath());
-                chain.addAll(lines);
-                System.out.println(">>> [HIPPOCAMPUS] Recalled " + chain.size() + " memory blocks");
-            } else {
-                System.out.println(">>> [HIPPOCAMPUS] No prior memory found");
+        synchronized (commitOrder) {
+            try {
+                open();
+                System.out.println(">>> [HIPPOCAMPUS] Recalled " + nextSeq + " memory blocks in "
+                    + segments.size() + " segments (" + recent.size() + " in memory)");
+            } catch (IOException e) {
+                System.err.println(">>> [HIPPOCAMPUS] Recall failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private static void open() throws IOException {
+        if (opened) return;
+        opened = true;
+        Path dir = Hippocampus.dir;
+        Files.createDirectories(dir);
+
+        List<Long> bases = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "seg-*.log")) {
+            for (Path f : files) {
+                long base = MemorySegment.baseSeqOf(f);
+                if (base >= 0) bases.add(base);
+            }
+        }
+        Collections.sort(bases);
+
+        Path legacy = legacyLog;
+        if (Files.exists(legacy)) {
+            // The legacy log is renamed only once migrated: segments next to it are a partial run
+            for (long base : bases) {
+                Files.deleteIfExists(dir.resolve(String.format("seg-%016d.log", base)));
+                Files.deleteIfExists(dir.resolve(String.format("seg-%016d.idx", base)));
+            }
+            migrate(legacy);
+        } else {
+            for (int i = 0; i < bases.size(); i++) {
+                long base = bases.get(i);
+                boolean last = i == bases.size() - 1;
+                MemorySegment s = last ? null : MemorySegment.openSealed(dir, base);
+                if (s == null) {
+                    s = MemorySegment.openActive(dir, base);
+                    if (!last) s.seal();  // crashed while sealing: rebuild the index
+                }
+                segments.add(s);
+            }
+            if (segments.isEmpty()) segments.add(MemorySegment.openActive(dir, 0));
+        }
+
+        MemorySegment active = active();
+        nextSeq = active.baseSeq() + active.count();
+        indexedSeq = nextSeq;
+        committed = 0;
+
+        // Recent ring: tail of the active segment, topped up from the one before
+        List<String> tail = new ArrayList<>();
+        if (active.count() < RECENT_BLOCKS && segments.size() > 1) {
+            tail.addAll(segments.get(segments.size() - 2).tail(RECENT_BLOCKS - active.count()));
+        }
+        tail.addAll(active.tail(RECENT_BLOCKS));
+        long seq = nextSeq - tail.size();
+        for (String block : tail) recent.add(new Recent(seq++, block));
+    }
+
+    /**
+     * One-time move of the single-file log into segments
+     */
+    private static void migrate(Path legacy) throws IOException {
+        System.out.println(">>> [HIPPOCAMPUS] Migrating " + legacy + " to " + dir + "/");
+        segments.add(MemorySegment.openActive(dir, 0));
+        List<String> batch = new ArrayList<>(MAX_BATCH_BLOCKS);
+        try (BufferedReader in = Files.newBufferedReader(legacy, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                batch.add(line);
+                if (batch.size() == MAX_BATCH_BLOCKS) {
+                    appendToSegments(batch);
+                    batch.clear();
+                }
             }
-        } catch (IOException e) {
-            System.err.println(">>> [HIPPOCAMPUS] Recall failed: " + e.getMessage());
         }
+        appendToSegments(batch);
+        active().force();
+        Files.move(legacy, legacy.resolveSibling(legacy.getFileName() + ".migrated"), StandardCopyOption.REPLACE_EXISTING);
     }
-    
+
     /**
      * Commit a new memory block
      */
     public static void commitMemory(String type, String content) {
-        String timestamp = String.valueOf(System.currentTimeMillis());
         // Escape newlines to prevent log corruption
         String escapedContent = content.replace("\n", "\\n").replace("\r", "\\r");
-        String block = "[" + timestamp + "|" + type + "] " + escapedContent;
-        chain.add(block);
-        
-        // Persist asynchronously (consider using ExecutorService for production)
-        new Thread(() -> {
-            synchronized (MEMORY_FILE) {  // Prevent concurrent writes
-                try (FileWriter fw = new FileWriter(MEMORY_FILE, true)) {
-                    fw.write(block + "\n");
-                } catch (IOException e) {
-                    System.err.println(">>> [HIPPOCAMPUS] Persist failed: " + e.getMessage());
-                }
-            }
-        }).start();
+
+        synchronized (commitOrder) {  // ring order = log order
+            String timestamp = String.valueOf(System.currentTimeMillis());
+            String block = "[" + timestamp + "|" + type + "] " + escapedContent;
+            try {
+                open();
+            } catch (IOException e) {
+                System.err.println(">>> [HIPPOCAMPUS] Open failed: " + e.getMessage());
+            }
+            recent.add(new Recent(nextSeq++, block));
+            if (recent.size() > RECENT_BLOCKS) recent.poll();
+
+            if (!closed) startWriter();
+            enqueue(block);
+        }
+    }
+
+    /**
+     * Queue for the writer, or write through once it has exited. Blocks
+     * queued after close() began are still drained by the writer, so the
+     * log keeps commit order. A full queue waits for the writer.
+     */
+    private static void enqueue(String block) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                synchronized (appendLock) {
+                    if (writer == null || writerExited) {
+                        appendDirect(block);
+                        return;
+                    }
+                    if (pending.offer(block)) {
+                        committed++;
+                        maxQueued = Math.max(maxQueued, pending.size());
+                        return;
+                    }
+                }
+                synchronized (progress) {
+                    try {
+                        progress.wait(10);  // the writer signals after every batch
+                    } catch (InterruptedException e) {
+                        interrupted = true;  // memory is not dropped; keep waiting
+                    }
+                }
+            }
+        } finally {
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Blocks committed, all time
+     */
+    public static long size() {
+        return nextSeq;
+    }
+
+    /**
+     * The last n blocks (at most RECENT_BLOCKS), oldest first
+     */
+    public static List<String> recent(int n) {
+        synchronized (commitOrder) {
+            List<String> out = new ArrayList<>(Math.min(n, recent.size()));
+            Iterator<Recent> it = recent.descendingIterator();
+            while (it.hasNext() && out.size() < n) out.add(it.next().block());
+            Collections.reverse(out);
+            return out;
+        }
+    }
+
+    /**
+     * Blocks matching every query term (as a word prefix), newest first
+     * @param sinceMs only blocks at or after this time (0 = all)
+     */
+    public static List<String> search(String query, int limit, long sinceMs) throws IOException {
+        List<String> terms = new ArrayList<>(queryTerms(query));
+        List<String> results = new ArrayList<>();
+        if (limit <= 0) return results;
+
+        if (terms.isEmpty()) {
+            // Nothing indexable (stopwords, punctuation): substring scan of the recent ring
+            String needle = query.toLowerCase(Locale.ROOT);
+            List<String> ring = recent(RECENT_BLOCKS);
+            for (int i = ring.size() - 1; i >= 0 && results.size() < limit; i--) {
+                String block = ring.get(i);
+                if (MemorySegment.timestamp(block) >= sinceMs && block.toLowerCase(Locale.ROOT).contains(needle)) {
+                    results.add(block);
+                }
+            }
+            return results;
+        }
+
+        // Blocks the writer has not indexed yet are only in the ring
+        long indexed = indexedSeq;
+        List<Recent> unindexed = new ArrayList<>();
+        synchronized (commitOrder) {
+            for (Recent r : recent) if (r.seq() >= indexed) unindexed.add(r);
+        }
+        for (int i = unindexed.size() - 1; i >= 0 && results.size() < limit; i--) {
+            String block = unindexed.get(i).block();
+            if (MemorySegment.timestamp(block) >= sinceMs && matches(block, terms)) results.add(block);
+        }
+
+        List<MemorySegment> snapshot = new ArrayList<>(segments);
+        for (int s = snapshot.size() - 1; s >= 0 && results.size() < limit; s--) {
+            MemorySegment seg = snapshot.get(s);
+            if (seg.baseSeq() >= indexed || seg.count() == 0) continue;
+            if (sinceMs > 0 && seg.maxTimestamp() < sinceMs) break;  // older segments are older still
+            int from = sinceMs > 0 ? seg.firstOrdinalSince(sinceMs) : 0;
+            BitSet hits = seg.match(terms, from, MAX_TERM_EXPANSION);
+            if (hits == null) continue;
+            int top = (int) Math.min(seg.count(), indexed - seg.baseSeq()) - 1;
+            for (int o = hits.previousSetBit(top); o >= 0 && results.size() < limit; o = hits.previousSetBit(o - 1)) {
+                String block = seg.read(o);
+                if (MemorySegment.timestamp(block) >= sinceMs) results.add(block);
+            }
+        }
+        return results;
+    }
+
+    private static Set<String> queryTerms(String query) {
+        Set<String> terms = new LinkedHashSet<>();
+        LexicalIndex.tokenize(query, terms::add);
+        return terms;
+    }
+
+    private static boolean matches(String block, List<String> terms) {
+        List<String> words = new ArrayList<>();
+        LexicalIndex.tokenize(MemorySegment.indexText(block), words::add);
+        for (String t : terms) {
+            boolean found = false;
+            for (String w : words) {
+                if (w.startsWith(t)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Force the log to disk at most every intervalMs after a write
+     * (0 = never force; the OS writes it back on its own schedule)
+     */
+    public static void setForceInterval(long intervalMs) {
+        forceIntervalMs = Math.max(0, intervalMs);
+    }
+
+    /**
+     * Wait until every block committed before this call is in the log
+     * @return false on timeout
+     */
+    public static boolean flush(long timeoutMs) throws InterruptedException {
+        long target;
+        synchronized (commitOrder) {
+            target = committed;
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        synchronized (progress) {
+            while (written < target) {
+                long left = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (left <= 0) return false;
+                progress.wait(left);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Flush, force and stop the writer; later commits write through
+     */
+    public static void close() {
+        Thread w;
+        synchronized (commitOrder) {
+            closed = true;
+            w = writer;
+        }
+        if (w == null) return;
+        try {
+            w.join(5_000);  // the writer drains the queue before it exits
+            if (w.isAlive()) System.err.println(">>> [HIPPOCAMPUS] Writer did not finish: " + pending.size() + " blocks unwritten");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        System.out.println(">>> [HIPPOCAMPUS] " + stats());
+    }
+
+    /**
+     * Close the log and forget everything about it; the next recall() or
+     * commit opens the log in directory, migrating legacy if it exists
+     * (tests point this at a scratch directory)
+     */
+    static void relocate(Path directory, Path legacy) {
+        close();
+        synchronized (commitOrder) {
+            synchronized (appendLock) {
+                for (MemorySegment s : segments) {
+                    try {
+                        s.close();
+                    } catch (IOException e) {
+                        System.err.println(">>> [HIPPOCAMPUS] Close failed: " + e.getMessage());
+                    }
+                }
+                segments.clear();
+                pending.clear();
+                recent.clear();
+                dir = directory;
+                legacyLog = legacy;
+                opened = false;
+                closed = false;
+                writer = null;
+                writerExited = false;
+                committed = 0;
+                nextSeq = 0;
+                indexedSeq = 0;
+            }
+            synchronized (progress) {
+                written = 0;
+                batches = 0;
+                forces = 0;
+                maxQueued = 0;
+            }
+        }
+    }
+
+    public static String stats() {
+        MemorySegment active = segments.isEmpty() ? null : active();
+        synchronized (progress) {
+            return "blocks=" + nextSeq + " segments=" + segments.size()
+                + " activeBytes=" + (active == null ? 0 : active.bytes())
+                + " written=" + written + " batches=" + batches
+                + " forces=" + forces + " queued=" + pending.size() + " maxQueued=" + maxQueued
+                + " forceIntervalMs=" + forceIntervalMs;
+        }
+    }
+
+    private static MemorySegment active() {
+        return segments.get(segments.size() - 1);
+    }
+
+    private static void startWriter() {
+        if (writer != null) return;
+        writer = new Thread(Hippocampus::writeLoop, "hippocampus-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Single writer: gather a batch, append it in one write, force if due
+     */
+    private static void writeLoop() {
+        List<String> batch = new ArrayList<>(MAX_BATCH_BLOCKS);
+        try {
+            long lastForce = System.nanoTime();
+            boolean dirty = false;
+
+            while (!(closed && pending.isEmpty())) {
+                // Wait for work (or until a pending force is due)
+                long waitMs = 200;
+                long interval = forceIntervalMs;
+                if (dirty && interval > 0) {
+                    waitMs = Math.max(1, interval - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastForce));
+                }
+                String first = pending.poll(waitMs, TimeUnit.MILLISECONDS);
+
+                if (first != null) {
+                    batch.add(first);
+                    // Group commit: let the batch fill for a moment
+                    long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(FLUSH_INTERVAL_MS);
+                    while (batch.size() < MAX_BATCH_BLOCKS && !closed) {
+                        pending.drainTo(batch, MAX_BATCH_BLOCKS - batch.size());
+                        long left = until - System.nanoTime();
+                        if (left <= 0 || batch.size() >= MAX_BATCH_BLOCKS) break;
+                        String next = pending.poll(left, TimeUnit.NANOSECONDS);
+                        if (next != null) batch.add(next);
+                    }
+                    pending.drainTo(batch, MAX_BATCH_BLOCKS - batch.size());
+
+                    write(batch);
+                    dirty = true;
+                    batch.clear();
+                }
+
+                interval = forceIntervalMs;
+                if (dirty && interval > 0
+                        && System.nanoTime() - lastForce >= TimeUnit.MILLISECONDS.toNanos(interval)) {
+                    active().force();
+                    forces++;
+                    lastForce = System.nanoTime();
+                    dirty = false;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.err.println(">>> [HIPPOCAMPUS] Writer failed: " + e.getMessage());
+        } finally {
+            exitWriter(batch);
+        }
+    }
+
+    /**
+     * Write whatever is still in hand or queued and hand the log over to
+     * the committers, atomically with respect to enqueue()
+     */
+    private static void exitWriter(List<String> batch) {
+        synchronized (appendLock) {
+            pending.drainTo(batch);
+            if (!batch.isEmpty()) write(batch);
+            try {
+                if (!segments.isEmpty()) active().force();
+                forces++;
+            } catch (IOException e) {
+                System.err.println(">>> [HIPPOCAMPUS] Force failed: " + e.getMessage());
+            }
+            writerExited = true;
+        }
+    }
+
+    private static void write(List<String> batch) {
+        try {
+            appendToSegments(batch);
+        } catch (IOException e) {
+            System.err.println(">>> [HIPPOCAMPUS] Persist failed (" + batch.size() + " blocks): " + e.getMessage());
+        }
+        synchronized (progress) {
+            written += batch.size();  // counted even on failure, so flush() cannot hang
+            batches++;
+            progress.notifyAll();
+        }
+    }
+
+    /**
+     * Append to the active segment, rolling to a new one when it is full
+     * (writer thread; migration and commits once the writer is gone)
+     */
+    private static void appendToSegments(List<String> batch) throws IOException {
+        if (batch.isEmpty()) return;
+        synchronized (appendLock) {  // MemorySegment.append assumes one writer
+            if (segments.isEmpty()) throw new IOException("memory log is not open");
+            MemorySegment active = active();
+            active.append(batch);
+            indexedSeq = active.baseSeq() + active.count();
+            if (active.bytes() >= SEGMENT_BYTES || active.count() >= SEGMENT_BLOCKS) {
+                active.seal();
+                segments.add(MemorySegment.openActive(dir, active.baseSeq() + active.count()));
+            }
+        }
+    }
+
+    private static void appendDirect(String block) {
+        try {
+            appendToSegments(List.of(block));
+        } catch (IOException e) {
+            System.err.println(">>> [HIPPOCAMPUS] Persist failed: " + e.getMessage());
+        }
     }
 }
@@ -0,0 +1,429 @@
+package gemini.root;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * HnswIndex: Hierarchical Navigable Small World graph over vault rows
+ *
+ * Each row gets a random top layer; upper layers are sparse express lanes,
+ * layer 0 links every row to its nearest neighbours. A query greedily
+ * descends from the entry point and finishes with a beam search of width
+ * efSearch on layer 0, so cost grows roughly with log(n) instead of n.
+ *
+ * Tuning:
+ * - M: links per row (layer 0 keeps 2*M). Higher = better recall, more memory
+ * - efConstruction: beam width while inserting. Higher = better graph, slower adds
+ * - efSearch: beam width while querying. The main recall/latency knob
+ *
+ * Not thread-safe on its own: VectorVault serialises writers against readers.
+ */
+public class HnswIndex implements VectorIndex {
+
+    private static final int MAGIC = 0x484E5357;  // "HNSW"
+    private static final int FORMAT_VERSION = 1;
+    private static final int MAX_LEVEL_CAP = 16;
+    private static final int MAX_POOLED_VISITED = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+
+    public static final int DEFAULT_M = 16;
+    public static final int DEFAULT_EF_CONSTRUCTION = 200;
+    public static final int DEFAULT_EF_SEARCH = 64;
+
+    private final Scorer scorer;
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final double levelMult;
+    private final Random random = new Random(0x5EED);
+    private volatile int efSearch;
+
+    // links[row][level] = {count, neighbour1, neighbour2, ...}
+    private int[][][] links = new int[1024][][];
+    private int count = 0;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    // Visited sets shared by all searching threads (messages run on short-lived
+    // virtual threads, so a per-thread buffer would be reallocated per search)
+    private final ConcurrentLinkedQueue<Visited> visitedPool = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooledVisited = new AtomicInteger();
+
+    public HnswIndex(Scorer scorer) {
+        this(scorer, DEFAULT_M, DEFAULT_EF_CONSTRUCTION, DEFAULT_EF_SEARCH);
+    }
+
+    public HnswIndex(Scorer scorer, int m, int efConstruction, int efSearch) {
+        if (m < 2) throw new IllegalArgumentException("M must be >= 2");
+        this.scorer = scorer;
+        this.m = m;
+        this.maxM0 = m * 2;
+        this.efConstruction = Math.max(efConstruction, m);
+        this.efSearch = Math.max(1, efSearch);
+        this.levelMult = 1.0 / Math.log(m);
+    }
+
+    public int getM() {
+        return m;
+    }
+
+    public int getEfConstruction() {
+        return efConstruction;
+    }
+
+    public int getEfSearch() {
+        return efSearch;
+    }
+
+    public void setEfSearch(int efSearch) {
+        this.efSearch = Math.max(1, efSearch);
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public void clear() {
+        links = new int[1024][][];
+        count = 0;
+        entryPoint = -1;
+        maxLevel = -1;
+    }
+
+    @Override
+    public void add(int id, float[] vector) {
+        if (id != count) {
+            throw new IllegalArgumentException("HNSW rows must be added in order: expected " + count + ", got " + id);
+        }
+        if (id == links.length) {
+            links = Arrays.copyOf(links, links.length * 2);
+        }
+
+        int level = randomLevel();
+        int[][] nodeLinks = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            nodeLinks[l] = new int[(l == 0 ? maxM0 : m) + 1];
+        }
+        links[id] = nodeLinks;
+
+        if (entryPoint < 0) {
+            entryPoint = id;
+            maxLevel = level;
+            count++;
+            return;
+        }
+
+        int ep = entryPoint;
+        for (int l = maxLevel; l > level; l--) {
+            ep = greedyClosest(vector, ep, l);
+        }
+
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            ScoreHeap found = searchLayer(vector, ep, efConstruction, l);
+            int n = found.size();
+            float[] candScores = new float[n];
+            int[] candIds = new int[n];
+            for (int i = n - 1; i >= 0; i--) {
+                candScores[i] = found.peekScore();
+                candIds[i] = found.pop();
+            }
+            ep = candIds[0];
+
+            int maxLinks = (l == 0) ? maxM0 : m;
+            int[] chosen = selectNeighbors(candIds, candScores, Math.min(m, maxLinks));
+            int[] own = nodeLinks[l];
+            own[0] = chosen.length;
+            System.arraycopy(chosen, 0, own, 1, chosen.length);
+
+            for (int neighbour : chosen) {
+                link(neighbour, id, l, maxLinks);
+            }
+        }
+
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = id;
+        }
+        count++;
+    }
+
+    @Override
+    public int[] search(float[] query, int k) {
+        if (count == 0 || k <= 0) return new int[0];
+
+        int ep = entryPoint;
+        for (int l = maxLevel; l > 0; l--) {
+            ep = greedyClosest(query, ep, l);
+        }
+
+        ScoreHeap results = searchLayer(query, ep, Math.max(efSearch, k), 0);
+        while (results.size() > k) {
+            results.pop();
+        }
+        return results.drainDescending();
+    }
+
+    /**
+     * Walk one layer greedily towards the query
+     */
+    private int greedyClosest(float[] query, int start, int level) {
+        int current = start;
+        double currentScore = scorer.similarity(query, current);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            int[] nb = links[current][level];
+            for (int i = 1; i <= nb[0]; i++) {
+                double s = scorer.similarity(query, nb[i]);
+                if (s > currentScore) {
+                    currentScore = s;
+                    current = nb[i];
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Beam search on one layer; returns a min-heap of the best {@code ef} rows
+     */
+    private ScoreHeap searchLayer(float[] query, int ep, int ef, int level) {
+        Visited seen = acquireVisited();
+        try {
+            return searchLayer(query, ep, ef, level, seen);
+        } finally {
+            releaseVisited(seen);
+        }
+    }
+
+    private ScoreHeap searchLayer(float[] query, int ep, int ef, int level, Visited seen) {
+        seen.reset(count + 1);
+
+        ScoreHeap candidates = new ScoreHeap(ef * 2);  // max-heap via negated scores
+        ScoreHeap results = new ScoreHeap(ef + 1);
+
+        float epScore = (float) scorer.similarity(query, ep);
+        seen.mark(ep);
+        candidates.push(-epScore, ep);
+        results.push(epScore, ep);
+
+        while (!candidates.isEmpty()) {
+            float candScore = -candidates.peekScore();
+            int cand = candidates.pop();
+            if (results.size() >= ef && candScore < results.peekScore()) {
+                break;
+            }
+
+            int[] nb = links[cand][level];
+            for (int i = 1; i <= nb[0]; i++) {
+                int n = nb[i];
+                if (!seen.mark(n)) continue;
+
+                float s = (float) scorer.similarity(query, n);
+                if (results.size() < ef || s > results.peekScore()) {
+                    candidates.push(-s, n);
+                    results.offer(s, n, ef);
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Diversity heuristic from the HNSW paper: keep a candidate only if it is
+     * closer to the new row than to any neighbour already kept, then top up
+     * with the best rejected ones so sparse regions stay connected.
+     */
+    private int[] selectNeighbors(int[] ids, float[] scores, int max) {
+        if (ids.length <= max) return ids;
+
+        int[] selected = new int[max];
+        boolean[] taken = new boolean[ids.length];
+        int n = 0;
+        for (int i = 0; i < ids.length && n < max; i++) {
+            boolean diverse = true;
+            for (int j = 0; j < n; j++) {
+                if (scorer.similarity(ids[i], selected[j]) > scores[i]) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected[n++] = ids[i];
+                taken[i] = true;
+            }
+        }
+        for (int i = 0; i < ids.length && n < max; i++) {
+            if (!taken[i]) selected[n++] = ids[i];
+        }
+        return selected;
+    }
+
+    /**
+     * Add a back-link from {@code node} to {@code newId}, pruning if full
+     */
+    private void link(int node, int newId, int level, int maxLinks) {
+        int[] nb = links[node][level];
+        int n = nb[0];
+        if (n < maxLinks) {
+            nb[n + 1] = newId;
+            nb[0] = n + 1;
+            return;
+        }
+
+        // Full: re-select among existing neighbours plus the new row
+        int[] ids = new int[n + 1];
+        float[] scores = new float[n + 1];
+        for (int i = 0; i < n; i++) {
+            ids[i] = nb[i + 1];
+            scores[i] = (float) scorer.similarity(node, ids[i]);
+        }
+        ids[n] = newId;
+        scores[n] = (float) scorer.similarity(node, newId);
+        sortDescending(ids, scores);
+
+        int[] kept = selectNeighbors(ids, scores, maxLinks);
+        nb[0] = kept.length;
+        System.arraycopy(kept, 0, nb, 1, kept.length);
+    }
+
+    private static void sortDescending(int[] ids, float[] scores) {
+        // Insertion sort: lists are at most 2*M + 1 long
+        for (int i = 1; i < ids.length; i++) {
+            float s = scores[i];
+            int id = ids[i];
+            int j = i - 1;
+            while (j >= 0 && scores[j] < s) {
+                scores[j + 1] = scores[j];
+                ids[j + 1] = ids[j];
+                j--;
+            }
+            scores[j + 1] = s;
+            ids[j + 1] = id;
+        }
+    }
+
+    private int randomLevel() {
+        double r = 1.0 - random.nextDouble();  // (0, 1]
+        return Math.min(MAX_LEVEL_CAP, (int) (-Math.log(r) * levelMult));
+    }
+
+    @Override
+    public void save(Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(m);
+            out.writeInt(efConstruction);
+            out.writeInt(count);
+            out.writeInt(entryPoint);
+            out.writeInt(maxLevel);
+            for (int i = 0; i < count; i++) {
+                int[][] nodeLinks = links[i];
+                out.writeByte(nodeLinks.length);
+                for (int[] nb : nodeLinks) {
+                    out.writeShort(nb[0]);
+                    for (int j = 1; j <= nb[0]; j++) {
+                        out.writeInt(nb[j]);
+                    }
+                }
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public void load(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC) throw new IOException("Not an HNSW index file");
+            int version = in.readInt();
+            if (version != FORMAT_VERSION) throw new IOException("Unsupported HNSW version: " + version);
+            int savedM = in.readInt();
+            in.readInt();  // efConstruction used at build time (informational)
+            if (savedM != m) throw new IOException("HNSW built with M=" + savedM + ", configured M=" + m);
+
+            int n = in.readInt();
+            int ep = in.readInt();
+            int top = in.readInt();
+
+            int[][][] loaded = new int[Math.max(1024, Integer.highestOneBit(Math.max(1, n)) << 1)][][];
+            for (int i = 0; i < n; i++) {
+                int levels = in.readByte();
+                int[][] nodeLinks = new int[levels][];
+                for (int l = 0; l < levels; l++) {
+                    int c = in.readShort();
+                    int[] nb = new int[(l == 0 ? maxM0 : m) + 1];
+                    if (c > nb.length - 1) throw new IOException("Corrupt HNSW link list at row " + i);
+                    nb[0] = c;
+                    for (int j = 1; j <= c; j++) {
+                        nb[j] = in.readInt();
+                    }
+                    nodeLinks[l] = nb;
+                }
+                loaded[i] = nodeLinks;
+            }
+
+            links = loaded;
+            count = n;
+            entryPoint = ep;
+            maxLevel = top;
+        }
+    }
+
+    private Visited acquireVisited() {
+        Visited v = visitedPool.poll();
+        if (v == null) return new Visited();
+        pooledVisited.decrementAndGet();
+        return v;
+    }
+
+    /**
+     * Return a visited set for reuse; beyond MAX_POOLED_VISITED (more
+     * concurrent searches than that are rare) it is left to the GC
+     */
+    private void releaseVisited(Visited v) {
+        if (pooledVisited.incrementAndGet() <= MAX_POOLED_VISITED) {
+            visitedPool.offer(v);
+        } else {
+            pooledVisited.decrementAndGet();
+        }
+    }
+
+    /**
+     * Epoch-stamped visited set, pooled across searches to avoid a fresh
+     * int[n] on every query.
+     */
+    private static final class Visited {
+        private int[] marks = new int[0];
+        private int epoch = 0;
+
+        void reset(int capacity) {
+            if (marks.length < capacity) {
+                marks = new int[Math.max(capacity, marks.length * 2)];
+                epoch = 0;
+            }
+            epoch++;
+            if (epoch == Integer.MAX_VALUE) {
+                Arrays.fill(marks, 0);
+                epoch = 1;
+            }
+        }
+
+        /**
+         * @return true if the row had not been seen in this epoch
+         */
+        boolean mark(int id) {
+            if (marks[id] == epoch) return false;
+            marks[id] = epoch;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package gemini.root;
+
+import com.google.gson.*;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * IndexManifest: What an indexed root looked like when it was last ingested
+ *
+ * One JSON file per indexed root, in fraymus_vault/manifests/, keyed by a
+ * hash of the root's canonical path. Per source file it records:
+ * - size and mtime (cheap "unchanged" check, no read)
+ * - SHA-256 of the bytes (catches touched-but-identical files)
+ * - chunk parameters and chunker version (a different chunkSize/overlap
+ *   or chunking algorithm means re-chunking)
+ * - the vault rows holding its chunks (tombstoned when the file changes
+ *   or disappears)
+ *
+ * Entries are written only for files whose chunks all made it into the
+ * vault, so a failed or cancelled file is simply retried next time.
+ */
+public class IndexManifest {
+
+    public static final String DIR = "manifests";
+    private static final int VERSION = 1;
+    private static final Gson GSON = new Gson();
+
+    /**
+     * Recorded state of one source file
+     */
+    public static class Entry {
+        public long size;
+        public long mtime;
+        public String sha256;
+        public int chunkSize;
+        public int overlap;
+        public int chunker;  // Transmudder.CHUNKER_VERSION (absent = 0 in older manifests)
+        public int[] rows;
+
+        public Entry(long size, long mtime, String sha256, int chunkSize, int overlap, int[] rows) {
+            this.size = size;
+            this.mtime = mtime;
+            this.sha256 = sha256;
+            this.chunkSize = chunkSize;
+            this.overlap = overlap;
+            this.chunker = Transmudder.CHUNKER_VERSION;
+            this.rows = rows;
+        }
+
+        boolean sameChunking(int chunkSize, int overlap) {
+            return this.chunkSize == chunkSize && this.overlap == overlap && chunker == Transmudder.CHUNKER_VERSION;
+        }
+    }
+
+    private static class Stored {
+        int version = VERSION;
+        String root;
+        Map<String, Entry> files = new TreeMap<>();
+    }
+
+    private final Path file;
+    private final Path root;
+    private final Map<String, Entry> entries;  // guarded by this
+
+    private IndexManifest(Path file, Path root, Map<String, Entry> entries) {
+        this.file = file;
+        this.root = root;
+        this.entries = entries;
+    }
+
+    /**
+     * Load the manifest for root from the vault directory (empty if there
+     * is none yet, or it cannot be read)
+     */
+    public static IndexManifest load(Path vaultDir, Path root) {
+        Path canonical = root.toAbsolutePath().normalize();
+        Path file = vaultDir.resolve(DIR).resolve(fileName(canonical));
+        Map<String, Entry> entries = new TreeMap<>();
+        if (Files.exists(file)) {
+            try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                Stored stored = GSON.fromJson(in, Stored.class);
+                if (stored != null && stored.version == VERSION && stored.files != null) {
+                    entries.putAll(stored.files);
+                }
+            } catch (IOException | JsonParseException e) {
+                System.err.println(">>> [MANIFEST] Unreadable, re-indexing " + canonical + ": " + e.getMessage());
+            }
+        }
+        return new IndexManifest(file, canonical, entries);
+    }
+
+    /**
+     * Remove every manifest (used when the vault itself is cleared)
+     */
+    static void deleteAll(Path vaultDir) throws IOException {
+        Path dir = vaultDir.resolve(DIR);
+        if (!Files.isDirectory(dir)) return;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.json")) {
+            for (Path f : files) Files.deleteIfExists(f);
+        }
+    }
+
+    private static String fileName(Path canonical) {
+        return sha256(canonical.toString().getBytes(StandardCharsets.UTF_8)).substring(0, 16) + ".json";
+    }
+
+    public Path root() {
+        return root;
+    }
+
+    public synchronized Entry get(String source) {
+        return entries.get(source);
+    }
+
+    /**
+     * True if the file can be skipped without reading it: same size and
+     * mtime as recorded, chunked the same way
+     */
+    public synchronized boolean unchanged(String source, long size, long mtime, int chunkSize, int overlap) {
+        Entry e = entries.get(source);
+        return e != null && e.size == size && e.mtime == mtime && e.sameChunking(chunkSize, overlap);
+    }
+
+    /**
+     * True if the content hash matches the recorded one; the new size and
+     * mtime are recorded so the next run skips the read as well
+     */
+    public synchronized boolean sameContent(String source, long size, long mtime, String sha256, int chunkSize, int overlap) {
+        Entry e = entries.get(source);
+        if (e == null || !e.sameChunking(chunkSize, overlap) || !sha256.equals(e.sha256)) return false;
+        e.size = size;
+        e.mtime = mtime;
+        return true;
+    }
+
+    /**
+     * Record a fully indexed file
+     * @return The entry it replaced, or null
+     */
+    public synchronized Entry put(String source, Entry entry) {
+        return entries.put(source, entry);
+    }
+
+    public synchronized Entry remove(String source) {
+        return entries.remove(source);
+    }
+
+    public synchronized Set<String> sources() {
+        return new HashSet<>(entries.keySet());
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Write atomically (temp file + rename)
+     */
+    public synchronized void save() throws IOException {
+        Files.createDirectories(file.getParent());
+        Stored stored = new Stored();
+        stored.root = root.toString();
+        stored.files.putAll(entries);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (Writer out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            GSON.toJson(stored, out);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Hex SHA-256 of a file, read in blocks (never held whole)
+     */
+    public static String sha256(Path file) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buf = new byte[64 << 10];
+        try (InputStream in = Files.newInputStream(file)) {
+            int n;
+            while ((n = in.read(buf)) > 0) digest.update(buf, 0, n);
+        }
+        return hex(digest.digest());
+    }
+
+    static String sha256(byte[] bytes) {
+        return hex(newDigest().digest(bytes));
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] digest) {
+        StringBuilder hex = new StringBuilder(digest.length * 2);
+        for (byte b : digest) hex.append(String.format("%02x", b));
+        return hex.toString();
+    }
+}
@@ -0,0 +1,163 @@
+package gemini.root;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * IndexWatcher: Keeps the vault in step with the allowlisted directories
+ *
+ * Watch mode (--watch):
+ * - One WatchService over every existing ToolRouter allowed root and its
+ *   subdirectories (new subdirectories are registered as they appear)
+ * - Events only mark their root dirty; a root is re-indexed once it has
+ *   been quiet for the debounce interval, so an editor's burst of writes
+ *   or a large copy becomes one pass
+ * - A pass is an ordinary incremental index_path run: unchanged files are
+ *   skipped by the manifest, changed ones re-embedded, deleted ones
+ *   tombstoned
+ * - An overflow (events lost) simply marks the root dirty as well
+ * - Every root gets one pass at startup to catch changes made while down
+ *
+ * Runs on one daemon thread; passes on a root never overlap.
+ */
+public class IndexWatcher {
+
+    public static final long DEFAULT_DEBOUNCE_MS = 2_000;
+
+    private final ToolRouter tools;
+    private final List<Path> roots;
+    private final long debounceNanos;
+    private final WatchService watcher;
+    private final Map<WatchKey, Path> keyRoots = new ConcurrentHashMap<>();
+    private final Map<Path, Long> dirtySince = new LinkedHashMap<>();  // root -> last event
+    private final Thread thread;
+    private volatile boolean running = true;
+    private volatile int passes;
+
+    public IndexWatcher(ToolRouter tools, List<Path> roots, long debounceMs) throws IOException {
+        this.tools = tools;
+        this.roots = roots;
+        this.debounceNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, debounceMs));
+        this.watcher = FileSystems.getDefault().newWatchService();
+        this.thread = new Thread(this::run, "index-watcher");
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    public void close() {
+        running = false;
+        try {
+            watcher.close();
+        } catch (IOException e) {
+            System.err.println(">>> [WATCH] Close failed: " + e.getMessage());
+        }
+    }
+
+    public String stats() {
+        return "roots=" + roots + " watchedDirs=" + keyRoots.size() + " passes=" + passes
+            + " debounceMs=" + TimeUnit.NANOSECONDS.toMillis(debounceNanos);
+    }
+
+    private void run() {
+        try {
+            for (Path root : roots) {
+                registerTree(root, root);
+                dirtySince.put(root, System.nanoTime() - debounceNanos);  // initial catch-up pass
+            }
+            System.out.println(">>> [WATCH] Watching " + roots + " (" + keyRoots.size() + " dirs)");
+
+            while (running) {
+                WatchKey key = watcher.poll(nextWaitMs(), TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    handle(key);
+                    // Drain whatever else is pending before deciding anything is quiet
+                    while ((key = watcher.poll()) != null) handle(key);
+                }
+                runQuietRoots();
+            }
+        } catch (ClosedWatchServiceException e) {
+            // close()
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | RuntimeException e) {
+            System.err.println(">>> [WATCH] Stopped: " + e.getMessage());
+        }
+    }
+
+    private void handle(WatchKey key) {
+        Path root = keyRoots.get(key);
+        Path dir = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (root == null) continue;
+            dirtySince.put(root, System.nanoTime());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                Path child = dir.resolve((Path) event.context());
+                if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                    try {
+                        registerTree(child, root);
+                    } catch (IOException e) {
+                        System.err.println(">>> [WATCH] Cannot watch " + child + ": " + e.getMessage());
+                    }
+                }
+            }
+        }
+        if (!key.reset()) keyRoots.remove(key);  // directory gone
+    }
+
+    private void registerTree(Path dir, Path root) throws IOException {
+        Files.walkFileTree(dir, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path d, BasicFileAttributes attrs) throws IOException {
+                WatchKey key = d.register(watcher,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+                keyRoots.put(key, root);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path f, IOException e) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Until the earliest dirty root becomes quiet (or a second when idle)
+     */
+    private long nextWaitMs() {
+        long now = System.nanoTime();
+        long wait = TimeUnit.SECONDS.toNanos(1);
+        for (long last : dirtySince.values()) {
+            wait = Math.min(wait, last + debounceNanos - now);
+        }
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait));
+    }
+
+    private void runQuietRoots() {
+        long now = System.nanoTime();
+        Iterator<Map.Entry<Path, Long>> it = dirtySince.entrySet().iterator();
+        List<Path> quiet = new ArrayList<>();
+        while (it.hasNext()) {
+            Map.Entry<Path, Long> e = it.next();
+            if (now - e.getValue() >= debounceNanos) {
+                quiet.add(e.getKey());
+                it.remove();
+            }
+        }
+        for (Path root : quiet) {
+            if (!running) return;
+            ToolRouter.ToolResult tr = tools.indexPath(root.toString(), 1200, 200, null);
+            passes++;
+            System.out.println(">>> [WATCH] " + root + ": " + tr.output);
+        }
+    }
+}
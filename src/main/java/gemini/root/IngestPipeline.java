@@ -0,0 +1,691 @@
+package gemini.root;
+
+import fraymus.LlmScheduler.Priority;
+import fraymus.OllamaSpine;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * IngestPipeline: Staged, parallel indexing of a file tree into VectorVault
+ *
+ * Stages (bounded queues between them, so a fast stage blocks instead of
+ * piling up memory):
+ *   walker -> readers (stream + chunk) -> batcher -> embedder -> vault writer
+ *
+ * - Walker: recursive walk, files matching the extensions (a single file
+ *   root is taken as is)
+ * - Readers: a small pool streaming files through Transmudder.streamChunks
+ *   in parallel; no file is ever held whole, so memory does not grow with
+ *   file size
+ * - Batcher: packs chunks from any number of files into embedding batches
+ * - Embedder: keeps up to embedInFlight batch requests open at once, so
+ *   throughput is bounded by the embedding server
+ * - Writer: single thread, group-commits embedded chunks with
+ *   VectorVault.addAll every commitChunks rows (or when the stream pauses)
+ *
+ * Incremental (Options.manifest set):
+ * - Walker skips files whose size and mtime match the manifest
+ * - Readers hash the bytes and skip touched-but-identical files
+ * - Batcher looks every chunk up in the vault first (findRow) and only
+ *   embeds the ones not stored yet
+ * - When all chunks of a file are stored, its manifest entry is replaced
+ *   and rows only the old version had are tombstoned
+ * - After a complete walk, files gone from disk are tombstoned and dropped
+ *   from the manifest, which is then saved; a file vanishing mid-walk
+ *   counts as gone, an unreadable file or directory keeps its entries
+ *
+ * Progress: a Listener receives snapshots (at most once per second plus a
+ * final one). Cancellation: cancel() stops reading and embedding; chunks
+ * already embedded are still committed.
+ */
+public class IngestPipeline {
+
+    /**
+     * Tunables; defaults match the old sequential index_path behaviour
+     */
+    public static class Options {
+        public int chunkSize = 1200;
+        public int overlap = 200;
+        public Set<String> extensions = new HashSet<>(List.of(".txt"));
+        public int readers = 2;
+        public int embedBatch = OllamaSpine.DEFAULT_EMBED_BATCH_SIZE;
+        public int embedInFlight = OllamaSpine.DEFAULT_EMBED_IN_FLIGHT;
+        public int commitChunks = 512;
+        public int queueCapacity = 64;
+        public IndexManifest manifest;  // null: index everything, record nothing
+    }
+
+    /**
+     * Progress or final counts
+     */
+    public static class Progress {
+        public final int filesFound;
+        public final int filesIndexed;   // read, non-empty, chunked
+        public final int filesUnchanged; // skipped by the manifest
+        public final int filesRemoved;   // in the manifest, gone from disk
+        public final int filesEmpty;
+        public final int filesFailed;
+        public final int chunks;
+        public final int chunksReused;   // already in the vault, not embedded
+        public final int chunksEmbedded;
+        public final int embedFailures;
+        public final int added;
+        public final int deduped;
+        public final int tombstoned;
+        public final int rejected;
+        public final int commits;
+        public final long elapsedMs;
+        public final boolean done;
+        public final boolean cancelled;
+
+        Progress(IngestPipeline p, boolean done) {
+            this.filesFound = p.filesFound.get();
+            this.filesIndexed = p.filesIndexed.get();
+            this.filesUnchanged = p.filesUnchanged.get();
+            this.filesRemoved = p.filesRemoved.get();
+            this.filesEmpty = p.filesEmpty.get();
+            this.filesFailed = p.filesFailed.get();
+            this.chunks = p.chunks.get();
+            this.chunksReused = p.chunksReused.get();
+            this.chunksEmbedded = p.chunksEmbedded.get();
+            this.embedFailures = p.embedFailures.get();
+            this.added = p.added.get();
+            this.deduped = p.deduped.get();
+            this.tombstoned = p.tombstoned.get();
+            this.rejected = p.rejected.get();
+            this.commits = p.commits.get();
+            this.elapsedMs = (System.nanoTime() - p.startedNanos) / 1_000_000;
+            this.done = done;
+            this.cancelled = p.cancelled;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                "%s%d/%d files (%d unchanged, %d removed, %d empty, %d failed), %d chunks (%d reused, %d embedded, %d failed),"
+                    + " %d added, %d deduped, %d tombstoned, %d rejected, %d commits, %.1fs",
+                cancelled ? "CANCELLED " : "", filesIndexed, filesFound, filesUnchanged, filesRemoved, filesEmpty, filesFailed,
+                chunks, chunksReused, chunksEmbedded, embedFailures,
+                added, deduped, tombstoned, rejected, commits, elapsedMs / 1000.0);
+        }
+    }
+
+    public interface Listener {
+        void onProgress(Progress progress);
+    }
+
+    /**
+     * A file to read; source is the path relative to the root directory
+     * (just the file name for files directly in it, as index_path always used)
+     */
+    private static final class FileTask {
+        final Path path;
+        final String source;
+        final long size;
+        final long mtime;
+
+        FileTask(Path path, String source, long size, long mtime) {
+            this.path = path;
+            this.source = source;
+            this.size = size;
+            this.mtime = mtime;
+        }
+    }
+
+    /**
+     * A file being chunked and stored, with the hash of its bytes (null
+     * without a manifest). remaining counts chunks not yet stored plus one
+     * hold released at end of file, so it reaches zero exactly once.
+     */
+    private static final class FileState {
+        final FileTask file;
+        final String sha256;
+        final AtomicInteger remaining = new AtomicInteger(1);
+        volatile boolean failed;
+        private int[] rows = new int[16];  // rows[i] = vault row of chunk i, guarded by this
+        private int count;
+
+        FileState(FileTask file, String sha256) {
+            this.file = file;
+            this.sha256 = sha256;
+        }
+
+        synchronized void setRow(int chunk, int row) {
+            if (chunk >= rows.length) rows = Arrays.copyOf(rows, Math.max(chunk + 1, rows.length * 2));
+            rows[chunk] = row;
+            count = Math.max(count, chunk + 1);
+        }
+
+        synchronized int[] rows() {
+            return Arrays.copyOf(rows, count);
+        }
+    }
+
+    /**
+     * One streamed chunk, or (text == null) the end of its file
+     */
+    private static final class Part {
+        final FileState file;
+        final int index;
+        final String text;
+
+        Part(FileState file, int index, String text) {
+            this.file = file;
+            this.index = index;
+            this.text = text;
+        }
+    }
+
+    /**
+     * One chunk on its way through the embedder and writer
+     */
+    private static final class Piece {
+        final FileState file;
+        final VectorVault.Chunk chunk;
+
+        Piece(FileState file, VectorVault.Chunk chunk) {
+            this.file = file;
+            this.chunk = chunk;
+        }
+    }
+
+    private static final FileTask END_OF_FILES = new FileTask(Paths.get(""), "", 0, 0);
+    private static final Part END_OF_PARTS = new Part(null, -1, null);
+    private static final List<Piece> END_OF_CHUNKS = new ArrayList<>();
+
+    private final VectorVault vault;
+    private final Transmudder soul;
+    private final OllamaSpine brain;
+    private final Options options;
+    private final Listener listener;
+    private final IndexManifest manifest;
+
+    private final BlockingQueue<FileTask> files;
+    private final BlockingQueue<Part> parts;
+    private final BlockingQueue<List<Piece>> batches;
+    private final BlockingQueue<List<Piece>> embedded;
+    private final ExecutorService stages;
+    private final CompletableFuture<Progress> result = new CompletableFuture<>();
+    private final Set<String> seenSources = ConcurrentHashMap.newKeySet();
+    private final Set<String> skippedPaths = ConcurrentHashMap.newKeySet();  // unreadable: keep their entries
+    private volatile boolean walkComplete;
+    private volatile boolean cancelled;
+
+    private final AtomicInteger filesFound = new AtomicInteger();
+    private final AtomicInteger filesIndexed = new AtomicInteger();
+    private final AtomicInteger filesUnchanged = new AtomicInteger();
+    private final AtomicInteger filesRemoved = new AtomicInteger();
+    private final AtomicInteger filesEmpty = new AtomicInteger();
+    private final AtomicInteger filesFailed = new AtomicInteger();
+    private final AtomicInteger chunks = new AtomicInteger();
+    private final AtomicInteger chunksReused = new AtomicInteger();
+    private final AtomicInteger chunksEmbedded = new AtomicInteger();
+    private final AtomicInteger embedFailures = new AtomicInteger();
+    private final AtomicInteger added = new AtomicInteger();
+    private final AtomicInteger deduped = new AtomicInteger();
+    private final AtomicInteger tombstoned = new AtomicInteger();
+    private final AtomicInteger rejected = new AtomicInteger();
+    private final AtomicInteger commits = new AtomicInteger();
+    private final long startedNanos = System.nanoTime();
+    private long lastProgressNanos;
+
+    private IngestPipeline(VectorVault vault, Transmudder soul, OllamaSpine brain, Options options, Listener listener) {
+        this.vault = vault;
+        this.soul = soul;
+        this.brain = brain;
+        this.options = options;
+        this.listener = listener;
+        this.manifest = options.manifest;
+        int cap = Math.max(1, options.queueCapacity);
+        this.files = new ArrayBlockingQueue<>(cap);
+        this.parts = new ArrayBlockingQueue<>(cap);
+        this.batches = new ArrayBlockingQueue<>(cap);
+        this.embedded = new ArrayBlockingQueue<>(cap);
+        AtomicInteger n = new AtomicInteger();
+        this.stages = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "ingest-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Start ingesting root (a directory or a single file) in the background
+     */
+    public static IngestPipeline start(Path root, VectorVault vault, Transmudder soul, OllamaSpine brain,
+                                       Options options, Listener listener) {
+        IngestPipeline p = new IngestPipeline(vault, soul, brain, options, listener);
+        p.run(root);
+        return p;
+    }
+
+    private void run(Path root) {
+        int readers = Math.max(1, options.readers);
+        AtomicInteger readersLeft = new AtomicInteger(readers);
+
+        Path base = Files.isDirectory(root) ? root : root.getParent();
+        stages.execute(() -> walk(root, base, readers));
+        for (int i = 0; i < readers; i++) {
+            stages.execute(() -> read(readersLeft));
+        }
+        stages.execute(this::batch);
+        stages.execute(this::embed);
+        stages.execute(this::write);
+    }
+
+    /**
+     * Stop reading and embedding; already embedded chunks are committed
+     */
+    public void cancel() {
+        cancelled = true;  // each stage skips what is left, so the end markers still flow through
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public Progress progress() {
+        return new Progress(this, result.isDone());
+    }
+
+    /**
+     * Completes with the final counts when the writer has committed everything
+     */
+    public CompletableFuture<Progress> result() {
+        return result;
+    }
+
+    public Progress await() {
+        return result.join();
+    }
+
+    // ---- Stages ----
+
+    /**
+     * Files vanishing mid-walk (editor save-and-rename) and unreadable
+     * entries are skipped one by one, so the pass still completes and
+     * deletions are still tombstoned
+     */
+    private void walk(Path root, Path base, int readers) {
+        boolean[] interrupted = new boolean[1];
+        try {
+            if (Files.isRegularFile(root)) {
+                offer(root, base);
+            } else {
+                Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path d, BasicFileAttributes attrs) {
+                        return cancelled ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path f, BasicFileAttributes attrs) {
+                        if (cancelled) return FileVisitResult.TERMINATE;
+                        if (!Files.isRegularFile(f) || !wanted(f)) return FileVisitResult.CONTINUE;
+                        try {
+                            offer(f, base);
+                        } catch (InterruptedException e) {
+                            interrupted[0] = true;
+                            return FileVisitResult.TERMINATE;
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path f, IOException e) {
+                        if (e instanceof NoSuchFileException) return FileVisitResult.CONTINUE;  // vanished
+                        if (Files.isDirectory(f) || wanted(f)) skipped(f, base, e);
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            }
+            walkComplete = !cancelled && !interrupted[0];
+        } catch (IOException e) {
+            System.err.println(">>> [INGEST] Walk failed: " + e.getMessage());
+        } catch (InterruptedException e) {
+            interrupted[0] = true;
+        } finally {
+            if (interrupted[0]) Thread.currentThread().interrupt();
+            for (int i = 0; i < readers; i++) putQuietly(files, END_OF_FILES);
+        }
+    }
+
+    /**
+     * Queue a file for reading unless the manifest says it is unchanged
+     */
+    private void offer(Path f, Path base) throws InterruptedException {
+        String source = sourceOf(f, base);
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(f, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return;  // gone since the walk listed it: treated as deleted
+        } catch (IOException e) {
+            skipped(f, base, e);
+            return;
+        }
+        seenSources.add(source);
+        filesFound.incrementAndGet();
+        long mtime = attrs.lastModifiedTime().toMillis();
+        if (manifest != null && manifest.unchanged(source, attrs.size(), mtime, options.chunkSize, options.overlap)) {
+            filesUnchanged.incrementAndGet();
+            return;
+        }
+        files.put(new FileTask(f, source, attrs.size(), mtime));
+    }
+
+    /**
+     * An entry that could not be read: count it and keep whatever the
+     * manifest holds for it (or, for a directory, for everything under it)
+     */
+    private void skipped(Path f, Path base, IOException e) {
+        skippedPaths.add(sourceOf(f, base));
+        filesFailed.incrementAndGet();
+        System.err.println(">>> [INGEST] Skipped " + f + ": " + e);
+    }
+
+    private static String sourceOf(Path f, Path base) {
+        return base == null ? f.getFileName().toString() : base.relativize(f).toString();
+    }
+
+    private boolean underSkipped(String source) {
+        for (String skipped : skippedPaths) {
+            if (skipped.isEmpty() || source.equals(skipped)
+                    || source.startsWith(skipped) && source.charAt(skipped.length()) == File.separatorChar) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean wanted(Path f) {
+        String name = f.getFileName().toString().toLowerCase(Locale.ROOT);
+        for (String ext : options.extensions) {
+            if (name.endsWith(ext)) return true;
+        }
+        return false;
+    }
+
+    private void read(AtomicInteger readersLeft) {
+        try {
+            while (true) {
+                FileTask f = files.take();
+                if (f == END_OF_FILES) break;
+                if (cancelled) continue;
+                String sha256 = null;
+                try {
+                    if (manifest != null) {
+                        sha256 = IndexManifest.sha256(f.path);
+                        if (manifest.sameContent(f.source, f.size, f.mtime, sha256, options.chunkSize, options.overlap)) {
+                            filesUnchanged.incrementAndGet();
+                            continue;
+                        }
+                    }
+                } catch (IOException e) {
+                    filesFailed.incrementAndGet();
+                    System.err.println(">>> [INGEST] Read failed for " + f.path + ": " + e.getMessage());
+                    continue;
+                }
+
+                FileState state = new FileState(f, sha256);
+                try {
+                    int n = soul.streamChunks(f.path, options.chunkSize, options.overlap, (index, text) -> {
+                        if (cancelled) {
+                            state.failed = true;
+                            return false;
+                        }
+                        parts.put(new Part(state, index, text));
+                        return true;
+                    });
+                    if (n == 0) {
+                        filesEmpty.incrementAndGet();  // recorded anyway: drops the rows of a non-empty version
+                    } else if (!state.failed) {
+                        filesIndexed.incrementAndGet();
+                    }
+                } catch (IOException | RuntimeException e) {
+                    state.failed = true;
+                    filesFailed.incrementAndGet();
+                    System.err.println(">>> [INGEST] Read failed for " + f.path + ": " + e.getMessage());
+                }
+                parts.put(new Part(state, -1, null));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (readersLeft.decrementAndGet() == 0) putQuietly(parts, END_OF_PARTS);
+        }
+    }
+
+    private void batch() {
+        int batchSize = Math.max(1, options.embedBatch);
+        List<Piece> batch = new ArrayList<>(batchSize);
+        try {
+            while (true) {
+                Part part = parts.take();
+                if (part == END_OF_PARTS) break;
+                FileState state = part.file;
+                if (part.text == null) {
+                    release(state);  // end of file
+                    continue;
+                }
+                if (cancelled) {
+                    state.failed = true;
+                    continue;
+                }
+                chunks.incrementAndGet();
+
+                // Chunks the vault already holds need no embedding
+                String source = state.file.source;
+                int row = vault.findRow(source, part.index, part.text);
+                if (row >= 0) {
+                    state.setRow(part.index, row);
+                    chunksReused.incrementAndGet();
+                    continue;
+                }
+                state.remaining.incrementAndGet();
+                batch.add(new Piece(state, new VectorVault.Chunk(source, part.index, part.text, null)));
+                if (batch.size() == batchSize) {
+                    batches.put(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty() && !cancelled) batches.put(batch);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            putQuietly(batches, END_OF_CHUNKS);
+        }
+    }
+
+    private void embed() {
+        int inFlight = Math.max(1, options.embedInFlight);
+        Semaphore slots = new Semaphore(inFlight);
+        try {
+            while (true) {
+                List<Piece> batch = batches.take();
+                if (batch == END_OF_CHUNKS) break;
+                if (cancelled) continue;
+
+                slots.acquire();
+                List<String> texts = new ArrayList<>(batch.size());
+                for (Piece p : batch) texts.add(p.chunk.text);
+                brain.embedBatchAsync(texts, Priority.BACKGROUND).whenComplete((vectors, error) -> {
+                    try {
+                        List<Piece> out = new ArrayList<>(batch.size());
+                        for (int i = 0; i < batch.size(); i++) {
+                            float[] v = error == null && i < vectors.size() ? vectors.get(i) : null;
+                            Piece p = batch.get(i);
+                            if (v == null || v.length == 0) {
+                                embedFailures.incrementAndGet();
+                                pieceDone(p, -1);
+                                continue;
+                            }
+                            VectorVault.Chunk c = p.chunk;
+                            out.add(new Piece(p.file, new VectorVault.Chunk(c.source, c.chunkIndex, c.text, v)));
+                        }
+                        chunksEmbedded.addAndGet(out.size());
+                        if (!out.isEmpty()) putQuietly(embedded, out);
+                    } finally {
+                        slots.release();
+                    }
+                });
+            }
+            slots.acquire(inFlight);  // wait for the requests still open
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            putQuietly(embedded, END_OF_CHUNKS);
+        }
+    }
+
+    private void write() {
+        int commitChunks = Math.max(1, options.commitChunks);
+        List<Piece> pending = new ArrayList<>();
+        try {
+            while (true) {
+                List<Piece> next = embedded.poll(200, TimeUnit.MILLISECONDS);
+                if (next == END_OF_CHUNKS) break;
+                if (next != null) pending.addAll(next);
+                // Commit when the group is large enough, or the stream has paused
+                if (pending.size() >= commitChunks || (next == null && !pending.isEmpty())) {
+                    commit(pending);
+                    pending = new ArrayList<>();
+                }
+                maybeReport();
+            }
+            if (!pending.isEmpty()) commit(pending);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            System.err.println(">>> [INGEST] Writer failed: " + e.getMessage());
+            abandon(pending);
+        } finally {
+            if (manifest != null) finishManifest();
+            Progress last = new Progress(this, true);
+            stages.shutdown();
+            if (listener != null) {
+                try {
+                    listener.onProgress(last);
+                } catch (RuntimeException e) {
+                    System.err.println(">>> [INGEST] Progress listener failed: " + e.getMessage());
+                }
+            }
+            System.out.println(">>> [INGEST] " + last);
+            result.complete(last);
+        }
+    }
+
+    /**
+     * The vault refused a commit: cancel the run and keep taking from
+     * embedded until the end marker, so the embed callbacks (and through
+     * them the readers) are never left blocked on a full queue
+     */
+    private void abandon(List<Piece> uncommitted) {
+        cancelled = true;
+        for (Piece p : uncommitted) pieceDone(p, -1);
+        try {
+            while (true) {
+                List<Piece> next = embedded.take();
+                if (next == END_OF_CHUNKS) break;
+                for (Piece p : next) pieceDone(p, -1);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void commit(List<Piece> group) {
+        List<VectorVault.Chunk> chunkList = new ArrayList<>(group.size());
+        for (Piece p : group) chunkList.add(p.chunk);
+        VectorVault.AddResult r = vault.addAll(chunkList);
+        added.addAndGet(r.added);
+        deduped.addAndGet(r.deduped);
+        rejected.addAndGet(r.rejected);
+        commits.incrementAndGet();
+        for (int i = 0; i < group.size(); i++) {
+            pieceDone(group.get(i), r.rows[i]);
+        }
+    }
+
+    // ---- Manifest bookkeeping ----
+
+    /**
+     * A chunk was stored (row) or lost (-1); the last one completes its file
+     */
+    private void pieceDone(Piece p, int row) {
+        FileState state = p.file;
+        if (row < 0) {
+            state.failed = true;
+        } else {
+            state.setRow(p.chunk.chunkIndex, row);
+        }
+        release(state);
+    }
+
+    private void release(FileState state) {
+        if (state.remaining.decrementAndGet() == 0) fileDone(state);
+    }
+
+    /**
+     * Every chunk of a file is stored: record it and tombstone the rows
+     * only the previous version had. A file with lost chunks keeps its old
+     * entry, so the next run retries it.
+     */
+    private void fileDone(FileState state) {
+        if (manifest == null || state.failed) return;
+        FileTask f = state.file;
+        int[] rows = state.rows();
+        IndexManifest.Entry old = manifest.put(f.source, new IndexManifest.Entry(
+            f.size, f.mtime, state.sha256, options.chunkSize, options.overlap, rows));
+        if (old != null && old.rows != null) {
+            Set<Integer> keep = new HashSet<>();
+            for (int r : rows) keep.add(r);
+            int[] stale = Arrays.stream(old.rows).filter(r -> !keep.contains(r)).toArray();
+            tombstoned.addAndGet(vault.tombstone(stale));
+        }
+    }
+
+    /**
+     * Drop files that disappeared (only after a complete walk), then save
+     */
+    private void finishManifest() {
+        if (walkComplete && !cancelled) {
+            for (String source : manifest.sources()) {
+                if (seenSources.contains(source) || underSkipped(source)) continue;
+                IndexManifest.Entry gone = manifest.remove(source);
+                if (gone != null && gone.rows != null) tombstoned.addAndGet(vault.tombstone(gone.rows));
+                filesRemoved.incrementAndGet();
+            }
+        }
+        try {
+            manifest.save();
+        } catch (IOException e) {
+            System.err.println(">>> [INGEST] Manifest save failed: " + e.getMessage());
+        }
+    }
+
+    private void maybeReport() {
+        if (listener == null) return;
+        long now = System.nanoTime();
+        if (now - lastProgressNanos < 1_000_000_000L) return;
+        lastProgressNanos = now;
+        try {
+            listener.onProgress(new Progress(this, false));
+        } catch (RuntimeException e) {
+            System.err.println(">>> [INGEST] Progress listener failed: " + e.getMessage());
+        }
+    }
+
+    private static <T> void putQuietly(BlockingQueue<T> queue, T item) {
+        try {
+            queue.put(item);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package gemini.root;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+/**
+ * Int8Quantizer: Scalar quantization with a per-vector scale
+ *
+ * Record: scale(float) + dim signed bytes, value ~= byte * scale.
+ * 4x smaller than float32 and usually loses well under 1% of recall@10
+ * once candidates are reranked.
+ */
+final class Int8Quantizer extends VectorQuantizer {
+
+    static final String FILE = "codes.i8";
+    private static final int MAGIC = 0x46565138;  // "FVQ8"
+
+    Int8Quantizer(Path dir, int dim) throws IOException {
+        super(dir.resolve(FILE), MAGIC, dim, Float.BYTES + dim);
+    }
+
+    @Override
+    boolean isReady() {
+        return true;
+    }
+
+    @Override
+    protected void encode(float[] v, ByteBuffer out) {
+        float maxAbs = 0f;
+        for (float x : v) maxAbs = Math.max(maxAbs, Math.abs(x));
+        float scale = maxAbs == 0f ? 1f : maxAbs / 127f;
+        float inv = 1f / scale;
+
+        out.putFloat(scale);
+        for (float x : v) {
+            out.put((byte) Math.max(-127, Math.min(127, Math.round(x * inv))));
+        }
+    }
+
+    @Override
+    QueryScorer prepare(float[] q) {
+        final MappedColumn column = codes;
+        return row -> {
+            ByteBuffer b = column.bytes(row);
+            int off = column.offset(row);
+            float scale = b.getFloat(off);
+            off += Float.BYTES;
+            float dot = 0f;
+            for (int i = 0; i < dim; i++) {
+                dot += q[i] * b.get(off + i);
+            }
+            return dot * scale;
+        };
+    }
+}
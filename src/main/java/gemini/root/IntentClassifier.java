@@ -0,0 +1,288 @@
+package gemini.root;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * IntentClassifier: Local fast path in front of the tool planner
+ *
+ * Most chat messages need no tool, yet each one costs a planner LLM round
+ * trip to find that out. This classifier answers the easy "no tool" cases
+ * in-process and leaves everything else to the planner.
+ *
+ * Model:
+ * - Logistic regression over hashed features (word unigrams + bigrams,
+ *   digit/operator/path shape flags) in 2^16 buckets
+ * - Seeded from a small built-in set of labelled messages
+ * - Learns online from every planner decision it sees
+ * - Weights persist across restarts (save/load)
+ *
+ * Rules (veto only):
+ * - Arithmetic, file paths, file/index/write verbs and recall phrases
+ *   ("earlier", "remember", "you said") always go to the planner
+ *
+ * Decision:
+ * - Skip the planner only if no rule fires and p(tool) < skipBelow
+ * - A sample (auditRate) of skipped messages still runs the planner in the
+ *   background to measure disagreement without delaying the answer
+ *
+ * Stats: skips, planner calls, audits, disagreements, saved planner time
+ */
+public class IntentClassifier {
+
+    public static final double DEFAULT_SKIP_BELOW = 0.2;
+    public static final double DEFAULT_AUDIT_RATE = 0.05;
+    public static final String FILE = "intent.model";
+
+    private static final int BITS = 16;
+    private static final int DIM = 1 << BITS;
+    private static final double LEARNING_RATE = 0.2;
+    private static final int SEED_EPOCHS = 30;
+    private static final int MAGIC = 0x494E5431;  // "INT1"
+
+    private static final Pattern ARITHMETIC = Pattern.compile("\\d\\s*[-+*/^%]\\s*[\\d(]|\\b(sqrt|sin|cos|log)\\s*\\(");
+    private static final Pattern PATH = Pattern.compile("(^|\\s)(\\.{0,2}/|~/|[a-zA-Z]:\\\\)\\S|\\S\\.(java|md|txt|pdf|json|py|js|csv|log|xml|gradle)\\b");
+    private static final Pattern TOOL_WORDS = Pattern.compile(
+        "\\b(calculate|compute|evaluate|index|ingest|list files|list the files|directory|folder|write (a |the )?file|save (it|this|that) to|create (a )?file)\\b");
+    private static final Pattern RECALL_WORDS = Pattern.compile(
+        "\\b(remember|recall|earlier|previously|last time|you said|i told you|we discussed|memory|memories)\\b");
+
+    /**
+     * One classification: the probability and whether the planner can be skipped
+     */
+    public static class Decision {
+        public final double toolProbability;
+        public final boolean skipPlanner;
+        public final boolean audit;
+        public final String rule;  // rule that forced the planner, or null
+
+        Decision(double toolProbability, boolean skipPlanner, boolean audit, String rule) {
+            this.toolProbability = toolProbability;
+            this.skipPlanner = skipPlanner;
+            this.audit = audit;
+            this.rule = rule;
+        }
+    }
+
+    private final double skipBelow;
+    private final double auditRate;
+
+    // Guarded by this
+    private final float[] weights = new float[DIM];
+    private float bias;
+
+    private final AtomicLong decisions = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong ruleVetoes = new AtomicLong();
+    private final AtomicLong plannerCalls = new AtomicLong();
+    private final AtomicLong plannerNone = new AtomicLong();  // planner ran and chose no tool
+    private final AtomicLong audits = new AtomicLong();
+    private final AtomicLong disagreements = new AtomicLong();
+    private final AtomicLong plannerMsTotal = new AtomicLong();
+
+    public IntentClassifier(double skipBelow, double auditRate) {
+        this.skipBelow = skipBelow;
+        this.auditRate = auditRate;
+        seed();
+    }
+
+    /**
+     * Classify a user message (microseconds; no I/O)
+     */
+    public Decision decide(String message) {
+        decisions.incrementAndGet();
+        double p = probability(message);
+        String rule = rule(message);
+        if (rule != null) {
+            ruleVetoes.incrementAndGet();
+            return new Decision(p, false, false, rule);
+        }
+        if (p >= skipBelow) {
+            return new Decision(p, false, false, null);
+        }
+        skipped.incrementAndGet();
+        boolean audit = auditRate > 0 && ThreadLocalRandom.current().nextDouble() < auditRate;
+        return new Decision(p, true, audit, null);
+    }
+
+    /**
+     * Feed back a planner decision for a message the planner saw
+     * @param needsTool Planner chose at least one tool
+     * @param plannerMs Planner round trip, for the saved-latency estimate
+     */
+    public void plannerResult(String message, boolean needsTool, long plannerMs) {
+        plannerCalls.incrementAndGet();
+        plannerMsTotal.addAndGet(plannerMs);
+        if (!needsTool) plannerNone.incrementAndGet();
+        learn(message, needsTool);
+    }
+
+    /**
+     * Feed back a background audit of a skipped message
+     * @return true if the planner disagreed (it wanted a tool)
+     */
+    public boolean auditResult(String message, boolean needsTool) {
+        audits.incrementAndGet();
+        learn(message, needsTool);
+        if (!needsTool) return false;
+        disagreements.incrementAndGet();
+        return true;
+    }
+
+    static String rule(String message) {
+        String m = message.toLowerCase(Locale.ROOT);
+        if (ARITHMETIC.matcher(m).find()) return "arithmetic";
+        if (PATH.matcher(message).find()) return "path";
+        if (TOOL_WORDS.matcher(m).find()) return "tool-verb";
+        if (RECALL_WORDS.matcher(m).find()) return "recall";
+        return null;
+    }
+
+    // ---- Model ----
+
+    public synchronized double probability(String message) {
+        double z = bias;
+        for (int f : features(message)) z += weights[f];
+        return 1.0 / (1.0 + Math.exp(-z));
+    }
+
+    /**
+     * One SGD step on the log loss
+     */
+    public synchronized void learn(String message, boolean needsTool) {
+        int[] feats = features(message);
+        double z = bias;
+        for (int f : feats) z += weights[f];
+        double p = 1.0 / (1.0 + Math.exp(-z));
+        double g = (needsTool ? 1.0 : 0.0) - p;
+        float step = (float) (LEARNING_RATE * g);
+        bias += step;
+        for (int f : feats) weights[f] += step;
+    }
+
+    static int[] features(String message) {
+        String lower = message.toLowerCase(Locale.ROOT);
+        String[] words = lower.split("[^\\p{L}\\p{N}]+");
+        int[] out = new int[words.length * 2 + 3];
+        int n = 0;
+        String prev = "^";
+        for (String w : words) {
+            if (w.isEmpty()) continue;
+            out[n++] = bucket("w:" + w);
+            out[n++] = bucket("b:" + prev + " " + w);
+            prev = w;
+        }
+        if (lower.chars().anyMatch(Character::isDigit)) out[n++] = bucket("#digit");
+        if (lower.indexOf('/') >= 0 || lower.indexOf('\\') >= 0) out[n++] = bucket("#slash");
+        if (lower.endsWith("?")) out[n++] = bucket("#question");
+        return Arrays.copyOf(out, n);
+    }
+
+    private static int bucket(String feature) {
+        int h = feature.hashCode() * 0x9E3779B9;
+        return h >>> (32 - BITS);
+    }
+
+    private void seed() {
+        String[] none = {
+            "what is a vector database",
+            "explain how hnsw works",
+            "hello",
+            "hi there, how are you?",
+            "thanks!",
+            "why is the sky blue",
+            "summarize the architecture of this project",
+            "what does the reflector do",
+            "how do embeddings capture meaning",
+            "tell me about quantum entanglement",
+            "can you explain that in simpler terms?",
+            "what are the tradeoffs between bm25 and dense retrieval",
+            "write a haiku about the ocean",
+            "give me three ideas for a blog post",
+            "what is the difference between a process and a thread",
+            "how does garbage collection work in java",
+            "who wrote the origin of species",
+            "describe the fraymus system",
+            "what's your opinion on functional programming",
+            "continue",
+            "ok, go on",
+            "rewrite the previous answer more concisely",
+        };
+        String[] tool = {
+            "what is 17 * 23",
+            "calculate 2^10 + 5",
+            "compute the square root of 144",
+            "what did we talk about earlier",
+            "do you remember what i said about the project",
+            "search my memory for the meeting notes",
+            "list files in /home/user/docs",
+            "show me the files in the src folder",
+            "write a file called notes.txt with my todo list",
+            "save this to output.md",
+            "index the directory /data/papers",
+            "ingest ./docs into the vault",
+            "what was the last thing you told me",
+            "how much is 15% of 240",
+        };
+        for (int epoch = 0; epoch < SEED_EPOCHS; epoch++) {
+            for (int i = 0; i < Math.max(none.length, tool.length); i++) {
+                if (i < none.length) learn(none[i], false);
+                if (i < tool.length) learn(tool[i], true);
+            }
+        }
+    }
+
+    // ---- Persistence ----
+
+    public synchronized void save(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        Path tmp = dir.resolve(FILE + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(DIM);
+            out.writeFloat(bias);
+            for (float w : weights) out.writeFloat(w);
+        }
+        Files.move(tmp, dir.resolve(FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Replace the seeded weights with saved ones, if a compatible file exists
+     * @return true if weights were loaded
+     */
+    public synchronized boolean load(Path dir) throws IOException {
+        Path file = dir.resolve(FILE);
+        if (!Files.exists(file)) return false;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != DIM) return false;
+            bias = in.readFloat();
+            for (int i = 0; i < DIM; i++) weights[i] = in.readFloat();
+        }
+        return true;
+    }
+
+    // ---- Stats ----
+
+    /**
+     * @return average planner round trip seen so far (0 before the first)
+     */
+    public long averagePlannerMs() {
+        long calls = plannerCalls.get();
+        return calls == 0 ? 0 : plannerMsTotal.get() / calls;
+    }
+
+    public String stats() {
+        long d = decisions.get();
+        long s = skipped.get();
+        long a = audits.get();
+        return String.format(Locale.ROOT,
+            "messages=%d skipped=%d (%.1f%%) ruleVetoes=%d plannerCalls=%d plannerNone=%d audits=%d disagreements=%d (%.1f%%) avgPlannerMs=%d savedMs~%d",
+            d, s, d == 0 ? 0.0 : 100.0 * s / d, ruleVetoes.get(), plannerCalls.get(), plannerNone.get(),
+            a, disagreements.get(), a == 0 ? 0.0 : 100.0 * disagreements.get() / a,
+            averagePlannerMs(), s * averagePlannerMs());
+    }
+}
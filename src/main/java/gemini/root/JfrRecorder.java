@@ -0,0 +1,124 @@
+package gemini.root;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+
+/**
+ * JfrRecorder: In-process Flight Recorder control (JFR START / DUMP / STOP)
+ *
+ * Settings:
+ * - The JDK "default" profile (low overhead, safe in production) with
+ *   the fraymus.jfc preset laid over it: the fraymus.* events (Ollama
+ *   calls, vault searches) plus tighter thresholds on the JDK events
+ *   that explain a latency spike (monitor waits, parks, socket and file I/O)
+ * - The same preset works at launch:
+ *   -XX:StartFlightRecording:settings=default,settings=src/main/resources/fraymus.jfc
+ *
+ * Recording:
+ * - Kept on disk as a rolling window (MAX_AGE / MAX_SIZE), so a dump
+ *   always holds the minutes before the spike someone is asking about
+ * - dump() copies the window to recordings/ and keeps recording
+ * - Events cost nothing beyond an isEnabled() check until a recording
+ *   enables them
+ */
+public class JfrRecorder {
+
+    public static final String PRESET = "/fraymus.jfc";
+    private static final Duration MAX_AGE = Duration.ofMinutes(30);
+    private static final long MAX_SIZE = 256L * 1024 * 1024;
+    private static final Path DUMP_DIR = Paths.get("recordings");
+    private static final DateTimeFormatter STAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private static Recording recording;
+
+    private JfrRecorder() { }
+
+    /**
+     * Start the rolling recording (no-op if one is running)
+     * @return false if it was already running
+     */
+    public static synchronized boolean start() throws IOException {
+        if (running()) return false;
+        Recording r = new Recording(settings());
+        r.setName("fraymus");
+        r.setToDisk(true);
+        r.setMaxAge(MAX_AGE);
+        r.setMaxSize(MAX_SIZE);
+        r.start();
+        recording = r;
+        System.out.println(">>> [JFR] Recording started (window " + MAX_AGE.toMinutes() + " min)");
+        return true;
+    }
+
+    /**
+     * Write the recording so far to recordings/fraymus-<time>.jfr; the
+     * recording keeps running
+     * @return The file written
+     */
+    public static synchronized Path dump() throws IOException {
+        if (!running()) throw new IOException("no recording running (JFR START first)");
+        Files.createDirectories(DUMP_DIR);
+        Path file = DUMP_DIR.resolve("fraymus-" + LocalDateTime.now().format(STAMP) + ".jfr").toAbsolutePath();
+        recording.dump(file);
+        System.out.println(">>> [JFR] Dumped " + file);
+        return file;
+    }
+
+    /**
+     * Stop and discard the recording
+     * @return false if none was running
+     */
+    public static synchronized boolean stop() {
+        if (recording == null) return false;
+        boolean wasRunning = running();
+        recording.close();
+        recording = null;
+        return wasRunning;
+    }
+
+    public static synchronized String status() {
+        if (!running()) return "OFF";
+        return "ON since " + recording.getStartTime() + " size=" + recording.getSize() / 1024 + "KB"
+            + " window=" + MAX_AGE.toMinutes() + "min";
+    }
+
+    private static boolean running() {
+        return recording != null && recording.getState() == RecordingState.RUNNING;
+    }
+
+    /**
+     * The "default" profile with the preset's settings on top
+     */
+    static Map<String, String> settings() throws IOException {
+        Map<String, String> settings;
+        try {
+            settings = new HashMap<>(Configuration.getConfiguration("default").getSettings());
+        } catch (ParseException e) {
+            throw new IOException("JDK default JFR profile unreadable: " + e.getMessage(), e);
+        }
+        InputStream in = JfrRecorder.class.getResourceAsStream(PRESET);
+        if (in == null) {
+            System.err.println(">>> [JFR] " + PRESET + " not on the classpath; using the default profile only");
+            return settings;
+        }
+        try (Reader preset = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            settings.putAll(Configuration.create(preset).getSettings());
+        } catch (ParseException e) {
+            throw new IOException(PRESET + " is not a valid .jfc: " + e.getMessage(), e);
+        }
+        return settings;
+    }
+}
@@ -1,5 +1,6 @@
 package gemini.root;
 
+import fraymus.LlmScheduler.Priority;
 import fraymus.OllamaSpine;
 import com.google.gson.*;
 import java.util.*;
@@ -92,7 +93,7 @@ public class KnowledgeSynthesis {
         );
         
         try {
-            String result = brain.chatOnce(msgs, null, Map.of("temperature", 0.1));
+            String result = brain.chatOnce(msgs, null, Map.of("temperature", 0.1), Priority.BACKGROUND);
             JsonObject obj = JsonParser.parseString(result).getAsJsonObject();
             JsonArray arr = obj.getAsJsonArray("contradictions");
             
@@ -163,7 +164,7 @@ public class KnowledgeSynthesis {
         );
         
         try {
-            String result = brain.chatOnce(msgs, null, Map.of("temperature", 0.4));
+            String result = brain.chatOnce(msgs, null, Map.of("temperature", 0.4), Priority.BACKGROUND);
             JsonObject obj = JsonParser.parseString(result).getAsJsonObject();
             JsonArray arr = obj.getAsJsonArray("connections");
             
@@ -231,7 +232,7 @@ public class KnowledgeSynthesis {
         );
         
         try {
-            String result = brain.chatOnce(msgs, null, Map.of("temperature", 0.5));
+            String result = brain.chatOnce(msgs, null, Map.of("temperature", 0.5), Priority.BACKGROUND);
             JsonObject obj = JsonParser.parseString(result).getAsJsonObject();
             JsonArray arr = obj.getAsJsonArray("hypotheses");
             
@@ -291,7 +292,7 @@ public class KnowledgeSynthesis {
             new OllamaSpine.Msg("user", prompt)
         );
         
-        return brain.chatOnce(msgs, null, Map.of("temperature", 0.6));
+        return brain.chatOnce(msgs, null, Map.of("temperature", 0.6), Priority.BACKGROUND);
     }
     
     /**
@@ -323,7 +324,7 @@ public class KnowledgeSynthesis {
             new OllamaSpine.Msg("user", prompt)
         );
         
-        return brain.chatOnce(msgs, null, Map.of("temperature", 0.7));
+        return brain.chatOnce(msgs, null, Map.of("temperature", 0.7), Priority.BACKGROUND);
     }
     
     /**
@@ -0,0 +1,99 @@
+package gemini.root;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LatencyHistogram: Lock-free log-linear latency histogram (HDR-style)
+ *
+ * Buckets (microseconds):
+ * - Values below 2^SUB_BITS each get their own bucket
+ * - Above that, every power of two is split into 2^SUB_BITS equal
+ *   sub-buckets, so any recorded value is off by at most ~6%
+ * - MAX_MICROS (about 73 minutes) and beyond land in the last bucket
+ *
+ * record() is one bucket increment plus adders: no locks, no allocation,
+ * safe from any thread. Readers see a slightly moving picture, which is
+ * fine for percentiles.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 4;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int MAX_EXPONENT = 32;  // 2^32 us
+    static final long MAX_MICROS = (1L << MAX_EXPONENT) - 1;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 1) * SUB_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumMicros = new LongAdder();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    /**
+     * Record one duration given in nanoseconds
+     */
+    public void recordNanos(long nanos) {
+        recordMicros(Math.max(0, nanos) / 1_000);
+    }
+
+    public void recordMicros(long micros) {
+        long v = Math.min(Math.max(0, micros), MAX_MICROS);
+        counts.incrementAndGet(index(v));
+        count.increment();
+        sumMicros.add(v);
+        long max;
+        while (v > (max = maxMicros.get()) && !maxMicros.compareAndSet(max, v)) { }
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public long sumMicros() {
+        return sumMicros.sum();
+    }
+
+    public long maxMicros() {
+        return maxMicros.get();
+    }
+
+    /**
+     * Value at quantile q (0..1), in microseconds: the upper edge of the
+     * bucket holding it, capped at the recorded max (0 if empty)
+     */
+    public long percentileMicros(double q) {
+        long total = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(Math.min(1.0, Math.max(0.0, q)) * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) return Math.min(upper(i), maxMicros.get());
+        }
+        return maxMicros.get();
+    }
+
+    static int index(long v) {
+        if (v < SUB_COUNT) return (int) v;
+        int exp = 63 - Long.numberOfLeadingZeros(v);  // >= SUB_BITS
+        int sub = (int) (v >>> (exp - SUB_BITS)) & (SUB_COUNT - 1);
+        return (exp - SUB_BITS + 1) * SUB_COUNT + sub;
+    }
+
+    /**
+     * Largest value that maps to bucket i
+     */
+    static long upper(int i) {
+        if (i < SUB_COUNT) return i;
+        int exp = i / SUB_COUNT + SUB_BITS - 1;
+        int sub = i % SUB_COUNT;
+        long width = 1L << (exp - SUB_BITS);
+        return ((long) (SUB_COUNT + sub) << (exp - SUB_BITS)) + width - 1;
+    }
+}
@@ -0,0 +1,444 @@
+package gemini.root;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * LexicalIndex: BM25 inverted index over vault rows
+ *
+ * Catches what dense retrieval misses: exact identifiers, class names,
+ * error strings. Rows are indexed incrementally in id order as the vault
+ * appends them.
+ *
+ * Tokens:
+ * - Runs of letters, digits and '_' lowercased ("NullPointerException")
+ * - Plus their camelCase / snake_case parts ("null", "pointer", "exception")
+ * - A short stopword list is dropped
+ *
+ * Postings:
+ * - One growable byte[] per term: (doc delta, tf) pairs as varints
+ * - Blocks of 128 postings with a skip table (block start offset, last
+ *   doc), so a cursor can jump straight to the block holding a target doc
+ *
+ * Top-k (MaxScore):
+ * - Each term has a BM25 upper bound from its max tf and min doc length
+ * - Terms whose bounds together cannot beat the current k-th score are
+ *   "non-essential": they never drive candidate generation and are only
+ *   probed (via skips) for documents the essential terms produced
+ * - As the threshold rises more terms become non-essential, so long
+ *   posting lists of common terms are mostly skipped
+ *
+ * Persisted to fraymus_vault/lexical.idx at vault checkpoints and caught
+ * up from the stored texts on load.
+ *
+ * Not thread-safe on its own: VectorVault serialises writers against readers.
+ */
+public class LexicalIndex {
+
+    static final String FILE = "lexical.idx";
+
+    private static final int MAGIC = 0x46564C58;  // "FVLX"
+    private static final int FORMAT_VERSION = 1;
+    private static final int BLOCK = 128;
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+    private static final int NO_MORE = Integer.MAX_VALUE;
+
+    private static final Set<String> STOPWORDS = Set.of(
+        "a", "an", "and", "are", "as", "at", "be", "by", "for", "from", "has", "in", "is", "it",
+        "of", "on", "or", "that", "the", "this", "to", "was", "were", "will", "with");
+
+    private final Map<String, Postings> terms = new HashMap<>();
+    private int[] docLengths = new int[1024];
+    private int docs;
+    private long totalLength;
+
+    public int size() {
+        return docs;
+    }
+
+    public int terms() {
+        return terms.size();
+    }
+
+    public void clear() {
+        terms.clear();
+        docLengths = new int[1024];
+        docs = 0;
+        totalLength = 0;
+    }
+
+    /**
+     * Index the next row; ids must arrive in order 0, 1, 2, ...
+     */
+    public void add(int id, String text) {
+        if (id != docs) {
+            throw new IllegalArgumentException("Lexical index expects row " + docs + ", got " + id);
+        }
+        Map<String, Integer> tf = new HashMap<>();
+        int length = tokenize(text, token -> tf.merge(token, 1, Integer::sum));
+
+        if (docs == docLengths.length) {
+            docLengths = Arrays.copyOf(docLengths, docs * 2);
+        }
+        docLengths[docs++] = length;
+        totalLength += length;
+
+        for (Map.Entry<String, Integer> e : tf.entrySet()) {
+            terms.computeIfAbsent(e.getKey(), k -> new Postings()).add(id, e.getValue(), length);
+        }
+    }
+
+    /**
+     * BM25 top-k for a free-text query
+     * @return row ids, best first
+     */
+    public int[] search(String query, int k) {
+        if (docs == 0 || k <= 0) return new int[0];
+
+        Set<String> queryTerms = new LinkedHashSet<>();
+        tokenize(query, queryTerms::add);
+
+        float avgLength = (float) totalLength / docs;
+        List<Cursor> list = new ArrayList<>();
+        for (String term : queryTerms) {
+            Postings p = terms.get(term);
+            if (p != null) list.add(new Cursor(p, docs, avgLength));
+        }
+        if (list.isEmpty()) return new int[0];
+
+        // Weakest terms first; prefix[i] = sum of upper bounds of terms 0..i
+        list.sort(Comparator.comparingDouble(c -> c.upperBound));
+        Cursor[] cursors = list.toArray(new Cursor[0]);
+        int n = cursors.length;
+        float[] prefix = new float[n];
+        float sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += cursors[i].upperBound;
+            prefix[i] = sum;
+            cursors[i].next();
+        }
+
+        ScoreHeap heap = new ScoreHeap(k + 1);
+        float threshold = 0;
+        int firstEssential = 0;  // terms below this index cannot lift a doc into the top-k on their own
+
+        while (firstEssential < n) {
+            int doc = NO_MORE;
+            for (int i = firstEssential; i < n; i++) {
+                doc = Math.min(doc, cursors[i].doc);
+            }
+            if (doc == NO_MORE) break;
+
+            float score = 0;
+            for (int i = firstEssential; i < n; i++) {
+                Cursor c = cursors[i];
+                if (c.doc == doc) {
+                    score += c.score(docLengths[doc]);
+                    c.next();
+                }
+            }
+            for (int i = firstEssential - 1; i >= 0; i--) {
+                if (score + prefix[i] <= threshold) break;  // the rest cannot reach the top-k
+                Cursor c = cursors[i];
+                c.advance(doc);
+                if (c.doc == doc) score += c.score(docLengths[doc]);
+            }
+
+            if (heap.size() < k || score > heap.peekScore()) {
+                heap.offer(score, doc, k);
+                if (heap.size() == k) {
+                    threshold = heap.peekScore();
+                    while (firstEssential < n && prefix[firstEssential] <= threshold) {
+                        firstEssential++;
+                    }
+                }
+            }
+        }
+        return heap.drainDescending();
+    }
+
+    /**
+     * Emit the index terms of a text
+     * @return number of terms emitted (the BM25 document length)
+     */
+    static int tokenize(String text, Consumer<String> sink) {
+        if (text == null) return 0;
+        int count = 0;
+        int len = text.length();
+        int i = 0;
+        while (i < len) {
+            while (i < len && !isWordChar(text.charAt(i))) i++;
+            int start = i;
+            while (i < len && isWordChar(text.charAt(i))) i++;
+            if (start == i) break;
+
+            String word = text.substring(start, i);
+            if (emit(word.toLowerCase(Locale.ROOT), sink)) count++;
+
+            List<String> parts = parts(word);
+            if (parts.size() > 1) {
+                for (String part : parts) {
+                    if (emit(part.toLowerCase(Locale.ROOT), sink)) count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Identifier parts: snake_case segments, split again at camelCase,
+     * "HTTPServer" style acronym ends and letter/digit changes
+     */
+    private static List<String> parts(String word) {
+        List<String> parts = new ArrayList<>(4);
+        for (String segment : word.split("_")) {
+            int start = 0;
+            for (int j = 1; j <= segment.length(); j++) {
+                if (j == segment.length() || isBoundary(segment, j)) {
+                    parts.add(segment.substring(start, j));
+                    start = j;
+                }
+            }
+        }
+        return parts;
+    }
+
+    private static boolean emit(String term, Consumer<String> sink) {
+        if (term.isEmpty() || STOPWORDS.contains(term)) return false;
+        if (term.length() == 1 && !Character.isDigit(term.charAt(0))) return false;
+        sink.accept(term);
+        return true;
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    private static boolean isBoundary(String w, int j) {
+        char prev = w.charAt(j - 1);
+        char cur = w.charAt(j);
+        if (Character.isLowerCase(prev) && Character.isUpperCase(cur)) return true;
+        if (Character.isUpperCase(prev) && Character.isUpperCase(cur)
+                && j + 1 < w.length() && Character.isLowerCase(w.charAt(j + 1))) return true;
+        return Character.isDigit(prev) != Character.isDigit(cur);
+    }
+
+    /**
+     * Posting list of one term, delta/varint coded in skip blocks
+     */
+    private static final class Postings {
+        byte[] data = new byte[8];
+        int bytes;
+        int count;
+        int lastDoc = -1;
+        int maxTf;
+        int minLength = Integer.MAX_VALUE;
+
+        // Per block: byte offset of its first posting, doc before it, its last doc
+        int[] blockStart = new int[1];
+        int[] blockBase = new int[1];
+        int[] blockLast = new int[1];
+
+        void add(int doc, int tf, int docLength) {
+            int block = count / BLOCK;
+            if (count % BLOCK == 0) {
+                if (block == blockStart.length) {
+                    blockStart = Arrays.copyOf(blockStart, block * 2);
+                    blockBase = Arrays.copyOf(blockBase, block * 2);
+                    blockLast = Arrays.copyOf(blockLast, block * 2);
+                }
+                blockStart[block] = bytes;
+                blockBase[block] = lastDoc;
+            }
+            writeVarint(doc - lastDoc);
+            writeVarint(tf);
+            blockLast[block] = doc;
+            lastDoc = doc;
+            count++;
+            maxTf = Math.max(maxTf, tf);
+            minLength = Math.min(minLength, docLength);
+        }
+
+        int blocks() {
+            return (count + BLOCK - 1) / BLOCK;
+        }
+
+        private void writeVarint(int v) {
+            if (bytes + 5 > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, bytes + 5));
+            }
+            while ((v & ~0x7F) != 0) {
+                data[bytes++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            data[bytes++] = (byte) v;
+        }
+    }
+
+    /**
+     * Forward-only reader over one posting list, with block skipping
+     */
+    private static final class Cursor {
+        final Postings p;
+        final float idf;
+        final float upperBound;
+        final float norm;         // K1 * (1 - B)
+        final float lengthScale;  // K1 * B / avgLength
+        int index = -1;
+        int pos;
+        int doc = -1;
+        int tf;
+
+        Cursor(Postings p, int docs, float avgLength) {
+            this.p = p;
+            this.idf = (float) Math.log(1.0 + (docs - p.count + 0.5) / (p.count + 0.5));
+            this.norm = K1 * (1 - B);
+            this.lengthScale = K1 * B / avgLength;
+            this.upperBound = termScore(p.maxTf, p.minLength);
+        }
+
+        float score(int docLength) {
+            return termScore(tf, docLength);
+        }
+
+        private float termScore(int termFreq, int docLength) {
+            return idf * termFreq * (K1 + 1) / (termFreq + norm + lengthScale * docLength);
+        }
+
+        void next() {
+            if (index + 1 >= p.count) {
+                index = p.count;
+                doc = NO_MORE;
+                return;
+            }
+            index++;
+            if (index % BLOCK == 0) {
+                int block = index / BLOCK;
+                pos = p.blockStart[block];
+                doc = p.blockBase[block];
+            }
+            doc += readVarint();
+            tf = readVarint();
+        }
+
+        /**
+         * Move to the first posting with doc >= target
+         */
+        void advance(int target) {
+            if (doc >= target) return;
+            int block = Math.max(0, index) / BLOCK;
+            if (p.blockLast[block] < target) {
+                int lo = block + 1;
+                int hi = p.blocks() - 1;
+                if (lo > hi || p.blockLast[hi] < target) {
+                    index = p.count;
+                    doc = NO_MORE;
+                    return;
+                }
+                while (lo < hi) {
+                    int mid = (lo + hi) >>> 1;
+                    if (p.blockLast[mid] < target) lo = mid + 1;
+                    else hi = mid;
+                }
+                index = lo * BLOCK - 1;  // next() starts the block from its skip entry
+            }
+            do {
+                next();
+            } while (doc < target);
+        }
+
+        private int readVarint() {
+            int v = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = p.data[pos++];
+                v |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return v;
+        }
+    }
+
+    public void save(Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(docs);
+            out.writeLong(totalLength);
+            for (int i = 0; i < docs; i++) {
+                out.writeInt(docLengths[i]);
+            }
+            out.writeInt(terms.size());
+            for (Map.Entry<String, Postings> e : terms.entrySet()) {
+                Postings p = e.getValue();
+                out.writeUTF(e.getKey());
+                out.writeInt(p.count);
+                out.writeInt(p.lastDoc);
+                out.writeInt(p.maxTf);
+                out.writeInt(p.minLength);
+                out.writeInt(p.bytes);
+                out.write(p.data, 0, p.bytes);
+                for (int b = 0; b < p.blocks(); b++) {
+                    out.writeInt(p.blockStart[b]);
+                    out.writeInt(p.blockBase[b]);
+                    out.writeInt(p.blockLast[b]);
+                }
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public void load(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC) throw new IOException("Not a lexical index file");
+            int version = in.readInt();
+            if (version != FORMAT_VERSION) throw new IOException("Unsupported lexical index version: " + version);
+
+            int n = in.readInt();
+            long total = in.readLong();
+            int[] lengths = new int[Math.max(1024, n)];
+            for (int i = 0; i < n; i++) {
+                lengths[i] = in.readInt();
+            }
+
+            int termCount = in.readInt();
+            Map<String, Postings> loaded = new HashMap<>(termCount * 2);
+            for (int t = 0; t < termCount; t++) {
+                String term = in.readUTF();
+                Postings p = new Postings();
+                p.count = in.readInt();
+                p.lastDoc = in.readInt();
+                p.maxTf = in.readInt();
+                p.minLength = in.readInt();
+                p.bytes = in.readInt();
+                p.data = new byte[Math.max(8, p.bytes)];
+                in.readFully(p.data, 0, p.bytes);
+                int blocks = p.blocks();
+                int capacity = Math.max(1, blocks);
+                p.blockStart = new int[capacity];
+                p.blockBase = new int[capacity];
+                p.blockLast = new int[capacity];
+                for (int b = 0; b < blocks; b++) {
+                    p.blockStart[b] = in.readInt();
+                    p.blockBase[b] = in.readInt();
+                    p.blockLast[b] = in.readInt();
+                }
+                if (p.lastDoc >= n) throw new IOException("Corrupt lexical postings for '" + term + "'");
+                loaded.put(term, p);
+            }
+
+            terms.clear();
+            terms.putAll(loaded);
+            docLengths = lengths;
+            docs = n;
+            totalLength = total;
+        }
+    }
+}
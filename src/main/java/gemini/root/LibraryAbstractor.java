@@ -1,5 +1,6 @@
 package gemini.root;
 
+import fraymus.LlmScheduler.Priority;
 import fraymus.OllamaSpine;
 import java.io.*;
 import java.nio.file.*;
@@ -129,7 +130,7 @@ public class LibraryAbstractor {
                 "Generate code:")
         );
         
-        return brain.chatOnce(msgs, null, Map.of("temperature", 0.3));
+        return brain.chatOnce(msgs, null, Map.of("temperature", 0.3), Priority.BACKGROUND);
     }
     
     /**
@@ -207,7 +208,7 @@ public class LibraryAbstractor {
         }
         
         // Embed and store
-        List<float[]> embeddings = brain.embedBatch(labeledChunks);
+        List<float[]> embeddings = brain.embedBatch(labeledChunks, Priority.BACKGROUND);
         vault.addAndPersist(libraryName + ":" + file.toString(), labeledChunks, embeddings);
         
         return chunks.size();
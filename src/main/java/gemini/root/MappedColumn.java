@@ -0,0 +1,71 @@
+package gemini.root;
+
+import java.io.IOException;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+
+/**
+ * MappedColumn: Read-only mapping of a fixed-record column file
+ *
+ * Records start after a fixed header. Columns larger than 1 GiB are split
+ * into segments (a single MappedByteBuffer is int-indexed). Full segments
+ * are reused across remaps; only the tail segment is mapped again when
+ * rows are appended.
+ */
+final class MappedColumn {
+
+    // Largest single mapping; columns bigger than this are split into segments
+    private static final long SEGMENT_BYTES = 1L << 30;
+
+    private final long headerBytes;
+    private final long recordBytes;
+    private final int rowsPerSegment;
+    private final ByteBuffer[] segments;
+    private final FloatBuffer[] floatSegments;
+
+    MappedColumn(FileChannel ch, long headerBytes, long recordBytes, int rowCount, MappedColumn previous) throws IOException {
+        this.headerBytes = headerBytes;
+        this.recordBytes = recordBytes;
+        this.rowsPerSegment = (int) Math.max(1, SEGMENT_BYTES / recordBytes);
+        int segCount = (rowCount + rowsPerSegment - 1) / rowsPerSegment;
+        this.segments = new ByteBuffer[segCount];
+        this.floatSegments = new FloatBuffer[segCount];
+
+        for (int s = 0; s < segCount; s++) {
+            int segRows = Math.min(rowsPerSegment, rowCount - s * rowsPerSegment);
+            long segLen = segRows * recordBytes;
+            boolean reusable = previous != null
+                    && previous.headerBytes == headerBytes && previous.recordBytes == recordBytes
+                    && s < previous.segments.length && previous.segments[s].capacity() == segLen;
+            if (reusable) {
+                segments[s] = previous.segments[s];
+                floatSegments[s] = previous.floatSegments[s];
+            } else {
+                long start = headerBytes + (long) s * rowsPerSegment * recordBytes;
+                ByteBuffer mapped = ch.map(FileChannel.MapMode.READ_ONLY, start, segLen)
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                segments[s] = mapped;
+                floatSegments[s] = mapped.asFloatBuffer();
+            }
+        }
+    }
+
+    ByteBuffer bytes(int row) {
+        return segments[row / rowsPerSegment];
+    }
+
+    int offset(int row) {
+        return (int) ((row % rowsPerSegment) * recordBytes);
+    }
+
+    FloatBuffer floats(int row) {
+        return floatSegments[row / rowsPerSegment];
+    }
+
+    /**
+     * Offset of the row in float units (record size must be a multiple of 4)
+     */
+    int floatOffset(int row) {
+        return (int) ((row % rowsPerSegment) * (recordBytes / Float.BYTES));
+    }
+}
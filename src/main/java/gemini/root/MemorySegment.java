@@ -0,0 +1,512 @@
+package gemini.root;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * MemorySegment: One rolling segment of the Hippocampus log
+ *
+ * Files (fraymus_hippocampus/):
+ * - seg-<baseSeq>.log: memory blocks, one per line, same format as the
+ *   old single log
+ * - seg-<baseSeq>.idx: written when the segment is sealed:
+ *   - block byte offsets (ordinal -> line)
+ *   - sparse timestamp index (every SPARSE_EVERY-th block)
+ *   - sorted term dictionary + postings (block ordinals per term)
+ *
+ * The active (last) segment keeps the same structures on the heap and is
+ * appended by the single Hippocampus writer; a sealed segment keeps only
+ * its header on the heap and memory-maps the .idx on first search.
+ *
+ * Terms come from LexicalIndex.tokenize over the block's type and
+ * (unescaped) content.
+ */
+public class MemorySegment {
+
+    private static final int MAGIC = 0x48495058;  // "HIPX"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_BYTES = 7 * 4 + 2 * 8;
+    static final int SPARSE_EVERY = 64;
+
+    private final Path log;
+    private final Path idx;
+    private final long baseSeq;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private volatile int count;
+    private volatile long minTs = Long.MAX_VALUE;
+    private volatile long maxTs = Long.MIN_VALUE;
+
+    // Active state (null once sealed)
+    private FileChannel writeChannel;
+    private long bytes;
+    private int[] offsets;  // count + 1 entries; the last is the end of the log
+    private long[] sparseTs;
+    private int[] sparseOrd;
+    private int sparseCount;
+    private TreeMap<String, int[]> postings;  // term -> [size, ord, ord, ...]
+
+    // Sealed state
+    private volatile boolean sealed;
+    private int termCount;
+    private int termBytesLen;
+    private MappedByteBuffer index;  // guarded by this
+
+    // Readers never share writeChannel: seal() closes it on a segment roll
+    // while a search may still be reading the active segment
+    private FileChannel readChannel;  // guarded by this
+
+    private MemorySegment(Path dir, long baseSeq) {
+        String name = String.format("seg-%016d", baseSeq);
+        this.log = dir.resolve(name + ".log");
+        this.idx = dir.resolve(name + ".idx");
+        this.baseSeq = baseSeq;
+    }
+
+    /**
+     * Base sequence number from a segment log file name (-1 if not one)
+     */
+    static long baseSeqOf(Path file) {
+        String n = file.getFileName().toString();
+        if (!n.startsWith("seg-") || !n.endsWith(".log")) return -1;
+        try {
+            return Long.parseLong(n.substring(4, n.length() - 4));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Open (or create) a segment for appending, rebuilding its in-memory
+     * index from the log. A torn last line (crash mid-write) is cut off.
+     */
+    static MemorySegment openActive(Path dir, long baseSeq) throws IOException {
+        MemorySegment s = new MemorySegment(dir, baseSeq);
+        s.initActive();
+        Files.deleteIfExists(s.idx);  // rewritten when this segment is sealed
+        s.writeChannel = FileChannel.open(s.log,
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        long size = s.writeChannel.size();
+        if (size > 0) {
+            long good = 0;
+            try (InputStream in = Files.newInputStream(s.log)) {
+                ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+                byte[] buf = new byte[1 << 16];
+                long pos = 0;
+                int n;
+                while ((n = in.read(buf)) > 0) {
+                    int start = 0;
+                    for (int i = 0; i < n; i++) {
+                        if (buf[i] != '\n') continue;
+                        line.write(buf, start, i - start);
+                        s.indexLine(line.toString(StandardCharsets.UTF_8), line.size() + 1);
+                        line.reset();
+                        start = i + 1;
+                        good = pos + start;
+                    }
+                    line.write(buf, start, n - start);
+                    pos += n;
+                }
+            }
+            if (good < size) s.writeChannel.truncate(good);
+        }
+        return s;
+    }
+
+    /**
+     * Open a sealed segment from its .idx header (null if the index is
+     * missing or unreadable; the caller rebuilds it)
+     */
+    static MemorySegment openSealed(Path dir, long baseSeq) {
+        MemorySegment s = new MemorySegment(dir, baseSeq);
+        if (!Files.exists(s.idx)) return null;
+        try (FileChannel ch = FileChannel.open(s.idx, StandardOpenOption.READ)) {
+            ByteBuffer h = ByteBuffer.allocate(HEADER_BYTES);
+            while (h.hasRemaining() && ch.read(h) >= 0) { }
+            h.flip();
+            if (h.remaining() < HEADER_BYTES || h.getInt() != MAGIC || h.getInt() != FORMAT_VERSION) return null;
+            s.count = h.getInt();
+            s.sparseCount = h.getInt();
+            s.termCount = h.getInt();
+            s.termBytesLen = h.getInt();
+            h.getInt();  // postings length
+            s.minTs = h.getLong();
+            s.maxTs = h.getLong();
+            s.sealed = true;
+            return s;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void initActive() {
+        offsets = new int[1024];
+        sparseTs = new long[64];
+        sparseOrd = new int[64];
+        postings = new TreeMap<>();
+    }
+
+    public long baseSeq() {
+        return baseSeq;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public long bytes() {
+        return sealed ? 0 : bytes;
+    }
+
+    public long maxTimestamp() {
+        return maxTs;
+    }
+
+    public boolean isSealed() {
+        return sealed;
+    }
+
+    /**
+     * Append lines with one write, then publish them to the index
+     * (single writer only)
+     */
+    void append(List<String> lines) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines) sb.append(line).append('\n');
+        ByteBuffer buf = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+        long pos = bytes;
+        while (buf.hasRemaining()) pos += writeChannel.write(buf, pos);
+        indexLines(lines);
+    }
+
+    /**
+     * Publish appended lines to the in-memory index
+     */
+    private void indexLines(List<String> lines) {
+        lock.writeLock().lock();
+        try {
+            for (String line : lines) indexLine(line, line.getBytes(StandardCharsets.UTF_8).length + 1);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Index one line of byteLen bytes (newline included) at the current
+     * end of the log; callers hold the write lock or own the segment
+     */
+    private void indexLine(String line, int byteLen) {
+        int ord = count;
+        if (ord + 2 > offsets.length) offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        offsets[ord] = (int) bytes;
+        bytes += byteLen;
+        offsets[ord + 1] = (int) bytes;
+
+        long ts = timestamp(line);
+        if (ts < 0) ts = maxTs == Long.MIN_VALUE ? 0 : maxTs;
+        minTs = Math.min(minTs, ts);
+        maxTs = Math.max(maxTs, ts);
+        if (ord % SPARSE_EVERY == 0) {
+            if (sparseCount == sparseTs.length) {
+                sparseTs = Arrays.copyOf(sparseTs, sparseCount * 2);
+                sparseOrd = Arrays.copyOf(sparseOrd, sparseCount * 2);
+            }
+            sparseTs[sparseCount] = ts;
+            sparseOrd[sparseCount++] = ord;
+        }
+
+        Set<String> terms = new HashSet<>();
+        LexicalIndex.tokenize(indexText(line), terms::add);
+        for (String term : terms) {
+            int[] p = postings.get(term);
+            if (p == null || p[0] + 1 == p.length) {
+                p = p == null ? new int[4] : Arrays.copyOf(p, p.length * 2);
+                postings.put(term, p);
+            }
+            p[++p[0]] = ord;
+        }
+        count = ord + 1;
+    }
+
+    /**
+     * Write the .idx, force the log and drop the heap structures
+     */
+    void seal() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (sealed) return;
+            writeChannel.force(false);
+            writeIndex();
+            writeChannel.close();
+            writeChannel = null;
+            termCount = postings.size();
+            offsets = null;
+            sparseTs = null;
+            sparseOrd = null;
+            postings = null;
+            sealed = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void writeIndex() throws IOException {
+        ByteArrayOutputStream termBytes = new ByteArrayOutputStream();
+        int postingsLen = 0;
+        for (int[] p : postings.values()) postingsLen += p[0];
+
+        Path tmp = idx.resolveSibling(idx.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            List<byte[]> encoded = new ArrayList<>(postings.size());
+            for (String term : postings.keySet()) encoded.add(term.getBytes(StandardCharsets.UTF_8));
+            for (byte[] t : encoded) termBytes.write(t, 0, t.length);
+
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(count);
+            out.writeInt(sparseCount);
+            out.writeInt(postings.size());
+            out.writeInt(termBytes.size());
+            out.writeInt(postingsLen);
+            out.writeLong(count == 0 ? 0 : minTs);
+            out.writeLong(count == 0 ? 0 : maxTs);
+            for (int i = 0; i <= count; i++) out.writeInt(offsets[i]);
+            for (int i = 0; i < sparseCount; i++) out.writeLong(sparseTs[i]);
+            for (int i = 0; i < sparseCount; i++) out.writeInt(sparseOrd[i]);
+
+            // Term table: (term bytes start, postings start), plus an end sentinel
+            int termPos = 0;
+            int postPos = 0;
+            int i = 0;
+            for (int[] p : postings.values()) {
+                out.writeInt(termPos);
+                out.writeInt(postPos);
+                termPos += encoded.get(i++).length;
+                postPos += p[0];
+            }
+            out.writeInt(termPos);
+            out.writeInt(postPos);
+
+            termBytes.writeTo(out);
+            termBytesLen = termBytes.size();
+            for (int[] p : postings.values()) {
+                for (int j = 1; j <= p[0]; j++) out.writeInt(p[j]);
+            }
+        }
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            ch.force(true);
+        }
+        Files.move(tmp, idx, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Ordinals (at or after from) whose blocks contain, for every query
+     * term, some indexed term starting with it
+     * @return null if nothing matches
+     */
+    BitSet match(List<String> queryTerms, int from, int maxExpansion) throws IOException {
+        if (queryTerms.isEmpty() || from >= count) return null;
+        lock.readLock().lock();
+        try {
+            BitSet result = null;
+            for (String q : queryTerms) {
+                BitSet bits = new BitSet(count);
+                if (sealed) {
+                    sealedPostings(q, from, maxExpansion, bits);
+                } else {
+                    int expanded = 0;
+                    for (Map.Entry<String, int[]> e : postings.tailMap(q, true).entrySet()) {
+                        if (!e.getKey().startsWith(q) || expanded++ >= maxExpansion) break;
+                        int[] p = e.getValue();
+                        for (int j = p[0]; j >= 1 && p[j] >= from; j--) bits.set(p[j]);
+                    }
+                }
+                if (result == null) result = bits;
+                else result.and(bits);
+                if (result.isEmpty()) return null;
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void sealedPostings(String prefix, int from, int maxExpansion, BitSet bits) throws IOException {
+        ByteBuffer ix = index();
+        int table = termTableStart();
+        int termData = table + (termCount + 1) * 8;
+        int postData = termData + termBytesLen;
+
+        // Lower bound of prefix in the sorted dictionary
+        int lo = 0;
+        int hi = termCount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (term(ix, table, termData, mid).compareTo(prefix) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        for (int t = lo, n = 0; t < termCount && n < maxExpansion; t++, n++) {
+            if (!term(ix, table, termData, t).startsWith(prefix)) break;
+            int start = ix.getInt(table + t * 8 + 4);
+            int end = ix.getInt(table + (t + 1) * 8 + 4);
+            for (int j = end - 1; j >= start; j--) {
+                int ord = ix.getInt(postData + j * 4);
+                if (ord < from) break;
+                bits.set(ord);
+            }
+        }
+    }
+
+    private static String term(ByteBuffer ix, int table, int termData, int t) {
+        int start = ix.getInt(table + t * 8);
+        int end = ix.getInt(table + (t + 1) * 8);
+        byte[] b = new byte[end - start];
+        ix.get(termData + start, b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * First ordinal that can have a timestamp at or after ts (from the
+     * sparse index, so it may be a little early)
+     */
+    int firstOrdinalSince(long ts) throws IOException {
+        if (ts <= minTs) return 0;
+        if (ts > maxTs) return count;
+        lock.readLock().lock();
+        try {
+            int lo = 0;
+            int hi = sparseCount;  // first sparse entry with ts >= target
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (sparseTsAt(mid) < ts) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo == 0 ? 0 : sparseOrdAt(lo - 1);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private long sparseTsAt(int i) throws IOException {
+        return sealed ? index().getLong(offsetsStart() + (count + 1) * 4 + i * 8) : sparseTs[i];
+    }
+
+    private int sparseOrdAt(int i) throws IOException {
+        return sealed ? index().getInt(offsetsStart() + (count + 1) * 4 + sparseCount * 8 + i * 4) : sparseOrd[i];
+    }
+
+    /**
+     * Read one block
+     */
+    String read(int ordinal) throws IOException {
+        long start;
+        long end;
+        lock.readLock().lock();
+        try {
+            if (sealed) {
+                ByteBuffer ix = index();
+                start = ix.getInt(offsetsStart() + ordinal * 4);
+                end = ix.getInt(offsetsStart() + (ordinal + 1) * 4);
+            } else {
+                start = offsets[ordinal];
+                end = offsets[ordinal + 1];
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        ByteBuffer buf = ByteBuffer.allocate((int) (end - start - 1));  // without the newline
+        FileChannel ch = reader();
+        while (buf.hasRemaining()) {
+            if (ch.read(buf, start + buf.position()) < 0) throw new EOFException(log.toString());
+        }
+        return new String(buf.array(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The last n blocks, oldest first
+     */
+    List<String> tail(int n) throws IOException {
+        int c = count;
+        List<String> out = new ArrayList<>(Math.min(n, c));
+        for (int o = Math.max(0, c - n); o < c; o++) out.add(read(o));
+        return out;
+    }
+
+    private int offsetsStart() {
+        return HEADER_BYTES;
+    }
+
+    private int termTableStart() {
+        return HEADER_BYTES + (count + 1) * 4 + sparseCount * 12;
+    }
+
+    private synchronized ByteBuffer index() throws IOException {
+        if (index == null) {
+            try (FileChannel ch = FileChannel.open(idx, StandardOpenOption.READ)) {
+                index = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            }
+        }
+        return index;
+    }
+
+    private synchronized FileChannel reader() throws IOException {
+        if (readChannel == null) readChannel = FileChannel.open(log, StandardOpenOption.READ);
+        return readChannel;
+    }
+
+    void force() throws IOException {
+        FileChannel ch = writeChannel;
+        if (ch != null) ch.force(false);
+    }
+
+    /**
+     * Release the file handles; an active segment cannot be appended to
+     * afterwards
+     */
+    void close() throws IOException {
+        synchronized (this) {
+            if (readChannel != null) readChannel.close();
+            readChannel = null;
+            index = null;
+        }
+        lock.writeLock().lock();  // not under this: readers take the lock first
+        try {
+            if (writeChannel != null) writeChannel.close();
+            writeChannel = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Timestamp of a "[ts|TYPE] content" block (-1 if it has none)
+     */
+    static long timestamp(String line) {
+        int bar = line.indexOf('|');
+        if (!line.startsWith("[") || bar < 2) return -1;
+        try {
+            return Long.parseLong(line.substring(1, bar));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * What gets tokenized: "TYPE content" with the newline escapes undone
+     */
+    static String indexText(String line) {
+        int bar = line.indexOf('|');
+        int close = line.indexOf("] ");
+        String text = bar >= 0 && close > bar
+            ? line.substring(bar + 1, close) + " " + line.substring(close + 2)
+            : line;
+        return text.replace("\\n", "\n").replace("\\r", "\r");
+    }
+}
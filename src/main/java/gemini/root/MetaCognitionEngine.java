@@ -1,5 +1,6 @@
 package gemini.root;
 
+import fraymus.LlmScheduler.Priority;
 import fraymus.OllamaSpine;
 import java.util.*;
 import java.io.*;
@@ -119,7 +120,7 @@ public class MetaCognitionEngine {
         );
         
         try {
-            String result = brain.chatOnce(msgs, null, Map.of("temperature", 0.1));
+            String result = brain.chatOnce(msgs, null, Map.of("temperature", 0.1), Priority.BACKGROUND);
             JsonObject assessment = JsonParser.parseString(result).getAsJsonObject();
             
             double quality = assessment.get("overall").getAsDouble();
@@ -191,7 +192,7 @@ public class MetaCognitionEngine {
         );
         
         try {
-            String result = brain.chatOnce(msgs, null, Map.of("temperature", 0.2));
+            String result = brain.chatOnce(msgs, null, Map.of("temperature", 0.2), Priority.BACKGROUND);
             JsonObject insight = JsonParser.parseString(result).getAsJsonObject();
             
             String pattern = insight.get("pattern").getAsString();
@@ -0,0 +1,176 @@
+package gemini.root;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Metrics: Stage latencies and counters, served to Prometheus
+ *
+ * Stages (LatencyHistogram each):
+ * - embed, search (RagEngine), plan, generate, request (SystemMain)
+ * - tool:<name> (ToolPlanExecutor), draft, critique, refine (Reflector)
+ * - agent:<persona>, synthesis (AgentOrchestrator)
+ *
+ * Counters: answer cache hits/misses, tool calls by tool, planner skips,
+ * agent cancellations/failures by agent, agent early exits and synthesis
+ * skips/timeouts, dropped trace entries. Gauges are read from their owners at scrape time
+ * (embedding cache, LLM scheduler, vault, memory).
+ *
+ * Recording is lock-free and allocation-free once a stage or counter
+ * exists. /metrics on the loopback interface (--metrics-port) renders
+ * everything in the Prometheus text format: stages as summaries in
+ * seconds (p50/p90/p99/p999 + sum + count).
+ */
+public class Metrics {
+
+    public static final int DEFAULT_PORT = 9464;
+    private static final String PREFIX = "fraymus_";
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+    private static final Map<String, LatencyHistogram> stages = new ConcurrentHashMap<>();
+    private static final Map<String, LongAdder> counters = new ConcurrentHashMap<>();  // "name" or "name{labels}"
+    private static final Map<String, Supplier<Number>> gauges = new ConcurrentHashMap<>();
+    private static HttpServer server;
+
+    private Metrics() { }
+
+    public static LatencyHistogram stage(String name) {
+        return stages.computeIfAbsent(name, k -> new LatencyHistogram());
+    }
+
+    /**
+     * Record the time since startedNanos (a System.nanoTime() value)
+     * @return The elapsed nanoseconds
+     */
+    public static long record(String stage, long startedNanos) {
+        long elapsed = System.nanoTime() - startedNanos;
+        stage(stage).recordNanos(elapsed);
+        return elapsed;
+    }
+
+    public static void increment(String counter) {
+        counters.computeIfAbsent(counter, k -> new LongAdder()).increment();
+    }
+
+    /**
+     * Increment a counter with one label, e.g. tool_calls_total{tool="calc"}
+     */
+    public static void increment(String counter, String label, String value) {
+        increment(counter + "{" + label + "=\"" + escape(value) + "\"}");
+    }
+
+    public static long counter(String counter) {
+        LongAdder a = counters.get(counter);
+        return a == null ? 0 : a.sum();
+    }
+
+    /**
+     * Register a value read at scrape time (replaces one of the same name)
+     */
+    public static void gauge(String name, Supplier<Number> value) {
+        gauges.put(name, value);
+    }
+
+    /**
+     * Serve /metrics on 127.0.0.1:port
+     */
+    public static synchronized void serve(int port) throws IOException {
+        if (server != null) return;
+        HttpServer s = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        s.createContext("/metrics", exchange -> {
+            try (exchange) {
+                byte[] body = prometheus().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+        });
+        s.setExecutor(null);  // the server's own dispatcher thread: scrapes are cheap
+        s.start();
+        server = s;
+        System.out.println(">>> [METRICS] http://127.0.0.1:" + port + "/metrics");
+    }
+
+    public static synchronized void stop() {
+        if (server != null) server.stop(0);
+        server = null;
+    }
+
+    /**
+     * Prometheus text exposition of every stage, counter and gauge
+     */
+    public static String prometheus() {
+        StringBuilder out = new StringBuilder(4096);
+
+        out.append("# HELP ").append(PREFIX).append("stage_seconds Latency per pipeline stage\n");
+        out.append("# TYPE ").append(PREFIX).append("stage_seconds summary\n");
+        for (Map.Entry<String, LatencyHistogram> e : new TreeMap<>(stages).entrySet()) {
+            String stage = "stage=\"" + escape(e.getKey()) + "\"";
+            LatencyHistogram h = e.getValue();
+            for (double q : QUANTILES) {
+                out.append(PREFIX).append("stage_seconds{").append(stage).append(",quantile=\"").append(q).append("\"} ")
+                    .append(seconds(h.percentileMicros(q))).append('\n');
+            }
+            out.append(PREFIX).append("stage_seconds_sum{").append(stage).append("} ").append(seconds(h.sumMicros())).append('\n');
+            out.append(PREFIX).append("stage_seconds_count{").append(stage).append("} ").append(h.count()).append('\n');
+        }
+
+        Map<String, List<String>> byName = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> e : counters.entrySet()) {
+            String key = e.getKey();
+            int brace = key.indexOf('{');
+            String name = brace < 0 ? key : key.substring(0, brace);
+            byName.computeIfAbsent(name, k -> new ArrayList<>()).add(PREFIX + key + " " + e.getValue().sum());
+        }
+        for (Map.Entry<String, List<String>> e : byName.entrySet()) {
+            out.append("# TYPE ").append(PREFIX).append(e.getKey()).append(" counter\n");
+            Collections.sort(e.getValue());
+            for (String line : e.getValue()) out.append(line).append('\n');
+        }
+
+        for (Map.Entry<String, Supplier<Number>> e : new TreeMap<>(gauges).entrySet()) {
+            Number v;
+            try {
+                v = e.getValue().get();
+            } catch (RuntimeException ex) {
+                continue;
+            }
+            if (v == null) continue;
+            out.append("# TYPE ").append(PREFIX).append(e.getKey()).append(" gauge\n");
+            out.append(PREFIX).append(e.getKey()).append(' ').append(v).append('\n');
+        }
+        return out.toString();
+    }
+
+    /**
+     * One line per stage: count and p50/p90/p99 in ms (METRICS STATUS)
+     */
+    public static String summary() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, LatencyHistogram> e : new TreeMap<>(stages).entrySet()) {
+            LatencyHistogram h = e.getValue();
+            sb.append(String.format(Locale.ROOT, "%s: n=%d p50=%.1fms p90=%.1fms p99=%.1fms max=%.1fms%n",
+                e.getKey(), h.count(), h.percentileMicros(0.5) / 1000.0, h.percentileMicros(0.9) / 1000.0,
+                h.percentileMicros(0.99) / 1000.0, h.maxMicros() / 1000.0));
+        }
+        return sb.length() == 0 ? "no samples yet" : sb.toString().trim();
+    }
+
+    private static String seconds(long micros) {
+        return String.format(Locale.ROOT, "%.6f", micros / 1e6);
+    }
+
+    private static String escape(String label) {
+        return label.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -1,5 +1,6 @@
 package gemini.root;
 
+import fraymus.LlmScheduler.Priority;
 import fraymus.OllamaSpine;
 import java.util.*;
 import java.io.*;
@@ -155,7 +156,7 @@ public class NoveltyDetector {
         );
         
         try {
-            String result = brain.chatOnce(msgs, null, Map.of("temperature", 0.1));
+            String result = brain.chatOnce(msgs, null, Map.of("temperature", 0.1), Priority.BACKGROUND);
             JsonObject obj = JsonParser.parseString(result).getAsJsonObject();
             
             JsonArray known = obj.getAsJsonArray("known");
@@ -201,7 +202,7 @@ public class NoveltyDetector {
         );
         
         try {
-            String result = brain.chatOnce(msgs, null, Map.of("temperature", 0.3));
+            String result = brain.chatOnce(msgs, null, Map.of("temperature", 0.3), Priority.BACKGROUND);
             JsonArray arr = JsonParser.parseString(result).getAsJsonArray();
             
             List<String> gaps = new ArrayList<>();
@@ -0,0 +1,215 @@
+package gemini.root;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * PqQuantizer: Product quantization with asymmetric distance tables
+ *
+ * The vector is split into m sub-vectors (8 dims each when the dimension
+ * allows); each sub-vector is replaced by the id of its nearest of 256
+ * k-means centroids, so a row costs m bytes (32x smaller than float32).
+ *
+ * Queries stay full precision: prepare() builds an m x 256 table of
+ * query-to-centroid dot products once, after which scoring a row is m
+ * table lookups. Accuracy is recovered by reranking candidates.
+ *
+ * Needs training: codebooks are learned once the vault holds
+ * MIN_TRAIN_ROWS rows and are stored in pq.codebook.
+ */
+final class PqQuantizer extends VectorQuantizer {
+
+    static final String FILE = "codes.pq";
+    static final String CODEBOOK_FILE = "pq.codebook";
+    private static final int MAGIC = 0x46565051;           // "FVPQ"
+    private static final int CODEBOOK_MAGIC = 0x46565042;  // "FVPB"
+
+    static final int KSUB = 256;
+    static final int MIN_TRAIN_ROWS = 4096;
+    static final int MAX_TRAIN_ROWS = 16384;
+    private static final int TRAIN_ITERATIONS = 10;
+
+    private final int m;
+    private final int subDim;
+    private final Path codebookFile;
+    private volatile float[] centroids;  // [m][KSUB][subDim], null until trained
+
+    PqQuantizer(Path dir, int dim) throws IOException {
+        super(dir.resolve(FILE), MAGIC, dim, subspaces(dim));
+        this.m = subspaces(dim);
+        this.subDim = dim / m;
+        this.codebookFile = dir.resolve(CODEBOOK_FILE);
+        loadCodebook();
+        if (centroids == null && size() > 0) {
+            clear();  // codes without a codebook are meaningless
+        }
+    }
+
+    private static int subspaces(int dim) {
+        for (int sub : new int[] {8, 4, 2}) {
+            if (dim % sub == 0) return dim / sub;
+        }
+        return dim;
+    }
+
+    @Override
+    boolean isReady() {
+        return centroids != null;
+    }
+
+    @Override
+    String describe() {
+        return super.describe() + ", m=" + m + " x " + KSUB + " centroids";
+    }
+
+    /**
+     * Learn the codebooks (k-means per subspace, subspaces in parallel)
+     * and drop any existing codes; the caller re-encodes all rows.
+     */
+    void train(List<float[]> sample) throws IOException {
+        if (sample.size() < KSUB) {
+            throw new IllegalArgumentException("PQ training needs at least " + KSUB + " vectors");
+        }
+        float[] book = new float[m * KSUB * subDim];
+        IntStream.range(0, m).parallel().forEach(j -> trainSubspace(j, sample, book));
+        centroids = book;
+        saveCodebook();
+        clear();
+    }
+
+    private void trainSubspace(int j, List<float[]> sample, float[] book) {
+        int n = sample.size();
+        int base = j * subDim;
+        float[] points = new float[n * subDim];
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(sample.get(i), base, points, i * subDim, subDim);
+        }
+
+        Random rnd = new Random(31L * j + 7);
+        float[] cents = new float[KSUB * subDim];
+        int[] perm = rnd.ints(0, n).distinct().limit(KSUB).toArray();
+        for (int c = 0; c < KSUB; c++) {
+            System.arraycopy(points, perm[c] * subDim, cents, c * subDim, subDim);
+        }
+
+        int[] assign = new int[n];
+        float[] sums = new float[KSUB * subDim];
+        int[] counts = new int[KSUB];
+        for (int iter = 0; iter < TRAIN_ITERATIONS; iter++) {
+            for (int i = 0; i < n; i++) {
+                assign[i] = nearest(points, i * subDim, cents, 0);
+            }
+            Arrays.fill(sums, 0f);
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < n; i++) {
+                int c = assign[i];
+                counts[c]++;
+                for (int d = 0; d < subDim; d++) {
+                    sums[c * subDim + d] += points[i * subDim + d];
+                }
+            }
+            for (int c = 0; c < KSUB; c++) {
+                if (counts[c] == 0) {
+                    // Empty cluster: reseed from a random point
+                    System.arraycopy(points, rnd.nextInt(n) * subDim, cents, c * subDim, subDim);
+                } else {
+                    for (int d = 0; d < subDim; d++) {
+                        cents[c * subDim + d] = sums[c * subDim + d] / counts[c];
+                    }
+                }
+            }
+        }
+        System.arraycopy(cents, 0, book, j * KSUB * subDim, KSUB * subDim);
+    }
+
+    /**
+     * Index of the centroid (within one subspace block) closest to a point
+     */
+    private int nearest(float[] point, int pointOff, float[] cents, int centOff) {
+        int best = 0;
+        float bestDist = Float.MAX_VALUE;
+        for (int c = 0; c < KSUB; c++) {
+            int co = centOff + c * subDim;
+            float dist = 0f;
+            for (int d = 0; d < subDim; d++) {
+                float diff = point[pointOff + d] - cents[co + d];
+                dist += diff * diff;
+            }
+            if (dist < bestDist) {
+                bestDist = dist;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    @Override
+    protected void encode(float[] v, ByteBuffer out) {
+        float[] book = centroids;
+        for (int j = 0; j < m; j++) {
+            out.put((byte) nearest(v, j * subDim, book, j * KSUB * subDim));
+        }
+    }
+
+    @Override
+    QueryScorer prepare(float[] q) {
+        float[] book = centroids;
+        float[] table = new float[m * KSUB];
+        for (int j = 0; j < m; j++) {
+            int qo = j * subDim;
+            for (int c = 0; c < KSUB; c++) {
+                int co = (j * KSUB + c) * subDim;
+                float dot = 0f;
+                for (int d = 0; d < subDim; d++) {
+                    dot += q[qo + d] * book[co + d];
+                }
+                table[j * KSUB + c] = dot;
+            }
+        }
+
+        final MappedColumn column = codes;
+        return row -> {
+            ByteBuffer b = column.bytes(row);
+            int off = column.offset(row);
+            float score = 0f;
+            for (int j = 0; j < m; j++) {
+                score += table[j * KSUB + (b.get(off + j) & 0xFF)];
+            }
+            return score;
+        };
+    }
+
+    private void saveCodebook() throws IOException {
+        Path tmp = codebookFile.resolveSibling(CODEBOOK_FILE + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            out.writeInt(CODEBOOK_MAGIC);
+            out.writeInt(VaultStore.FORMAT_VERSION);
+            out.writeInt(dim);
+            out.writeInt(m);
+            out.writeInt(KSUB);
+            for (float f : centroids) out.writeFloat(f);
+        }
+        Files.move(tmp, codebookFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void loadCodebook() {
+        if (!Files.exists(codebookFile)) return;
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(codebookFile), 1 << 16))) {
+            if (in.readInt() != CODEBOOK_MAGIC || in.readInt() != VaultStore.FORMAT_VERSION
+                    || in.readInt() != dim || in.readInt() != m || in.readInt() != KSUB) {
+                System.err.println(">>> [VAULT] PQ codebook does not match vault, retraining");
+                return;
+            }
+            float[] book = new float[m * KSUB * subDim];
+            for (int i = 0; i < book.length; i++) book[i] = in.readFloat();
+            centroids = book;
+        } catch (IOException e) {
+            System.err.println(">>> [VAULT] PQ codebook load failed: " + e.getMessage());
+        }
+    }
+}
@@ -2,6 +2,7 @@ package gemini.root;
 
 import fraymus.OllamaSpine;
 import java.util.*;
+import java.util.function.Consumer;
 
 /**
  * Reflector: Draft -> Critique -> Refine
@@ -10,6 +11,10 @@ import java.util.*;
  * IMPORTANT:
  * - Does NOT expose chain-of-thought.
  * - Treats RAG/Context as untrusted reference text (prevents PDF prompt injection).
+ * - With a token callback, only the final answer is streamed (refine phase,
+ *   or the draft in one piece when the critique passes it).
+ * - Each phase is timed into the "draft", "critique" and "refine" Metrics
+ *   stages.
  */
 public class Reflector {
 
@@ -25,6 +30,14 @@ public class Reflector {
      * @param history       session messages (role=user|assistant), already trimmed by SessionMemory
      */
     public String reflect(String userQuery, String contextPacket, List<OllamaSpine.Msg> history) {
+        return reflect(userQuery, contextPacket, history, null);
+    }
+
+    /**
+     * @param onToken receives the final answer as it is generated (null = no streaming)
+     */
+    public String reflect(String userQuery, String contextPacket, List<OllamaSpine.Msg> history,
+                          Consumer<String> onToken) {
 
         // ===== PHASE 1: DRAFT =====
         String draftSystem = """
@@ -44,10 +57,12 @@ public class Reflector {
         draftMsgs.add(new OllamaSpine.Msg("user",
                 "CONTEXT PACKET:\n" + contextPacket + "\n\nUSER QUESTION:\n" + userQuery));
 
+        long draftStarted = System.nanoTime();
         String draft = brain.chatOnce(draftMsgs, null, Map.of(
                 "temperature", 0.45,
                 "num_ctx", 8192
         ));
+        Metrics.record("draft", draftStarted);
 
         // ===== PHASE 2: CRITIQUE =====
         String critiqueSystem = """
@@ -71,15 +86,18 @@ public class Reflector {
                         "CONTEXT PACKET:\n" + contextPacket + "\n\nDRAFT:\n" + draft)
         );
 
+        long critiqueStarted = System.nanoTime();
         String critique = brain.chatOnce(critiqueMsgs, null, Map.of(
                 "temperature", 0.0,
                 "num_ctx", 8192
         ));
+        Metrics.record("critique", critiqueStarted);
 
         if (critique == null) critique = "";
         String c = critique.trim();
 
         if (c.equalsIgnoreCase("LGTM") || c.length() < 12) {
+            if (onToken != null) onToken.accept(draft);
             return draft;
         }
 
@@ -105,9 +123,15 @@ public class Reflector {
                         "\n\nFINAL ANSWER:")
         );
 
-        return brain.chatOnce(refineMsgs, null, Map.of(
+        Map<String, Object> refineOpts = Map.of(
                 "temperature", 0.2,
                 "num_ctx", 8192
-        ));
+        );
+        long refineStarted = System.nanoTime();
+        String refined = onToken != null
+                ? brain.chatStream(refineMsgs, refineOpts, onToken)
+                : brain.chatOnce(refineMsgs, null, refineOpts);
+        Metrics.record("refine", refineStarted);
+        return refined;
     }
 }
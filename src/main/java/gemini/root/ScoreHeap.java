@@ -0,0 +1,126 @@
+package gemini.root;
+
+import java.util.Arrays;
+
+/**
+ * ScoreHeap: Primitive binary min-heap of (score, id) pairs
+ *
+ * Used for bounded top-k selection: the weakest kept result sits on top,
+ * so a new candidate only needs one comparison to be rejected.
+ * Backed by parallel arrays - no boxing, no per-push allocation once warm.
+ */
+final class ScoreHeap {
+
+    private float[] scores;
+    private int[] ids;
+    private int size;
+
+    ScoreHeap(int initialCapacity) {
+        int cap = Math.max(1, initialCapacity);
+        this.scores = new float[cap];
+        this.ids = new int[cap];
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    float peekScore() {
+        return scores[0];
+    }
+
+    int peekId() {
+        return ids[0];
+    }
+
+    void push(float score, int id) {
+        if (size == scores.length) {
+            scores = Arrays.copyOf(scores, size * 2);
+            ids = Arrays.copyOf(ids, size * 2);
+        }
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (scores[parent] <= score) break;
+            scores[i] = scores[parent];
+            ids[i] = ids[parent];
+            i = parent;
+        }
+        scores[i] = score;
+        ids[i] = id;
+    }
+
+    /**
+     * Keep only the best {@code k} scores: push if there is room,
+     * otherwise replace the current minimum when the candidate beats it.
+     */
+    void offer(float score, int id, int k) {
+        if (size < k) {
+            push(score, id);
+        } else if (score > scores[0]) {
+            scores[0] = score;
+            ids[0] = id;
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Merge another heap into this one, keeping the best {@code k}; empties {@code other}
+     */
+    void offerAll(ScoreHeap other, int k) {
+        while (!other.isEmpty()) {
+            float score = other.peekScore();
+            offer(score, other.pop(), k);
+        }
+    }
+
+    /**
+     * Remove the minimum and return its id
+     */
+    int pop() {
+        int top = ids[0];
+        size--;
+        if (size > 0) {
+            scores[0] = scores[size];
+            ids[0] = ids[size];
+            siftDown(0);
+        }
+        return top;
+    }
+
+    /**
+     * Drain into ids ordered best-first (highest score first)
+     */
+    int[] drainDescending() {
+        int[] out = new int[size];
+        for (int i = out.length - 1; i >= 0; i--) {
+            out[i] = pop();
+        }
+        return out;
+    }
+
+    private void siftDown(int i) {
+        float score = scores[i];
+        int id = ids[i];
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            int right = child + 1;
+            if (right < size && scores[right] < scores[child]) child = right;
+            if (score <= scores[child]) break;
+            scores[i] = scores[child];
+            ids[i] = ids[child];
+            i = child;
+        }
+        scores[i] = score;
+        ids[i] = id;
+    }
+}
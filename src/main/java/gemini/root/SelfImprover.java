@@ -1,5 +1,6 @@
 package gemini.root;
 
+import fraymus.LlmScheduler.Priority;
 import fraymus.OllamaSpine;
 import java.io.*;
 import java.nio.file.*;
@@ -201,7 +202,7 @@ public class SelfImprover {
                 "List specific improvement opportunities (be concrete):")
         );
         
-        String analysis = brain.chatOnce(msgs, null, Map.of("temperature", 0.2));
+        String analysis = brain.chatOnce(msgs, null, Map.of("temperature", 0.2), Priority.BACKGROUND);
         
         // Parse opportunities and benefits
         List<String> opportunities = extractOpportunities(analysis);
@@ -230,7 +231,7 @@ public class SelfImprover {
                 "Generate improved version (complete file):")
         );
         
-        return brain.chatOnce(msgs, null, Map.of("temperature", 0.3));
+        return brain.chatOnce(msgs, null, Map.of("temperature", 0.3), Priority.BACKGROUND);
     }
     
     /**
@@ -2,86 +2,380 @@ package gemini.root;
 
 import org.java_websocket.WebSocket;
 import fraymus.OllamaSpine;
+import com.google.gson.*;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.SecureRandom;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.*;
 
 /**
  * SessionMemory: Gemini-style session continuity
  * Maintains per-connection chat history with token budgeting
+ *
+ * Per session:
+ * - Messages in a fixed ring of maxMessages slots with a running token
+ *   estimate (4 chars = 1 token), so a push costs O(evicted), not O(history)
+ * - snapshot() hands out an immutable list that is rebuilt only after the
+ *   history changes (copy-on-write); repeated reads share it
+ *
+ * Sessions and ids:
+ * - Every session has an id; the connection carries it as its attachment
+ * - A closed connection detaches its session instead of deleting it, so
+ *   a reconnecting client can RESUME <id>
+ * - Sessions idle for longer than idleTtl are evicted by a sweeper,
+ *   attached or not (half-open connections never see onClose)
+ * - With a spill directory, evicted sessions are written there as JSON
+ *   and loaded back on RESUME (or when their connection speaks again);
+ *   spill files are deleted after SPILL_RETENTION
  */
 public class SessionMemory {
-    
+
+    public static final long DEFAULT_IDLE_TTL_MS = 30 * 60_000L;
+    private static final long SPILL_RETENTION_MS = 7 * 24 * 3_600_000L;
+    private static final Gson GSON = new Gson();
+    private static final SecureRandom RANDOM = new SecureRandom();
+
     private final int maxMessages;
     private final int maxTokens;
-    private final ConcurrentHashMap<WebSocket, Deque<OllamaSpine.Msg>> sessions;
-    
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();  // id -> live session
+    private final ConcurrentHashMap<WebSocket, Session> attached = new ConcurrentHashMap<>();
+    private volatile long idleTtlMs = DEFAULT_IDLE_TTL_MS;
+    private volatile Path spillDir;  // null = evicted sessions are discarded
+    private ScheduledExecutorService sweeper;
+
+    // Stats
+    private volatile long evicted;
+    private volatile long spilled;
+    private volatile long resumed;
+
     public SessionMemory(int maxMessages, int maxTokens) {
-        this.maxMessages = maxMessages;
+        this.maxMessages = Math.max(1, maxMessages);
         this.maxTokens = maxTokens;
-        this.sessions = new ConcurrentHashMap<>();
     }
-    
+
+    /**
+     * Evict sessions idle for idleTtlMs, spilling them to spillDir if
+     * given, checked every sweepMs on a daemon thread
+     */
+    public synchronized void startEviction(long idleTtlMs, Path spillDir, long sweepMs) throws IOException {
+        this.idleTtlMs = idleTtlMs;
+        if (spillDir != null) Files.createDirectories(spillDir);
+        this.spillDir = spillDir;
+        if (sweeper != null) return;
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "session-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        sweeper.scheduleWithFixedDelay(this::evictIdle, sweepMs, sweepMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Spill every live session (shutdown), if spilling is on
+     */
+    public synchronized void close() {
+        if (sweeper != null) sweeper.shutdownNow();
+        if (spillDir == null) return;
+        for (Session s : sessions.values()) {
+            evict(s, Long.MAX_VALUE);
+        }
+    }
+
     /**
      * Initialize a new session for a connection
+     * @return The session id (for RESUME)
+     */
+    public String init(WebSocket conn) {
+        Session s = new Session(newId(), maxMessages);
+        sessions.put(s.id, s);
+        attach(conn, s);
+        return s.id;
+    }
+
+    /**
+     * Attach an earlier session (live or spilled) to this connection in
+     * place of its current one
+     * @return false if no session with that id is known
      */
-    public void init(WebSocket conn) {
-        sessions.put(conn, new ArrayDeque<>());
+    public boolean resume(WebSocket conn, String id) {
+        Session s = sessions.get(id);
+        if (s == null) s = unspill(id);
+        if (s == null) return false;
+        Session previous = conn == null ? null : attached.get(conn);
+        if (previous != null && previous != s) {
+            sessions.remove(previous.id, previous);  // the fresh session is replaced
+        }
+        attach(conn, s);
+        resumed++;
+        return true;
     }
-    
+
+    /**
+     * Id of the connection's session (null if none)
+     */
+    public String id(WebSocket conn) {
+        Session s = session(conn, false);
+        return s == null ? null : s.id;
+    }
+
     /**
      * Add a message to the session history
      */
     public void push(WebSocket conn, String role, String content) {
-        Deque<OllamaSpine.Msg> history = sessions.get(conn);
-        if (history == null) {
-            history = new ArrayDeque<>();
-            sessions.put(conn, history);
-        }
-        
-        history.addLast(new OllamaSpine.Msg(role, content));
-        
-        // Trim if too many messages
-        while (history.size() > maxMessages) {
-            history.removeFirst();
-        }
-        
-        // Trim if token budget exceeded (rough estimate: 4 chars = 1 token)
-        int estimatedTokens = 0;
-        for (OllamaSpine.Msg msg : history) {
-            estimatedTokens += msg.content.length() / 4;
-        }
-        
-        while (estimatedTokens > maxTokens && history.size() > 2) {
-            OllamaSpine.Msg removed = history.removeFirst();
-            estimatedTokens -= removed.content.length() / 4;
-        }
-    }
-    
+        while (true) {
+            Session s = session(conn, true);
+            synchronized (s) {
+                if (!s.evicted) {
+                    s.add(new OllamaSpine.Msg(role, content), maxTokens);
+                    return;
+                }
+            }
+            if (conn != null) attached.remove(conn, s);  // evicted under us: reload it
+        }
+    }
+
     /**
-     * Get a snapshot of the session history
+     * Get a snapshot of the session history (immutable, oldest first;
+     * shared until the history changes)
      */
-    public Deque<OllamaSpine.Msg> snapshot(WebSocket conn) {
-        Deque<OllamaSpine.Msg> history = sessions.get(conn);
-        if (history == null) {
-            return new ArrayDeque<>();
+    public List<OllamaSpine.Msg> snapshot(WebSocket conn) {
+        Session s = session(conn, false);
+        if (s == null) {
+            return List.of();
+        }
+        synchronized (s) {
+            return s.snapshot();
         }
-        return new ArrayDeque<>(history);
     }
-    
+
     /**
      * Clear session history for a connection
      */
     public void clear(WebSocket conn) {
-        Deque<OllamaSpine.Msg> history = sessions.get(conn);
-        if (history != null) {
-            history.clear();
+        Session s = session(conn, false);
+        if (s != null) {
+            synchronized (s) {
+                s.clear();
+            }
         }
     }
-    
+
     /**
-     * Remove session when connection closes
+     * Detach the session when its connection closes; it stays resumable
+     * until it has been idle for idleTtl
      */
     public void drop(WebSocket conn) {
-        sessions.remove(conn);
+        if (conn == null) return;
+        Session s = attached.remove(conn);
+        if (s != null) s.touch();
+    }
+
+    public String stats() {
+        return "live=" + sessions.size() + " attached=" + attached.size() + " evicted=" + evicted
+            + " spilled=" + spilled + " resumed=" + resumed + " idleTtlMs=" + idleTtlMs
+            + " spill=" + (spillDir == null ? "off" : spillDir);
+    }
+
+    /**
+     * The connection's session; reloaded if it was evicted while the
+     * connection sat idle, created if create is set
+     */
+    private Session session(WebSocket conn, boolean create) {
+        Session s = conn == null ? null : attached.get(conn);
+        if (s != null) {
+            s.touch();
+            return s;
+        }
+        String id = conn == null ? null : conn.getAttachment();
+        if (id != null) {
+            s = sessions.get(id);
+            if (s == null) s = unspill(id);
+            if (s != null) {
+                attach(conn, s);
+                return s;
+            }
+        }
+        if (!create) return null;
+        s = new Session(newId(), maxMessages);
+        sessions.put(s.id, s);
+        attach(conn, s);
+        return s;
+    }
+
+    private void attach(WebSocket conn, Session s) {
+        s.touch();
+        if (conn == null) return;
+        attached.put(conn, s);
+        conn.setAttachment(s.id);
+    }
+
+    private void evictIdle() {
+        try {
+            long cutoff = System.currentTimeMillis() - idleTtlMs;
+            for (Session s : sessions.values()) {
+                if (s.lastActive < cutoff) evict(s, cutoff);
+            }
+            attached.values().removeIf(s -> !sessions.containsKey(s.id));
+
+            Path dir = spillDir;
+            if (dir != null) {
+                long expired = System.currentTimeMillis() - SPILL_RETENTION_MS;
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.json")) {
+                    for (Path f : files) {
+                        if (Files.getLastModifiedTime(f).toMillis() < expired) Files.deleteIfExists(f);
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println(">>> [SESSION] Sweep failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Remove a session not active since cutoff, spilling it if enabled
+     */
+    private void evict(Session s, long cutoff) {
+        synchronized (s) {
+            if (s.evicted || s.lastActive >= cutoff) return;  // used again since the sweep looked
+            s.evicted = true;
+            sessions.remove(s.id, s);
+            evicted++;
+            Path dir = spillDir;
+            if (dir == null || s.size == 0) return;
+            Spilled out = new Spilled();
+            out.id = s.id;
+            out.lastActive = s.lastActive;
+            out.messages = s.snapshot();
+            Path file = dir.resolve(s.id + ".json");
+            Path tmp = dir.resolve(s.id + ".json.tmp");
+            try (Writer w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                GSON.toJson(out, w);
+            } catch (IOException e) {
+                System.err.println(">>> [SESSION] Spill failed for " + s.id + ": " + e.getMessage());
+                return;
+            }
+            try {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                spilled++;
+            } catch (IOException e) {
+                System.err.println(">>> [SESSION] Spill failed for " + s.id + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Load (and remove) a spilled session
+     */
+    private Session unspill(String id) {
+        Path dir = spillDir;
+        if (dir == null || !isId(id)) return null;
+        Path file = dir.resolve(id + ".json");
+        synchronized (this) {
+            Session live = sessions.get(id);  // another thread got here first
+            if (live != null) return live;
+            if (!Files.exists(file)) return null;
+            try (Reader r = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                Spilled in = GSON.fromJson(r, Spilled.class);
+                Session s = new Session(id, maxMessages);
+                if (in != null && in.messages != null) {
+                    for (OllamaSpine.Msg m : in.messages) {
+                        if (m != null && m.role != null && m.content != null) s.add(m, maxTokens);
+                    }
+                }
+                Files.deleteIfExists(file);
+                sessions.put(id, s);
+                return s;
+            } catch (IOException | JsonParseException e) {
+                System.err.println(">>> [SESSION] Unreadable spill " + file + ": " + e.getMessage());
+                return null;
+            }
+        }
+    }
+
+    private static String newId() {
+        byte[] b = new byte[9];
+        RANDOM.nextBytes(b);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(b);
+    }
+
+    /**
+     * Ids become file names: only what newId() produces is accepted
+     */
+    private static boolean isId(String id) {
+        return id != null && id.matches("[A-Za-z0-9_-]{12}");
+    }
+
+    private static final class Spilled {
+        String id;
+        long lastActive;
+        List<OllamaSpine.Msg> messages;
+    }
+
+    /**
+     * One session: ring of messages + running token estimate; guarded by
+     * its own monitor
+     */
+    private static final class Session {
+        final String id;
+        final OllamaSpine.Msg[] ring;
+        int head;  // oldest message
+        int size;
+        int tokens;
+        List<OllamaSpine.Msg> view;  // cached snapshot, null after a change
+        boolean evicted;
+        volatile long lastActive;
+
+        Session(String id, int capacity) {
+            this.id = id;
+            this.ring = new OllamaSpine.Msg[capacity];
+        }
+
+        void touch() {
+            lastActive = System.currentTimeMillis();
+        }
+
+        void add(OllamaSpine.Msg msg, int maxTokens) {
+            // Trim if too many messages
+            if (size == ring.length) removeFirst();
+            ring[(head + size) % ring.length] = msg;
+            size++;
+            tokens += estimate(msg);
+
+            // Trim if token budget exceeded
+            while (tokens > maxTokens && size > 2) {
+                removeFirst();
+            }
+            view = null;
+        }
+
+        private void removeFirst() {
+            tokens -= estimate(ring[head]);
+            ring[head] = null;
+            head = (head + 1) % ring.length;
+            size--;
+        }
+
+        List<OllamaSpine.Msg> snapshot() {
+            if (view == null) {
+                OllamaSpine.Msg[] copy = new OllamaSpine.Msg[size];
+                for (int i = 0; i < size; i++) copy[i] = ring[(head + i) % ring.length];
+                view = List.of(copy);
+            }
+            return view;
+        }
+
+        void clear() {
+            Arrays.fill(ring, null);
+            head = 0;
+            size = 0;
+            tokens = 0;
+            view = null;
+        }
+
+        private static int estimate(OllamaSpine.Msg msg) {
+            return msg.content.length() / 4;  // rough estimate: 4 chars = 1 token
+        }
     }
 }
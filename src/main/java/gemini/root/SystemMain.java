@@ -1,14 +1,22 @@
 package gemini.root;
 
 import com.google.gson.*;
+import fraymus.EmbeddingCache;
+import fraymus.LlmScheduler;
 import fraymus.OllamaSpine;
 import org.java_websocket.WebSocket;
 import org.java_websocket.handshake.ClientHandshake;
 import org.java_websocket.server.WebSocketServer;
 
+import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 public class SystemMain {
 
@@ -45,55 +53,174 @@ public class SystemMain {
         System.out.println("--- FRAYMUS: UNIVERSAL INTERFACE (SESSION + REFLECTOR) ---");
         System.out.println("ChatModel=" + cfg.chatModel + " EmbedModel=" + cfg.embedModel + " Port=" + cfg.port);
 
+        Hippocampus.setForceInterval(cfg.memoryForceMs);
         Hippocampus.recall();
+        Runtime.getRuntime().addShutdownHook(new Thread(Hippocampus::close, "hippocampus-flush"));
 
         VectorVault vault = new VectorVault();
+        vault.setSearchMode(cfg.searchMode);
+        vault.configureIndex(cfg.annM, cfg.annEfConstruction, cfg.annEfSearch);
+        vault.setStorageMode(cfg.storageMode);
+        vault.setRerankFactor(cfg.rerankFactor);
+        vault.setSimd(cfg.simd);
         vault.load();
         System.out.println(">>> [VAULT] entries=" + vault.size());
+        Runtime.getRuntime().addShutdownHook(new Thread(vault::close, "vault-close"));
 
         OllamaSpine brain = new OllamaSpine(cfg.chatModel, cfg.embedModel);
+        OllamaSpine.setMaxConcurrentRequests(cfg.maxLlm);
+        brain.setEmbedBatching(cfg.embedBatchSize, cfg.embedInFlight);
+        if (cfg.embedCacheMb > 0) {
+            try {
+                EmbeddingCache embedCache = EmbeddingCache.open(
+                    Paths.get("fraymus_embed_cache"), cfg.embedModel, cfg.embedCacheMb * 1024L * 1024L);
+                brain.setEmbeddingCache(embedCache);
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    System.out.println(">>> [EMBED-CACHE] " + embedCache.stats());
+                    try {
+                        embedCache.close();
+                    } catch (IOException e) {
+                        System.err.println(">>> [EMBED-CACHE] Close failed: " + e.getMessage());
+                    }
+                }, "embed-cache-close"));
+            } catch (IOException e) {
+                System.err.println(">>> [EMBED-CACHE] Disabled: " + e.getMessage());
+            }
+        }
+        if (cfg.metricsPort > 0) {
+            try {
+                Metrics.serve(cfg.metricsPort);
+            } catch (IOException e) {
+                System.err.println(">>> [METRICS] Endpoint disabled: " + e.getMessage());
+            }
+        }
+        Metrics.gauge("vault_entries", vault::size);
+        Metrics.gauge("memory_blocks", Hippocampus::size);
+        Metrics.gauge("llm_in_flight", () -> OllamaSpine.scheduler().inFlight());
+        Metrics.gauge("llm_concurrency_limit", () -> OllamaSpine.scheduler().limit());
+        EmbeddingCache gaugedCache = brain.getEmbeddingCache();
+        if (gaugedCache != null) {
+            Metrics.gauge("embed_cache_hits", gaugedCache::hits);
+            Metrics.gauge("embed_cache_misses", gaugedCache::misses);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(TraceLogger::close, "trace-flush"));
+        if (cfg.jfr) {
+            try {
+                JfrRecorder.start();
+            } catch (IOException | RuntimeException e) {
+                System.err.println(">>> [JFR] Recording not started: " + e.getMessage());
+            }
+        }
         Transmudder soul = new Transmudder();
         ToolRouter tools = new ToolRouter(vault, soul, brain);
+        ToolPlanExecutor toolPlans = new ToolPlanExecutor(tools, cfg.toolThreads);
         RagEngine rag = new RagEngine(brain, vault);
+        rag.setHybrid(cfg.hybridRetrieval);
+
+        // Semantic answer cache: near-identical questions over the same sources
+        AnswerCache answerCache = cfg.answerCacheSize > 0
+                ? new AnswerCache(cfg.answerCacheSimilarity, cfg.answerCacheTtlSeconds, cfg.answerCacheSize)
+                : null;
+
+        // Intent fast path: answer "no tool needed" locally when confident
+        IntentClassifier intents = null;
+        if (cfg.intentFastPath) {
+            IntentClassifier classifier = new IntentClassifier(cfg.intentSkipBelow, cfg.intentAuditRate);
+            try {
+                if (classifier.load(Paths.get("memory"))) System.out.println(">>> [INTENT] Loaded learned weights");
+            } catch (IOException e) {
+                System.err.println(">>> [INTENT] Load failed, using seed weights: " + e.getMessage());
+            }
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                System.out.println(">>> [INTENT] " + classifier.stats());
+                try {
+                    classifier.save(Paths.get("memory"));
+                } catch (IOException e) {
+                    System.err.println(">>> [INTENT] Save failed: " + e.getMessage());
+                }
+            }, "intent-save"));
+            intents = classifier;
+        }
+        IntentClassifier intentClassifier = intents;
 
         // Session memory: Gemini-feel continuity
         SessionMemory sessions = new SessionMemory(40, 12_000);
+        if (cfg.sessionIdleSeconds > 0) {
+            try {
+                sessions.startEviction(cfg.sessionIdleSeconds * 1000L,
+                    cfg.sessionSpill ? Paths.get("memory", "sessions") : null, 60_000L);
+                Runtime.getRuntime().addShutdownHook(new Thread(sessions::close, "session-spill"));
+            } catch (IOException e) {
+                System.err.println(">>> [SESSION] Eviction disabled: " + e.getMessage());
+            }
+        }
 
         // Reflector: System-2 loop
         Reflector reflector = new Reflector(brain);
 
+        // Multi-agent ensemble, answering within a latency budget
+        AgentOrchestrator agents = new AgentOrchestrator(brain);
+        agents.setLatencyBudget(cfg.agentBudgetMs);
+
         // Per-connection reflect toggle
         ConcurrentHashMap<WebSocket, Boolean> reflectEnabled = new ConcurrentHashMap<>();
 
+        // Per-connection multi-agent toggle (takes precedence over the reflector)
+        ConcurrentHashMap<WebSocket, Boolean> agentsEnabled = new ConcurrentHashMap<>();
+
+        // Per-connection token streaming toggle
+        ConcurrentHashMap<WebSocket, Boolean> streamEnabled = new ConcurrentHashMap<>();
+
+        // Messages run off the I/O thread, in order per connection
+        ConnectionExecutor workers = new ConnectionExecutor(cfg.connectionQueue);
+
         // CLI indexing mode
         if (cfg.indexPath != null) {
-            JsonObject toolArgs = new JsonObject();
-            toolArgs.addProperty("path", cfg.indexPath);
-            toolArgs.addProperty("chunkSize", 1200);
-            toolArgs.addProperty("overlap", 200);
-            ToolRouter.ToolResult tr = tools.run("index_path", toolArgs);
+            ToolRouter.ToolResult tr = tools.indexPath(cfg.indexPath, 1200, 200,
+                    progress -> System.out.println(">>> [INGEST] " + progress));
             System.out.println(tr.output);
             return;
         }
 
+        // Watch mode: keep the allowed roots indexed as files change
+        IndexWatcher indexWatcher = null;
+        if (cfg.watch) {
+            try {
+                IndexWatcher w = new IndexWatcher(tools, ToolRouter.allowedRootDirectories(), cfg.watchDebounceMs);
+                w.start();
+                Runtime.getRuntime().addShutdownHook(new Thread(w::close, "index-watcher-close"));
+                indexWatcher = w;
+            } catch (IOException e) {
+                System.err.println(">>> [WATCH] Disabled: " + e.getMessage());
+            }
+        }
+        IndexWatcher watcher = indexWatcher;
+
         WebSocketServer nerve = new WebSocketServer(new InetSocketAddress(cfg.port)) {
 
             @Override
             public void onOpen(WebSocket conn, ClientHandshake handshake) {
                 System.out.println(">>> [INTERFACE] Connected.");
-                sessions.init(conn);
+                String sessionId = sessions.init(conn);
                 reflectEnabled.put(conn, true); // default ON
+                streamEnabled.put(conn, true);  // default ON
 
-                conn.send("FRAYMUS ONLINE. Vault=" + vault.size() + " blocks=" + Hippocampus.chain.size());
+                conn.send("FRAYMUS ONLINE. Vault=" + vault.size() + " blocks=" + Hippocampus.size());
+                conn.send("SESSION " + sessionId);
                 conn.send("Commands:");
-                conn.send("  TRANSMUTE:<path> | INDEX:<dir> | !calc <expr> | RESET");
-                conn.send("  REFLECT ON | REFLECT OFF | REFLECT STATUS");
+                conn.send("  TRANSMUTE:<path> | INDEX:<dir> | INDEX CANCEL | !calc <expr> | RESET | RESUME <session>");
+                conn.send("  REFLECT ON | REFLECT OFF | REFLECT STATUS | AGENTS ON | AGENTS OFF | AGENTS STATUS");
+                conn.send("  STREAM ON | STREAM OFF | CACHE STATUS | LLM STATUS | INTENT STATUS | WATCH STATUS | SESSION STATUS | METRICS STATUS");
+                conn.send("  JFR START | JFR DUMP | JFR STOP | JFR STATUS");
             }
 
             @Override
             public void onClose(WebSocket conn, int code, String reason, boolean remote) {
+                workers.remove(conn);
                 sessions.drop(conn);
                 reflectEnabled.remove(conn);
+                agentsEnabled.remove(conn);
+                streamEnabled.remove(conn);
             }
 
             @Override
@@ -104,10 +231,25 @@ public class SystemMain {
             @Override
             public void onStart() {
                 System.out.println(">>> [NERVE] ws://localhost:" + cfg.port);
+                System.out.println(">>> [NERVE] Workers: " + workers.describe() + ", max LLM requests " + cfg.maxLlm);
             }
 
             @Override
             public void onMessage(WebSocket conn, String message) {
+                // Cancelling must not wait behind the indexing it cancels
+                if (message != null && message.trim().equalsIgnoreCase("INDEX CANCEL")) {
+                    int n = tools.cancelIndexing();
+                    conn.send(n == 0 ? "INDEX: nothing running" : "INDEX: cancelling " + n + " run(s)");
+                    return;
+                }
+
+                // Only enqueue here: RAG, LLM calls and tools must not block the I/O thread
+                if (!workers.submit(conn, () -> handleMessage(conn, message))) {
+                    conn.send("[BUSY] Still working on your earlier messages. Please wait and try again.");
+                }
+            }
+
+            private void handleMessage(WebSocket conn, String message) {
                 try {
                     String user = (message == null) ? "" : message.trim();
                     if (user.isEmpty()) return;
@@ -118,6 +260,17 @@ public class SystemMain {
                         conn.send("SESSION RESET. (Chat history cleared for this connection.)");
                         return;
                     }
+                    if (user.toUpperCase().startsWith("RESUME ")) {
+                        String id = user.substring("RESUME ".length()).trim();
+                        conn.send(sessions.resume(conn, id)
+                            ? "SESSION " + id + " RESUMED. (" + sessions.snapshot(conn).size() + " messages)"
+                            : "SESSION " + id + ": not found (expired or never existed)");
+                        return;
+                    }
+                    if (user.equalsIgnoreCase("SESSION STATUS")) {
+                        conn.send("SESSION " + sessions.id(conn) + ": " + sessions.stats());
+                        return;
+                    }
 
                     if (user.equalsIgnoreCase("REFLECT ON")) {
                         reflectEnabled.put(conn, true);
@@ -134,6 +287,57 @@ public class SystemMain {
                         conn.send("REFLECTOR: " + (on ? "ON" : "OFF"));
                         return;
                     }
+                    if (user.equalsIgnoreCase("AGENTS ON")) {
+                        agentsEnabled.put(conn, true);
+                        conn.send("AGENTS: ON (Skeptic, Explorer, Synthesizer → synthesis"
+                            + (cfg.agentBudgetMs > 0 ? ", budget " + cfg.agentBudgetMs + "ms)" : ")"));
+                        return;
+                    }
+                    if (user.equalsIgnoreCase("AGENTS OFF")) {
+                        agentsEnabled.remove(conn);
+                        conn.send("AGENTS: OFF");
+                        return;
+                    }
+                    if (user.equalsIgnoreCase("AGENTS STATUS")) {
+                        conn.send("AGENTS: " + (agentsEnabled.getOrDefault(conn, false) ? "ON" : "OFF") + " | " + agents.stats());
+                        return;
+                    }
+                    if (user.equalsIgnoreCase("STREAM ON")) {
+                        streamEnabled.put(conn, true);
+                        conn.send("STREAM: ON (tokens arrive as [STREAM] messages, then [STREAM END])");
+                        return;
+                    }
+                    if (user.equalsIgnoreCase("STREAM OFF")) {
+                        streamEnabled.put(conn, false);
+                        conn.send("STREAM: OFF (one message per answer)");
+                        return;
+                    }
+                    if (user.equalsIgnoreCase("CACHE STATUS")) {
+                        EmbeddingCache embedCache = brain.getEmbeddingCache();
+                        conn.send("EMBED CACHE: " + (embedCache == null ? "OFF" : embedCache.stats()));
+                        conn.send("ANSWER CACHE: " + (answerCache == null ? "OFF" : answerCache.stats()));
+                        return;
+                    }
+                    if (user.equalsIgnoreCase("LLM STATUS")) {
+                        conn.send("LLM SCHEDULER: " + OllamaSpine.scheduler().stats());
+                        return;
+                    }
+                    if (user.equalsIgnoreCase("INTENT STATUS")) {
+                        conn.send("INTENT FAST PATH: " + (intentClassifier == null ? "OFF" : intentClassifier.stats()));
+                        return;
+                    }
+                    if (user.equalsIgnoreCase("METRICS STATUS")) {
+                        conn.send("METRICS:\n" + Metrics.summary());
+                        return;
+                    }
+                    if (user.toUpperCase().startsWith("JFR ")) {
+                        conn.send("JFR: " + jfrCommand(user.substring(4).trim().toUpperCase()));
+                        return;
+                    }
+                    if (user.equalsIgnoreCase("WATCH STATUS")) {
+                        conn.send("INDEX WATCH: " + (watcher == null ? "OFF (start with --watch)" : watcher.stats()));
+                        return;
+                    }
 
                     // ===== Fast ingestion commands =====
                     if (user.toUpperCase().startsWith("TRANSMUTE:")) {
@@ -150,9 +354,9 @@ public class SystemMain {
 
                     if (user.toUpperCase().startsWith("INDEX:")) {
                         String path = user.substring("INDEX:".length()).trim();
-                        JsonObject toolArgs = new JsonObject();
-                        toolArgs.addProperty("path", path);
-                        ToolRouter.ToolResult tr = tools.run("index_path", toolArgs);
+                        ToolRouter.ToolResult tr = tools.indexPath(path, 1200, 200, progress -> {
+                            if (!progress.done && conn.isOpen()) conn.send("[INDEX] " + progress);
+                        });
 
                         Hippocampus.commitMemory("INGEST", "INDEXED: " + path + " :: " + tr.output);
                         sessions.push(conn, "user", user);
@@ -174,8 +378,10 @@ public class SystemMain {
                         return;
                     }
 
-                    // ===== RAG context =====
-                    String ragContext = rag.buildContext(user, 6, 8000);
+                    long started = System.nanoTime();
+                    TraceLogger.TraceEntry trace = new TraceLogger.TraceEntry(TraceLogger.generateRequestId());
+                    trace.query = user;
+                    trace.model = cfg.chatModel;
 
                     // ===== Tool planning =====
                     String plannerSystem = """
@@ -184,7 +390,7 @@ public class SystemMain {
                     Return ONLY JSON matching the schema.
                     Tools:
                       - calc({expression})
-                      - memory_search({query,limit})
+                      - memory_search({query,limit,since_hours})
                       - list_files({path,limit})
                       - write_file({path,content,overwrite})
                       - index_path({path,chunkSize,overlap})
@@ -200,20 +406,91 @@ public class SystemMain {
                     );
 
                     Map<String, Object> planOpts = Map.of("temperature", 0);
-                    String planJson = brain.chatOnce(planMsgs, TOOL_PLAN_SCHEMA, planOpts);
+                    long[] planStarted = new long[1];
+                    Supplier<CompletableFuture<String>> plan = () -> {
+                        planStarted[0] = System.nanoTime();
+                        CompletableFuture<String> call = brain.chatOnceAsync(planMsgs, TOOL_PLAN_SCHEMA, planOpts);
+                        call.thenRun(() -> trace.stage("plan", Metrics.record("plan", planStarted[0])));
+                        return call;
+                    };
+
+                    // Confident "no tool" messages skip the planner round trip
+                    IntentClassifier.Decision intent = intentClassifier == null ? null : intentClassifier.decide(user);
+                    boolean skipPlanner = intent != null && intent.skipPlanner;
+                    if (intent != null) {
+                        trace.plannerSkipped = skipPlanner;
+                        trace.intentToolProbability = intent.toolProbability;
+                        if (skipPlanner) {
+                            Metrics.increment("planner_skipped_total");
+                            System.out.println(String.format(Locale.ROOT, ">>> [INTENT] Planner skipped (p(tool)=%.3f)", intent.toolProbability));
+                        }
+                    }
+
+                    // ===== Session history snapshot =====
+                    List<OllamaSpine.Msg> history = sessions.snapshot(conn);
+
+                    // History shapes the answer but is not in the cache key: only a
+                    // session's first turn can be served from (or go into) the cache
+                    boolean useCache = answerCache != null && history.isEmpty();
 
-                    JsonArray calls = safeParseCalls(planJson);
+                    // Without the answer cache the planner runs while RAG retrieves;
+                    // with it the planner waits for the lookup so a hit makes no LLM call
+                    CompletableFuture<String> planFuture = !useCache && !skipPlanner ? plan.get() : null;
 
-                    // ===== Execute tools =====
+                    // ===== RAG context =====
+                    RagEngine.Retrieval retrieval = rag.retrieve(user, 6, 8000);
+                    String ragContext = retrieval.context;
+                    trace.ragSnippets = retrieval.used.size();
+                    trace.ragSources.addAll(retrieval.sources());
+                    trace.stage("embed", retrieval.embedNanos);
+                    trace.stage("search", retrieval.searchNanos);
+
+                    boolean useAgents = agentsEnabled.getOrDefault(conn, false);
+                    boolean useReflector = !useAgents && reflectEnabled.getOrDefault(conn, true);
+                    String cacheVariant = cfg.chatModel + "|reflect=" + useReflector + "|agents=" + useAgents;
+
+                    // ===== Answer cache =====
+                    if (useCache) {
+                        String cached = answerCache.lookup(retrieval, cacheVariant);
+                        if (cached != null) {
+                            Metrics.increment("answer_cache_hits_total");
+                            Hippocampus.commitMemory("CONVERSATION", "User: " + user + " | AI: " + cached);
+                            sessions.push(conn, "user", user);
+                            sessions.push(conn, "assistant", cached);
+                            conn.send(cached);
+
+                            trace.reflectorEnabled = useReflector;
+                            trace.answerLength = cached.length();
+                            trace.answerCacheHit = true;
+                            trace.answerCacheHitRate = answerCache.hitRate();
+                            trace.latencyMs = Metrics.record("request", started) / 1_000_000;
+                            TraceLogger.log(trace);
+                            return;
+                        }
+                        Metrics.increment("answer_cache_misses_total");
+                        if (!skipPlanner) planFuture = plan.get();
+                    }
+
+                    JsonArray calls;
+                    if (skipPlanner) {
+                        calls = defaultNoneCalls();
+                    } else {
+                        String planJson = planFuture.join();
+                        calls = safeParseCalls(planJson);
+                        if (intentClassifier != null && !planJson.startsWith("Error: ")) {
+                            intentClassifier.plannerResult(user, needsTool(calls), (System.nanoTime() - planStarted[0]) / 1_000_000);
+                        }
+                    }
+
+                    // ===== Execute tools (independent calls concurrently, results in plan order) =====
                     StringBuilder toolResults = new StringBuilder();
                     if (calls != null) {
-                        for (int i = 0; i < calls.size(); i++) {
-                            JsonObject call = calls.get(i).getAsJsonObject();
-                            String tool = call.get("tool").getAsString();
-                            JsonObject a = call.getAsJsonObject("args");
-                            if ("none".equals(tool)) continue;
-
-                            ToolRouter.ToolResult tr = tools.run(tool, a);
+                        long toolsStarted = System.nanoTime();
+                        List<ToolRouter.ToolResult> executed = toolPlans.execute(calls);
+                        if (!executed.isEmpty()) trace.stage("tools", System.nanoTime() - toolsStarted);
+                        for (ToolRouter.ToolResult tr : executed) {
+                            trace.toolCalls.add(tr.tool);
+                            trace.toolOutputLength += tr.output.length();
                             toolResults.append("TOOL_RESULT(").append(tr.tool).append("):\n")
                                     .append(tr.output).append("\n\n");
                         }
@@ -225,17 +502,25 @@ public class SystemMain {
                             (toolResults.length() > 0 ? toolResults : "") +
                             "USER QUESTION:\n" + user;
 
-                    // ===== Session history snapshot =====
-                    Deque<OllamaSpine.Msg> historyDq = sessions.snapshot(conn);
-                    List<OllamaSpine.Msg> history = new ArrayList<>(historyDq);
-
                     // ===== Answer (Reflect or Fast) =====
-                    boolean useReflector = reflectEnabled.getOrDefault(conn, true);
                     String answer;
 
-                    if (useReflector) {
+                    // Streamed tokens go out as they arrive; TTFT = first token on the wire
+                    AtomicLong firstToken = new AtomicLong(-1);
+                    Consumer<String> onToken = !streamEnabled.getOrDefault(conn, true) ? null : token -> {
+                        firstToken.compareAndSet(-1, System.nanoTime());
+                        conn.send("[STREAM] " + token);
+                    };
+
+                    long answerStarted = System.nanoTime();
+                    if (useAgents) {
+                        conn.send("[AGENTS] Skeptic, Explorer, Synthesizer...");
+                        answer = agents.orchestrate(user, contextPacket, history);
+                        trace.stage("agents", System.nanoTime() - answerStarted);
+                    } else if (useReflector) {
                         conn.send("[REFLECTOR] Thinking (draft → critique → refine)...");
-                        answer = reflector.reflect(user, contextPacket, history);
+                        answer = reflector.reflect(user, contextPacket, history, onToken);
+                        trace.stage("reflect", System.nanoTime() - answerStarted);
                     } else {
                         // Fast single-pass fallback with injection-safe instructions + citations
                         String finalSystem = """
@@ -257,7 +542,15 @@ public class SystemMain {
                                 "num_ctx", 8192
                         );
 
-                        answer = brain.chatOnce(finalMsgs, null, ansOpts);
+                        answer = onToken != null
+                                ? brain.chatStream(finalMsgs, ansOpts, onToken)
+                                : brain.chatOnce(finalMsgs, null, ansOpts);
+                        trace.stage("generate", Metrics.record("generate", answerStarted));
+                    }
+
+                    // Tool output is not part of the cache key, so only tool-free answers are kept
+                    if (useCache && trace.toolCalls.isEmpty() && !answer.startsWith("Error: ")) {
+                        answerCache.store(retrieval, cacheVariant, answer);
                     }
 
                     // ===== Persist + Update session memory =====
@@ -265,10 +558,36 @@ public class SystemMain {
                     sessions.push(conn, "user", user);
                     sessions.push(conn, "assistant", answer);
 
-                    conn.send(answer);
+                    if (firstToken.get() < 0) {
+                        conn.send(answer);  // not streamed (off, or failed before the first token)
+                    } else {
+                        if (answer.startsWith("Error: ")) conn.send("[SYSTEM ERROR] " + answer);
+                        conn.send("[STREAM END]");
+                    }
+
+                    trace.reflectorEnabled = useReflector;
+                    trace.contextSize = contextPacket.length();
+                    trace.answerLength = answer.length();
+                    trace.latencyMs = Metrics.record("request", started) / 1_000_000;
+                    if (firstToken.get() >= 0) trace.ttftMs = (firstToken.get() - started) / 1_000_000;
+                    if (answerCache != null) trace.answerCacheHitRate = answerCache.hitRate();
+                    TraceLogger.log(trace);
+
+                    // Audit a sample of skips with a background planner call (measures disagreement)
+                    if (intent != null && intent.audit) {
+                        brain.chatOnceAsync(planMsgs, TOOL_PLAN_SCHEMA, planOpts, LlmScheduler.Priority.BACKGROUND)
+                            .thenAccept(auditJson -> {
+                                if (auditJson.startsWith("Error: ")) return;
+                                JsonArray auditCalls = safeParseCalls(auditJson);
+                                if (intentClassifier.auditResult(user, needsTool(auditCalls))) {
+                                    System.out.println(">>> [INTENT] Audit disagreement: planner wanted "
+                                        + auditCalls + " for: " + user);
+                                }
+                            });
+                    }
 
                 } catch (Exception e) {
-                    conn.send("[SYSTEM ERROR] " + e.getMessage());
+                    if (conn.isOpen()) conn.send("[SYSTEM ERROR] " + e.getMessage());
                 }
             }
         };
@@ -276,6 +595,28 @@ public class SystemMain {
         nerve.start();
     }
 
+    /**
+     * JFR START | DUMP | STOP | STATUS
+     */
+    private static String jfrCommand(String action) {
+        try {
+            switch (action) {
+                case "START":
+                    return JfrRecorder.start() ? "RECORDING (" + JfrRecorder.status() + ")" : "already " + JfrRecorder.status();
+                case "DUMP":
+                    return "DUMPED " + JfrRecorder.dump() + " (still recording)";
+                case "STOP":
+                    return JfrRecorder.stop() ? "STOPPED" : "OFF";
+                case "STATUS":
+                    return JfrRecorder.status();
+                default:
+                    return "unknown command (JFR START | JFR DUMP | JFR STOP | JFR STATUS)";
+            }
+        } catch (IOException | RuntimeException e) {
+            return "failed: " + e.getMessage();
+        }
+    }
+
     private static JsonArray safeParseCalls(String planJson) {
         try {
             JsonObject plan = JsonParser.parseString(planJson).getAsJsonObject();
@@ -288,6 +629,14 @@ public class SystemMain {
         }
     }
 
+    private static boolean needsTool(JsonArray calls) {
+        for (int i = 0; i < calls.size(); i++) {
+            JsonElement tool = calls.get(i).getAsJsonObject().get("tool");
+            if (tool != null && !"none".equals(tool.getAsString())) return true;
+        }
+        return false;
+    }
+
     private static JsonArray defaultNoneCalls() {
         JsonArray arr = new JsonArray();
         JsonObject o = new JsonObject();
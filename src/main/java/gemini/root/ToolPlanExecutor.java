@@ -0,0 +1,191 @@
+package gemini.root;
+
+import com.google.gson.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ToolPlanExecutor: Runs a planner's tool calls as a small DAG
+ *
+ * Independent calls (memory_search next to index_path, say) run at the
+ * same time instead of one after another; results still come back in plan
+ * order so the context packet reads the same.
+ *
+ * Dependencies:
+ * - A write_file waits for earlier calls touching the same path (or a
+ *   parent/child of it), and later calls on that path wait for the write
+ * - Everything else is independent
+ *
+ * Execution:
+ * - Bounded pool of daemon threads shared by all connections
+ * - Per-tool timeouts; a call that runs over is interrupted and reported
+ *   as a timeout (an embedding request already sent may still finish)
+ * - write_file is also serialised per target path across connections
+ *   (striped locks)
+ * - Each call is counted (tool_calls_total) and timed into the
+ *   "tool:<name>" Metrics stage
+ */
+public class ToolPlanExecutor {
+
+    public static final int DEFAULT_THREADS = 4;
+
+    private static final Map<String, Long> TIMEOUT_MS = Map.of(
+        "calc", 2_000L,
+        "memory_search", 5_000L,
+        "list_files", 5_000L,
+        "write_file", 10_000L,
+        "index_path", 300_000L
+    );
+    private static final long DEFAULT_TIMEOUT_MS = 30_000L;
+    private static final int WRITE_STRIPES = 64;
+
+    private final ToolRouter tools;
+    private final ExecutorService pool;
+    private final Object[] writeLocks = new Object[WRITE_STRIPES];
+
+    private static class Call {
+        final int index;
+        final String tool;
+        final JsonObject args;
+        final Path target;  // path the call reads or writes, or null
+
+        Call(int index, String tool, JsonObject args, Path target) {
+            this.index = index;
+            this.tool = tool;
+            this.args = args;
+            this.target = target;
+        }
+
+        boolean writes() {
+            return "write_file".equals(tool);
+        }
+    }
+
+    public ToolPlanExecutor(ToolRouter tools, int threads) {
+        this.tools = tools;
+        AtomicInteger n = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread t = new Thread(r, "tool-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        for (int i = 0; i < WRITE_STRIPES; i++) writeLocks[i] = new Object();
+    }
+
+    /**
+     * Execute the plan's calls ("none" entries are skipped)
+     * @return One result per executed call, in plan order
+     */
+    public List<ToolRouter.ToolResult> execute(JsonArray plan) {
+        List<Call> calls = new ArrayList<>();
+        for (int i = 0; i < plan.size(); i++) {
+            JsonObject call = plan.get(i).getAsJsonObject();
+            String tool = call.get("tool").getAsString();
+            if ("none".equals(tool)) continue;
+            JsonObject args = call.has("args") ? call.getAsJsonObject("args") : new JsonObject();
+            calls.add(new Call(calls.size(), tool, args, target(tool, args)));
+        }
+        if (calls.isEmpty()) return new ArrayList<>();
+
+        long started = System.nanoTime();
+        List<CompletableFuture<ToolRouter.ToolResult>> futures = new ArrayList<>();
+        for (Call call : calls) {
+            List<CompletableFuture<ToolRouter.ToolResult>> deps = new ArrayList<>();
+            for (Call earlier : calls.subList(0, call.index)) {
+                if (conflicts(earlier, call)) deps.add(futures.get(earlier.index));
+            }
+            CompletableFuture<ToolRouter.ToolResult> f = deps.isEmpty()
+                ? start(call)
+                : CompletableFuture.allOf(deps.toArray(new CompletableFuture<?>[0])).thenCompose(v -> start(call));
+            futures.add(f);
+        }
+
+        List<ToolRouter.ToolResult> results = new ArrayList<>();
+        for (int i = 0; i < calls.size(); i++) {
+            try {
+                results.add(futures.get(i).join());
+            } catch (CompletionException | CancellationException e) {
+                results.add(new ToolRouter.ToolResult(calls.get(i).tool, "Error: " + e.getMessage()));
+            }
+        }
+        if (calls.size() > 1) {
+            System.out.println(">>> [TOOLS] " + calls.size() + " calls in "
+                + (System.nanoTime() - started) / 1_000_000 + "ms");
+        }
+        return results;
+    }
+
+    /**
+     * Run one call on the pool, completing with a timeout result if it
+     * overruns (the task is then interrupted)
+     */
+    private CompletableFuture<ToolRouter.ToolResult> start(Call call) {
+        long timeoutMs = TIMEOUT_MS.getOrDefault(call.tool, DEFAULT_TIMEOUT_MS);
+        ToolRouter.ToolResult timedOut = new ToolRouter.ToolResult(call.tool,
+            "Error: " + call.tool + " timed out after " + timeoutMs + "ms");
+
+        CompletableFuture<ToolRouter.ToolResult> result = new CompletableFuture<>();
+        Future<?> task;
+        try {
+            task = pool.submit(() -> {
+                try {
+                    result.complete(invoke(call));
+                } catch (Throwable t) {
+                    result.complete(new ToolRouter.ToolResult(call.tool, "Error: " + t.getMessage()));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.completedFuture(new ToolRouter.ToolResult(call.tool, "Error: tool executor shut down"));
+        }
+        return result.completeOnTimeout(timedOut, timeoutMs, TimeUnit.MILLISECONDS)
+            .whenComplete((r, e) -> {
+                if (r == timedOut) task.cancel(true);
+            });
+    }
+
+    private ToolRouter.ToolResult invoke(Call call) {
+        String metric = TIMEOUT_MS.containsKey(call.tool) ? call.tool : "other";  // planner-supplied names: keep labels bounded
+        Metrics.increment("tool_calls_total", "tool", metric);
+        long started = System.nanoTime();
+        try {
+            if (!call.writes() || call.target == null) {
+                return tools.run(call.tool, call.args);
+            }
+            Object lock = writeLocks[Math.floorMod(call.target.hashCode(), WRITE_STRIPES)];
+            synchronized (lock) {
+                return tools.run(call.tool, call.args);
+            }
+        } finally {
+            Metrics.record("tool:" + metric, started);
+        }
+    }
+
+    private static boolean conflicts(Call earlier, Call later) {
+        if (!earlier.writes() && !later.writes()) return false;
+        if (earlier.target == null || later.target == null) return earlier.writes() && later.writes();
+        return earlier.target.startsWith(later.target) || later.target.startsWith(earlier.target);
+    }
+
+    /**
+     * Normalised path a call touches (write_file resolves under generated/,
+     * like ToolRouter does)
+     */
+    private static Path target(String tool, JsonObject args) {
+        JsonElement path = args.get("path");
+        if (path == null || path.isJsonNull()) return null;
+        try {
+            Path p = "write_file".equals(tool)
+                ? Paths.get("generated").resolve(path.getAsString())
+                : Paths.get(path.getAsString());
+            return p.toAbsolutePath().normalize();
+        } catch (InvalidPathException | UnsupportedOperationException | IllegalStateException e) {
+            return null;
+        }
+    }
+
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+}
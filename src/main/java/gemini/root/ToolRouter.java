@@ -5,6 +5,8 @@ import fraymus.OllamaSpine;
 import java.io.*;
 import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * ToolRouter: Executes tools based on JSON specifications
@@ -13,6 +15,10 @@ import java.util.*;
  * - Path allowlist for file operations
  * - Path normalization to prevent ../ escapes
  * - write_file locked to generated/ directory
+ * - calc uses ExpressionEvaluator (no script engine)
+ * - index_path runs IngestPipeline (recursive, parallel, group commits)
+ * - index_path is incremental: a per-root IndexManifest skips unchanged
+ *   files and tombstones chunks of modified or deleted ones
  */
 public class ToolRouter {
     
@@ -32,6 +38,13 @@ public class ToolRouter {
     
     private static final String WRITE_ROOT = "./generated";
     
+    private static final ExpressionEvaluator CALC = new ExpressionEvaluator();
+    
+    private final Set<IngestPipeline> activeIngests = ConcurrentHashMap.newKeySet();
+    
+    // One index_path run per root at a time (they share its manifest)
+    private final Map<Path, ReentrantLock> rootLocks = new ConcurrentHashMap<>();
+    
     public static class ToolResult {
         public String tool;
         public String output;
@@ -78,27 +91,13 @@ public class ToolRouter {
     private ToolResult calc(JsonObject args) {
         String expr = args.get("expression").getAsString();
         
-        // Simple expression evaluator with safety limits
+        // Native evaluator: parsed once and cached, limits on length, nesting and size
         try {
-            // For safety, only allow basic arithmetic - no parentheses to prevent nesting exploits
-            expr = expr.replaceAll("[^0-9+\\-*/.\\s]", "");
-            
-            // Limit expression length to prevent DoS
-            if (expr.length() > 100) {
-                return new ToolResult("calc", "Expression too long (max 100 chars)");
-            }
-            
-            // Use JavaScript engine for evaluation (if available)
-            javax.script.ScriptEngineManager mgr = new javax.script.ScriptEngineManager();
-            javax.script.ScriptEngine engine = mgr.getEngineByName("JavaScript");
-            
-            if (engine == null) {
-                return new ToolResult("calc", "Script engine not available");
+            if (expr.length() > ExpressionEvaluator.MAX_LENGTH) {
+                return new ToolResult("calc", "Expression too long (max " + ExpressionEvaluator.MAX_LENGTH + " chars)");
             }
-            
-            Object result = engine.eval(expr);
-            
-            return new ToolResult("calc", "Result: " + result);
+            double result = CALC.evaluate(expr);
+            return new ToolResult("calc", "Result: " + ExpressionEvaluator.format(result));
         } catch (Exception e) {
             return new ToolResult("calc", "Calculation error: " + e.getMessage());
         }
@@ -108,13 +107,17 @@ public class ToolRouter {
         String query = args.get("query").getAsString();
         int limit = args.has("limit") ? args.get("limit").getAsInt() : 5;
         
-        // Search hippocampus
-        List<String> results = new ArrayList<>();
-        for (String block : Hippocampus.chain) {
-            if (block.toLowerCase().contains(query.toLowerCase())) {
-                results.add(block);
-                if (results.size() >= limit) break;
-            }
+        long sinceMs = 0;
+        if (args.has("since_hours")) {
+            sinceMs = System.currentTimeMillis() - (long) (args.get("since_hours").getAsDouble() * 3_600_000L);
+        }
+        
+        // Search hippocampus (term index, newest first)
+        List<String> results;
+        try {
+            results = Hippocampus.search(query, limit, sinceMs);
+        } catch (IOException e) {
+            return new ToolResult("memory_search", "Memory search failed: " + e.getMessage());
         }
         
         if (results.isEmpty()) {
@@ -199,7 +202,16 @@ public class ToolRouter {
         String path = args.get("path").getAsString();
         int chunkSize = args.has("chunkSize") ? args.get("chunkSize").getAsInt() : 1200;
         int overlap = args.has("overlap") ? args.get("overlap").getAsInt() : 200;
-        
+        return indexPath(path, chunkSize, overlap, null);
+    }
+    
+    /**
+     * Index a file or directory tree through IngestPipeline, blocking until
+     * it finishes (or is cancelled with cancelIndexing). Only files changed
+     * since the last run on the same root are read and embedded.
+     * @param listener Progress snapshots, or null
+     */
+    public ToolResult indexPath(String path, int chunkSize, int overlap, IngestPipeline.Listener listener) {
         try {
             // Security: Validate path
             File f = validateAndNormalizePath(path, "index_path");
@@ -211,16 +223,77 @@ public class ToolRouter {
                 return new ToolResult("index_path", "Not found: " + path);
             }
             
-            if (f.isDirectory()) {
-                return indexDirectory(f, chunkSize, overlap);
-            } else {
-                return indexFile(f, chunkSize, overlap);
+            Path root = f.toPath();
+            ReentrantLock rootLock = rootLocks.computeIfAbsent(root, r -> new ReentrantLock());
+            rootLock.lockInterruptibly();
+            IngestPipeline.Progress done;
+            IngestPipeline pipeline;
+            try {
+                IngestPipeline.Options options = new IngestPipeline.Options();
+                options.chunkSize = chunkSize;
+                options.overlap = overlap;
+                options.manifest = IndexManifest.load(vault.directory(), root);
+                pipeline = IngestPipeline.start(root, vault, soul, brain, options, listener);
+                activeIngests.add(pipeline);
+                try {
+                    done = pipeline.result().get();
+                } catch (InterruptedException e) {
+                    // e.g. the tool timeout: stop the pipeline rather than leave it running
+                    pipeline.cancel();
+                    Thread.currentThread().interrupt();
+                    return new ToolResult("index_path", "Cancelled: " + pipeline.progress());
+                } finally {
+                    activeIngests.remove(pipeline);
+                }
+            } finally {
+                rootLock.unlock();
             }
+            
+            return new ToolResult("index_path", (done.cancelled ? "Cancelled after " : "Indexed ")
+                + done.filesIndexed + " files (" + done.filesUnchanged + " unchanged, " + done.filesRemoved + " removed), "
+                + done.chunks + " chunks"
+                + " (" + done.added + " new, " + done.chunksReused + " reused, " + done.deduped + " deduped, "
+                + done.tombstoned + " tombstoned"
+                + (done.filesFailed + done.embedFailures > 0
+                    ? ", " + done.filesFailed + " files and " + done.embedFailures + " chunks failed" : "")
+                + ") | vault=" + vault.liveSize());
         } catch (Exception e) {
             return new ToolResult("index_path", "Error: " + e.getMessage());
         }
     }
     
+    /**
+     * Cancel every index_path run in progress
+     * @return number of runs cancelled
+     */
+    public int cancelIndexing() {
+        int n = 0;
+        for (IngestPipeline p : activeIngests) {
+            if (!p.isCancelled()) {
+                p.cancel();
+                n++;
+            }
+        }
+        return n;
+    }
+    
+    /**
+     * Existing allowlisted root directories, canonical and without duplicates
+     * (what IndexWatcher watches)
+     */
+    public static List<Path> allowedRootDirectories() {
+        Set<Path> dirs = new LinkedHashSet<>();
+        for (String allowedRoot : ALLOWED_ROOTS) {
+            try {
+                File rootFile = new File(allowedRoot).getCanonicalFile();
+                if (rootFile.isDirectory()) dirs.add(rootFile.toPath());
+            } catch (IOException e) {
+                System.err.println("[SECURITY] Root check failed for " + allowedRoot + ": " + e.getMessage());
+            }
+        }
+        return new ArrayList<>(dirs);
+    }
+    
     /**
      * Validate and normalize path to prevent ../ escapes
      * Returns null if path is not under allowed roots
@@ -254,56 +327,4 @@ public class ToolRouter {
             return null;
         }
     }
-    
-    private ToolResult indexDirectory(File dir, int chunkSize, int overlap) throws Exception {
-        int totalFiles = 0;
-        int totalChunks = 0;
-        
-        File[] files = dir.listFiles();
-        if (files == null) {
-            return new ToolResult("index_path", "Cannot list directory");
-        }
-        
-        for (File f : files) {
-            if (f.isFile() && f.getName().endsWith(".txt")) {
-                ToolResult result = indexFile(f, chunkSize, overlap);
-                totalFiles++;
-                // Extract chunk count from result
-                if (result.output.contains("chunks")) {
-                    String[] parts = result.output.split(" ");
-                    for (int i = 0; i < parts.length; i++) {
-                        if (parts[i].equals("chunks") && i > 0) {
-                            try {
-                                totalChunks += Integer.parseInt(parts[i-1]);
-                            } catch (NumberFormatException ignored) {}
-                        }
-                    }
-                }
-            }
-        }
-        
-        return new ToolResult("index_path", 
-            "Indexed " + totalFiles + " files, " + totalChunks + " chunks | vault=" + vault.size());
-    }
-    
-    private ToolResult indexFile(File f, int chunkSize, int overlap) throws Exception {
-        String raw = soul.readFileToText(f.getAbsolutePath());
-        String clean = soul.cleanse(raw);
-        
-        if (clean.isBlank()) {
-            return new ToolResult("index_path", "Empty file: " + f.getName());
-        }
-        
-        List<String> chunks = soul.chunk(clean, chunkSize, overlap);
-        List<float[]> vectors = brain.embedBatch(chunks);
-        
-        if (vectors.size() != chunks.size()) {
-            return new ToolResult("index_path", "Embedding mismatch");
-        }
-        
-        vault.addAndPersist(f.getName(), chunks, vectors);
-        
-        return new ToolResult("index_path", 
-            "Indexed " + f.getName() + ": " + chunks.size() + " chunks");
-    }
 }
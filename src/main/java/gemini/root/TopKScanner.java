@@ -0,0 +1,80 @@
+package gemini.root;
+
+import java.util.concurrent.*;
+
+/**
+ * TopKScanner: Parallel exact top-k over vault rows
+ *
+ * The row range is split into fixed chunks scored on a dedicated
+ * ForkJoinPool. Each chunk fills its own bounded min-heap and heaps are
+ * merged on the way back up, so one query can use every core while the
+ * work per row stays allocation-free. Small scans stay on the caller.
+ */
+final class TopKScanner {
+
+    /**
+     * Scores rows [from, to) into a heap holding at most k results
+     */
+    interface RangeScorer {
+        void scan(int from, int to, ScoreHeap heap, int k);
+    }
+
+    private static final int CHUNK_ROWS = 8192;
+    private static final int PARALLEL_MIN_ROWS = 4 * CHUNK_ROWS;
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(
+            Runtime.getRuntime().availableProcessors(),
+            pool -> {
+                ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                t.setName("vault-scan-" + t.getPoolIndex());
+                return t;
+            },
+            null,
+            false);
+
+    private TopKScanner() {}
+
+    /**
+     * @return min-heap of the best k rows (drain with drainDescending)
+     */
+    static ScoreHeap topK(int rows, int k, RangeScorer scorer) {
+        if (rows < PARALLEL_MIN_ROWS || POOL.getParallelism() == 1) {
+            ScoreHeap heap = new ScoreHeap(k + 1);
+            scorer.scan(0, rows, heap, k);
+            return heap;
+        }
+        return POOL.invoke(new Chunk(0, rows, k, scorer));
+    }
+
+    private static final class Chunk extends RecursiveTask<ScoreHeap> {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final int k;
+        private final RangeScorer scorer;
+
+        Chunk(int from, int to, int k, RangeScorer scorer) {
+            this.from = from;
+            this.to = to;
+            this.k = k;
+            this.scorer = scorer;
+        }
+
+        @Override
+        protected ScoreHeap compute() {
+            if (to - from <= CHUNK_ROWS) {
+                ScoreHeap heap = new ScoreHeap(k + 1);
+                scorer.scan(from, to, heap, k);
+                return heap;
+            }
+            int mid = (from + to) >>> 1;
+            Chunk left = new Chunk(from, mid, k, scorer);
+            left.fork();
+            ScoreHeap right = new Chunk(mid, to, k, scorer).compute();
+            ScoreHeap leftHeap = left.join();
+            right.offerAll(leftHeap, k);
+            return right;
+        }
+    }
+}
@@ -1,9 +1,13 @@
 package gemini.root;
 
+import com.google.gson.*;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
 import java.time.*;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * TraceLogger: Request tracing for observability
@@ -14,14 +18,33 @@ import java.util.*;
  * - Tool calls and outputs
  * - Reflection on/off
  * - Model and context size
+ * - Time to first streamed token
+ * - Answer cache hit and running hit rate
+ * - Planner skipped by the intent fast path, and its p(tool)
+ * - Milliseconds spent per stage of this request (see Metrics)
  * 
  * Saved to memory/trace_*.jsonl (separate from Hippocampus)
+ *
+ * Writing:
+ * - log() only enqueues (bounded); one daemon thread serialises entries
+ *   with Gson and appends them in batches to the day's file, which stays
+ *   open until the date changes
+ * - A full queue drops the entry (counted as trace_dropped_total) rather
+ *   than slowing a request down
+ * - close() drains and flushes (shutdown hook)
  */
 public class TraceLogger {
     
     private static final String TRACE_DIR = "memory";
     private static final DateTimeFormatter FILE_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd");
     private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
+    private static final Gson GSON = new GsonBuilder().serializeSpecialFloatingPointValues().create();
+    private static final int QUEUE_CAPACITY = 2048;
+    private static final int MAX_BATCH = 256;
+    
+    private static final BlockingQueue<TraceEntry> pending = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private static Thread writer;  // guarded by TraceLogger.class
+    private static volatile boolean closed;
     
     public static class TraceEntry {
         public String requestId;
@@ -36,6 +59,12 @@ public class TraceLogger {
         public int contextSize;
         public int answerLength;
         public long latencyMs;
+        public long ttftMs = -1;     // time to first token sent to the client (-1 = not streamed)
+        public boolean answerCacheHit;
+        public double answerCacheHitRate = -1;  // running hit rate (-1 = answer cache off)
+        public boolean plannerSkipped;
+        public double intentToolProbability = -1;  // -1 = intent fast path off
+        public Map<String, Long> stageMs;           // stage -> ms spent in this request
         
         public TraceEntry(String requestId) {
             this.requestId = requestId;
@@ -44,62 +73,105 @@ public class TraceLogger {
             this.toolCalls = new ArrayList<>();
         }
         
-        public String toJson() {
-            StringBuilder json = new StringBuilder("{");
-            json.append("\"requestId\":\"").append(requestId).append("\",");
-            json.append("\"timestamp\":\"").append(timestamp).append("\",");
-            json.append("\"query\":\"").append(escape(query)).append("\",");
-            json.append("\"ragSnippets\":").append(ragSnippets).append(",");
-            json.append("\"ragSources\":[");
-            for (int i = 0; i < ragSources.size(); i++) {
-                if (i > 0) json.append(",");
-                json.append("\"").append(escape(ragSources.get(i))).append("\"");
-            }
-            json.append("],");
-            json.append("\"toolCalls\":[");
-            for (int i = 0; i < toolCalls.size(); i++) {
-                if (i > 0) json.append(",");
-                json.append("\"").append(escape(toolCalls.get(i))).append("\"");
-            }
-            json.append("],");
-            json.append("\"toolOutputLength\":").append(toolOutputLength).append(",");
-            json.append("\"reflectorEnabled\":").append(reflectorEnabled).append(",");
-            json.append("\"model\":\"").append(model).append("\",");
-            json.append("\"contextSize\":").append(contextSize).append(",");
-            json.append("\"answerLength\":").append(answerLength).append(",");
-            json.append("\"latencyMs\":").append(latencyMs);
-            json.append("}");
-            return json.toString();
+        /**
+         * Note time spent in a stage of this request
+         */
+        public synchronized void stage(String stage, long nanos) {
+            if (stageMs == null) stageMs = new LinkedHashMap<>();
+            stageMs.merge(stage, nanos / 1_000_000, Long::sum);
         }
         
-        private String escape(String s) {
-            if (s == null) return "";
-            return s.replace("\\", "\\\\")
-                   .replace("\"", "\\\"")
-                   .replace("\n", "\\n")
-                   .replace("\r", "\\r");
+        public synchronized String toJson() {
+            if (query == null) query = "";
+            return GSON.toJson(this);
         }
     }
     
     /**
-     * Log a trace entry
+     * Log a trace entry (asynchronously)
      */
     public static void log(TraceEntry entry) {
+        if (closed || !pending.offer(entry)) {
+            Metrics.increment("trace_dropped_total");
+            return;
+        }
+        startWriter();
+    }
+    
+    /**
+     * Write what is queued and stop the writer
+     */
+    public static void close() {
+        Thread w;
+        synchronized (TraceLogger.class) {
+            closed = true;
+            w = writer;
+        }
+        if (w == null) return;
+        try {
+            w.join(5_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private static synchronized void startWriter() {
+        if (writer != null) return;
+        writer = new Thread(TraceLogger::writeLoop, "trace-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+    
+    private static void writeLoop() {
+        List<TraceEntry> batch = new ArrayList<>(MAX_BATCH);
+        Writer out = null;
+        LocalDate day = null;
         try {
-            // Ensure directory exists
-            new File(TRACE_DIR).mkdirs();
-            
-            // Daily log file
-            String date = LocalDate.now().format(FILE_FORMAT);
-            String filename = TRACE_DIR + "/trace_" + date + ".jsonl";
-            
-            // Append to file
-            try (FileWriter fw = new FileWriter(filename, true)) {
-                fw.write(entry.toJson() + "\n");
+            while (!(closed && pending.isEmpty())) {
+                TraceEntry first = pending.poll(200, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                pending.drainTo(batch, MAX_BATCH - 1);
+                
+                try {
+                    // Daily log file
+                    LocalDate today = LocalDate.now();
+                    if (!today.equals(day)) {
+                        if (out != null) out.close();
+                        Files.createDirectories(Paths.get(TRACE_DIR));
+                        Path file = Paths.get(TRACE_DIR, "trace_" + today.format(FILE_FORMAT) + ".jsonl");
+                        out = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                        day = today;
+                    }
+                    for (TraceEntry entry : batch) {
+                        out.write(entry.toJson());
+                        out.write('\n');
+                    }
+                    out.flush();
+                } catch (IOException e) {
+                    System.err.println(">>> [TRACE] Log failed (" + batch.size() + " entries): " + e.getMessage());
+                    if (out != null) {
+                        try {
+                            out.close();
+                        } catch (IOException ignored) {
+                        }
+                    }
+                    out = null;
+                    day = null;  // reopen on the next batch
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    System.err.println(">>> [TRACE] Close failed: " + e.getMessage());
+                }
             }
-            
-        } catch (IOException e) {
-            System.err.println(">>> [TRACE] Log failed: " + e.getMessage());
         }
     }
     
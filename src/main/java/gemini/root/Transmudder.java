@@ -1,51 +1,281 @@
 package gemini.root;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.*;
 import java.nio.file.*;
 import java.util.*;
 
 /**
  * Transmudder: Text extraction and chunking utility
+ *
+ * Streaming mode (streamChunks):
+ * - Reads through a decoder (memory-mapped windows for large files)
+ *   instead of loading the file into one String
+ * - Normalises whitespace in the same pass (same result as cleanse)
+ * - Cuts chunks at the last paragraph break, else sentence end, else word
+ *   boundary in the back half of the window; overlaps start on a word
+ * - Holds at most one window of text: memory is O(chunkSize) whatever the
+ *   file size
+ * - Undecodable bytes become U+FFFD instead of failing the file
  */
 public class Transmudder {
-    
+
+    /**
+     * Bumped when chunk boundaries change, so manifests know stored chunks
+     * no longer match (1 = fixed windows, 2 = streaming, boundary-snapped,
+     * 3 = overlaps never start mid-word)
+     */
+    public static final int CHUNKER_VERSION = 3;
+
+    // Files at least this large are decoded from mapped windows
+    public static final long MMAP_THRESHOLD = 16L << 20;
+    private static final int MMAP_WINDOW = 64 << 20;
+    private static final int CHAR_BUFFER = 16 << 10;
+
+    /**
+     * Receives chunks in order
+     */
+    public interface ChunkSink {
+        /**
+         * @return false to stop reading
+         */
+        boolean accept(int index, String chunk) throws InterruptedException;
+    }
+
     /**
      * Read a file to text
      */
     public String readFileToText(String path) throws IOException {
         return Files.readString(Path.of(path));
     }
-    
+
     /**
      * Cleanse text (remove excessive whitespace, etc.)
      */
     public String cleanse(String raw) {
         if (raw == null) return "";
-        
-        // Remove excessive whitespace
-        String clean = raw.replaceAll("\\s+", " ");
-        clean = clean.trim();
-        
-        return clean;
+
+        // Collapse whitespace runs in one pass (same as replaceAll("\\s+", " "))
+        StringBuilder sb = new StringBuilder(raw.length());
+        boolean inSpace = false;
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            if (isSpace(c)) {
+                if (!inSpace) sb.append(' ');
+                inSpace = true;
+            } else {
+                sb.append(c);
+                inSpace = false;
+            }
+        }
+        return sb.toString().trim();
     }
-    
+
     /**
      * Chunk text into overlapping segments
      */
     public List<String> chunk(String text, int chunkSize, int overlap) {
         List<String> chunks = new ArrayList<>();
-        
+
         if (text == null || text.isEmpty()) {
             return chunks;
         }
-        
+
         int start = 0;
         while (start < text.length()) {
             int end = Math.min(start + chunkSize, text.length());
             chunks.add(text.substring(start, end));
             start += chunkSize - overlap;
         }
-        
+
         return chunks;
     }
+
+    /**
+     * Stream a UTF-8 file as cleansed, boundary-snapped, overlapping chunks
+     * @return number of chunks delivered
+     */
+    public int streamChunks(Path file, int chunkSize, int overlap, ChunkSink sink)
+            throws IOException, InterruptedException {
+        return streamChunks(file, chunkSize, overlap, sink, MMAP_THRESHOLD, MMAP_WINDOW);
+    }
+
+    /**
+     * streamChunks with the mapping thresholds exposed, so tests can push
+     * small files through many small windows
+     * @param mmapWindow Bytes per mapped window (at least 4, one UTF-8 sequence)
+     */
+    int streamChunks(Path file, int chunkSize, int overlap, ChunkSink sink, long mmapThreshold, int mmapWindow)
+            throws IOException, InterruptedException {
+        StreamChunker chunker = new StreamChunker(chunkSize, overlap, sink);
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        if (Files.size(file) < mmapThreshold) {
+            try (Reader in = new InputStreamReader(Files.newInputStream(file), decoder)) {
+                feed(in, chunker);
+            }
+            return chunker.finish();
+        }
+
+        CharBuffer chars = CharBuffer.allocate(CHAR_BUFFER);
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            long pos = 0;
+            while (pos < size && !chunker.stopped) {
+                long len = Math.min(mmapWindow, size - pos);
+                boolean last = pos + len == size;
+                ByteBuffer window = ch.map(FileChannel.MapMode.READ_ONLY, pos, len);
+                while (true) {
+                    CoderResult r = decoder.decode(window, chars, last);
+                    drain(chars, chunker);
+                    if (r.isUnderflow()) break;
+                }
+                // A multi-byte sequence cut by the window end is decoded with the next window
+                pos += window.position();
+                if (last) {
+                    decoder.flush(chars);
+                    drain(chars, chunker);
+                }
+            }
+        }
+        return chunker.finish();
+    }
+
+    /**
+     * Stream any Reader the same way (the caller closes it)
+     * @return number of chunks delivered
+     */
+    public int streamChunks(Reader in, int chunkSize, int overlap, ChunkSink sink)
+            throws IOException, InterruptedException {
+        StreamChunker chunker = new StreamChunker(chunkSize, overlap, sink);
+        feed(in, chunker);
+        return chunker.finish();
+    }
+
+    private static void feed(Reader in, StreamChunker chunker) throws IOException, InterruptedException {
+        char[] buf = new char[CHAR_BUFFER];
+        int n;
+        while (!chunker.stopped && (n = in.read(buf)) >= 0) {
+            for (int i = 0; i < n; i++) chunker.add(buf[i]);
+        }
+    }
+
+    private static void drain(CharBuffer chars, StreamChunker chunker) throws InterruptedException {
+        chars.flip();
+        while (chars.hasRemaining()) chunker.add(chars.get());
+        chars.clear();
+    }
+
+    /**
+     * Whitespace as the \s regex class sees it
+     */
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == 0x0B;
+    }
+
+    /**
+     * Normaliser + windowing state for one stream. The window holds the
+     * text from the current chunk start; paragraph breaks (whitespace runs
+     * with two or more newlines) are remembered by stream offset.
+     */
+    private static final class StreamChunker {
+        private final int chunkSize;
+        private final int overlap;
+        private final ChunkSink sink;
+        private final StringBuilder window;
+        private final ArrayDeque<Long> paragraphs = new ArrayDeque<>();  // stream offsets of paragraph starts
+        private long windowStart;  // stream offset of window[0]
+
+        private boolean pendingSpace;
+        private int newlines;
+        private int carried;  // leading window chars already sent with the previous chunk
+        private int emitted;
+        boolean stopped;
+
+        StreamChunker(int chunkSize, int overlap, ChunkSink sink) {
+            this.chunkSize = Math.max(1, chunkSize);
+            this.overlap = Math.max(0, Math.min(overlap, this.chunkSize - 1));
+            this.sink = sink;
+            this.window = new StringBuilder(this.chunkSize + 1);
+        }
+
+        void add(char c) throws InterruptedException {
+            if (stopped) return;
+            if (isSpace(c)) {
+                if (window.length() > 0 || emitted > 0) pendingSpace = true;  // leading whitespace is trimmed
+                if (c == '\n') newlines++;
+                return;
+            }
+            if (pendingSpace) {
+                window.append(' ');
+                if (newlines >= 2) paragraphs.add(windowStart + window.length());
+                pendingSpace = false;
+            }
+            newlines = 0;
+            window.append(c);
+            if (window.length() > chunkSize) cut();
+        }
+
+        /**
+         * The window is one char past chunkSize: emit the best-ended prefix
+         * and keep the overlap
+         */
+        private void cut() throws InterruptedException {
+            int end = boundary();
+            emit(window.substring(0, end));
+
+            int next = Math.max(1, end - overlap);
+            if (next < end && window.charAt(next - 1) != ' ') {
+                // Start the overlap on a word, or drop it if it holds no word start
+                int space = window.indexOf(" ", next);
+                next = space >= 0 && space < end ? space + 1 : end;
+            }
+            if (next < window.length() && window.charAt(next) == ' ') next++;
+            window.delete(0, next);
+            windowStart += next;
+            carried = Math.max(0, end - next);
+            while (!paragraphs.isEmpty() && paragraphs.peek() <= windowStart) paragraphs.poll();
+        }
+
+        /**
+         * Chunk end (exclusive) in [chunkSize/2, chunkSize]: paragraph break,
+         * else sentence end, else word boundary, else a hard cut
+         */
+        private int boundary() {
+            int min = chunkSize / 2;
+            int paragraph = -1;
+            for (long p : paragraphs) {
+                int end = (int) (p - windowStart) - 1;  // the space before the paragraph
+                if (end >= min && end <= chunkSize) paragraph = end;
+            }
+            if (paragraph > 0) return paragraph;
+
+            int word = -1;
+            for (int end = chunkSize; end >= min && end > 0; end--) {
+                if (window.charAt(end) != ' ') continue;
+                char before = window.charAt(end - 1);
+                if (before == '.' || before == '!' || before == '?') return end;
+                if (word < 0) word = end;
+            }
+            return word > 0 ? word : chunkSize;
+        }
+
+        private void emit(String chunk) throws InterruptedException {
+            if (!sink.accept(emitted++, chunk)) stopped = true;
+        }
+
+        /**
+         * Flush the tail (unless it is only overlap already sent)
+         * @return chunks emitted
+         */
+        int finish() throws InterruptedException {
+            if (!stopped && window.length() > carried) emit(window.toString());
+            return emitted;
+        }
+    }
 }
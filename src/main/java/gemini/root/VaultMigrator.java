@@ -0,0 +1,86 @@
+package gemini.root;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * VaultMigrator: One-time conversion of the legacy serialized vault
+ *
+ * Reads fraymus_vault.dat (an ObjectOutputStream of List<VaultEntry>),
+ * appends every entry to the mapped VaultStore in its original order and
+ * renames the old file to fraymus_vault.dat.migrated so it is never read
+ * again. Entries whose dimension differs from the first entry that has a
+ * vector are dropped.
+ *
+ * The rename is the commit point: while the .dat file is still present any
+ * rows already in the store are the remains of an interrupted migration,
+ * so they are cleared and the migration starts over.
+ */
+final class VaultMigrator {
+
+    private static final int BATCH = 4096;
+
+    private VaultMigrator() {}
+
+    /**
+     * @return number of entries migrated
+     */
+    static int migrate(Path legacyFile, VaultStore store) throws IOException, ClassNotFoundException {
+        List<VectorVault.VaultEntry> legacy;
+        try (ObjectInputStream ois = new ObjectInputStream(
+                new BufferedInputStream(Files.newInputStream(legacyFile)))) {
+            @SuppressWarnings("unchecked")
+            List<VectorVault.VaultEntry> loaded = (List<VectorVault.VaultEntry>) ois.readObject();
+            legacy = loaded;
+        }
+        if (legacy == null) return 0;
+
+        if (store.size() > 0) {
+            System.err.println(">>> [VAULT] Discarding " + store.size()
+                + " rows from an interrupted migration, starting over");
+            store.clear();
+        }
+
+        int dim = 0;
+        for (VectorVault.VaultEntry entry : legacy) {
+            if (entry.vector != null) {
+                dim = entry.vector.length;
+                break;
+            }
+        }
+        int migrated = 0;
+        int skipped = 0;
+        List<VaultStore.NewRow> batch = new ArrayList<>(BATCH);
+
+        for (VectorVault.VaultEntry entry : legacy) {
+            if (entry.vector == null || entry.vector.length != dim || entry.text == null) {
+                skipped++;
+                continue;
+            }
+            String hash = (entry.textHash == null || entry.textHash.isEmpty())
+                    ? VectorVault.computeHash(entry.text) : entry.textHash;
+            batch.add(new VaultStore.NewRow(
+                    store.sourceId(entry.source == null ? "" : entry.source),
+                    entry.chunkIndex,
+                    VectorVault.hashBits(hash),
+                    entry.text,
+                    entry.vector));
+            if (batch.size() == BATCH) {
+                store.append(batch);
+                migrated += batch.size();
+                batch.clear();
+            }
+        }
+        store.append(batch);
+        migrated += batch.size();
+
+        Files.move(legacyFile, legacyFile.resolveSibling(legacyFile.getFileName() + ".migrated"),
+                StandardCopyOption.REPLACE_EXISTING);
+
+        if (skipped > 0) {
+            System.err.println(">>> [VAULT] Migration skipped " + skipped + " entries with mismatched vectors");
+        }
+        return migrated;
+    }
+}
@@ -0,0 +1,517 @@
+package gemini.root;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * VaultStore: Memory-mapped columnar storage behind VectorVault
+ *
+ * Layout (one directory, one file per column, everything little-endian):
+ *   meta.bin     64-byte header + append-only source table (id, utf8 path)
+ *   vectors.f32  64-byte header + contiguous float matrix, dim floats per row
+ *   rows.idx     64-byte header + fixed 40-byte row records (offsets table)
+ *   texts.utf8   64-byte header + concatenated UTF-8 chunk texts
+ *
+ * Row record: textOffset(long) textLength(int) sourceId(int) chunkIndex(int)
+ *             flags(int) norm(float) textHash(long) reserved(int)
+ * Flags: bit 0 = tombstoned (row superseded or its file deleted; kept in
+ *        place so row ids stay stable, skipped by searches)
+ *
+ * Since v2 the matrix holds unit-length vectors (the original length is
+ * kept in the norm column), so cosine similarity is a plain dot product.
+ * v1 matrices are normalised in place the first time they are opened.
+ *
+ * Appends write at the tail of each column and commit by writing the
+ * rows.idx records last, so a crash mid-append leaves the previous row
+ * count intact and the orphaned tail is overwritten by the next append.
+ * Vectors and row records are read straight from read-only mappings.
+ */
+final class VaultStore implements Closeable {
+
+    static final int FORMAT_VERSION = 2;
+    private static final int FIRST_UNIT_VERSION = 2;
+
+    private static final int HEADER_BYTES = 64;
+    private static final int MAGIC_META = 0x46564D54;     // "FVMT"
+    private static final int MAGIC_VECTORS = 0x46564543;  // "FVEC"
+    private static final int MAGIC_ROWS = 0x46564958;     // "FVIX"
+    private static final int MAGIC_TEXTS = 0x46565458;    // "FVTX"
+
+    static final int ROW_BYTES = 40;
+    private static final int R_TEXT_OFFSET = 0;
+    private static final int R_TEXT_LENGTH = 8;
+    private static final int R_SOURCE = 12;
+    private static final int R_CHUNK = 16;
+    private static final int R_FLAGS = 20;
+    private static final int R_NORM = 24;
+    private static final int R_HASH = 28;
+
+    static final int FLAG_TOMBSTONE = 1;
+
+    /**
+     * A row waiting to be appended
+     */
+    static final class NewRow {
+        final int sourceId;
+        final int chunkIndex;
+        final long textHash;
+        final String text;
+        final float[] vector;
+
+        NewRow(int sourceId, int chunkIndex, long textHash, String text, float[] vector) {
+            this.sourceId = sourceId;
+            this.chunkIndex = chunkIndex;
+            this.textHash = textHash;
+            this.text = text;
+            this.vector = vector;
+        }
+    }
+
+    private final Path dir;
+    private final FileChannel metaCh;
+    private final FileChannel vectorCh;
+    private final FileChannel rowCh;
+    private final FileChannel textCh;
+
+    private final List<String> sources = new ArrayList<>();
+    private final Map<String, Integer> sourceIds = new HashMap<>();
+    private long metaEnd;
+
+    private int dim;
+    private volatile int count;
+    private long textEnd;
+
+    private static volatile RowDot simd;  // null = scalar dot products
+
+    private volatile MappedColumn vectors;
+    private volatile MappedColumn rows;
+
+    private VaultStore(Path dir) throws IOException {
+        this.dir = dir;
+        Files.createDirectories(dir);
+        this.metaCh = openColumn("meta.bin", MAGIC_META);
+        this.vectorCh = openColumn("vectors.f32", MAGIC_VECTORS);
+        this.rowCh = openColumn("rows.idx", MAGIC_ROWS);
+        this.textCh = openColumn("texts.utf8", MAGIC_TEXTS);
+    }
+
+    static VaultStore open(Path dir) throws IOException {
+        VaultStore store = new VaultStore(dir);
+        store.readState();
+        return store;
+    }
+
+    private FileChannel openColumn(String name, int magic) throws IOException {
+        FileChannel ch = FileChannel.open(dir.resolve(name),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (ch.size() == 0) {
+            ByteBuffer header = newHeader(magic, 0);
+            writeFully(ch, header, 0);
+        } else {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(ch, header, 0);
+            if (header.getInt(0) != magic) {
+                ch.close();
+                throw new IOException("Not a vault column: " + dir.resolve(name));
+            }
+            int version = header.getInt(4);
+            if (version > FORMAT_VERSION) {
+                ch.close();
+                throw new IOException("Vault format v" + version + " is newer than supported v" + FORMAT_VERSION);
+            }
+        }
+        return ch;
+    }
+
+    private static ByteBuffer newHeader(int magic, int dim) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(0, magic);
+        header.putInt(4, FORMAT_VERSION);
+        header.putInt(8, dim);
+        return header;
+    }
+
+    private void readState() throws IOException {
+        // Source table
+        long pos = HEADER_BYTES;
+        long metaSize = metaCh.size();
+        ByteBuffer lenBuf = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        while (pos + 8 <= metaSize) {
+            lenBuf.clear();
+            readFully(metaCh, lenBuf, pos);
+            int id = lenBuf.getInt(0);
+            int len = lenBuf.getInt(4);
+            if (id != sources.size() || len < 0 || pos + 8 + len > metaSize) break;  // torn tail
+            ByteBuffer nameBuf = ByteBuffer.allocate(len);
+            readFully(metaCh, nameBuf, pos + 8);
+            String name = new String(nameBuf.array(), StandardCharsets.UTF_8);
+            sources.add(name);
+            sourceIds.put(name, id);
+            pos += 8 + len;
+        }
+        metaEnd = pos;
+
+        // Dimension lives in the vector header
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(vectorCh, header, 0);
+        dim = header.getInt(8);
+        int vectorVersion = header.getInt(4);
+
+        // Committed rows = complete idx records whose vectors are also complete
+        long idxRows = (rowCh.size() - HEADER_BYTES) / ROW_BYTES;
+        long vecRows = dim == 0 ? 0 : (vectorCh.size() - HEADER_BYTES) / rowBytes();
+        count = (int) Math.min(idxRows, dim == 0 ? 0 : vecRows);
+
+        remap();
+        if (vectorVersion < FIRST_UNIT_VERSION) {
+            normaliseInPlace();
+        }
+        textEnd = HEADER_BYTES;
+        if (count > 0) {
+            textEnd = textOffset(count - 1) + textLength(count - 1);
+        }
+    }
+
+    /**
+     * Upgrade a v1 matrix: divide every row by its stored norm, then stamp v2
+     */
+    private void normaliseInPlace() throws IOException {
+        if (count > 0) {
+            System.out.println(">>> [VAULT] Normalising " + count + " vectors (format v1 -> v" + FORMAT_VERSION + ")");
+            int batchRows = (int) Math.max(1, (1 << 24) / rowBytes());
+            for (int start = 0; start < count; start += batchRows) {
+                int n = Math.min(batchRows, count - start);
+                ByteBuffer buf = ByteBuffer.allocate((int) (n * rowBytes())).order(ByteOrder.LITTLE_ENDIAN);
+                for (int r = start; r < start + n; r++) {
+                    float norm = norm(r);
+                    float inv = norm == 0f ? 0f : 1f / norm;
+                    FloatBuffer fb = vectors.floats(r);
+                    int base = vectors.floatOffset(r);
+                    for (int i = 0; i < dim; i++) {
+                        buf.putFloat(fb.get(base + i) * inv);
+                    }
+                }
+                buf.flip();
+                writeFully(vectorCh, buf, HEADER_BYTES + start * rowBytes());
+            }
+            vectorCh.force(false);
+        }
+        writeFully(vectorCh, newHeader(MAGIC_VECTORS, dim), 0);
+        vectors = dim == 0 ? null : new MappedColumn(vectorCh, HEADER_BYTES, rowBytes(), count, null);
+    }
+
+    private long rowBytes() {
+        return (long) dim * Float.BYTES;
+    }
+
+    private void remap() throws IOException {
+        vectors = dim == 0 ? null : new MappedColumn(vectorCh, HEADER_BYTES, rowBytes(), count, vectors);
+        rows = new MappedColumn(rowCh, HEADER_BYTES, ROW_BYTES, count, rows);
+    }
+
+    int size() {
+        return count;
+    }
+
+    int dim() {
+        return dim;
+    }
+
+    Path directory() {
+        return dir;
+    }
+
+    /**
+     * Look up or register a source path
+     */
+    int sourceId(String source) throws IOException {
+        Integer id = sourceIds.get(source);
+        if (id != null) return id;
+
+        byte[] name = source.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer rec = ByteBuffer.allocate(8 + name.length).order(ByteOrder.LITTLE_ENDIAN);
+        int newId = sources.size();
+        rec.putInt(newId).putInt(name.length).put(name).flip();
+        writeFully(metaCh, rec, metaEnd);
+        metaEnd += rec.capacity();
+        sources.add(source);
+        sourceIds.put(source, newId);
+        return newId;
+    }
+
+    /**
+     * Id of an already registered source, or -1 (never registers)
+     */
+    int existingSourceId(String source) {
+        Integer id = sourceIds.get(source);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Set a flag bit on existing rows in place (one fsync for the group)
+     */
+    void setFlag(int[] rowIds, int flag) throws IOException {
+        if (rowIds.length == 0) return;
+        ByteBuffer buf = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        for (int row : rowIds) {
+            buf.clear();
+            buf.putInt(0, flags(row) | flag);
+            writeFully(rowCh, buf, HEADER_BYTES + (long) row * ROW_BYTES + R_FLAGS);
+        }
+        rowCh.force(false);
+    }
+
+    /**
+     * Append rows as one group: vectors and texts first, row records last, then fsync
+     */
+    void append(List<NewRow> batch) throws IOException {
+        if (batch.isEmpty()) return;
+
+        if (dim == 0) {
+            dim = batch.get(0).vector.length;
+            writeFully(vectorCh, newHeader(MAGIC_VECTORS, dim), 0);
+        }
+
+        int n = batch.size();
+        ByteBuffer vecBuf = ByteBuffer.allocate((int) (n * rowBytes())).order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer rowBuf = ByteBuffer.allocate(n * ROW_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        ByteArrayOutputStream textBytes = new ByteArrayOutputStream();
+
+        long offset = textEnd;
+        for (NewRow row : batch) {
+            if (row.vector.length != dim) {
+                throw new IllegalArgumentException("Vector dim " + row.vector.length + " != vault dim " + dim);
+            }
+            double norm = 0.0;
+            for (float v : row.vector) {
+                norm += (double) v * v;
+            }
+            float inv = norm == 0.0 ? 0f : (float) (1.0 / Math.sqrt(norm));
+            for (float v : row.vector) {
+                vecBuf.putFloat(v * inv);
+            }
+            byte[] text = row.text.getBytes(StandardCharsets.UTF_8);
+            textBytes.write(text);
+
+            rowBuf.putLong(offset)
+                  .putInt(text.length)
+                  .putInt(row.sourceId)
+                  .putInt(row.chunkIndex)
+                  .putInt(0)
+                  .putFloat((float) Math.sqrt(norm))
+                  .putLong(row.textHash)
+                  .putInt(0);
+            offset += text.length;
+        }
+        vecBuf.flip();
+        rowBuf.flip();
+
+        writeFully(vectorCh, vecBuf, HEADER_BYTES + count * rowBytes());
+        writeFully(textCh, ByteBuffer.wrap(textBytes.toByteArray()), textEnd);
+        metaCh.force(false);
+        vectorCh.force(false);
+        textCh.force(false);
+
+        writeFully(rowCh, rowBuf, HEADER_BYTES + (long) count * ROW_BYTES);
+        rowCh.force(false);
+
+        textEnd = offset;
+        int newCount = count + n;
+        vectors = new MappedColumn(vectorCh, HEADER_BYTES, rowBytes(), newCount, vectors);
+        rows = new MappedColumn(rowCh, HEADER_BYTES, ROW_BYTES, newCount, rows);
+        count = newCount;
+    }
+
+    // ===== Row accessors =====
+
+    long textOffset(int row) {
+        return rows.bytes(row).getLong(rows.offset(row) + R_TEXT_OFFSET);
+    }
+
+    int textLength(int row) {
+        return rows.bytes(row).getInt(rows.offset(row) + R_TEXT_LENGTH);
+    }
+
+    int sourceIdOf(int row) {
+        return rows.bytes(row).getInt(rows.offset(row) + R_SOURCE);
+    }
+
+    String source(int row) {
+        return sources.get(sourceIdOf(row));
+    }
+
+    int chunkIndex(int row) {
+        return rows.bytes(row).getInt(rows.offset(row) + R_CHUNK);
+    }
+
+    int flags(int row) {
+        return rows.bytes(row).getInt(rows.offset(row) + R_FLAGS);
+    }
+
+    float norm(int row) {
+        return rows.bytes(row).getFloat(rows.offset(row) + R_NORM);
+    }
+
+    long textHash(int row) {
+        return rows.bytes(row).getLong(rows.offset(row) + R_HASH);
+    }
+
+    String text(int row) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(textLength(row));
+        readFully(textCh, buf, textOffset(row));
+        return new String(buf.array(), StandardCharsets.UTF_8);
+    }
+
+    float[] vector(int row) {
+        float[] out = new float[dim];
+        FloatBuffer fb = vectors.floats(row);
+        int base = vectors.floatOffset(row);
+        for (int i = 0; i < dim; i++) {
+            out[i] = fb.get(base + i);
+        }
+        return out;
+    }
+
+    /**
+     * Dot product of a unit query with a stored row (= cosine similarity)
+     */
+    float dot(float[] query, int row) {
+        MappedColumn col = vectors;
+        RowDot vector = simd;
+        return vector != null
+                ? vector.dot(query, col.bytes(row), col.offset(row), dim)
+                : dot(query, col.floats(row), col.floatOffset(row));
+    }
+
+    float dot(int a, int b) {
+        FloatBuffer fa = vectors.floats(a);
+        FloatBuffer fb = vectors.floats(b);
+        int baseA = vectors.floatOffset(a);
+        int baseB = vectors.floatOffset(b);
+        float dot = 0f;
+        for (int i = 0; i < dim; i++) {
+            dot += fa.get(baseA + i) * fb.get(baseB + i);
+        }
+        return dot;
+    }
+
+    /**
+     * Score rows [from, to) against a unit query into a bounded heap.
+     * Reads the mapping directly: nothing is allocated per row.
+     * @param skip Rows to leave out (tombstones), or null
+     */
+    void scan(float[] query, int from, int to, ScoreHeap heap, int k, BitSet skip) {
+        MappedColumn col = vectors;
+        RowDot vector = simd;
+        if (vector != null) {
+            for (int row = from; row < to; row++) {
+                if (skip != null && skip.get(row)) continue;
+                heap.offer(vector.dot(query, col.bytes(row), col.offset(row), dim), row, k);
+            }
+        } else {
+            for (int row = from; row < to; row++) {
+                if (skip != null && skip.get(row)) continue;
+                heap.offer(dot(query, col.floats(row), col.floatOffset(row)), row, k);
+            }
+        }
+    }
+
+    /**
+     * Scalar dot with four independent accumulators so the adds can pipeline
+     */
+    private float dot(float[] q, FloatBuffer fb, int base) {
+        float s0 = 0f, s1 = 0f, s2 = 0f, s3 = 0f;
+        int bound = dim & ~3;
+        int i = 0;
+        for (; i < bound; i += 4) {
+            s0 += q[i] * fb.get(base + i);
+            s1 += q[i + 1] * fb.get(base + i + 1);
+            s2 += q[i + 2] * fb.get(base + i + 2);
+            s3 += q[i + 3] * fb.get(base + i + 3);
+        }
+        for (; i < dim; i++) {
+            s0 += q[i] * fb.get(base + i);
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    /**
+     * Dot product of a unit query with a row read from a little-endian
+     * buffer (the Vector API implementation, SimdDot, is built with -Psimd)
+     */
+    interface RowDot {
+        float dot(float[] q, ByteBuffer row, int byteOffset, int dim);
+    }
+
+    /**
+     * Switch dot products to the Vector API (jdk.incubator.vector).
+     * SimdDot is looked up by name so that builds without it still link.
+     * @return whether SIMD is now active (false if SimdDot was not built
+     *         in or the module is not loaded)
+     */
+    static boolean enableSimd(boolean on) {
+        if (!on) {
+            simd = null;
+            return false;
+        }
+        try {
+            Class.forName("jdk.incubator.vector.FloatVector");
+        } catch (ClassNotFoundException e) {
+            System.err.println(">>> [VAULT] Vector API unavailable (start the JVM with --add-modules jdk.incubator.vector)");
+            simd = null;
+            return false;
+        }
+        try {
+            RowDot vector = (RowDot) Class.forName("gemini.root.SimdDot").getDeclaredConstructor().newInstance();
+            vector.dot(new float[1], ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN), 0, 1);
+            simd = vector;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            System.err.println(">>> [VAULT] SIMD not built in (build with ./gradlew -Psimd): " + e);
+            simd = null;
+        }
+        return simd != null;
+    }
+
+    /**
+     * Drop every row (keeps the files, truncated back to their headers)
+     */
+    void clear() throws IOException {
+        for (FileChannel ch : List.of(metaCh, vectorCh, rowCh, textCh)) {
+            ch.truncate(HEADER_BYTES);
+        }
+        writeFully(vectorCh, newHeader(MAGIC_VECTORS, 0), 0);
+        sources.clear();
+        sourceIds.clear();
+        metaEnd = HEADER_BYTES;
+        textEnd = HEADER_BYTES;
+        dim = 0;
+        count = 0;
+        vectors = null;
+        rows = new MappedColumn(rowCh, HEADER_BYTES, ROW_BYTES, 0, null);
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (FileChannel ch : List.of(metaCh, vectorCh, rowCh, textCh)) {
+            ch.close();
+        }
+    }
+
+    static void writeFully(FileChannel ch, ByteBuffer buf, long pos) throws IOException {
+        while (buf.hasRemaining()) {
+            pos += ch.write(buf, pos);
+        }
+    }
+
+    static void readFully(FileChannel ch, ByteBuffer buf, long pos) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = ch.read(buf, pos);
+            if (n < 0) throw new EOFException("Unexpected end of vault column");
+            pos += n;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package gemini.root;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * VectorIndex: Pluggable approximate-nearest-neighbour index for VectorVault
+ *
+ * Rows are addressed by their position in the vault. The index never owns
+ * the vectors - it reaches them through a Scorer supplied by the vault, so
+ * the same graph works whatever the vault's storage looks like.
+ */
+public interface VectorIndex {
+
+    /**
+     * Similarity callbacks into the vault (higher = closer)
+     */
+    interface Scorer {
+        double similarity(float[] query, int id);
+        double similarity(int a, int b);
+    }
+
+    /**
+     * Insert row {@code id}; ids must be added in increasing order
+     */
+    void add(int id, float[] vector);
+
+    /**
+     * @return up to k row ids, best match first
+     */
+    int[] search(float[] query, int k);
+
+    /**
+     * Number of rows currently in the index
+     */
+    int size();
+
+    void clear();
+
+    void save(Path file) throws IOException;
+
+    /**
+     * Replace the index contents with a previously saved graph
+     */
+    void load(Path file) throws IOException;
+}
@@ -0,0 +1,128 @@
+package gemini.root;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * VectorQuantizer: Compressed copies of vault vectors for candidate scans
+ *
+ * Codes live in a sidecar file next to the float matrix, one fixed-size
+ * record per row, mapped read-only like the other vault columns. They are
+ * derived data: a missing or mismatched code file is rebuilt from
+ * vectors.f32. A scan over codes picks candidates; VectorVault then
+ * reranks them against the full-precision rows.
+ *
+ * Vectors handed to a quantizer are unit length, so code scores
+ * approximate cosine similarity directly.
+ */
+abstract class VectorQuantizer implements Closeable {
+
+    protected static final int HEADER_BYTES = 64;
+
+    /**
+     * Per-query scoring state (e.g. distance tables); read-only, so one
+     * scorer can be shared by parallel scan threads
+     */
+    interface QueryScorer {
+        float score(int row);
+    }
+
+    protected final Path file;
+    protected final int dim;
+    protected final int recordBytes;
+    private final int magic;
+    private final FileChannel ch;
+    protected volatile MappedColumn codes;
+    private volatile int count;
+
+    protected VectorQuantizer(Path file, int magic, int dim, int recordBytes) throws IOException {
+        this.file = file;
+        this.magic = magic;
+        this.dim = dim;
+        this.recordBytes = recordBytes;
+        this.ch = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        boolean valid = false;
+        if (ch.size() >= HEADER_BYTES) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            VaultStore.readFully(ch, header, 0);
+            valid = header.getInt(0) == magic
+                    && header.getInt(4) == VaultStore.FORMAT_VERSION
+                    && header.getInt(8) == dim
+                    && header.getInt(12) == recordBytes;
+        }
+        if (!valid) {
+            resetFile();
+        }
+        this.count = (int) ((ch.size() - HEADER_BYTES) / recordBytes);
+        this.codes = new MappedColumn(ch, HEADER_BYTES, recordBytes, count, null);
+    }
+
+    private void resetFile() throws IOException {
+        ch.truncate(0);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(0, magic);
+        header.putInt(4, VaultStore.FORMAT_VERSION);
+        header.putInt(8, dim);
+        header.putInt(12, recordBytes);
+        VaultStore.writeFully(ch, header, 0);
+    }
+
+    /**
+     * Whether codes can be produced yet (product quantization needs training)
+     */
+    abstract boolean isReady();
+
+    /**
+     * Write one code record for a unit vector
+     */
+    protected abstract void encode(float[] unitVector, ByteBuffer out);
+
+    /**
+     * Build scoring state for one unit-length query
+     */
+    abstract QueryScorer prepare(float[] unitQuery);
+
+    int size() {
+        return count;
+    }
+
+    String describe() {
+        return getClass().getSimpleName() + " (" + recordBytes + " bytes/row vs " + dim * Float.BYTES + " float)";
+    }
+
+    /**
+     * Append codes for rows [size(), size() + vectors.size())
+     */
+    void append(List<float[]> unitVectors) throws IOException {
+        if (unitVectors.isEmpty() || !isReady()) return;
+
+        ByteBuffer buf = ByteBuffer.allocate(unitVectors.size() * recordBytes).order(ByteOrder.LITTLE_ENDIAN);
+        for (float[] v : unitVectors) {
+            int start = buf.position();
+            encode(v, buf);
+            buf.position(start + recordBytes);
+        }
+        buf.flip();
+        VaultStore.writeFully(ch, buf, HEADER_BYTES + (long) count * recordBytes);
+
+        int newCount = count + unitVectors.size();
+        codes = new MappedColumn(ch, HEADER_BYTES, recordBytes, newCount, codes);
+        count = newCount;
+    }
+
+    void clear() throws IOException {
+        resetFile();
+        count = 0;
+        codes = new MappedColumn(ch, HEADER_BYTES, recordBytes, 0, null);
+    }
+
+    @Override
+    public void close() throws IOException {
+        ch.close();
+    }
+}
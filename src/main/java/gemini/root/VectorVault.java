@@ -1,39 +1,111 @@
 package gemini.root;
 
+import fraymus.jfr.VaultSearchEvent;
 import java.io.*;
 import java.nio.file.*;
 import java.security.MessageDigest;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
- * VectorVault: In-memory vector store for RAG
+ * VectorVault: Vector store for RAG
  * Stores text chunks and their embeddings
- * 
+ *
  * V3 Improvements:
  * - Deduplication by (source + chunkIndex + textHash)
  * - Enhanced provenance (source path + chunk number)
  * - Prevents re-indexing from ballooning vault
+ * - findRow() lets ingest skip embedding chunks that are already stored
+ *
+ * Tombstones:
+ * - tombstone() flags rows of modified or deleted files in place (row ids
+ *   stay stable, nothing is rewritten)
+ * - Every search path skips them; the graph keeps them as waypoints
+ *
+ * ANN Search:
+ * - HNSW graph kept beside the rows, updated incrementally on add
+ * - Graph checkpointed to fraymus_vault/hnsw.idx and caught up on load
+ * - EXACT mode kept as fallback and as the recall baseline
+ *
+ * Storage:
+ * - Columnar memory-mapped layout in fraymus_vault/ (see VaultStore)
+ * - Appends extend the files; nothing is rewritten on add
+ * - Vectors are scored straight from the mapping, texts read on demand
+ * - Legacy fraymus_vault.dat is migrated once on first load
+ *
+ * Quantized Storage (StorageMode):
+ * - FLOAT32: exact scans read the float matrix
+ * - INT8: scans read per-vector-scaled int8 codes (4x smaller)
+ * - PQ: scans read product-quantized codes via distance tables (32x smaller)
+ * - Quantized candidates are reranked against the full-precision rows
+ *
+ * Scan Engine:
+ * - Rows are stored unit length, so a score is one dot product
+ * - Exact and quantized scans run in parallel chunks (see TopKScanner)
+ * - Optional Vector API dot product (setSimd; built with -Psimd, runs with
+ *   jdk.incubator.vector)
+ * - Searches share a read lock; adds, mode changes and clear take the write lock
+ * - generation() changes whenever the row set does, so derived caches
+ *   (e.g. AnswerCache) can tell their entries are stale
+ *
+ * Lexical Search:
+ * - BM25 inverted index (LexicalIndex) fed by the same appends
+ * - Checkpointed with the graph to fraymus_vault/lexical.idx, caught up
+ *   from the stored texts on load
+ * - searchLexical() for exact identifiers and error strings
+ *
+ * search() is timed as a VaultSearchEvent (mode, n, k) when JFR has the
+ * event enabled.
  */
 public class VectorVault {
-    
-    private static final String VAULT_FILE = "fraymus_vault.dat";
-    
-    private List<VaultEntry> entries = new ArrayList<>();
-    private Set<String> seenHashes = new HashSet<>();  // For deduplication
-    
+
+    private static final String VAULT_DIR = "fraymus_vault";
+    private static final String LEGACY_FILE = "fraymus_vault.dat";
+    private static final String INDEX_FILE = "hnsw.idx";
+
+    // Below this size a full scan is cheaper than walking the graph
+    private static final int EXACT_THRESHOLD = 2048;
+
+    // Graph is checkpointed after this many new rows (or 25% growth, whichever is larger)
+    private static final int MIN_CHECKPOINT_ROWS = 1024;
+
+    // Quantized scans keep limit * rerankFactor candidates for the exact rerank
+    private static final int DEFAULT_RERANK_FACTOR = 8;
+
+    public enum SearchMode { EXACT, HNSW }
+
+    public enum StorageMode { FLOAT32, INT8, PQ }
+
+    private final Path dir;
+    private volatile VaultStore store;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, Integer> seenKeys = new HashMap<>();  // Dedupe key -> live row
+    private final BitSet tombstones = new BitSet();
+    private SearchMode searchMode = SearchMode.HNSW;
+    private VectorIndex index = new HnswIndex(new StoreScorer());
+    private int checkpointedRows = 0;
+    private final LexicalIndex lexical = new LexicalIndex();
+    private int lexicalCheckpointedRows = 0;
+    private StorageMode storageMode = StorageMode.FLOAT32;
+    private VectorQuantizer quantizer;
+    private int rerankFactor = DEFAULT_RERANK_FACTOR;
+    private final AtomicLong generation = new AtomicLong();
+
     public static class VaultEntry implements Serializable {
         private static final long serialVersionUID = 2L;  // Incremented for new fields
-        
+
         public String source;
         public String text;
         public float[] vector;
         public int chunkIndex;       // NEW: chunk number in source
         public String textHash;      // NEW: for deduplication
-        
+        public transient int id = -1;  // Row number in the vault (not serialized)
+
         public VaultEntry(String source, String text, float[] vector) {
             this(source, text, vector, 0, "");
         }
-        
+
         public VaultEntry(String source, String text, float[] vector, int chunkIndex, String textHash) {
             this.source = source;
             this.text = text;
@@ -41,7 +113,7 @@ public class VectorVault {
             this.chunkIndex = chunkIndex;
             this.textHash = textHash;
         }
-        
+
         /**
          * Get provenance header for citation
          */
@@ -49,72 +121,507 @@ public class VectorVault {
             return String.format("%s (chunk %d)", source, chunkIndex);
         }
     }
-    
+
+    public VectorVault() {
+        this(Paths.get(VAULT_DIR));
+    }
+
+    public VectorVault(Path dir) {
+        this.dir = dir;
+    }
+
+    private VaultStore store() throws IOException {
+        if (store == null) {
+            store = VaultStore.open(dir);
+        }
+        return store;
+    }
+
+    /**
+     * One chunk to add: its source, position in that source, text and vector
+     */
+    public static class Chunk {
+        public final String source;
+        public final int chunkIndex;
+        public final String text;
+        public final float[] vector;
+
+        public Chunk(String source, int chunkIndex, String text, float[] vector) {
+            this.source = source;
+            this.chunkIndex = chunkIndex;
+            this.text = text;
+            this.vector = vector;
+        }
+    }
+
+    /**
+     * Outcome of an add: rows written, duplicates skipped, and chunks
+     * rejected (missing or mismatched vector, or a failed write).
+     * rows[i] is the row now holding chunk i (the existing row for a
+     * duplicate), or -1 if it was rejected.
+     */
+    public static class AddResult {
+        public final int added;
+        public final int deduped;
+        public final int rejected;
+        public final int[] rows;
+
+        AddResult(int added, int deduped, int rejected, int[] rows) {
+            this.added = added;
+            this.deduped = deduped;
+            this.rejected = rejected;
+            this.rows = rows;
+        }
+    }
+
     /**
      * Add entries with deduplication and persist to disk
      */
     public void addAndPersist(String source, List<String> chunks, List<float[]> vectors) {
+        List<Chunk> batch = new ArrayList<>();
+        for (int i = 0; i < chunks.size() && i < vectors.size(); i++) {
+            batch.add(new Chunk(source, i, chunks.get(i), vectors.get(i)));
+        }
+        AddResult r = addAll(batch);
+
+        if (r.deduped > 0) {
+            System.out.println(">>> [VAULT] Deduped " + r.deduped + " chunks from " + source);
+        }
+        if (r.rejected > 0) {
+            System.err.println(">>> [VAULT] Rejected " + r.rejected + " chunks with missing or mismatched vectors from " + source);
+        }
+        System.out.println(">>> [VAULT] Added " + r.added + " new chunks from " + source);
+    }
+
+    /**
+     * Group commit: chunks from any number of sources are deduplicated and
+     * appended as one store write (one fsync round), with one index update
+     * and checkpoint check. Used by IngestPipeline's writer.
+     */
+    public AddResult addAll(List<Chunk> chunks) {
         int addedCount = 0;
         int dedupedCount = 0;
-        
-        for (int i = 0; i < chunks.size() && i < vectors.size(); i++) {
-            String text = chunks.get(i);
-            String hash = computeHash(text);
-            String dedupeKey = source + "|" + i + "|" + hash;
-            
-            // Check for duplicate
-            if (seenHashes.contains(dedupeKey)) {
-                dedupedCount++;
-                continue;  // Skip duplicate
+        int rejectedCount = 0;
+        int[] rows = new int[chunks.size()];
+        Arrays.fill(rows, -1);
+
+        lock.writeLock().lock();
+        try {
+            VaultStore s = store();
+            int dim = s.dim();
+            int first = s.size();
+            List<VaultStore.NewRow> batch = new ArrayList<>();
+            List<Long> batchKeys = new ArrayList<>();
+            Map<Long, Integer> keysInBatch = new HashMap<>();
+
+            for (int i = 0; i < chunks.size(); i++) {
+                Chunk c = chunks.get(i);
+                int sourceId = s.sourceId(c.source);
+                long hash = hashBits(computeHash(c.text));
+                long dedupeKey = dedupeKey(sourceId, c.chunkIndex, hash);
+
+                // Check for duplicate
+                Integer existing = seenKeys.get(dedupeKey);
+                if (existing == null) existing = keysInBatch.get(dedupeKey);
+                if (existing != null) {
+                    rows[i] = existing;
+                    dedupedCount++;
+                    continue;  // Skip duplicate
+                }
+
+                float[] vector = c.vector;
+                if (vector == null || vector.length == 0) {
+                    rejectedCount++;
+                    continue;
+                }
+                if (dim == 0) dim = vector.length;
+                if (vector.length != dim) {
+                    rejectedCount++;
+                    continue;
+                }
+
+                rows[i] = first + batch.size();
+                keysInBatch.put(dedupeKey, rows[i]);
+                batch.add(new VaultStore.NewRow(sourceId, c.chunkIndex, hash, c.text, vector));
+                batchKeys.add(dedupeKey);
+            }
+
+            s.append(batch);
+            addedCount = batch.size();
+            for (int j = 0; j < batchKeys.size(); j++) {
+                seenKeys.put(batchKeys.get(j), first + j);
+            }
+            List<float[]> units = new ArrayList<>(batch.size());
+            for (int j = 0; j < batch.size(); j++) {
+                float[] u = unit(batch.get(j).vector);
+                index.add(first + j, u);
+                lexical.add(first + j, batch.get(j).text);
+                units.add(u);
+            }
+            if (addedCount > 0) generation.incrementAndGet();
+            maybeCheckpointIndex();
+            updateQuantizer(units);
+            return new AddResult(addedCount, dedupedCount, rejectedCount, rows);
+
+        } catch (IOException e) {
+            System.err.println(">>> [VAULT] Save failed: " + e.getMessage());
+            // Rows are durable once append() returns; only an earlier failure loses the batch
+            if (addedCount == 0) {
+                Arrays.fill(rows, -1);
+                return new AddResult(0, 0, chunks.size(), rows);
+            }
+            return new AddResult(addedCount, dedupedCount, rejectedCount, rows);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Live row already holding this exact chunk (same source, position and
+     * text), or -1. Lets callers skip embedding what is stored already.
+     */
+    public int findRow(String source, int chunkIndex, String text) {
+        lock.readLock().lock();
+        try {
+            if (store == null) return -1;
+            int sourceId = store.existingSourceId(source);
+            if (sourceId < 0) return -1;
+            Integer row = seenKeys.get(dedupeKey(sourceId, chunkIndex, hashBits(computeHash(text))));
+            return row == null ? -1 : row;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Flag rows as deleted: searches stop returning them and their chunks
+     * can be added again. Already tombstoned or unknown ids are ignored.
+     * @return number of rows newly tombstoned
+     */
+    public int tombstone(int[] rowIds) {
+        lock.writeLock().lock();
+        try {
+            if (store == null) return 0;
+            int[] fresh = Arrays.stream(rowIds)
+                .filter(r -> r >= 0 && r < store.size() && !tombstones.get(r))
+                .distinct()
+                .toArray();
+            if (fresh.length == 0) return 0;
+            store.setFlag(fresh, VaultStore.FLAG_TOMBSTONE);
+            for (int r : fresh) {
+                tombstones.set(r);
+                seenKeys.remove(dedupeKey(store.sourceIdOf(r), store.chunkIndex(r), store.textHash(r)), r);
+            }
+            generation.incrementAndGet();
+            return fresh.length;
+        } catch (IOException e) {
+            System.err.println(">>> [VAULT] Tombstone failed: " + e.getMessage());
+            return 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Configure the ANN index. Rebuilds the graph if M or efConstruction change.
+     */
+    public void configureIndex(int m, int efConstruction, int efSearch) {
+        lock.writeLock().lock();
+        try {
+            if (index instanceof HnswIndex hnsw
+                    && hnsw.getM() == m && hnsw.getEfConstruction() == Math.max(efConstruction, m)) {
+                hnsw.setEfSearch(efSearch);
+                return;
             }
-            
-            entries.add(new VaultEntry(source, text, vectors.get(i), i, hash));
-            seenHashes.add(dedupeKey);
-            addedCount++;
+            setIndex(new HnswIndex(new StoreScorer(), m, efConstruction, efSearch));
+        } finally {
+            lock.writeLock().unlock();
         }
-        
-        if (dedupedCount > 0) {
-            System.out.println(">>> [VAULT] Deduped " + dedupedCount + " chunks from " + source);
+    }
+
+    /**
+     * Plug in a different ANN index; it is filled from the current rows
+     */
+    public void setIndex(VectorIndex newIndex) {
+        lock.writeLock().lock();
+        try {
+            newIndex.clear();
+            index = newIndex;
+            checkpointedRows = 0;
+            catchUpIndex();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Scorer for custom indexes passed to {@link #setIndex}
+     */
+    public VectorIndex.Scorer scorer() {
+        return new StoreScorer();
+    }
+
+    public void setSearchMode(SearchMode mode) {
+        this.searchMode = mode;
+    }
+
+    public SearchMode getSearchMode() {
+        return searchMode;
+    }
+
+    /**
+     * Select how exact scans read vectors. Codes are built (or trained, for PQ)
+     * from the existing rows as needed; the float matrix is always kept for rerank.
+     */
+    public void setStorageMode(StorageMode mode) {
+        lock.writeLock().lock();
+        try {
+            if (mode == storageMode && (mode == StorageMode.FLOAT32 || quantizer != null)) return;
+            closeQuantizer();
+            storageMode = mode;
+            if (store != null) {
+                try {
+                    updateQuantizer(List.of());
+                } catch (IOException e) {
+                    System.err.println(">>> [VAULT] Quantizer setup failed: " + e.getMessage());
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public StorageMode getStorageMode() {
+        return storageMode;
+    }
+
+    /**
+     * Candidates kept per requested result before the full-precision rerank
+     */
+    public void setRerankFactor(int factor) {
+        this.rerankFactor = Math.max(1, factor);
+    }
+
+    /**
+     * Use the Vector API for dot products (build with -Psimd; the JVM needs
+     * --add-modules jdk.incubator.vector).
+     * @return whether SIMD is active
+     */
+    public boolean setSimd(boolean enabled) {
+        boolean active = VaultStore.enableSimd(enabled);
+        if (active) {
+            System.out.println(">>> [VAULT] SIMD dot products enabled");
         }
-        System.out.println(">>> [VAULT] Added " + addedCount + " new chunks from " + source);
-        
-        save();
+        return active;
     }
-    
+
     /**
-     * Search for similar entries
+     * Search for similar entries using the configured mode
      */
     public List<VaultEntry> search(float[] queryVector, int limit) {
-        List<VaultEntry> results = new ArrayList<>(entries);
-        
-        // Sort by cosine similarity
-        results.sort((a, b) -> {
-            double simA = cosineSimilarity(queryVector, a.vector);
-            double simB = cosineSimilarity(queryVector, b.vector);
-            return Double.compare(simB, simA);
+        VaultSearchEvent event = new VaultSearchEvent();
+        event.begin();
+        int n = size();
+        SearchMode mode = searchMode == SearchMode.EXACT || n < EXACT_THRESHOLD ? SearchMode.EXACT : SearchMode.HNSW;
+        List<VaultEntry> hits = mode == SearchMode.EXACT
+            ? searchExact(queryVector, limit)
+            : searchApprox(queryVector, limit);
+        event.end();
+        if (event.shouldCommit()) {
+            event.mode = mode.name();
+            event.storage = storageMode.name();
+            event.n = n;
+            event.k = limit;
+            event.results = hits.size();
+            event.commit();
+        }
+        return hits;
+    }
+
+    /**
+     * Approximate search through the HNSW graph
+     */
+    public List<VaultEntry> searchApprox(float[] queryVector, int limit) {
+        lock.readLock().lock();
+        try {
+            float[] q = unitQuery(queryVector);
+            if (q == null) return new ArrayList<>();
+            if (tombstones.isEmpty()) return materialize(index.search(q, limit));
+
+            // Tombstoned nodes stay in the graph: over-fetch, then fall back
+            // to a scan if too many of the hits were dead
+            int[] live = live(index.search(q, limit + Math.min(tombstones.cardinality(), limit * 4)), limit);
+            if (live.length < Math.min(limit, liveSize())) return searchExact(queryVector, limit);
+            return materialize(live);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Exact search (full scan) - fallback and recall baseline
+     */
+    public List<VaultEntry> searchExact(float[] queryVector, int limit) {
+        lock.readLock().lock();
+        try {
+            float[] q = unitQuery(queryVector);
+            if (q == null || limit <= 0) return new ArrayList<>();
+
+            int n = store.size();
+            VectorQuantizer codes = quantizer;
+            if (codes != null && codes.size() == n) {
+                return materialize(searchQuantized(codes, q, limit));
+            }
+
+            VaultStore s = store;
+            BitSet skip = tombstones.isEmpty() ? null : tombstones;
+            ScoreHeap top = TopKScanner.topK(n, limit, (from, to, heap, k) -> s.scan(q, from, to, heap, k, skip));
+            return materialize(top.drainDescending());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * BM25 keyword search over the row texts
+     */
+    public List<VaultEntry> searchLexical(String query, int limit) {
+        lock.readLock().lock();
+        try {
+            if (store == null || query == null) return new ArrayList<>();
+            if (tombstones.isEmpty()) return materialize(lexical.search(query, limit));
+            return materialize(live(lexical.search(query, limit + Math.min(tombstones.cardinality(), limit * 4)), limit));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Scan codes for limit * rerankFactor candidates, then rerank them
+     * against the full-precision rows read from the mapped matrix
+     */
+    private int[] searchQuantized(VectorQuantizer codes, float[] q, int limit) {
+        int n = codes.size();
+        int candidates = Math.min(n, limit * rerankFactor);
+        VectorQuantizer.QueryScorer scorer = codes.prepare(q);
+
+        BitSet skip = tombstones;
+        ScoreHeap coarse = TopKScanner.topK(n, candidates, (from, to, heap, k) -> {
+            for (int id = from; id < to; id++) {
+                if (skip.get(id)) continue;
+                heap.offer(scorer.score(id), id, k);
+            }
         });
-        
-        return results.subList(0, Math.min(limit, results.size()));
+
+        ScoreHeap top = new ScoreHeap(limit + 1);
+        while (!coarse.isEmpty()) {
+            int id = coarse.pop();
+            top.offer(store.dot(q, id), id, limit);
+        }
+        return top.drainDescending();
+    }
+
+    /**
+     * Measure HNSW recall@k against exact search, using stored vectors as queries
+     * @param samples Number of random entries to use as queries
+     * @return Fraction of exact top-k hits also returned by the graph
+     */
+    public double measureRecall(int samples, int k) {
+        lock.readLock().lock();
+        try {
+            if (size() == 0) return 1.0;
+
+            Random rnd = new Random(17);
+            int hits = 0;
+            int total = 0;
+            for (int s = 0; s < samples; s++) {
+                float[] q = store.vector(rnd.nextInt(store.size()));
+                Set<Integer> truth = new HashSet<>();
+                for (VaultEntry e : searchExact(q, k)) truth.add(e.id);
+                for (VaultEntry e : searchApprox(q, k)) {
+                    if (truth.contains(e.id)) hits++;
+                }
+                total += truth.size();
+            }
+            return total == 0 ? 1.0 : (double) hits / total;
+        } finally {
+            lock.readLock().unlock();
+        }
     }
-    
-    private double cosineSimilarity(float[] a, float[] b) {
-        if (a.length != b.length) return 0.0;
-        
-        double dot = 0.0, normA = 0.0, normB = 0.0;
-        for (int i = 0; i < a.length; i++) {
-            dot += a[i] * b[i];
-            normA += a[i] * a[i];
-            normB += b[i] * b[i];
+
+    /**
+     * Get a single row as an entry (vector copied out of the mapping)
+     */
+    public VaultEntry get(int id) {
+        lock.readLock().lock();
+        try {
+            try {
+                VaultEntry entry = new VaultEntry(
+                    store.source(id),
+                    store.text(id),
+                    store.vector(id),
+                    store.chunkIndex(id),
+                    String.format("%016x", store.textHash(id))
+                );
+                entry.id = id;
+                return entry;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        } finally {
+            lock.readLock().unlock();
         }
-        
-        if (normA == 0.0 || normB == 0.0) return 0.0;
-        return dot / (Math.sqrt(normA) * Math.sqrt(normB));
     }
-    
+
+    /**
+     * First limit ids that are not tombstoned, order kept
+     */
+    private int[] live(int[] ids, int limit) {
+        return Arrays.stream(ids).filter(id -> !tombstones.get(id)).limit(limit).toArray();
+    }
+
+    private List<VaultEntry> materialize(int[] ids) {
+        List<VaultEntry> results = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            results.add(get(id));
+        }
+        return results;
+    }
+
+    /**
+     * Scale the query to unit length once; rows are stored unit length, so
+     * each row then costs a single dot product. Returns null on dimension mismatch.
+     */
+    private float[] unitQuery(float[] query) {
+        if (store == null || store.size() == 0 || query == null || query.length != store.dim()) {
+            return null;
+        }
+        return squaredNorm(query) == 0.0 ? null : unit(query);
+    }
+
+    private static double squaredNorm(float[] v) {
+        double norm = 0.0;
+        for (float x : v) norm += (double) x * x;
+        return norm;
+    }
+
+    /**
+     * Unit-length copy (a zero vector stays zero)
+     */
+    private static float[] unit(float[] v) {
+        double norm = squaredNorm(v);
+        if (norm == 0.0) return v.clone();
+
+        float inv = (float) (1.0 / Math.sqrt(norm));
+        float[] u = new float[v.length];
+        for (int i = 0; i < u.length; i++) u[i] = v[i] * inv;
+        return u;
+    }
+
     /**
      * Compute SHA-256 hash of text for deduplication
      */
-    private String computeHash(String text) {
+    static String computeHash(String text) {
         try {
             MessageDigest digest = MessageDigest.getInstance("SHA-256");
             byte[] hash = digest.digest(text.getBytes("UTF-8"));
@@ -130,65 +637,334 @@ public class VectorVault {
             return String.valueOf(text.hashCode());
         }
     }
-    
+
     /**
-     * Load vault from disk
-     * 
-     * WARNING: Uses Java serialization which has security risks.
-     * For production, consider JSON-based storage or add validation.
+     * Pack a 16-hex-char text hash into the 64-bit column value
      */
-    public void load() {
-        File f = new File(VAULT_FILE);
-        if (!f.exists()) {
-            System.out.println(">>> [VAULT] No prior vault found");
-            return;
+    static long hashBits(String hash) {
+        try {
+            return Long.parseUnsignedLong(hash, 16);
+        } catch (NumberFormatException e) {
+            return hash.hashCode();
         }
-        
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(f))) {
-            @SuppressWarnings("unchecked")
-            List<VaultEntry> loaded = (List<VaultEntry>) ois.readObject();
-            // Basic validation
-            if (loaded != null) {
-                entries = loaded;
-                
-                // Rebuild hash index for deduplication
-                seenHashes.clear();
-                for (VaultEntry entry : entries) {
-                    if (entry.textHash == null || entry.textHash.isEmpty()) {
-                        // Compute hash for legacy entries
-                        entry.textHash = computeHash(entry.text);
+    }
+
+    private static long dedupeKey(int sourceId, int chunkIndex, long textHash) {
+        long k = sourceId * 0x9E3779B97F4A7C15L + chunkIndex;
+        return (k * 0xC2B2AE3D27D4EB4FL) ^ textHash;
+    }
+
+    /**
+     * Open the vault from disk, migrating the legacy serialized vault if present
+     */
+    public void load() {
+        lock.writeLock().lock();
+        try {
+            try {
+                VaultStore s = store();
+
+                Path legacy = dir.resolveSibling(LEGACY_FILE);
+                if (Files.exists(legacy)) {
+                    int migrated = VaultMigrator.migrate(legacy, s);
+                    System.out.println(">>> [VAULT] Migrated " + migrated + " entries from " + LEGACY_FILE);
+                }
+
+                if (s.size() == 0) {
+                    System.out.println(">>> [VAULT] No prior vault found");
+                    return;
+                }
+
+                // Rebuild dedupe keys and tombstones from the row table
+                seenKeys.clear();
+                tombstones.clear();
+                for (int id = 0; id < s.size(); id++) {
+                    if ((s.flags(id) & VaultStore.FLAG_TOMBSTONE) != 0) {
+                        tombstones.set(id);
+                        continue;
                     }
-                    String dedupeKey = entry.source + "|" + entry.chunkIndex + "|" + entry.textHash;
-                    seenHashes.add(dedupeKey);
+                    seenKeys.put(dedupeKey(s.sourceIdOf(id), s.chunkIndex(id), s.textHash(id)), id);
                 }
-                
-                System.out.println(">>> [VAULT] Loaded " + entries.size() + " entries");
+
+                generation.incrementAndGet();
+                System.out.println(">>> [VAULT] Loaded " + s.size() + " entries"
+                    + (tombstones.isEmpty() ? "" : " (" + tombstones.cardinality() + " tombstoned)"));
+                loadIndex();
+                loadLexical();
+                updateQuantizer(List.of());
+            } catch (Exception e) {
+                System.err.println(">>> [VAULT] Load failed: " + e.getMessage());
             }
-        } catch (Exception e) {
-            System.err.println(">>> [VAULT] Load failed: " + e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
         }
     }
-    
+
     /**
-     * Save vault to disk
+     * Load the persisted graph, falling back to a rebuild if it is missing,
+     * stale or was built with different parameters
      */
-    public void save() {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(VAULT_FILE))) {
-            oos.writeObject(entries);
+    private void loadIndex() {
+        Path indexPath = dir.resolve(INDEX_FILE);
+        index.clear();
+        if (Files.exists(indexPath)) {
+            try {
+                index.load(indexPath);
+                if (index.size() > size()) {
+                    System.err.println(">>> [VAULT] Index ahead of vault, rebuilding");
+                    index.clear();
+                }
+            } catch (IOException e) {
+                System.err.println(">>> [VAULT] Index load failed, rebuilding: " + e.getMessage());
+                index.clear();
+            }
+        }
+        checkpointedRows = index.size();
+        catchUpIndex();
+        if (index.size() > checkpointedRows) {
+            System.out.println(">>> [VAULT] Indexed " + (index.size() - checkpointedRows) + " entries into HNSW");
+            saveIndex();
+        }
+    }
+
+    /**
+     * Load the persisted lexical index and index whatever rows it is missing
+     */
+    private void loadLexical() throws IOException {
+        Path lexicalPath = dir.resolve(LexicalIndex.FILE);
+        lexical.clear();
+        if (Files.exists(lexicalPath)) {
+            try {
+                lexical.load(lexicalPath);
+                if (lexical.size() > size()) {
+                    System.err.println(">>> [VAULT] Lexical index ahead of vault, rebuilding");
+                    lexical.clear();
+                }
+            } catch (IOException e) {
+                System.err.println(">>> [VAULT] Lexical index load failed, rebuilding: " + e.getMessage());
+                lexical.clear();
+            }
+        }
+        lexicalCheckpointedRows = lexical.size();
+        for (int id = lexical.size(); id < size(); id++) {
+            lexical.add(id, store.text(id));
+        }
+        if (lexical.size() > lexicalCheckpointedRows) {
+            System.out.println(">>> [VAULT] Indexed " + (lexical.size() - lexicalCheckpointedRows)
+                + " entries into the lexical index (" + lexical.terms() + " terms)");
+            saveLexical();
+        }
+    }
+
+    /**
+     * Insert any rows the graph has not seen yet
+     */
+    private void catchUpIndex() {
+        for (int i = index.size(); i < size(); i++) {
+            index.add(i, store.vector(i));
+        }
+    }
+
+    /**
+     * Bring the quantized codes in line with the rows: open the code file,
+     * train PQ once enough rows exist, and encode whatever is missing.
+     * {@code fresh} are unit vectors of rows just appended (may be empty).
+     */
+    private void updateQuantizer(List<float[]> fresh) throws IOException {
+        if (storageMode == StorageMode.FLOAT32 || store == null || store.dim() == 0) return;
+
+        if (quantizer == null) {
+            quantizer = storageMode == StorageMode.INT8
+                    ? new Int8Quantizer(dir, store.dim())
+                    : new PqQuantizer(dir, store.dim());
+        }
+        if (quantizer instanceof PqQuantizer pq && !pq.isReady()) {
+            if (store.size() < PqQuantizer.MIN_TRAIN_ROWS) return;  // exact scans until then
+            System.out.println(">>> [VAULT] Training PQ codebooks on " + Math.min(store.size(), PqQuantizer.MAX_TRAIN_ROWS) + " rows");
+            pq.train(trainingSample(PqQuantizer.MAX_TRAIN_ROWS));
+        }
+
+        int n = store.size();
+        int have = quantizer.size();
+        if (have > n) {
+            quantizer.clear();
+            have = 0;
+        }
+        if (have == n - fresh.size()) {
+            quantizer.append(fresh);
+            return;
+        }
+
+        // Catch up from the float matrix in bounded batches
+        int before = have;
+        List<float[]> pending = new ArrayList<>();
+        for (int id = have; id < n; id++) {
+            pending.add(store.vector(id));
+            if (pending.size() == 4096) {
+                quantizer.append(pending);
+                pending.clear();
+            }
+        }
+        quantizer.append(pending);
+        System.out.println(">>> [VAULT] Encoded " + (n - before) + " rows as " + quantizer.describe());
+    }
+
+    /**
+     * Evenly spaced unit vectors for codebook training
+     */
+    private List<float[]> trainingSample(int max) {
+        int n = store.size();
+        int take = Math.min(n, max);
+        List<float[]> sample = new ArrayList<>(take);
+        for (int i = 0; i < take; i++) {
+            sample.add(store.vector((int) ((long) i * n / take)));
+        }
+        return sample;
+    }
+
+    private void closeQuantizer() {
+        if (quantizer != null) {
+            try {
+                quantizer.close();
+            } catch (IOException e) {
+                System.err.println(">>> [VAULT] Quantizer close failed: " + e.getMessage());
+            }
+            quantizer = null;
+        }
+    }
+
+    private void maybeCheckpointIndex() {
+        int pending = index.size() - checkpointedRows;
+        if (pending >= Math.max(MIN_CHECKPOINT_ROWS, checkpointedRows / 4)) {
+            saveIndex();
+        }
+        int lexicalPending = lexical.size() - lexicalCheckpointedRows;
+        if (lexicalPending >= Math.max(MIN_CHECKPOINT_ROWS, lexicalCheckpointedRows / 4)) {
+            saveLexical();
+        }
+    }
+
+    private void saveLexical() {
+        try {
+            lexical.save(dir.resolve(LexicalIndex.FILE));
+            lexicalCheckpointedRows = lexical.size();
         } catch (IOException e) {
-            System.err.println(">>> [VAULT] Save failed: " + e.getMessage());
+            System.err.println(">>> [VAULT] Lexical index save failed: " + e.getMessage());
+        }
+    }
+
+    private void saveIndex() {
+        try {
+            index.save(dir.resolve(INDEX_FILE));
+            checkpointedRows = index.size();
+        } catch (IOException e) {
+            System.err.println(">>> [VAULT] Index save failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Flush state that is not written on every add (the HNSW and lexical
+     * checkpoints). Rows themselves are durable as soon as addAndPersist returns.
+     */
+    public void save() {
+        lock.writeLock().lock();
+        try {
+            if (store != null && index.size() != checkpointedRows) {
+                saveIndex();
+            }
+            if (store != null && lexical.size() != lexicalCheckpointedRows) {
+                saveLexical();
+            }
+        } finally {
+            lock.writeLock().unlock();
         }
     }
-    
+
+    /**
+     * Checkpoint and release the mapped files
+     */
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            save();
+            closeQuantizer();
+            if (store != null) {
+                try {
+                    store.close();
+                } catch (IOException e) {
+                    System.err.println(">>> [VAULT] Close failed: " + e.getMessage());
+                }
+                store = null;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
     public int size() {
-        return entries.size();
+        return store == null ? 0 : store.size();
     }
-    
+
+    /**
+     * Rows that searches can return (size() minus tombstones)
+     */
+    public int liveSize() {
+        return size() - tombstones.cardinality();
+    }
+
+    public Path directory() {
+        return dir;
+    }
+
+    /**
+     * Counter bumped on every change to the stored rows (add, load, clear)
+     */
+    public long generation() {
+        return generation.get();
+    }
+
     /**
      * Clear vault (for testing/reset)
      */
     public void clear() {
-        entries.clear();
-        seenHashes.clear();
+        lock.writeLock().lock();
+        try {
+            seenKeys.clear();
+            tombstones.clear();
+            index.clear();
+            checkpointedRows = 0;
+            lexical.clear();
+            lexicalCheckpointedRows = 0;
+            generation.incrementAndGet();
+            try {
+                store().clear();
+                Files.deleteIfExists(dir.resolve(INDEX_FILE));
+                Files.deleteIfExists(dir.resolve(LexicalIndex.FILE));
+                IndexManifest.deleteAll(dir);  // they point at rows that are gone
+                closeQuantizer();
+                for (String codes : List.of(Int8Quantizer.FILE, PqQuantizer.FILE, PqQuantizer.CODEBOOK_FILE)) {
+                    Files.deleteIfExists(dir.resolve(codes));
+                }
+            } catch (IOException e) {
+                System.err.println(">>> [VAULT] Clear failed: " + e.getMessage());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Scores graph candidates straight from the mapped rows.
+     * Queries arrive already unit-length (see unitQuery).
+     */
+    private class StoreScorer implements VectorIndex.Scorer {
+        @Override
+        public double similarity(float[] query, int id) {
+            return store.dot(query, id);
+        }
+
+        @Override
+        public double similarity(int a, int b) {
+            return store.dot(a, b);
+        }
     }
 }
@@ -0,0 +1,39 @@
+package gemini.root;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SimdDot: Vector API dot product over mapped vault rows
+ *
+ * Uses the incubating jdk.incubator.vector module, so it lives outside
+ * the main source set: built only with -Psimd (which also runs the JVM
+ * with --add-modules jdk.incubator.vector). VaultStore loads it by name
+ * once --simd is set, so the main classes never link against it.
+ */
+final class SimdDot implements VaultStore.RowDot {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    SimdDot() {}
+
+    @Override
+    public float dot(float[] q, ByteBuffer row, int byteOffset, int dim) {
+        FloatVector acc = FloatVector.zero(SPECIES);
+        int bound = SPECIES.loopBound(dim);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            FloatVector a = FloatVector.fromArray(SPECIES, q, i);
+            FloatVector b = FloatVector.fromByteBuffer(SPECIES, row, byteOffset + i * Float.BYTES, ByteOrder.LITTLE_ENDIAN);
+            acc = a.fma(b, acc);
+        }
+        float sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < dim; i++) {
+            sum += q[i] * row.getFloat(byteOffset + i * Float.BYTES);
+        }
+        return sum;
+    }
+}
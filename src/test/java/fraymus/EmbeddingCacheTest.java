@@ -0,0 +1,73 @@
+package fraymus;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class EmbeddingCacheTest {
+
+    private static final String MODEL = "test-model";
+    private static final int DIM = 4;
+    private static final int SLOT_BYTES = 1 + 32 + DIM * Float.BYTES;
+    private static final long FOUR_SLOTS = 64 + 4L * SLOT_BYTES;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void reopenKeepsEntries() throws Exception {
+        try (EmbeddingCache cache = EmbeddingCache.open(dir, MODEL, FOUR_SLOTS)) {
+            cache.put("alpha  beta", vector(1));
+        }
+        try (EmbeddingCache cache = EmbeddingCache.open(dir, MODEL, FOUR_SLOTS)) {
+            assertArrayEquals(vector(1), cache.get(" alpha beta\n"));
+            assertNull(cache.get("gamma"));
+        }
+    }
+
+    /**
+     * A torn write leaves an EMPTY slot between FULL ones; the next insert
+     * must fill that hole, not overwrite the entry after it
+     */
+    @Test
+    void tornSlotIsReusedWithoutClobberingLiveEntries() throws Exception {
+        try (EmbeddingCache cache = EmbeddingCache.open(dir, MODEL, FOUR_SLOTS)) {
+            for (int i = 0; i < 4; i++) cache.put("text " + i, vector(i));
+        }
+        try (FileChannel ch = FileChannel.open(dir.resolve(MODEL + ".emb"), StandardOpenOption.WRITE)) {
+            ch.write(ByteBuffer.wrap(new byte[] { 0 }), 64 + SLOT_BYTES);  // slot 1 back to EMPTY
+        }
+
+        try (EmbeddingCache cache = EmbeddingCache.open(dir, MODEL, FOUR_SLOTS)) {
+            assertEquals(3, cache.size());
+            assertNull(cache.get("text 1"));
+            cache.put("text 4", vector(4));
+            assertEquals(4, cache.size());
+            for (int i : new int[] { 0, 2, 3, 4 }) {
+                assertArrayEquals(vector(i), cache.get("text " + i), "text " + i);
+            }
+        }
+    }
+
+    @Test
+    void evictionKeepsTheCapacity() throws Exception {
+        try (EmbeddingCache cache = EmbeddingCache.open(dir, MODEL, FOUR_SLOTS)) {
+            for (int i = 0; i < 4; i++) cache.put("text " + i, vector(i));
+            assertArrayEquals(vector(0), cache.get("text 0"));  // referenced, survives one sweep
+            cache.put("text 4", vector(4));
+            assertEquals(4, cache.size());
+            assertArrayEquals(vector(0), cache.get("text 0"));
+            assertArrayEquals(vector(4), cache.get("text 4"));
+            assertNull(cache.get("text 1"));
+            assertTrue(cache.stats().contains("evictions=1"), cache.stats());
+        }
+    }
+
+    private static float[] vector(int i) {
+        return new float[] { i, i + 0.5f, -i, 1f / (i + 1) };
+    }
+}
@@ -0,0 +1,162 @@
+package fraymus;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import org.junit.jupiter.api.Test;
+
+class EmbeddingDecoderTest {
+
+    @Test
+    void decodesSingleEmbeddingsShape() throws IOException {
+        float[][] v = decode("{\"embedding\":[0.5,-1.25,3e-2,0]}");
+        assertEquals(1, v.length);
+        assertArrayEquals(new float[] { 0.5f, -1.25f, 0.03f, 0f }, v[0]);
+    }
+
+    @Test
+    void decodesBatchedEmbedShape() throws IOException {
+        float[][] v = decode("{\"model\":\"nomic-embed-text\",\"embeddings\":[[1,2],[ -0.5 , 1E2 ],[]],"
+            + "\"total_duration\":14143917,\"prompt_eval_count\":3}");
+        assertEquals(3, v.length);
+        assertArrayEquals(new float[] { 1f, 2f }, v[0]);
+        assertArrayEquals(new float[] { -0.5f, 100f }, v[1]);
+        assertEquals(0, v[2].length);
+    }
+
+    @Test
+    void ignoresKeysOutsideTheTopLevel() throws IOException {
+        float[][] v = decode("{\"note\":\"the \\\"embedding\\\": [9] key\",\"options\":{\"embedding\":[7,7]},"
+            + "\"extra\":[{\"embeddings\":[[8]]}],\"embedding\":[1.5]}");
+        assertEquals(1, v.length);
+        assertArrayEquals(new float[] { 1.5f }, v[0]);
+    }
+
+    @Test
+    void missingFieldGivesNoVectors() throws IOException {
+        assertEquals(0, decode("{\"error\":\"model \\\"x\\\" not found\"}").length);
+    }
+
+    @Test
+    void truncatedResponseFails() {
+        assertThrows(IOException.class, () -> decode("{\"embedding\":[0.1,0.2"));
+        assertThrows(IOException.class, () -> decode("{\"model\":\"m\",\"embeddings\":[[0.1],[0.2]"));
+    }
+
+    /**
+     * The HTTP client hands over arbitrary slices; numbers and keys split
+     * across them must decode the same
+     */
+    @Test
+    void decodesTheSameWhateverTheChunking() throws Exception {
+        Random rnd = new Random(9);
+        String json = batch(rnd, 4, 96);
+        float[][] whole = decode(json);
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+
+        for (int trial = 0; trial < 20; trial++) {
+            HttpResponse.BodySubscriber<float[][]> subscriber = EmbeddingDecoder.bodySubscriber();
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) { }
+
+                @Override
+                public void cancel() { }
+            });
+            int pos = 0;
+            while (pos < bytes.length) {
+                int n = Math.min(bytes.length - pos, 1 + rnd.nextInt(40));
+                // Alternate heap and direct buffers (the client uses both)
+                ByteBuffer buf = trial % 2 == 0 ? ByteBuffer.allocate(n) : ByteBuffer.allocateDirect(n);
+                buf.put(bytes, pos, n).flip();
+                subscriber.onNext(List.of(buf));
+                pos += n;
+            }
+            subscriber.onComplete();
+            float[][] chunked = subscriber.getBody().toCompletableFuture().get(1, TimeUnit.SECONDS);
+            assertEquals(whole.length, chunked.length);
+            for (int i = 0; i < whole.length; i++) assertArrayEquals(whole[i], chunked[i]);
+        }
+    }
+
+    /**
+     * Decoders created on one thread and fed alternately (several embed
+     * lanes in flight) must not share a scratch buffer
+     */
+    @Test
+    void interleavedDecodersStayIndependent() throws Exception {
+        byte[] a = "{\"embedding\":[1,2,3]}".getBytes(StandardCharsets.UTF_8);
+        byte[] b = "{\"embeddings\":[[9,8,7,6]]}".getBytes(StandardCharsets.UTF_8);
+        EmbeddingDecoder first = new EmbeddingDecoder();
+        EmbeddingDecoder second = new EmbeddingDecoder();
+        for (int i = 0; i < Math.max(a.length, b.length); i++) {
+            if (i < a.length) first.feed(a, i, 1);
+            if (i < b.length) second.feed(b, i, 1);
+        }
+        assertArrayEquals(new float[] { 1f, 2f, 3f }, first.finish()[0]);
+        assertArrayEquals(new float[] { 9f, 8f, 7f, 6f }, second.finish()[0]);
+
+        // And from different threads, many at once
+        Random rnd = new Random(21);
+        List<String> responses = new ArrayList<>();
+        for (int i = 0; i < 32; i++) responses.add(batch(rnd, 2, 64 + i));
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<float[][]>> futures = new ArrayList<>();
+            for (String json : responses) futures.add(pool.submit(() -> decode(json)));
+            for (int i = 0; i < responses.size(); i++) {
+                float[][] expected = decode(responses.get(i));
+                float[][] got = futures.get(i).get(5, TimeUnit.SECONDS);
+                assertEquals(expected.length, got.length);
+                for (int v = 0; v < expected.length; v++) assertArrayEquals(expected[v], got[v]);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void numbersMatchTheJdkParser() {
+        Random rnd = new Random(13);
+        List<String> samples = new ArrayList<>(List.of("0", "-0", "-0.0", "1", "0.1", "1e10", "1E-10", "-2.5e+3",
+            "123456789012345678901234", "0.000000000000000000000001234", "3.4028235e38", "1.4e-45", "007.5"));
+        for (int i = 0; i < 5000; i++) {
+            double v = rnd.nextGaussian() * Math.pow(10, rnd.nextInt(12) - 8);
+            samples.add(i % 2 == 0 ? Double.toString(v) : Float.toString((float) v));
+        }
+
+        for (String s : samples) {
+            byte[] b = s.getBytes(StandardCharsets.US_ASCII);
+            float expected = (float) Double.parseDouble(s);
+            float got = EmbeddingDecoder.parse(b, b.length);
+            // Double rounding (decimal -> double -> float) may land one ulp away
+            assertTrue(got == expected || Math.abs(got - expected) <= Math.ulp(expected),
+                s + " parsed as " + got + ", expected " + expected);
+            assertEquals(Math.copySign(1f, expected), Math.copySign(1f, got), "sign of " + s);
+        }
+    }
+
+    private static float[][] decode(String json) throws IOException {
+        return EmbeddingDecoder.decode(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static String batch(Random rnd, int vectors, int dim) {
+        StringBuilder sb = new StringBuilder("{\"model\":\"nomic-embed-text\",\"embeddings\":[");
+        for (int v = 0; v < vectors; v++) {
+            if (v > 0) sb.append(',');
+            sb.append('[');
+            for (int d = 0; d < dim; d++) {
+                if (d > 0) sb.append(',');
+                sb.append(Float.toString((float) (rnd.nextGaussian() * 0.05)));
+            }
+            sb.append(']');
+        }
+        return sb.append("]}").toString();
+    }
+}
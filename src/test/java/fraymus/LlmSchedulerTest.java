@@ -0,0 +1,135 @@
+package fraymus;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import fraymus.LlmScheduler.Priority;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import org.junit.jupiter.api.Test;
+
+class LlmSchedulerTest {
+
+    @Test
+    void interactiveRequestsDispatchBeforeBackground() throws Exception {
+        LlmScheduler scheduler = new LlmScheduler(1, 60_000, 60_000, 0);
+        CompletableFuture<String> blocker = new CompletableFuture<>();
+        List<String> started = Collections.synchronizedList(new ArrayList<>());
+
+        CompletableFuture<String> first = scheduler.submit(scheduler.ticket(Priority.INTERACTIVE), "chat", () -> blocker);
+        List<CompletableFuture<String>> rest = new ArrayList<>();
+        for (String name : List.of("bg1", "int1", "bg2", "int2")) {
+            Priority p = name.startsWith("bg") ? Priority.BACKGROUND : Priority.INTERACTIVE;
+            rest.add(scheduler.submit(scheduler.ticket(p), "chat", () -> {
+                started.add(name);
+                return CompletableFuture.completedFuture(name);
+            }));
+        }
+        assertEquals(2, scheduler.queued(Priority.INTERACTIVE));
+        assertEquals(2, scheduler.queued(Priority.BACKGROUND));
+        assertTrue(started.isEmpty());
+
+        blocker.complete("first");
+        assertEquals("first", first.get(5, TimeUnit.SECONDS));
+        for (CompletableFuture<String> f : rest) f.get(5, TimeUnit.SECONDS);
+        assertEquals(List.of("int1", "int2", "bg1", "bg2"), started);
+        assertEquals(0, scheduler.inFlight());
+    }
+
+    @Test
+    void backgroundLeavesReservedSlotsForInteractive() throws Exception {
+        LlmScheduler scheduler = new LlmScheduler(4);
+        List<CompletableFuture<String>> hanging = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            CompletableFuture<String> call = new CompletableFuture<>();
+            hanging.add(call);
+            scheduler.submit(scheduler.ticket(Priority.BACKGROUND), "chat", () -> call);
+        }
+        assertEquals(3, scheduler.inFlight());
+        assertEquals(1, scheduler.queued(Priority.BACKGROUND));
+
+        CompletableFuture<String> interactive = scheduler.submit(scheduler.ticket(Priority.INTERACTIVE), "chat",
+            () -> CompletableFuture.completedFuture("now"));
+        assertEquals("now", interactive.get(5, TimeUnit.SECONDS));
+
+        hanging.forEach(f -> f.complete("done"));
+        assertEquals(0, scheduler.inFlight());
+        assertEquals(0, scheduler.queued(Priority.BACKGROUND));
+    }
+
+    @Test
+    void singleSlotStaysInteractiveWhileChatIsActive() throws Exception {
+        LlmScheduler scheduler = new LlmScheduler(1, 60_000, 60_000, 300);
+        scheduler.submit(scheduler.ticket(Priority.INTERACTIVE), "chat",
+            () -> CompletableFuture.completedFuture("answer")).get(5, TimeUnit.SECONDS);
+
+        // The slot is free, but a chat turn just ran: background waits
+        long submittedAt = System.nanoTime();
+        CompletableFuture<String> synthesis = scheduler.submit(scheduler.ticket(Priority.BACKGROUND), "chat",
+            () -> CompletableFuture.completedFuture("synthesis"));
+        assertEquals(0, scheduler.inFlight());
+        assertEquals(1, scheduler.queued(Priority.BACKGROUND));
+
+        CompletableFuture<String> next = scheduler.submit(scheduler.ticket(Priority.INTERACTIVE), "chat",
+            () -> CompletableFuture.completedFuture("next answer"));
+        assertEquals("next answer", next.get(5, TimeUnit.SECONDS));
+        assertFalse(synthesis.isDone());
+
+        // Once chat has been quiet for the window, background runs on its own
+        assertEquals("synthesis", synthesis.get(5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - submittedAt >= TimeUnit.MILLISECONDS.toNanos(250));
+    }
+
+    @Test
+    void singleSlotRunsBackgroundWhenNoChatHasHappened() throws Exception {
+        LlmScheduler scheduler = new LlmScheduler(1);
+        CompletableFuture<String> call = new CompletableFuture<>();
+        scheduler.submit(scheduler.ticket(Priority.BACKGROUND), "chat", () -> call);
+        assertEquals(1, scheduler.inFlight());
+        call.complete("done");
+        assertEquals(0, scheduler.inFlight());
+    }
+
+    @Test
+    void queuedRequestIsDroppedAtItsDeadline() throws Exception {
+        LlmScheduler scheduler = new LlmScheduler(1, 50, 50);
+        CompletableFuture<String> blocker = new CompletableFuture<>();
+        scheduler.submit(scheduler.ticket(Priority.BACKGROUND), "chat", () -> blocker);
+
+        boolean[] ran = new boolean[1];
+        CompletableFuture<String> late = scheduler.submit(scheduler.ticket(Priority.INTERACTIVE), "chat", () -> {
+            ran[0] = true;
+            return CompletableFuture.completedFuture("too late");
+        });
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> late.get(5, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof LlmScheduler.DeadlineExceededException, String.valueOf(e.getCause()));
+        assertEquals(0, scheduler.queued(Priority.INTERACTIVE));
+
+        blocker.complete("done");
+        assertFalse(ran[0], "a dropped request must never start");
+        assertTrue(scheduler.stats().contains("interactive queued=0 maxQueued=1 submitted=1 dropped=1"), scheduler.stats());
+    }
+
+    @Test
+    void expiredTicketIsRejectedWithoutQueueing() throws Exception {
+        LlmScheduler scheduler = new LlmScheduler(1, 0, 0);
+        LlmScheduler.Ticket ticket = scheduler.ticket(Priority.INTERACTIVE);
+        Thread.sleep(2);
+
+        CompletableFuture<String> f = scheduler.submit(ticket, "chat", () -> CompletableFuture.completedFuture("x"));
+        ExecutionException e = assertThrows(ExecutionException.class, () -> f.get(1, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof LlmScheduler.DeadlineExceededException);
+        assertEquals(0, scheduler.queued(Priority.INTERACTIVE));
+    }
+
+    @Test
+    void serverErrorLowersTheLimit() throws Exception {
+        LlmScheduler scheduler = new LlmScheduler(8);
+        CompletableFuture<String> f = scheduler.submit(scheduler.ticket(Priority.INTERACTIVE), "chat",
+            () -> CompletableFuture.failedFuture(new IOException("Ollama returned status: 503")));
+        assertThrows(ExecutionException.class, () -> f.get(5, TimeUnit.SECONDS));
+        assertEquals(6.0, scheduler.limit(), 1e-9);
+        assertEquals(8, scheduler.getMaxConcurrent());
+    }
+}
@@ -0,0 +1,136 @@
+package gemini.root;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class ConnectionExecutorTest {
+
+    private ConnectionExecutor executor;
+
+    @AfterEach
+    void shutdown() {
+        if (executor != null) executor.shutdown();
+    }
+
+    @Test
+    void runsOneConnectionsTasksInOrderOneAtATime() throws Exception {
+        executor = new ConnectionExecutor(1000);
+        Object conn = new Object();
+        List<Integer> seen = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(200);
+
+        for (int i = 0; i < 200; i++) {
+            int n = i;
+            assertTrue(executor.submit(conn, () -> {
+                if (running.incrementAndGet() > 1) overlaps.incrementAndGet();
+                if (n % 17 == 0) sleep(2);
+                seen.add(n);
+                running.decrementAndGet();
+                done.countDown();
+            }));
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(0, overlaps.get());
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 200; i++) expected.add(i);
+        assertEquals(expected, seen);
+    }
+
+    @Test
+    void slowConnectionDoesNotBlockOthers() throws Exception {
+        executor = new ConnectionExecutor(4);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch otherRan = new CountDownLatch(1);
+
+        assertTrue(executor.submit("slow", () -> await(release)));
+        assertTrue(executor.submit("fast", otherRan::countDown));
+
+        assertTrue(otherRan.await(5, TimeUnit.SECONDS));
+        release.countDown();
+    }
+
+    @Test
+    void rejectsBeyondMaxQueuedUntilTheLaneDrains() throws Exception {
+        executor = new ConnectionExecutor(2);
+        Object conn = new Object();
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch drained = new CountDownLatch(3);
+
+        assertTrue(executor.submit(conn, () -> { await(release); drained.countDown(); }));
+        assertTrue(executor.submit(conn, drained::countDown));
+        assertTrue(executor.submit(conn, drained::countDown));
+        assertFalse(executor.submit(conn, () -> fail("busy task ran")));
+        assertTrue(executor.submit("other", () -> { }), "a busy connection must not affect others");
+
+        release.countDown();
+        assertTrue(drained.await(5, TimeUnit.SECONDS));
+
+        CountDownLatch again = new CountDownLatch(1);
+        assertTrue(waitForAccept(conn, again::countDown));
+        assertTrue(again.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void failingTaskDoesNotStopTheLane() throws Exception {
+        executor = new ConnectionExecutor(4);
+        Object conn = new Object();
+        CountDownLatch after = new CountDownLatch(1);
+        assertTrue(executor.submit(conn, () -> { throw new IllegalStateException("handler failure (expected in test)"); }));
+        assertTrue(executor.submit(conn, after::countDown));
+        assertTrue(after.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void removeDropsQueuedTasks() throws Exception {
+        executor = new ConnectionExecutor(4);
+        Object conn = new Object();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger ranAfter = new AtomicInteger();
+
+        assertTrue(executor.submit(conn, () -> { started.countDown(); await(release); }));
+        assertTrue(executor.submit(conn, ranAfter::incrementAndGet));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        executor.remove(conn);
+        release.countDown();
+        Thread.sleep(100);
+        assertEquals(0, ranAfter.get());
+    }
+
+    /**
+     * The previous drain may still be finishing its last task's bookkeeping
+     */
+    private boolean waitForAccept(Object conn, Runnable task) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline) {
+            if (executor.submit(conn, task)) return true;
+            Thread.sleep(5);
+        }
+        return false;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package gemini.root;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+class ExpressionEvaluatorTest {
+
+    private final ExpressionEvaluator calc = new ExpressionEvaluator();
+
+    @Test
+    void multiplicationBindsTighterThanAddition() {
+        assertEquals(14, calc.evaluate("2 + 3 * 4"));
+        assertEquals(20, calc.evaluate("(2 + 3) * 4"));
+        assertEquals(1, calc.evaluate("10 - 4 - 5"));
+        assertEquals(2, calc.evaluate("12 / 3 / 2"));
+        assertEquals(1, calc.evaluate("7 % 3"));
+    }
+
+    @Test
+    void unaryMinus() {
+        assertEquals(-3, calc.evaluate("-3"));
+        assertEquals(3, calc.evaluate("--3"));
+        assertEquals(-6, calc.evaluate("-2 * 3"));
+        assertEquals(5, calc.evaluate("2 - -3"));
+        assertEquals(-5, calc.evaluate("-(2 + 3)"));
+    }
+
+    @Test
+    void powerIsRightAssociativeAndBindsTighterThanUnaryMinus() {
+        assertEquals(512, calc.evaluate("2 ^ 3 ^ 2"));
+        assertEquals(-4, calc.evaluate("-2 ^ 2"));
+        assertEquals(4, calc.evaluate("(-2) ^ 2"));
+        assertEquals(0.25, calc.evaluate("2 ^ -2"));
+        assertEquals(18, calc.evaluate("2 * 3 ^ 2"));
+    }
+
+    @Test
+    void functionsAndConstants() {
+        assertEquals(3, calc.evaluate("sqrt(9)"));
+        assertEquals(5, calc.evaluate("hypot(3, 4)"));
+        assertEquals(1, calc.evaluate("min(4, 1, 7)"));
+        assertEquals(Math.PI, calc.evaluate("pi"));
+        assertEquals(2, calc.evaluate("log(100)"));
+        assertEquals(1e-3, calc.evaluate("1e-3"));
+    }
+
+    @Test
+    void rejectsSyntaxErrors() {
+        assertThrows(ExpressionEvaluator.ExpressionException.class, () -> calc.evaluate(""));
+        assertThrows(ExpressionEvaluator.ExpressionException.class, () -> calc.evaluate("2 +"));
+        assertThrows(ExpressionEvaluator.ExpressionException.class, () -> calc.evaluate("(1 + 2"));
+        assertThrows(ExpressionEvaluator.ExpressionException.class, () -> calc.evaluate("foo(1)"));
+        assertThrows(ExpressionEvaluator.ExpressionException.class, () -> calc.evaluate("sqrt(1, 2)"));
+        assertThrows(ExpressionEvaluator.ExpressionException.class, () -> calc.evaluate("1 / 0"));
+    }
+
+    @Test
+    void enforcesLimits() {
+        String tooLong = "1" + "+1".repeat(ExpressionEvaluator.MAX_LENGTH);
+        assertThrows(ExpressionEvaluator.ExpressionException.class, () -> calc.evaluate(tooLong));
+
+        String tooDeep = "(".repeat(ExpressionEvaluator.MAX_DEPTH + 1) + "1" + ")".repeat(ExpressionEvaluator.MAX_DEPTH + 1);
+        assertTrue(tooDeep.length() <= ExpressionEvaluator.MAX_LENGTH);
+        assertThrows(ExpressionEvaluator.ExpressionException.class, () -> calc.evaluate(tooDeep));
+
+        // Every node takes at least one character, so anything within
+        // MAX_LENGTH also fits MAX_NODES
+        String longest = "1" + "+1".repeat((ExpressionEvaluator.MAX_LENGTH - 1) / 2);
+        assertEquals((ExpressionEvaluator.MAX_LENGTH + 1) / 2, calc.evaluate(longest));
+    }
+
+    @Test
+    void cachesCompiledExpressions() {
+        assertSame(calc.compile("1 + 2"), calc.compile(" 1 + 2 "));
+    }
+
+    @Test
+    void formatsPlainly() {
+        assertEquals("4", ExpressionEvaluator.format(4.0));
+        assertEquals("0.1", ExpressionEvaluator.format(0.1));
+        assertEquals("-2.5", ExpressionEvaluator.format(-2.5));
+    }
+}
@@ -0,0 +1,183 @@
+package gemini.root;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class HippocampusTest {
+
+    @TempDir
+    Path tmp;
+
+    private Path dir;
+    private Path legacy;
+
+    @BeforeEach
+    void relocate() {
+        dir = tmp.resolve("fraymus_hippocampus");
+        legacy = tmp.resolve("fraymus_hippocampus.log");
+        Hippocampus.relocate(dir, legacy);
+    }
+
+    @AfterEach
+    void release() {
+        Hippocampus.relocate(tmp.resolve("closed"), tmp.resolve("closed.log"));
+    }
+
+    /**
+     * A sealed segment, the active one and blocks still in the writer's
+     * queue answer one query, newest first
+     */
+    @Test
+    void searchSpansSealedAndActiveSegments() throws Exception {
+        List<String> blocks = new ArrayList<>();
+        MemorySegment first = MemorySegment.openActive(Files.createDirectories(dir), 0);
+        first.append(blocks(blocks, 0, 120));
+        first.seal();
+        first.close();
+        MemorySegment second = MemorySegment.openActive(dir, 120);
+        second.append(blocks(blocks, 120, 50));
+        second.close();
+
+        Hippocampus.recall();
+        assertEquals(170, Hippocampus.size());
+        for (int i = 0; i < 10; i++) {
+            Hippocampus.commitMemory("CHAT", "fresh " + (i % 2 == 0 ? "quartz" : "quarry") + " note " + i);
+        }
+        assertEquals(180, Hippocampus.size());
+
+        List<String> hits = Hippocampus.search("quar", 1000, 0);
+        assertEquals(10 + expectedCount(blocks, "quar"), hits.size());
+        assertTrue(hits.get(0).endsWith("quarry note 9"), hits.get(0));
+        assertEquals(blocks.get(lastWith(blocks, "quar")), hits.get(10));
+        assertEquals(blocks.get(firstWith(blocks, "quar")), hits.get(hits.size() - 1));
+
+        // Time filter reaches into the sealed segment only as far as it must
+        long since = ts(60);
+        List<String> recentHits = Hippocampus.search("quar", 1000, since);
+        for (String h : recentHits) assertTrue(MemorySegment.timestamp(h) >= since, h);
+        assertEquals(hits.size() - countBefore(blocks, "quar", 60), recentHits.size());
+
+        assertTrue(Hippocampus.flush(5_000));
+        assertEquals(hits, Hippocampus.search("quar", 1000, 0));
+    }
+
+    /**
+     * A segment that crashed while sealing has a log but no index; opening
+     * the log rebuilds the index instead of losing the segment
+     */
+    @Test
+    void crashedSealIsRebuilt() throws Exception {
+        List<String> blocks = new ArrayList<>();
+        MemorySegment first = MemorySegment.openActive(Files.createDirectories(dir), 0);
+        first.append(blocks(blocks, 0, 80));
+        first.close();  // no .idx: the crash came before seal() finished
+        MemorySegment second = MemorySegment.openActive(dir, 80);
+        second.append(blocks(blocks, 80, 5));
+        second.close();
+
+        Hippocampus.recall();
+        assertTrue(Files.exists(dir.resolve(String.format("seg-%016d.idx", 0))));
+        assertEquals(85, Hippocampus.size());
+        assertEquals(expectedCount(blocks, "quar"), Hippocampus.search("quar", 1000, 0).size());
+        assertEquals(blocks.subList(75, 85), Hippocampus.recent(10));
+    }
+
+    /**
+     * The single-file log moves into segments; segments left beside it by
+     * an interrupted migration are discarded first
+     */
+    @Test
+    void legacyLogIsMigrated() throws Exception {
+        List<String> blocks = new ArrayList<>();
+        blocks(blocks, 0, 40);
+        Files.write(legacy, blocks, StandardCharsets.UTF_8);
+        MemorySegment partial = MemorySegment.openActive(Files.createDirectories(dir), 0);
+        partial.append(blocks.subList(0, 7));
+        partial.close();
+
+        Hippocampus.recall();
+        assertEquals(40, Hippocampus.size());
+        assertFalse(Files.exists(legacy));
+        assertTrue(Files.exists(tmp.resolve("fraymus_hippocampus.log.migrated")));
+        assertEquals(blocks.subList(30, 40), Hippocampus.recent(10));
+        assertEquals(expectedCount(blocks, "quar"), Hippocampus.search("quar", 1000, 0).size());
+
+        // A restart reads the segments, not the renamed log
+        Hippocampus.relocate(dir, legacy);
+        Hippocampus.recall();
+        assertEquals(40, Hippocampus.size());
+    }
+
+    /**
+     * Commits racing close() and commits after it reach the log in commit
+     * order
+     */
+    @Test
+    void commitsAroundCloseKeepOrder() throws Exception {
+        Hippocampus.recall();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            Hippocampus.commitMemory("CHAT", "before " + i);
+        }
+        Thread closer = new Thread(Hippocampus::close);
+        closer.start();
+        for (int i = 0; i < 200; i++) {
+            Hippocampus.commitMemory("CHAT", "during " + i);
+        }
+        closer.join();
+        for (int i = 0; i < 20; i++) {
+            Hippocampus.commitMemory("CHAT", "after\n" + i);
+        }
+        for (int i = 0; i < 200; i++) expected.add("before " + i);
+        for (int i = 0; i < 200; i++) expected.add("during " + i);
+        for (int i = 0; i < 20; i++) expected.add("after\\n" + i);
+
+        Hippocampus.relocate(dir, legacy);
+        Hippocampus.recall();
+        assertEquals(420, Hippocampus.size());
+        List<String> reread = new ArrayList<>();
+        for (String block : Hippocampus.recent(420)) reread.add(block.substring(block.indexOf("] ") + 2));
+        assertEquals(expected, reread);
+    }
+
+    private static List<String> blocks(List<String> all, int from, int n) {
+        List<String> out = new ArrayList<>();
+        for (int i = from; i < from + n; i++) {
+            String word = i % 7 == 0 ? "quartz" : i % 11 == 0 ? "quarry" : "granite";
+            out.add("[" + ts(i) + "|CHAT] block " + i + " " + word);
+        }
+        all.addAll(out);
+        return out;
+    }
+
+    private static long ts(int i) {
+        return 1_700_000_000_000L + i * 1_000L;
+    }
+
+    private static int expectedCount(List<String> blocks, String prefix) {
+        return countBefore(blocks, prefix, blocks.size());
+    }
+
+    private static int countBefore(List<String> blocks, String prefix, int end) {
+        int n = 0;
+        for (int i = 0; i < end; i++) if (blocks.get(i).contains(" " + prefix)) n++;
+        return n;
+    }
+
+    private static int firstWith(List<String> blocks, String prefix) {
+        for (int i = 0; i < blocks.size(); i++) if (blocks.get(i).contains(" " + prefix)) return i;
+        return -1;
+    }
+
+    private static int lastWith(List<String> blocks, String prefix) {
+        for (int i = blocks.size() - 1; i >= 0; i--) if (blocks.get(i).contains(" " + prefix)) return i;
+        return -1;
+    }
+}
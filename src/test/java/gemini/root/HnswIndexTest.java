@@ -0,0 +1,164 @@
+package gemini.root;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class HnswIndexTest {
+
+    private static final int ROWS = 3000;
+    private static final int DIM = 48;
+    private static final int K = 10;
+
+    @TempDir
+    Path dir;
+
+    private final Random rnd = new Random(3);
+    private final List<float[]> rows = clustered(ROWS);
+    private final VectorIndex.Scorer scorer = new VectorIndex.Scorer() {
+        @Override
+        public double similarity(float[] query, int id) {
+            return cosine(query, rows.get(id));
+        }
+
+        @Override
+        public double similarity(int a, int b) {
+            return cosine(rows.get(a), rows.get(b));
+        }
+    };
+
+    @Test
+    void recallAgainstExactSearch() {
+        HnswIndex index = build();
+        assertEquals(ROWS, index.size());
+
+        double recall = recall(index, queries(200));
+        assertTrue(recall >= 0.95, "recall@" + K + " = " + recall);
+    }
+
+    @Test
+    void widerBeamDoesNotLoseRecall() {
+        HnswIndex index = build();
+        List<float[]> queries = queries(100);
+        index.setEfSearch(K);
+        double narrow = recall(index, queries);
+        index.setEfSearch(200);
+        double wide = recall(index, queries);
+        assertTrue(wide >= narrow, "efSearch 200 recall " + wide + " < efSearch " + K + " recall " + narrow);
+    }
+
+    @Test
+    void concurrentSearchesMatchSerial() throws Exception {
+        HnswIndex index = build();
+        List<float[]> queries = queries(64);
+        List<int[]> serial = new ArrayList<>();
+        for (float[] q : queries) serial.add(index.search(q, K));
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<int[]>> futures = new ArrayList<>();
+            for (int round = 0; round < 4; round++) {
+                for (float[] q : queries) futures.add(pool.submit(() -> index.search(q, K)));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                assertArrayEquals(serial.get(i % queries.size()), futures.get(i).get(30, TimeUnit.SECONDS));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void saveAndLoadKeepTheGraph() throws Exception {
+        HnswIndex index = build();
+        Path file = dir.resolve("hnsw.idx");
+        index.save(file);
+
+        HnswIndex loaded = new HnswIndex(scorer);
+        loaded.load(file);
+        assertEquals(index.size(), loaded.size());
+        for (float[] q : queries(50)) {
+            assertArrayEquals(index.search(q, K), loaded.search(q, K));
+        }
+    }
+
+    @Test
+    void rejectsOutOfOrderRows() {
+        HnswIndex index = new HnswIndex(scorer);
+        index.add(0, rows.get(0));
+        assertThrows(IllegalArgumentException.class, () -> index.add(2, rows.get(2)));
+        assertEquals(0, new HnswIndex(scorer).search(rows.get(0), K).length);
+    }
+
+    private HnswIndex build() {
+        HnswIndex index = new HnswIndex(scorer);
+        for (int i = 0; i < rows.size(); i++) index.add(i, rows.get(i));
+        return index;
+    }
+
+    private double recall(HnswIndex index, List<float[]> queries) {
+        int hits = 0;
+        for (float[] q : queries) {
+            Set<Integer> truth = exact(q);
+            for (int id : index.search(q, K)) {
+                if (truth.contains(id)) hits++;
+            }
+        }
+        return (double) hits / (queries.size() * K);
+    }
+
+    private Set<Integer> exact(float[] q) {
+        Integer[] ids = new Integer[rows.size()];
+        double[] scores = new double[rows.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = i;
+            scores[i] = cosine(q, rows.get(i));
+        }
+        Arrays.sort(ids, (a, b) -> Double.compare(scores[b], scores[a]));
+        return new HashSet<>(Arrays.asList(ids).subList(0, K));
+    }
+
+    /**
+     * Embeddings cluster by topic; uniform noise would make every
+     * neighbour equally (un)likely
+     */
+    private List<float[]> clustered(int n) {
+        float[][] centres = new float[32][DIM];
+        for (float[] c : centres) {
+            for (int d = 0; d < DIM; d++) c[d] = (float) rnd.nextGaussian();
+        }
+        List<float[]> out = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            float[] c = centres[rnd.nextInt(centres.length)];
+            float[] v = new float[DIM];
+            for (int d = 0; d < DIM; d++) v[d] = c[d] + 0.7f * (float) rnd.nextGaussian();
+            out.add(v);
+        }
+        return out;
+    }
+
+    private List<float[]> queries(int n) {
+        List<float[]> out = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            float[] base = rows.get(rnd.nextInt(rows.size()));
+            float[] q = new float[DIM];
+            for (int d = 0; d < DIM; d++) q[d] = base[d] + 0.3f * (float) rnd.nextGaussian();
+            out.add(q);
+        }
+        return out;
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        double dot = 0, na = 0, nb = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            na += a[i] * a[i];
+            nb += b[i] * b[i];
+        }
+        return dot / Math.sqrt(na * nb);
+    }
+}
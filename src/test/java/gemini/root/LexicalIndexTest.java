@@ -0,0 +1,161 @@
+package gemini.root;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Path;
+import java.util.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LexicalIndexTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void splitsIdentifiersIntoParts() {
+        List<String> terms = new ArrayList<>();
+        int length = LexicalIndex.tokenize("The HTTPServer threw NullPointerException in read_file2", terms::add);
+        assertEquals(terms.size(), length);
+        assertTrue(terms.containsAll(List.of("httpserver", "http", "server", "nullpointerexception",
+            "null", "pointer", "exception", "read_file2", "read", "file", "2")));
+        assertFalse(terms.contains("the"));
+        assertFalse(terms.contains("in"));
+    }
+
+    /**
+     * Doc gaps and term frequencies on both sides of the 1, 2 and 3 byte
+     * varint boundaries, read back through search and through save/load
+     */
+    @Test
+    void varintPostingsRoundTrip() throws Exception {
+        int[] gaps = { 1, 126, 127, 128, 129, 16383, 16384, 16385 };
+        int[] tfs = { 1, 127, 128, 129, 300, 2, 16384, 5 };
+        Map<Integer, Integer> expected = new LinkedHashMap<>();
+        int doc = -1;
+        for (int i = 0; i < gaps.length; i++) {
+            doc += gaps[i];
+            expected.put(doc, tfs[i]);
+        }
+
+        LexicalIndex index = new LexicalIndex();
+        int last = doc;
+        for (int id = 0; id <= last; id++) {
+            Integer tf = expected.get(id);
+            index.add(id, tf == null ? "filler text" : "filler " + "zebra ".repeat(tf));
+        }
+        assertEquals(last + 1, index.size());
+        assertEquals(expected.keySet(), sorted(index.search("zebra", 100)));
+
+        Path file = dir.resolve(LexicalIndex.FILE);
+        index.save(file);
+        LexicalIndex loaded = new LexicalIndex();
+        loaded.load(file);
+        assertEquals(index.size(), loaded.size());
+        assertEquals(index.terms(), loaded.terms());
+        assertArrayEquals(index.search("zebra", 100), loaded.search("zebra", 100));
+        assertArrayEquals(index.search("filler zebra", 5), loaded.search("filler zebra", 5));
+    }
+
+    /**
+     * MaxScore pruning and block skips must return the same top-k as
+     * scoring every document
+     */
+    @Test
+    void topKMatchesExhaustiveBm25() {
+        Random rnd = new Random(11);
+        String[] vocab = new String[400];
+        for (int i = 0; i < vocab.length; i++) vocab[i] = "w" + Integer.toString(i, 36) + "x";
+
+        List<String> texts = new ArrayList<>();
+        LexicalIndex index = new LexicalIndex();
+        for (int id = 0; id < 3000; id++) {
+            StringBuilder sb = new StringBuilder();
+            int words = 5 + rnd.nextInt(60);
+            for (int w = 0; w < words; w++) {
+                // Zipf-ish: a few terms in most docs (long posting lists), a long tail of rare ones
+                int t = (int) Math.min(vocab.length - 1, Math.abs(rnd.nextGaussian()) * 60);
+                sb.append(vocab[t]).append(' ');
+            }
+            texts.add(sb.toString());
+            index.add(id, sb.toString());
+        }
+
+        Bm25 bm25 = new Bm25(texts);
+        for (int q = 0; q < 200; q++) {
+            StringBuilder query = new StringBuilder();
+            int n = 1 + rnd.nextInt(5);
+            for (int i = 0; i < n; i++) query.append(vocab[rnd.nextInt(150)]).append(' ');
+            int k = 1 + rnd.nextInt(20);
+
+            float[] exact = bm25.score(query.toString());
+            int[] got = index.search(query.toString(), k);
+
+            int matching = 0;
+            for (float s : exact) if (s > 0) matching++;
+            assertEquals(Math.min(k, matching), got.length, "hits for '" + query + "'");
+
+            float[] ranked = exact.clone();
+            Arrays.sort(ranked);
+            float kth = got.length == 0 ? 0 : ranked[ranked.length - got.length];
+            for (int i = 0; i < got.length; i++) {
+                assertTrue(exact[got[i]] >= kth - 1e-4f, "doc " + got[i] + " is not in the top-" + k + " for '" + query + "'");
+                if (i > 0) assertTrue(exact[got[i - 1]] >= exact[got[i]] - 1e-4f, "results out of order");
+            }
+        }
+    }
+
+    @Test
+    void rejectsOutOfOrderRows() {
+        LexicalIndex index = new LexicalIndex();
+        index.add(0, "first");
+        assertThrows(IllegalArgumentException.class, () -> index.add(2, "skipped one"));
+    }
+
+    private static Set<Integer> sorted(int[] ids) {
+        Set<Integer> set = new TreeSet<>();
+        for (int id : ids) set.add(id);
+        return set;
+    }
+
+    /**
+     * Textbook BM25 (k1 = 1.2, b = 0.75) over every document
+     */
+    private static final class Bm25 {
+        final List<Map<String, Integer>> tfs = new ArrayList<>();
+        final Map<String, Integer> df = new HashMap<>();
+        final int[] lengths;
+        final float avgLength;
+
+        Bm25(List<String> texts) {
+            lengths = new int[texts.size()];
+            long total = 0;
+            for (int i = 0; i < texts.size(); i++) {
+                Map<String, Integer> tf = new HashMap<>();
+                lengths[i] = LexicalIndex.tokenize(texts.get(i), t -> tf.merge(t, 1, Integer::sum));
+                total += lengths[i];
+                tf.keySet().forEach(t -> df.merge(t, 1, Integer::sum));
+                tfs.add(tf);
+            }
+            avgLength = (float) total / texts.size();
+        }
+
+        float[] score(String query) {
+            int n = lengths.length;
+            Set<String> terms = new LinkedHashSet<>();
+            LexicalIndex.tokenize(query, terms::add);
+            float[] scores = new float[n];
+            for (String term : terms) {
+                Integer d = df.get(term);
+                if (d == null) continue;
+                double idf = Math.log(1.0 + (n - d + 0.5) / (d + 0.5));
+                for (int i = 0; i < n; i++) {
+                    Integer tf = tfs.get(i).get(term);
+                    if (tf == null) continue;
+                    scores[i] += (float) (idf * tf * 2.2 / (tf + 1.2 * (1 - 0.75 + 0.75 * lengths[i] / avgLength)));
+                }
+            }
+            return scores;
+        }
+    }
+}
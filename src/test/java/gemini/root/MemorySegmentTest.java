@@ -0,0 +1,163 @@
+package gemini.root;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MemorySegmentTest {
+
+    private static final String[] WORDS = {
+        "alpha", "alphabet", "alpine", "bravo", "brave", "charlie", "charm", "delta",
+        "deltaForce", "echo", "echoes", "foxtrot", "golf", "golfer", "hotel", "hot_dog"
+    };
+
+    @TempDir
+    Path dir;
+
+    /**
+     * A crash mid-write leaves a line without its newline; reopening cuts it
+     * off and the next append starts where the last whole line ended
+     */
+    @Test
+    void tornLastLineIsCutOnReopen() throws Exception {
+        MemorySegment seg = MemorySegment.openActive(dir, 0);
+        seg.append(List.of(block(1000, "alpha one"), block(1010, "bravo two")));
+        long whole = seg.bytes();
+        seg.close();
+
+        Path log = dir.resolve(String.format("seg-%016d.log", 0));
+        try (FileChannel ch = FileChannel.open(log, StandardOpenOption.WRITE)) {
+            ch.write(ByteBuffer.wrap("[1020|CHAT] torn wri".getBytes(StandardCharsets.UTF_8)), whole);
+        }
+
+        seg = MemorySegment.openActive(dir, 0);
+        assertEquals(2, seg.count());
+        assertEquals(whole, seg.bytes());
+        assertEquals(whole, Files.size(log));
+        seg.append(List.of(block(1030, "charlie three")));
+        assertEquals(block(1030, "charlie three"), seg.read(2));
+        assertEquals(block(1010, "bravo two"), seg.read(1));
+        assertNull(seg.match(List.of("torn"), 0, 512));
+        seg.close();
+    }
+
+    /**
+     * Prefix queries give the same ordinals on the heap index, the sealed
+     * index and a brute-force scan
+     */
+    @Test
+    void prefixMatchesAgreeBeforeAndAfterSealing() throws Exception {
+        Random rnd = new Random(7);
+        List<String> blocks = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            StringBuilder text = new StringBuilder();
+            int n = 1 + rnd.nextInt(5);
+            for (int w = 0; w < n; w++) text.append(WORDS[rnd.nextInt(WORDS.length)]).append(' ');
+            blocks.add(block(1000 + i, text.toString().trim()));
+        }
+        MemorySegment active = MemorySegment.openActive(dir, 0);
+        active.append(blocks);
+
+        List<List<String>> queries = List.of(
+            List.of("alph"), List.of("alpha"), List.of("al", "bra"), List.of("hot"), List.of("dog"),
+            List.of("force"), List.of("echoes", "golf"), List.of("chat"), List.of("zulu"), List.of("c", "d", "e"));
+        Map<List<String>, BitSet> beforeSeal = new HashMap<>();
+        for (List<String> q : queries) {
+            for (int from : new int[] { 0, 137, 499 }) {
+                BitSet expected = bruteForce(blocks, q, from);
+                BitSet got = active.match(q, from, 512);
+                assertEquals(expected, got == null ? new BitSet() : got, q + " from " + from);
+                if (from == 0) beforeSeal.put(q, expected);
+            }
+        }
+
+        active.seal();
+        active.close();
+        MemorySegment sealed = MemorySegment.openSealed(dir, 0);
+        assertNotNull(sealed);
+        assertEquals(blocks.size(), sealed.count());
+        for (List<String> q : queries) {
+            BitSet got = sealed.match(q, 0, 512);
+            assertEquals(beforeSeal.get(q), got == null ? new BitSet() : got, q.toString());
+            BitSet tail = sealed.match(q, 137, 512);
+            assertEquals(bruteForce(blocks, q, 137), tail == null ? new BitSet() : tail, q + " from 137");
+        }
+        assertEquals(blocks.get(321), sealed.read(321));
+        sealed.close();
+    }
+
+    /**
+     * The sparse timestamp index may answer a little early, never late, on
+     * both the heap and the sealed index
+     */
+    @Test
+    void firstOrdinalSinceNeverSkipsMatches() throws Exception {
+        long[] ts = new long[700];
+        List<String> blocks = new ArrayList<>();
+        Random rnd = new Random(8);
+        long t = 5_000;
+        for (int i = 0; i < ts.length; i++) {
+            t += rnd.nextInt(3) * 10;  // repeats are allowed
+            ts[i] = t;
+            blocks.add(block(t, "entry " + i));
+        }
+        MemorySegment seg = MemorySegment.openActive(dir, 0);
+        seg.append(blocks);
+        checkSince(seg, ts);
+
+        seg.seal();
+        seg.close();
+        MemorySegment sealed = MemorySegment.openSealed(dir, 0);
+        checkSince(sealed, ts);
+        sealed.close();
+    }
+
+    @Test
+    void emptySegmentSealsAndReopens() throws Exception {
+        MemorySegment seg = MemorySegment.openActive(dir, 42);
+        seg.seal();
+        seg.close();
+        MemorySegment sealed = MemorySegment.openSealed(dir, 42);
+        assertNotNull(sealed);
+        assertEquals(0, sealed.count());
+        assertNull(sealed.match(List.of("alpha"), 0, 512));
+        sealed.close();
+    }
+
+    private static void checkSince(MemorySegment seg, long[] ts) throws Exception {
+        assertEquals(0, seg.firstOrdinalSince(0));
+        assertEquals(0, seg.firstOrdinalSince(ts[0]));
+        assertEquals(ts.length, seg.firstOrdinalSince(ts[ts.length - 1] + 1));
+        for (long target = ts[0] - 5; target <= ts[ts.length - 1]; target += 5) {
+            int exact = 0;
+            while (ts[exact] < target) exact++;
+            int got = seg.firstOrdinalSince(target);
+            assertTrue(got <= exact, "since " + target + ": " + got + " > " + exact);
+            assertTrue(exact - got <= MemorySegment.SPARSE_EVERY, "since " + target + ": " + got + " vs " + exact);
+        }
+    }
+
+    private static BitSet bruteForce(List<String> blocks, List<String> terms, int from) {
+        BitSet bits = new BitSet();
+        for (int o = from; o < blocks.size(); o++) {
+            List<String> words = new ArrayList<>();
+            LexicalIndex.tokenize(MemorySegment.indexText(blocks.get(o)), words::add);
+            boolean all = true;
+            for (String t : terms) {
+                all &= words.stream().anyMatch(w -> w.startsWith(t));
+            }
+            if (all) bits.set(o);
+        }
+        return bits;
+    }
+
+    private static String block(long ts, String content) {
+        return "[" + ts + "|CHAT] " + content;
+    }
+}
@@ -0,0 +1,158 @@
+package gemini.root;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import fraymus.OllamaSpine;
+import java.lang.reflect.Proxy;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.BooleanSupplier;
+import org.java_websocket.WebSocket;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SessionMemoryTest {
+
+    @TempDir
+    Path spill;
+
+    private SessionMemory memory;
+
+    @AfterEach
+    void stopSweeper() {
+        if (memory != null) memory.close();
+    }
+
+    @Test
+    void keepsTheNewestMessagesWithinBothBudgets() {
+        memory = new SessionMemory(4, 1000);
+        WebSocket conn = connection();
+        memory.init(conn);
+        for (int i = 0; i < 6; i++) memory.push(conn, "user", "m" + i);
+        assertEquals(List.of("m2", "m3", "m4", "m5"), contents(memory.snapshot(conn)));
+
+        SessionMemory tight = new SessionMemory(10, 10);
+        tight.init(conn);
+        tight.push(conn, "user", "x".repeat(20));
+        tight.push(conn, "assistant", "y".repeat(20));
+        tight.push(conn, "user", "z".repeat(20));
+        assertEquals(2, tight.snapshot(conn).size(), "token budget trims down to the last exchange");
+    }
+
+    @Test
+    void snapshotIsSharedUntilTheHistoryChanges() {
+        memory = new SessionMemory(8, 1000);
+        WebSocket conn = connection();
+        memory.init(conn);
+        memory.push(conn, "user", "hello");
+        List<OllamaSpine.Msg> first = memory.snapshot(conn);
+        assertSame(first, memory.snapshot(conn));
+        assertThrows(UnsupportedOperationException.class, () -> first.add(new OllamaSpine.Msg("user", "x")));
+
+        memory.push(conn, "assistant", "hi");
+        assertNotSame(first, memory.snapshot(conn));
+        assertEquals(1, first.size());
+    }
+
+    @Test
+    void closedConnectionCanResumeFromItsSpill() throws Exception {
+        memory = new SessionMemory(8, 1000);
+        memory.startEviction(50, spill, 10);
+        WebSocket conn = connection();
+        String id = memory.init(conn);
+        memory.push(conn, "user", "what is HNSW?");
+        memory.push(conn, "assistant", "a graph index");
+        memory.drop(conn);
+
+        Path file = spill.resolve(id + ".json");
+        assertTrue(waitFor(() -> Files.exists(file)), "session was not spilled: " + memory.stats());
+        assertTrue(memory.stats().contains("spilled=1"), memory.stats());
+        memory.startEviction(60_000, spill, 10);  // keep the resumed session live from here on
+
+        WebSocket reconnected = connection();
+        memory.init(reconnected);
+        assertTrue(memory.resume(reconnected, id));
+        assertEquals(id, memory.id(reconnected));
+        assertEquals(List.of("what is HNSW?", "a graph index"), contents(memory.snapshot(reconnected)));
+        assertFalse(Files.exists(file), "a resumed spill is consumed");
+        assertTrue(memory.stats().contains("resumed=1"), memory.stats());
+    }
+
+    @Test
+    void idleAttachedSessionReloadsWhenItsConnectionSpeaks() throws Exception {
+        memory = new SessionMemory(8, 1000);
+        memory.startEviction(50, spill, 10);
+        WebSocket conn = connection();
+        String id = memory.init(conn);
+        memory.push(conn, "user", "first");
+
+        assertTrue(waitFor(() -> Files.exists(spill.resolve(id + ".json"))), memory.stats());
+        memory.startEviction(60_000, spill, 10);
+        memory.push(conn, "user", "second");
+        assertEquals(id, memory.id(conn));
+        assertEquals(List.of("first", "second"), contents(memory.snapshot(conn)));
+    }
+
+    @Test
+    void unknownOrMalformedIdsDoNotResume() throws Exception {
+        memory = new SessionMemory(8, 1000);
+        memory.startEviction(60_000, spill, 60_000);
+        WebSocket conn = connection();
+        String id = memory.init(conn);
+        assertFalse(memory.resume(conn, "AAAAAAAAAAAA"));
+        assertFalse(memory.resume(conn, "../../etc/passwd"));
+        assertEquals(id, memory.id(conn));
+    }
+
+    @Test
+    void closeSpillsLiveSessions() throws Exception {
+        memory = new SessionMemory(8, 1000);
+        memory.startEviction(60_000, spill, 60_000);
+        WebSocket conn = connection();
+        String id = memory.init(conn);
+        memory.push(conn, "user", "keep me");
+        memory.close();
+        assertTrue(Files.exists(spill.resolve(id + ".json")));
+
+        SessionMemory restarted = new SessionMemory(8, 1000);
+        restarted.startEviction(60_000, spill, 60_000);
+        WebSocket next = connection();
+        assertTrue(restarted.resume(next, id));
+        assertEquals(List.of("keep me"), contents(restarted.snapshot(next)));
+        restarted.close();
+    }
+
+    /**
+     * A WebSocket that only keeps its attachment (all SessionMemory uses)
+     */
+    private static WebSocket connection() {
+        Object[] attachment = new Object[1];
+        return (WebSocket) Proxy.newProxyInstance(WebSocket.class.getClassLoader(), new Class<?>[] { WebSocket.class },
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "getAttachment": return attachment[0];
+                    case "setAttachment": attachment[0] = args[0]; return null;
+                    case "hashCode": return System.identityHashCode(proxy);
+                    case "equals": return proxy == args[0];
+                    case "toString": return "ws@" + Integer.toHexString(System.identityHashCode(proxy));
+                    default: throw new UnsupportedOperationException(method.getName());
+                }
+            });
+    }
+
+    private static List<String> contents(List<OllamaSpine.Msg> messages) {
+        List<String> out = new ArrayList<>();
+        for (OllamaSpine.Msg m : messages) out.add(m.content);
+        return out;
+    }
+
+    private static boolean waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (System.currentTimeMillis() < deadline) {
+            if (condition.getAsBoolean()) return true;
+            Thread.sleep(10);
+        }
+        return condition.getAsBoolean();
+    }
+}
@@ -0,0 +1,181 @@
+package gemini.root;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TransmudderTest {
+
+    private static final String[] WORDS = {
+        "Alpha", "Bravo", "Charlie", "Delta", "Echo", "Foxtrot", "Golf", "Hotel",
+        "Écume", "Ørsted", "Żubr", "日本語", "Ünïcode", "Smile😀", "Quartz", "Zulu"
+    };
+    private static final String[] GAPS = { " ", " ", " ", "  ", "\t", "\n", ". ", "! ", ".\n\n", "\r\n \f", "\u000B" };
+
+    @TempDir
+    Path dir;
+
+    private final Transmudder soul = new Transmudder();
+
+    @Test
+    void cleanseMatchesTheRegex() {
+        Random rnd = new Random(1);
+        String alphabet = "ab .\t\n\r\f\u000B  é😀";
+        for (int round = 0; round < 500; round++) {
+            StringBuilder sb = new StringBuilder();
+            int n = rnd.nextInt(40);
+            for (int i = 0; i < n; i++) sb.append(alphabet.charAt(rnd.nextInt(alphabet.length())));
+            String raw = sb.toString();
+            assertEquals(raw.replaceAll("\\s+", " ").trim(), soul.cleanse(raw), "input " + escape(raw));
+        }
+        assertEquals("", soul.cleanse(null));
+    }
+
+    /**
+     * Chunks never exceed chunkSize, overlaps begin on a word, the last
+     * chunk is never just the previous chunk's overlap, and without overlap
+     * the chunks cover the cleansed text with nothing added or lost
+     */
+    @Test
+    void chunksRespectSizeAndStartOnWords() throws Exception {
+        Random rnd = new Random(2);
+        for (int round = 0; round < 200; round++) {
+            String text = randomText(rnd, 20 + rnd.nextInt(400));
+            int chunkSize = 30 + rnd.nextInt(60);
+            int overlap = rnd.nextInt(chunkSize / 3);
+            List<String> chunks = stream(text, chunkSize, overlap);
+
+            String context = "round " + round + " size " + chunkSize + " overlap " + overlap;
+            assertFalse(chunks.isEmpty(), context);
+            for (int i = 0; i < chunks.size(); i++) {
+                String chunk = chunks.get(i);
+                assertTrue(chunk.length() <= chunkSize, context + " chunk " + i + " length " + chunk.length());
+                assertFalse(chunk.isEmpty() || chunk.startsWith(" ") || chunk.endsWith(" "), context);
+                if (i > 0) {
+                    // Every word starts with an upper-case letter or a CJK char
+                    assertFalse(Character.isLowerCase(chunk.charAt(0)), context + " chunk " + i + ": " + chunk);
+                    assertFalse(chunks.get(i - 1).endsWith(chunk), context + " chunk " + i + " is only overlap");
+                }
+            }
+
+            List<String> plain = stream(text, chunkSize, 0);
+            assertEquals(soul.cleanse(text).replace(" ", ""), String.join("", plain).replace(" ", ""), context);
+        }
+    }
+
+    @Test
+    void emptyAndBlankInputsYieldNoChunks() throws Exception {
+        assertEquals(List.of(), stream("", 10, 2));
+        assertEquals(List.of(), stream(" \n\n\t ", 10, 2));
+        assertEquals(List.of("one"), stream("\n one \n", 10, 2));
+    }
+
+    /**
+     * Paragraph offsets are kept in stream coordinates, so breaks after
+     * several cuts still land where they are in the text
+     */
+    @Test
+    void cutsAtParagraphsAfterEarlierCuts() throws Exception {
+        Random rnd = new Random(3);
+        List<String> paragraphs = new ArrayList<>();
+        for (int p = 0; p < 12; p++) {
+            StringBuilder sb = new StringBuilder(WORDS[rnd.nextInt(8)]);
+            // 21..36 chars plus the full stop: one paragraph per 40-char chunk
+            int target = 21 + rnd.nextInt(9);
+            while (sb.length() < target) {
+                sb.append(' ').append(WORDS[rnd.nextInt(8)]);
+            }
+            paragraphs.add(sb.toString());
+        }
+        // Word and sentence boundaries exist everywhere; only the paragraph
+        // rule puts every cut exactly on a break
+        List<String> chunks = stream(String.join(".\n\n", paragraphs), 40, 0);
+        List<String> expected = new ArrayList<>();
+        for (int p = 0; p < paragraphs.size(); p++) {
+            expected.add(paragraphs.get(p) + (p < paragraphs.size() - 1 ? "." : ""));
+        }
+        assertEquals(expected, chunks);
+    }
+
+    /**
+     * Mapped windows of a few bytes split multi-byte sequences at almost
+     * every seam; the result must match the Reader path
+     */
+    @Test
+    void mappedWindowsMatchTheReader() throws Exception {
+        Random rnd = new Random(4);
+        for (int round = 0; round < 40; round++) {
+            String text = randomText(rnd, 50 + rnd.nextInt(300));
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            if (round % 5 == 0) {
+                bytes = Arrays.copyOf(bytes, bytes.length + 2);  // truncated sequence at EOF
+                bytes[bytes.length - 2] = 'x';
+                bytes[bytes.length - 1] = (byte) 0xE6;
+            }
+            Path file = dir.resolve("round" + round + ".txt");
+            Files.write(file, bytes);
+            String decoded = new String(bytes, StandardCharsets.UTF_8);
+
+            List<String> viaReader = stream(decoded, 48, 12);
+            for (int window : new int[] { 4, 5, 7, 13, 64 }) {
+                List<String> viaMap = new ArrayList<>();
+                int n = soul.streamChunks(file, 48, 12, (i, c) -> viaMap.add(c), 0, window);
+                assertEquals(viaReader, viaMap, "round " + round + " window " + window);
+                assertEquals(viaMap.size(), n);
+            }
+        }
+    }
+
+    @Test
+    void sequenceSplitAtTheWindowEdge() throws Exception {
+        Path file = dir.resolve("seam.txt");
+        Files.writeString(file, "abé日😀 z", StandardCharsets.UTF_8);
+        for (int window = 4; window <= 12; window++) {
+            List<String> chunks = new ArrayList<>();
+            soul.streamChunks(file, 100, 0, (i, c) -> chunks.add(c), 0, window);
+            assertEquals(List.of("abé日😀 z"), chunks, "window " + window);
+        }
+    }
+
+    @Test
+    void sinkCanStopTheStream() throws Exception {
+        List<String> chunks = new ArrayList<>();
+        int n = soul.streamChunks(new StringReader(randomText(new Random(5), 400)), 40, 5,
+            (i, c) -> chunks.add(c) && i < 2);
+        assertEquals(3, n);
+        assertEquals(3, chunks.size());
+    }
+
+    private List<String> stream(String text, int chunkSize, int overlap) throws Exception {
+        List<String> chunks = new ArrayList<>();
+        int n = soul.streamChunks(new StringReader(text), chunkSize, overlap, (i, c) -> {
+            assertEquals(chunks.size(), i);
+            return chunks.add(c);
+        });
+        assertEquals(chunks.size(), n);
+        return chunks;
+    }
+
+    private static String randomText(Random rnd, int words) {
+        StringBuilder sb = new StringBuilder();
+        if (rnd.nextBoolean()) sb.append(" \n");
+        for (int i = 0; i < words; i++) {
+            sb.append(WORDS[rnd.nextInt(WORDS.length)]);
+            sb.append(GAPS[rnd.nextInt(GAPS.length)]);
+        }
+        return sb.toString();
+    }
+
+    private static String escape(String s) {
+        StringBuilder sb = new StringBuilder();
+        for (char c : s.toCharArray()) {
+            sb.append(c < 0x20 || c > 0x7E ? String.format("\\u%04X", (int) c) : String.valueOf(c));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,202 @@
+package gemini.root;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class VaultStoreTest {
+
+    private static final int DIM = 8;
+
+    @TempDir
+    Path dir;
+
+    private final Random rnd = new Random(5);
+
+    @Test
+    void reopenAfterAppendKeepsEveryColumn() throws Exception {
+        List<float[]> vectors = new ArrayList<>();
+        try (VaultStore store = VaultStore.open(dir)) {
+            store.append(batch(store, "a.txt", 0, 3, vectors));
+            store.append(batch(store, "b.txt", 0, 2, vectors));
+            store.setFlag(new int[] { 1 }, VaultStore.FLAG_TOMBSTONE);
+        }
+
+        try (VaultStore store = VaultStore.open(dir)) {
+            assertEquals(5, store.size());
+            assertEquals(DIM, store.dim());
+            assertEquals("a.txt", store.source(0));
+            assertEquals("b.txt", store.source(4));
+            assertEquals(1, store.chunkIndex(4));
+            assertEquals("b.txt chunk 1 é", store.text(4));
+            assertEquals(VaultStore.FLAG_TOMBSTONE, store.flags(1));
+            assertEquals(0, store.flags(2));
+            for (int row = 0; row < vectors.size(); row++) {
+                assertUnitOf(vectors.get(row), store, row);
+            }
+
+            // Appending after a reopen continues the text column and the source table
+            store.append(batch(store, "a.txt", 3, 1, vectors));
+            store.append(batch(store, "c.txt", 0, 1, vectors));
+            assertEquals(7, store.size());
+            assertEquals(0, store.sourceIdOf(5));
+            assertEquals("a.txt chunk 3 é", store.text(5));
+            assertEquals("c.txt chunk 0 é", store.text(6));
+            assertEquals("b.txt chunk 1 é", store.text(4));
+        }
+
+        try (VaultStore store = VaultStore.open(dir)) {
+            assertEquals(7, store.size());
+            assertEquals("c.txt", store.source(6));
+            assertUnitOf(vectors.get(6), store, 6);
+        }
+    }
+
+    /**
+     * Vectors written without their row records (crash mid-append) are not
+     * rows; the next append overwrites them
+     */
+    @Test
+    void tornAppendIsIgnoredOnReopen() throws Exception {
+        List<float[]> vectors = new ArrayList<>();
+        try (VaultStore store = VaultStore.open(dir)) {
+            store.append(batch(store, "a.txt", 0, 2, vectors));
+        }
+        try (FileChannel ch = FileChannel.open(dir.resolve("vectors.f32"), StandardOpenOption.WRITE)) {
+            ch.write(ByteBuffer.allocate(DIM * Float.BYTES * 3), ch.size());
+        }
+
+        try (VaultStore store = VaultStore.open(dir)) {
+            assertEquals(2, store.size());
+            store.append(batch(store, "a.txt", 2, 1, vectors));
+            assertEquals(3, store.size());
+            assertUnitOf(vectors.get(2), store, 2);
+            assertEquals("a.txt chunk 2 é", store.text(2));
+        }
+    }
+
+    /**
+     * A v1 matrix held raw vectors; opening it rewrites them as unit
+     * vectors and stamps the column v2
+     */
+    @Test
+    void migratesV1VectorsToUnitLength() throws Exception {
+        List<float[]> vectors = new ArrayList<>();
+        try (VaultStore store = VaultStore.open(dir)) {
+            store.append(batch(store, "a.txt", 0, 4, vectors));
+        }
+        try (FileChannel ch = FileChannel.open(dir.resolve("vectors.f32"), StandardOpenOption.WRITE)) {
+            ByteBuffer raw = ByteBuffer.allocate(vectors.size() * DIM * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            vectors.forEach(v -> { for (float x : v) raw.putFloat(x); });
+            raw.flip();
+            VaultStore.writeFully(ch, raw, 64);
+            ByteBuffer version = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(0, 1);
+            VaultStore.writeFully(ch, version, 4);
+        }
+
+        try (VaultStore store = VaultStore.open(dir)) {
+            assertEquals(4, store.size());
+            for (int row = 0; row < vectors.size(); row++) {
+                assertUnitOf(vectors.get(row), store, row);
+            }
+        }
+        assertEquals(VaultStore.FORMAT_VERSION, vectorColumnVersion());
+
+        // Opening again must not divide by the norm a second time
+        try (VaultStore store = VaultStore.open(dir)) {
+            assertUnitOf(vectors.get(3), store, 3);
+        }
+    }
+
+    /**
+     * A legacy list whose first entry lost its vector still migrates, and a
+     * run interrupted before the rename starts over rather than appending
+     * a second copy
+     */
+    @Test
+    void legacyMigrationSurvivesNullVectorsAndRestarts() throws Exception {
+        List<float[]> vectors = new ArrayList<>();
+        ArrayList<VectorVault.VaultEntry> legacy = new ArrayList<>();
+        legacy.add(new VectorVault.VaultEntry("a.txt", "no vector", null));
+        for (int i = 0; i < 3; i++) {
+            float[] v = new float[DIM];
+            for (int d = 0; d < DIM; d++) v[d] = (float) rnd.nextGaussian();
+            legacy.add(new VectorVault.VaultEntry("a.txt", "legacy " + i, v, i, ""));
+            vectors.add(v);
+        }
+        legacy.add(new VectorVault.VaultEntry("a.txt", "wrong dim", new float[DIM + 1]));
+        Path dat = dir.resolve("fraymus_vault.dat");
+        try (java.io.ObjectOutputStream out = new java.io.ObjectOutputStream(Files.newOutputStream(dat))) {
+            out.writeObject(legacy);
+        }
+
+        Path vault = dir.resolve("vault");
+        try (VaultStore store = VaultStore.open(vault)) {
+            // Leftovers of a run that crashed before renaming the .dat file
+            store.append(batch(store, "a.txt", 0, 2, new ArrayList<>()));
+            assertEquals(3, VaultMigrator.migrate(dat, store));
+            assertEquals(3, store.size());
+            assertEquals("legacy 2", store.text(2));
+            for (int row = 0; row < vectors.size(); row++) {
+                assertUnitOf(vectors.get(row), store, row);
+            }
+        }
+        assertFalse(Files.exists(dat));
+        assertTrue(Files.exists(dir.resolve("fraymus_vault.dat.migrated")));
+    }
+
+    @Test
+    void rejectsMismatchedDimension() throws Exception {
+        try (VaultStore store = VaultStore.open(dir)) {
+            store.append(batch(store, "a.txt", 0, 1, new ArrayList<>()));
+            int source = store.sourceId("a.txt");
+            List<VaultStore.NewRow> wrong = List.of(new VaultStore.NewRow(source, 1, 0L, "x", new float[DIM + 1]));
+            assertThrows(IllegalArgumentException.class, () -> store.append(wrong));
+            assertEquals(1, store.size());
+        }
+    }
+
+    private List<VaultStore.NewRow> batch(VaultStore store, String source, int firstChunk, int n,
+                                          List<float[]> written) throws Exception {
+        int id = store.sourceId(source);
+        List<VaultStore.NewRow> rows = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            float[] v = new float[DIM];
+            for (int d = 0; d < DIM; d++) v[d] = (float) rnd.nextGaussian() * 3;
+            String text = source + " chunk " + (firstChunk + i) + " é";
+            rows.add(new VaultStore.NewRow(id, firstChunk + i, text.hashCode(), text, v));
+            written.add(v);
+        }
+        return rows;
+    }
+
+    private int vectorColumnVersion() throws Exception {
+        try (FileChannel ch = FileChannel.open(dir.resolve("vectors.f32"), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            VaultStore.readFully(ch, header, 0);
+            return header.getInt(4);
+        }
+    }
+
+    private static float norm(float[] v) {
+        double s = 0;
+        for (float x : v) s += (double) x * x;
+        return (float) Math.sqrt(s);
+    }
+
+    private static void assertUnitOf(float[] original, VaultStore store, int row) {
+        float norm = norm(original);
+        assertEquals(norm, store.norm(row), 1e-5f * norm);
+        float[] stored = store.vector(row);
+        for (int d = 0; d < DIM; d++) {
+            assertEquals(original[d] / norm, stored[d], 1e-6f, "row " + row + " dim " + d);
+        }
+        assertEquals(1f, store.dot(stored, row), 1e-5f);
+    }
+}